@@ -303,6 +303,8 @@ public class CenterStarAlignment extends AFragmentCommand {
                     sums[i]);
         }
 
+        // rows with pairs that were not aligned have a NaN sum and are never
+        // selected
         int optIndex = -1;
         double optVal = this.minimizeDist ? Double.POSITIVE_INFINITY
                 : Double.NEGATIVE_INFINITY;
@@ -27,8 +27,6 @@
  */
 package maltcms.commands.fragments.alignment;
 
-import com.carrotsearch.hppc.LongObjectMap;
-import com.carrotsearch.hppc.LongObjectHashMap;
 import cross.Factory;
 import cross.annotations.Configurable;
 import cross.annotations.ProvidesVariables;
@@ -58,6 +56,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -74,7 +73,10 @@ import maltcms.commands.fragments.alignment.peakCliqueAlignment.BBHResult;
 import maltcms.commands.fragments.alignment.peakCliqueAlignment.Clique;
 import maltcms.commands.fragments.alignment.peakCliqueAlignment.CliqueFinder;
 import maltcms.commands.fragments.alignment.peakCliqueAlignment.CliqueTable;
+import maltcms.commands.fragments.alignment.peakCliqueAlignment.CompactPeakEdgeMap;
+import maltcms.commands.fragments.alignment.peakCliqueAlignment.HashPeakEdgeMap;
 import maltcms.commands.fragments.alignment.peakCliqueAlignment.IBipacePeak;
+import maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap;
 import maltcms.commands.fragments.alignment.peakCliqueAlignment.IWorkerFactory;
 import maltcms.commands.fragments.alignment.peakCliqueAlignment.OneWayPeakAnova;
 import maltcms.commands.fragments.alignment.peakCliqueAlignment.PairwiseSimilarityResult;
@@ -239,6 +241,17 @@ public class PeakCliqueAlignment extends AFragmentCommand {
     @Deprecated
     @Configurable(description="Deprecated. Use minBbhFraction instead.")
     private boolean postProcessCliques = false;
+    @Configurable(description="If true, keeps only the best hit index and "
+            + "similarity of each peak to each other chromatogram in dense "
+            + "primitive arrays, instead of a hash map of peak edge objects. "
+            + "Greatly reduces the memory footprint for many chromatograms.")
+    private boolean compactPeakEdgeMap = false;
+    @Configurable(description="Maximum number of pairwise peak similarity "
+            + "tasks to submit at once. Results of each batch are merged into "
+            + "the peak edge map before the next batch is submitted, which "
+            + "limits the number of pending results. Values smaller than 1 "
+            + "submit all tasks at once.")
+    private int peakSimilarityBatchSize = -1;
 
     /** {@inheritDoc} */
     @Override
@@ -257,7 +270,7 @@ public class PeakCliqueAlignment extends AFragmentCommand {
             final TupleND<IFileFragment> newFragments,
             final List<Clique<IBipacePeak>> cliques,
             final Map<String, Integer> nameToIdMap,
-            final LongObjectMap<PeakEdge> peakEdgeMap) {
+            final IPeakEdgeMap peakEdgeMap) {
 
         final String ri_names = this.anchorNames;
         final String ri_times = this.anchorTimes;
@@ -384,7 +397,7 @@ public class PeakCliqueAlignment extends AFragmentCommand {
     }
 
     private double getCommonScore(IFileFragment a, IFileFragment b,
-            List<Clique<IBipacePeak>> commonCliques, Map<String, Integer> nameToIdMap, LongObjectMap<PeakEdge> peakEdgeMap) {
+            List<Clique<IBipacePeak>> commonCliques, Map<String, Integer> nameToIdMap, IPeakEdgeMap peakEdgeMap) {
         double score = 0;
         for (Clique<IBipacePeak> c : commonCliques) {
             double v = 0;
@@ -402,7 +415,7 @@ public class PeakCliqueAlignment extends AFragmentCommand {
      * @param cliques
      */
     private void findCenter(final TupleND<IFileFragment> newFragments,
-            final List<Clique<IBipacePeak>> cliques, final Map<String, Integer> nameToIdMap, final LongObjectMap<PeakEdge> peakEdgeMap) {
+            final List<Clique<IBipacePeak>> cliques, final Map<String, Integer> nameToIdMap, final IPeakEdgeMap peakEdgeMap) {
         // cliqueNumbers -> number of cliques per FileFragment
         // FileFragments with highest number of cliques are favorites
         double[] cliqueNumbers = new double[newFragments.size()];
@@ -546,49 +559,70 @@ public class PeakCliqueAlignment extends AFragmentCommand {
      * @return the number of unmatched peaks
      */
     private int calculatePeakSimilarities(final TupleND<IFileFragment> al, Map<String, IFileFragment> nameToFragment,
-            final Map<String, List<IBipacePeak>> fragmentToPeaks, final int n, final LongObjectMap<PeakEdge> peakEdgeMap) {
+            final Map<String, List<IBipacePeak>> fragmentToPeaks, final int n, final IPeakEdgeMap peakEdgeMap) {
         log.info(
                 "Calculating {} pairwise peak similarities for {} peaks!",
                 ((long) n * (long) n), n);
 //        log.info("Using {} as pairwise peak similarity!",
 //                this.similarityFunction.getClass().getName());
         // Loop over all pairs of FileFragments
-        ICompletionService<PairwiseSimilarityResult> ics = createCompletionService(PairwiseSimilarityResult.class);
         File outputDirectory = new File(getWorkflow().getOutputDirectory(this), "PeakSimilarityVisualizer");
         if (savePlots) {
             outputDirectory.mkdirs();
         }
         workerFactory.setSavePeakSimilarities(savePeakSimilarities);
-        List<Callable<PairwiseSimilarityResult>> workers = workerFactory.create(outputDirectory, al, fragmentToPeaks);
-        log.info("Running {} pairwise similarity tasks!", workers.size());
-        for (Callable<PairwiseSimilarityResult> worker : workers) {
-            ics.submit(worker);
+        // local workers fill the compact map directly, the hash map does not
+        // support concurrent writes
+        workerFactory.setPeakEdgeMap(peakEdgeMap instanceof CompactPeakEdgeMap ? peakEdgeMap : null);
+        final List<Callable<PairwiseSimilarityResult>> workers;
+        try {
+            workers = workerFactory.create(outputDirectory, al, fragmentToPeaks);
+        } finally {
+            workerFactory.setPeakEdgeMap(null);
         }
+        log.info("Running {} pairwise similarity tasks!", workers.size());
         final Map<UUID, IBipacePeak> unmatchedPeaks = new LinkedHashMap<>();
-        try {
-            for (IFileFragment f : al) {
-                for (IBipacePeak peak : fragmentToPeaks.get(f.getName())) {
-                    unmatchedPeaks.put(peak.getUniqueId(), peak);
-                }
+        for (IFileFragment f : al) {
+            for (IBipacePeak peak : fragmentToPeaks.get(f.getName())) {
+                unmatchedPeaks.put(peak.getUniqueId(), peak);
             }
-            List<PairwiseSimilarityResult> bbhPeaksList = ics.call();
-            ListIterator<PairwiseSimilarityResult> resultIterator = bbhPeaksList.listIterator();
-            while (resultIterator.hasNext()) {
-                PairwiseSimilarityResult upl = resultIterator.next();
-                resultIterator.remove();
-                for (UUID pid : upl.getBbhPeaks()) {
-                    unmatchedPeaks.remove(pid);
+        }
+        final int batchSize = peakSimilarityBatchSize < 1 ? Math.max(1, workers.size()) : peakSimilarityBatchSize;
+        long totalPairs = 0;
+        long candidatePairs = 0;
+        try {
+            // results are merged batch-wise, so that at most batchSize
+            // results are pending at any time
+            Iterator<Callable<PairwiseSimilarityResult>> workerIterator = workers.iterator();
+            while (workerIterator.hasNext()) {
+                ICompletionService<PairwiseSimilarityResult> ics = createCompletionService(PairwiseSimilarityResult.class);
+                for (int i = 0; i < batchSize && workerIterator.hasNext(); i++) {
+                    ics.submit(workerIterator.next());
                 }
-                long[] edgeKeys = upl.getPeakEdgeKeys();
-                PeakEdge[] edges = upl.getPeakEdgeValues();
-                for (int i = 0; i < edgeKeys.length; i++) {
-                    peakEdgeMap.put(edgeKeys[i], edges[i]);
+                List<PairwiseSimilarityResult> bbhPeaksList = ics.call();
+                ListIterator<PairwiseSimilarityResult> resultIterator = bbhPeaksList.listIterator();
+                while (resultIterator.hasNext()) {
+                    PairwiseSimilarityResult upl = resultIterator.next();
+                    resultIterator.remove();
+                    totalPairs += upl.getTotalPairs();
+                    candidatePairs += upl.getCandidatePairs();
+                    for (UUID pid : upl.getBbhPeaks()) {
+                        unmatchedPeaks.remove(pid);
+                    }
+                    long[] edgeKeys = upl.getPeakEdgeKeys();
+                    PeakEdge[] edges = upl.getPeakEdgeValues();
+                    for (int i = 0; i < edgeKeys.length; i++) {
+                        peakEdgeMap.put(edgeKeys[i], edges[i]);
+                    }
                 }
             }
         } catch (Exception ex) {
             log.error("Caught exception while executing workers: ", ex);
             throw new RuntimeException(ex);
         }
+        log.info("Calculated {}/{} peak pair similarities within the retention time window ({}%)",
+                candidatePairs, totalPairs, totalPairs == 0 ? 0.0f : 100.0f * (candidatePairs / (float) totalPairs));
+        log.info("Retaining {} best hit peak edges", peakEdgeMap.size());
         log.info("Found {}/{} unmatched peaks!", unmatchedPeaks.size(), n);
         log.info("Continuing with {} matched peaks!", (n - unmatchedPeaks.size()));
         //add unmatched peaks file to workflow results
@@ -700,10 +734,10 @@ public class PeakCliqueAlignment extends AFragmentCommand {
      *
      * @param al a {@link cross.datastructures.tuple.TupleND} object.
      * @param fragmentToPeaks a {@link java.util.HashMap} object.
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectOpenHashMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      */
     public void saveSimilarityMatrix(final TupleND<IFileFragment> al,
-            final HashMap<String, List<IBipacePeak>> fragmentToPeaks, final LongObjectHashMap<PeakEdge> edgeMap) {
+            final HashMap<String, List<IBipacePeak>> fragmentToPeaks, final IPeakEdgeMap edgeMap) {
         for (final IFileFragment iff1 : al) {
             for (final IFileFragment iff2 : al) {
                 final List<IBipacePeak> lhsPeaks = fragmentToPeaks.get(iff1.getName());
@@ -780,7 +814,7 @@ public class PeakCliqueAlignment extends AFragmentCommand {
         int n = getTotalNumberOfPeaks(fragmentToPeaks);
         log.info("Searching for bidirectional best hits");
         final long startT = System.currentTimeMillis();
-        final LongObjectMap<PeakEdge> peakEdgeMap = new LongObjectHashMap<>();
+        final IPeakEdgeMap peakEdgeMap = compactPeakEdgeMap ? new CompactPeakEdgeMap(fragmentToPeaks.values()) : new HashPeakEdgeMap();
         final int unmatchedPeaks = calculatePeakSimilarities(t, nameToFragment, fragmentToPeaks, n, peakEdgeMap);
         log.info("Found bidi best hits in {} milliseconds",
                 System.currentTimeMillis() - startT);
@@ -27,7 +27,6 @@
  */
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
-import com.carrotsearch.hppc.LongObjectMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,12 +44,12 @@ public class BBHFinder {
     /**
      * <p>findBiDiBestHits.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param a a {@link java.util.List} object.
      * @param b a {@link java.util.List} object.
      * @return a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.BBHPeakList} object.
      */
-    public BBHPeakList findBiDiBestHits(LongObjectMap<PeakEdge> edgeMap, List<? extends IBipacePeak> a, List<? extends IBipacePeak> b) {
+    public BBHPeakList findBiDiBestHits(IPeakEdgeMap edgeMap, List<? extends IBipacePeak> a, List<? extends IBipacePeak> b) {
         final BBHPeakList matchedPeaks = new BBHPeakList();
         int laassociation = a.get(0).getAssociationId();
         int lbassociation = b.get(0).getAssociationId();
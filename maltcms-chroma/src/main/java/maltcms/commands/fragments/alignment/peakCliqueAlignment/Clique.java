@@ -28,7 +28,6 @@
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
 import com.carrotsearch.hppc.IntObjectHashMap;
-import com.carrotsearch.hppc.LongObjectMap;
 import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import java.util.ArrayList;
@@ -87,12 +86,12 @@ public class Clique<T extends IBipacePeak> {
      * <p>
      * addPeak.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param p a T object.
      * @param force a boolean.
      * @return a boolean.
      */
-    public boolean addPeak(LongObjectMap<PeakEdge> edgeMap, T p, boolean force) {
+    public boolean addPeak(IPeakEdgeMap edgeMap, T p, boolean force) {
         if (force) {
             if (clique.containsKey(p.getAssociationId())) {
                 T q = clique.get(p.getAssociationId());
@@ -127,10 +126,10 @@ public class Clique<T extends IBipacePeak> {
      *
      * @param p a T object.
      * @throws java.lang.IllegalArgumentException if any.
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @return a boolean.
      */
-    public boolean addPeak(LongObjectMap<PeakEdge> edgeMap, T p) throws IllegalArgumentException {
+    public boolean addPeak(IPeakEdgeMap edgeMap, T p) throws IllegalArgumentException {
         return addPeak2(edgeMap, p);
     }
 
@@ -138,12 +137,12 @@ public class Clique<T extends IBipacePeak> {
      * <p>
      * addPeak2.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param p a T object.
      * @return a boolean.
      * @throws java.lang.IllegalArgumentException if any.
      */
-    public boolean addPeak2(LongObjectMap<PeakEdge> edgeMap, T p) throws IllegalArgumentException {
+    public boolean addPeak2(IPeakEdgeMap edgeMap, T p) throws IllegalArgumentException {
         if (clique.containsKey(p.getAssociationId())) {
             T q = clique.get(p.getAssociationId());
             if (p.equals(q)) {
@@ -160,7 +159,7 @@ public class Clique<T extends IBipacePeak> {
      * @param p
      * @return
      */
-    private boolean handleConflictingPeak(LongObjectMap<PeakEdge> edgeMap, T p) {
+    private boolean handleConflictingPeak(IPeakEdgeMap edgeMap, T p) {
         Collection<IBipacePeak> currentPeaks = new ArrayList<>();
         IBipacePeak[] t = clique.values().toArray(IBipacePeak.class);
         currentPeaks.addAll(Arrays.asList(t));
@@ -212,7 +211,7 @@ public class Clique<T extends IBipacePeak> {
      * @param p
      * @return
      */
-    private boolean handleNonConflictingPeak(LongObjectMap<PeakEdge> edgeMap, T p) {
+    private boolean handleNonConflictingPeak(IPeakEdgeMap edgeMap, T p) {
         if (clique.containsKey(p.getAssociationId()) && clique.get(p.getAssociationId()).equals(p)) {
 //			log.debug("Peak {} already contained in clique!", p);
             return false;
@@ -245,7 +244,7 @@ public class Clique<T extends IBipacePeak> {
         }
     }
 
-    private boolean handleForceAddPeak(LongObjectMap<PeakEdge> edgeMap, T p) {
+    private boolean handleForceAddPeak(IPeakEdgeMap edgeMap, T p) {
         if (clique.containsKey(p.getAssociationId()) && clique.get(p.getAssociationId()).equals(p)) {
 //			log.debug("Peak {} already contained in clique!", p);
             return false;
@@ -273,7 +272,7 @@ public class Clique<T extends IBipacePeak> {
      * @param p
      * @return
      */
-    private int getBBHCount(LongObjectMap<PeakEdge> edgeMap, IBipacePeak p) {
+    private int getBBHCount(IPeakEdgeMap edgeMap, IBipacePeak p) {
 //		return getBBHCount(edgeMap, p, clique);
         int bidiHits = 0;
         // check and count bidi best hit
@@ -289,7 +288,7 @@ public class Clique<T extends IBipacePeak> {
         return bidiHits;
     }
 
-    private int getBBHCount(LongObjectMap<PeakEdge> edgeMap, IBipacePeak p, Collection<IBipacePeak> c) {
+    private int getBBHCount(IPeakEdgeMap edgeMap, IBipacePeak p, Collection<IBipacePeak> c) {
         int bidiHits = 0;
         // check and count bidi best hit
         for (IBipacePeak t : c) {
@@ -308,11 +307,11 @@ public class Clique<T extends IBipacePeak> {
      * <p>
      * removePeak.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param p a T object.
      * @return a boolean.
      */
-    public boolean removePeak(LongObjectMap<PeakEdge> edgeMap, IBipacePeak p) {
+    public boolean removePeak(IPeakEdgeMap edgeMap, IBipacePeak p) {
         if (clique.containsKey(p.getAssociationId())) {
             if (clique.get(p.getAssociationId()).equals(p)) {
                 clique.remove(p.getAssociationId());
@@ -573,10 +572,10 @@ public class Clique<T extends IBipacePeak> {
      *
      * @param a a int.
      * @param b a int.
-     * @param peakEdgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param peakEdgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @return a double.
      */
-    public double getSimilarityForPeaks(int a, int b, LongObjectMap<PeakEdge> peakEdgeMap) {
+    public double getSimilarityForPeaks(int a, int b, IPeakEdgeMap peakEdgeMap) {
         return this.clique.get(a).getSimilarity(peakEdgeMap, this.clique.get(b));
     }
 
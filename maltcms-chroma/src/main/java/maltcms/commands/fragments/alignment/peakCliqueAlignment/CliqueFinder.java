@@ -27,7 +27,6 @@
  */
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
-import com.carrotsearch.hppc.LongObjectMap;
 import com.carrotsearch.hppc.ObjectObjectHashMap;
 import cross.datastructures.fragments.IFileFragment;
 import cross.datastructures.tuple.TupleND;
@@ -80,10 +79,10 @@ public class CliqueFinder {
      * @param npeaks a int.
      * @return a PairwiseSimilarityResult
      * @param nameToIndex a {@link java.util.Map} object.
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      */
     public BBHResult combineBiDiBestHits(final TupleND<IFileFragment> al, final Map<String, IFileFragment> nameToFragment, final Map<String, Integer> nameToIndex,
-            final Map<String, List<IBipacePeak>> fragmentToPeaks, final int minCliqueSize, int npeaks, final LongObjectMap<PeakEdge> edgeMap) {
+            final Map<String, List<IBipacePeak>> fragmentToPeaks, final int minCliqueSize, int npeaks, final IPeakEdgeMap edgeMap) {
 
         // given: a hashmap of name<->peak list
         // an empty list of peaks belonging to a clique
@@ -271,7 +270,7 @@ public class CliqueFinder {
      * @param p
      * @param q
      */
-    private void createNewClique(HashMap<IBipacePeak, Clique<IBipacePeak>> peakToClique, final IBipacePeak p, final IBipacePeak q, final LongObjectMap<PeakEdge> edgeMap) {
+    private void createNewClique(HashMap<IBipacePeak, Clique<IBipacePeak>> peakToClique, final IBipacePeak p, final IBipacePeak q, final IPeakEdgeMap edgeMap) {
         Clique<IBipacePeak> c;
         // assigned yet
         c = new Clique<>();
@@ -290,7 +289,7 @@ public class CliqueFinder {
      * @param d
      * @return
      */
-    private List<IBipacePeak> mergeCliques(HashMap<IBipacePeak, Clique<IBipacePeak>> peakToClique, Clique<IBipacePeak> c, Clique<IBipacePeak> d, final LongObjectMap<PeakEdge> edgeMap) {
+    private List<IBipacePeak> mergeCliques(HashMap<IBipacePeak, Clique<IBipacePeak>> peakToClique, Clique<IBipacePeak> c, Clique<IBipacePeak> d, final IPeakEdgeMap edgeMap) {
         int ds = d.size();
         int cs = c.size();
         //if either clique is empty, we can not merge,
@@ -337,7 +336,7 @@ public class CliqueFinder {
         return incompatiblePeaks;
     }
 
-    private void postProcessCliques(LongObjectMap<PeakEdge> edgeMap, Collection<Clique<IBipacePeak>> cliques, Collection<IBipacePeak> incompatiblePeaks, Collection<IBipacePeak> unassignedPeaks) {
+    private void postProcessCliques(IPeakEdgeMap edgeMap, Collection<Clique<IBipacePeak>> cliques, Collection<IBipacePeak> incompatiblePeaks, Collection<IBipacePeak> unassignedPeaks) {
         log.error("Post processing cliques and unmatched peaks");
 //			SparseDoubleMatrix2D sdm = new SparseDoubleMatrix2D(cliques.size(), result.getIncompatiblePeaks().size() + result.getUnassignedPeaks().size() + unmatchedPeaks.size());
         //identify all peaks that are not contained in the final cliques
@@ -0,0 +1,187 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dense {@link IPeakEdgeMap} for a fixed set of peaks.
+ *
+ * For every peak and every partner chromatogram, only the index of the best
+ * hit peak and its similarity are stored in primitive arrays, which requires
+ * about 12 bytes per edge instead of a hash map entry plus a {@link PeakEdge}
+ * object. {@link PeakEdge} instances are created on demand by {@link #get},
+ * hot paths should use {@link #getSimilarity(long)} and
+ * {@link #getTargetPeakId(long)} instead. All peaks that are used as edge
+ * source or target must be known at construction time.
+ *
+ * Every key owns a separate slot, so that multiple threads may write to the
+ * map concurrently, as long as they write disjoint sets of keys. Reads of keys
+ * written by another thread require external synchronization.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class CompactPeakEdgeMap implements IPeakEdgeMap {
+
+    private final IntIntHashMap peakIdToIndex;
+    private final ObjectIntHashMap<UUID> uniqueIdToIndex;
+    private final UUID[] uniqueIds;
+    private final int partitions;
+    private final int[] targets;
+    private final double[] similarities;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a new, empty map for the given peaks.
+     *
+     * @param peakLists the peak lists of all chromatograms
+     * @throws IllegalArgumentException if the number of peaks times the number
+     * of chromatograms exceeds the maximum array size
+     */
+    public CompactPeakEdgeMap(Collection<? extends List<? extends IBipacePeak>> peakLists) {
+        int npeaks = 0;
+        int maxAssociationId = -1;
+        for (List<? extends IBipacePeak> l : peakLists) {
+            npeaks += l.size();
+            for (IBipacePeak p : l) {
+                maxAssociationId = Math.max(maxAssociationId, p.getAssociationId());
+            }
+        }
+        this.partitions = maxAssociationId + 1;
+        long slots = (long) npeaks * (long) partitions;
+        if (slots > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many peaks for compact edge map: " + npeaks + " peaks in " + partitions + " partitions!");
+        }
+        this.peakIdToIndex = new IntIntHashMap(npeaks);
+        this.uniqueIdToIndex = new ObjectIntHashMap<>(npeaks);
+        this.uniqueIds = new UUID[npeaks];
+        int i = 0;
+        for (List<? extends IBipacePeak> l : peakLists) {
+            for (IBipacePeak p : l) {
+                peakIdToIndex.put(p.getPeakId(), i);
+                uniqueIdToIndex.put(p.getUniqueId(), i);
+                uniqueIds[i] = p.getUniqueId();
+                i++;
+            }
+        }
+        this.targets = new int[(int) slots];
+        Arrays.fill(this.targets, -1);
+        this.similarities = new double[(int) slots];
+    }
+
+    private int slot(long key) {
+        int associationId = (int) (key >> 32);
+        int peakId = (int) key;
+        if (associationId < 0 || associationId >= partitions) {
+            return -1;
+        }
+        int index = peakIdToIndex.getOrDefault(peakId, -1);
+        if (index < 0) {
+            return -1;
+        }
+        return index * partitions + associationId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PeakEdge get(long key) {
+        int slot = slot(key);
+        if (slot < 0 || targets[slot] < 0) {
+            return null;
+        }
+        return new PeakEdge(uniqueIds[slot / partitions], uniqueIds[targets[slot]], similarities[slot]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getSimilarity(long key) {
+        int slot = slot(key);
+        if (slot < 0 || targets[slot] < 0) {
+            return Double.NaN;
+        }
+        return similarities[slot];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public UUID getTargetPeakId(long key) {
+        int slot = slot(key);
+        if (slot < 0 || targets[slot] < 0) {
+            return null;
+        }
+        return uniqueIds[targets[slot]];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(long key, PeakEdge edge) {
+        put(key, uniqueIdToIndex.getOrDefault(edge.getTargetPeakId(), -1), edge.getSimilarity());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(long key, IBipacePeak source, IBipacePeak target, double similarity) {
+        put(key, peakIdToIndex.getOrDefault(target.getPeakId(), -1), similarity);
+    }
+
+    private void put(long key, int target, double similarity) {
+        int slot = slot(key);
+        if (slot < 0 || target < 0) {
+            throw new IllegalArgumentException("Unknown peak for edge key " + key + "!");
+        }
+        if (targets[slot] < 0) {
+            size.incrementAndGet();
+        }
+        targets[slot] = target;
+        similarities[slot] = similarity;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void remove(long key) {
+        int slot = slot(key);
+        if (slot >= 0 && targets[slot] >= 0) {
+            targets[slot] = -1;
+            similarities[slot] = 0.0d;
+            size.decrementAndGet();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return size.get();
+    }
+}
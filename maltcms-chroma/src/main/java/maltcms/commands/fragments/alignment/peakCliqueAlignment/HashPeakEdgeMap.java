@@ -0,0 +1,111 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
+import java.util.UUID;
+
+/**
+ * Hash map based {@link IPeakEdgeMap}, suitable for any set of peaks.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class HashPeakEdgeMap implements IPeakEdgeMap {
+
+    private final LongObjectHashMap<PeakEdge> map;
+
+    /**
+     * <p>Constructor for HashPeakEdgeMap.</p>
+     */
+    public HashPeakEdgeMap() {
+        this.map = new LongObjectHashMap<>();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PeakEdge get(long key) {
+        return map.get(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getSimilarity(long key) {
+        PeakEdge edge = map.get(key);
+        return edge == null ? Double.NaN : edge.similarity;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public UUID getTargetPeakId(long key) {
+        PeakEdge edge = map.get(key);
+        return edge == null ? null : edge.targetPeakId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(long key, PeakEdge edge) {
+        map.put(key, edge);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(long key, IBipacePeak source, IBipacePeak target, double similarity) {
+        map.put(key, new PeakEdge(source, target, similarity));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void remove(long key) {
+        map.remove(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Copies the keys and edges of this map into the given arrays, which must
+     * have a length of at least {@link #size()}. The edge at index i belongs
+     * to the key at index i.
+     *
+     * @param keys the key array
+     * @param values the edge array
+     */
+    public void copyTo(long[] keys, PeakEdge[] values) {
+        int i = 0;
+        for (LongObjectCursor<PeakEdge> c : map) {
+            keys[i] = c.key;
+            values[i] = c.value;
+            i++;
+        }
+    }
+}
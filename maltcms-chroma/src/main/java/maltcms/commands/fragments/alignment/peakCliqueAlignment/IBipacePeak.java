@@ -27,7 +27,6 @@
  */
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
-import com.carrotsearch.hppc.LongObjectMap;
 import java.util.List;
 import java.util.UUID;
 import maltcms.datastructures.peak.IPeak;
@@ -51,17 +50,17 @@ public interface IBipacePeak extends IPeak {
      *
      * @param p a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IBipacePeak} object.
      * @param similarity a double.
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      */
-    void addSimilarity(LongObjectMap<PeakEdge> edgeMap, final IBipacePeak p, final double similarity);
+    void addSimilarity(IPeakEdgeMap edgeMap, final IBipacePeak p, final double similarity);
 
     /**
      * <p>clearSimilarities.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param associationId a int.
      */
-    void clearSimilarities(LongObjectMap<PeakEdge> edgeMap, int associationId);
+    void clearSimilarities(IPeakEdgeMap edgeMap, int associationId);
 
     /**
      * <p>getMsIntensities.</p>
@@ -80,46 +79,46 @@ public interface IBipacePeak extends IPeak {
     /**
      * <p>getPeakWithHighestSimilarity.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param associationId a int.
      * @return a {@link java.util.UUID} object.
      */
-    UUID getPeakWithHighestSimilarity(LongObjectMap<PeakEdge> edgeMap, final int associationId);
+    UUID getPeakWithHighestSimilarity(IPeakEdgeMap edgeMap, final int associationId);
 
     /**
      * Only call this method, after having added all similarities!
      *
      * @param associationId a int.
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @return a {@link java.util.List} object.
      */
-    List<UUID> getPeaksSortedBySimilarity(LongObjectMap<PeakEdge> edgeMap, final int associationId);
+    List<UUID> getPeaksSortedBySimilarity(IPeakEdgeMap edgeMap, final int associationId);
 
     /**
      * <p>getSimilarity.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param p a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IBipacePeak} object.
      * @return a double.
      */
-    double getSimilarity(LongObjectMap<PeakEdge> edgeMap, final IBipacePeak p);
+    double getSimilarity(IPeakEdgeMap edgeMap, final IBipacePeak p);
 
     /**
      * <p>isBidiBestHitFor.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param p a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IBipacePeak} object.
      * @return a boolean.
      */
-    boolean isBidiBestHitFor(LongObjectMap<PeakEdge> edgeMap, final IBipacePeak p);
+    boolean isBidiBestHitFor(IPeakEdgeMap edgeMap, final IBipacePeak p);
 
     /**
      * <p>retainSimilarityRemoveRest.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param p a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IBipacePeak} object.
      */
-    void retainSimilarityRemoveRest(LongObjectMap<PeakEdge> edgeMap, final IBipacePeak p);
+    void retainSimilarityRemoveRest(IPeakEdgeMap edgeMap, final IBipacePeak p);
 
     /**
      * This is a sequential id of the peak in the order the peak objects were
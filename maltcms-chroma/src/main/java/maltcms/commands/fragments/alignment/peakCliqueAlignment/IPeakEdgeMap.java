@@ -0,0 +1,100 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import java.util.UUID;
+
+/**
+ * Stores the best hit edge of a peak to each other chromatogram. Keys are
+ * created by {@link IBipacePeak#keyTo(int)}, encoding the association id of
+ * the target chromatogram in the high and the source peak id in the low 32
+ * bits.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public interface IPeakEdgeMap {
+
+    /**
+     * <p>get.</p>
+     *
+     * @param key the edge key
+     * @return the edge for the given key, or null
+     */
+    PeakEdge get(long key);
+
+    /**
+     * Returns the similarity of the edge for the given key without creating
+     * a {@link PeakEdge}.
+     *
+     * @param key the edge key
+     * @return the similarity of the edge, or NaN if there is no edge
+     */
+    double getSimilarity(long key);
+
+    /**
+     * Returns the unique id of the target peak of the edge for the given key
+     * without creating a {@link PeakEdge}.
+     *
+     * @param key the edge key
+     * @return the unique id of the target peak, or null if there is no edge
+     */
+    UUID getTargetPeakId(long key);
+
+    /**
+     * <p>put.</p>
+     *
+     * @param key the edge key
+     * @param edge the edge
+     */
+    void put(long key, PeakEdge edge);
+
+    /**
+     * Stores the edge from source to target under the given key.
+     *
+     * @param key the edge key
+     * @param source the source peak
+     * @param target the target peak
+     * @param similarity the similarity of both peaks
+     */
+    void put(long key, IBipacePeak source, IBipacePeak target, double similarity);
+
+    /**
+     * <p>remove.</p>
+     *
+     * @param key the edge key
+     */
+    void remove(long key);
+
+    /**
+     * <p>size.</p>
+     *
+     * @return the number of edges
+     */
+    int size();
+}
@@ -102,4 +102,22 @@ public interface IWorkerFactory extends Serializable {
      */
     boolean isSavePeakSimilarities();
 
+    /**
+     * Sets the edge map, which is filled directly by the created workers.
+     * The map must support concurrent writes of disjoint keys. If null, each
+     * worker returns its edges with its result.
+     *
+     * @param peakEdgeMap the shared edge map, or null
+     * @since 2.0.1
+     */
+    void setPeakEdgeMap(IPeakEdgeMap peakEdgeMap);
+
+    /**
+     * <p>getPeakEdgeMap.</p>
+     *
+     * @return the shared edge map, or null
+     * @since 2.0.1
+     */
+    IPeakEdgeMap getPeakEdgeMap();
+
 }
@@ -43,4 +43,13 @@ public class PairwiseSimilarityResult implements Serializable {
     private final BBHPeakList bbhPeaks;
     private final long[] peakEdgeKeys;
     private final PeakEdge[] peakEdgeValues;
+    /**
+     * The number of peak pairs of the two chromatograms.
+     */
+    private final long totalPairs;
+    /**
+     * The number of peak pairs within the retention time window, for which a
+     * similarity was calculated.
+     */
+    private final long candidatePairs;
 }
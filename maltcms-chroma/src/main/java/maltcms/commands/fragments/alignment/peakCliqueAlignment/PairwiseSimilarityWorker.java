@@ -27,16 +27,15 @@
  */
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
-import com.carrotsearch.hppc.LongObjectHashMap;
-import com.carrotsearch.hppc.cursors.LongObjectCursor;
 import cross.datastructures.tools.EvalTools;
 import java.io.File;
 import java.io.Serializable;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import lombok.Value;
 
+import maltcms.datastructures.caches.PairwiseResultCache;
 import maltcms.math.functions.IScalarArraySimilarity;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +49,8 @@ import org.slf4j.LoggerFactory;
 public final class PairwiseSimilarityWorker implements Callable<PairwiseSimilarityResult>, Serializable {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(PairwiseSimilarityWorker.class);
+    private static final int LHS_BLOCK_SIZE = 32;
+    private static final int RHS_BLOCK_SIZE = 256;
 
     private final String name;
     private final String lhsName;
@@ -60,6 +61,19 @@ public final class PairwiseSimilarityWorker implements Callable<PairwiseSimilari
     private final boolean savePeakSimilarities;
     private final File outputDirectory;
     private final double maxRTDifference;
+    private final PeakSpectrumStore lhsStore;
+    private final PeakSpectrumStore rhsStore;
+    private final PairwiseResultCache cache;
+    private final String cacheKey;
+    /**
+     * Shared edge map, which is filled directly if not null. Only keys with
+     * a source peak and target chromatogram of this worker's pair are
+     * written, so that workers may share the map, as long as no two of them
+     * compare the same pair of chromatograms. The map is not serialized, a
+     * remote worker falls back to a local edge map and returns its edges with
+     * the result.
+     */
+    private final transient IPeakEdgeMap sharedEdgeMap;
 
     /** {@inheritDoc} */
     @Override
@@ -67,51 +81,156 @@ public final class PairwiseSimilarityWorker implements Callable<PairwiseSimilari
         log.debug(name);
         EvalTools.notNull(lhsPeaks, this);
         EvalTools.notNull(rhsPeaks, this);
-        IScalarArraySimilarity sim = similarityFunction.copy();
-        LongObjectHashMap<PeakEdge> edgeMap = new LongObjectHashMap<>();
-        for (final IBipacePeak p1 : lhsPeaks) {
-            final double rt1 = p1.getScanAcquisitionTime();
-            for (final IBipacePeak p2 : rhsPeaks) {
-                // skip peaks, which are too far apart
-                final double rt2 = p2.getScanAcquisitionTime();
-                // cutoff to limit calculation work
-                // this has a better effect, than applying the limit
-                // within the similarity function only
-                // of course, this limit should be larger
-                // than the limit within the similarity function
-                if (Math.abs(rt1 - rt2) < this.maxRTDifference) {
-                    // the similarity is symmetric:
-                    // sim(a,b) = sim(b,a)
-                    final double d = sim.apply(new double[]{rt1}, new double[]{rt2}, p1.getMsIntensities(), p2.getMsIntensities());
-                    p1.addSimilarity(edgeMap, p2, d);
-                    p2.addSimilarity(edgeMap, p1, d);
-                }
+        EvalTools.notNull(lhsStore, this);
+        EvalTools.notNull(rhsStore, this);
+        final HashPeakEdgeMap localEdgeMap = sharedEdgeMap == null ? new HashPeakEdgeMap() : null;
+        final IPeakEdgeMap edgeMap = localEdgeMap == null ? sharedEdgeMap : localEdgeMap;
+        final boolean useCache = cache != null && cacheKey != null;
+        final PeakSimilarityCacheEntry cached = useCache
+                ? cache.get(cacheKey, PeakSimilarityCacheEntry.class) : null;
+        final long candidatePairs;
+        if (cached != null) {
+            log.debug("{}: restoring cached peak similarities", name);
+            candidatePairs = replay(cached, edgeMap);
+        } else {
+            final ScoreBuffer buffer = useCache ? new ScoreBuffer() : null;
+            candidatePairs = score(edgeMap, buffer);
+            if (useCache) {
+                cache.put(cacheKey, buffer.toCacheEntry(candidatePairs));
             }
         }
+        final long totalPairs = (long) lhsStore.size() * (long) rhsStore.size();
+        log.debug("{}: calculated {}/{} peak pair similarities", name, candidatePairs, totalPairs);
         if (savePeakSimilarities) {
             PeakSimilarityVisualizer psv = new PeakSimilarityVisualizer();
             psv.visualizePairwisePeakSimilarities(outputDirectory, edgeMap, lhsName, lhsPeaks, rhsName, rhsPeaks, 256, "beforeBIDI", false);
         }
         BBHFinder bbhfinder = new BBHFinder();
         BBHPeakList bbhpr = bbhfinder.findBiDiBestHits(edgeMap, lhsPeaks, rhsPeaks);
-        long[] keys = new long[edgeMap.size()];
-        PeakEdge[] values = new PeakEdge[edgeMap.size()];
-        int i = 0;
-        Iterator<LongObjectCursor<PeakEdge>> iter = edgeMap.iterator();
-        while (iter.hasNext()) {
-            LongObjectCursor<PeakEdge> l = iter.next();
-            keys[i] = l.key;
-            values[i] = l.value;
-            i++;
+        // edges in the shared map are not returned
+        final int edges = localEdgeMap == null ? 0 : localEdgeMap.size();
+        long[] keys = new long[edges];
+        PeakEdge[] values = new PeakEdge[edges];
+        if (localEdgeMap != null) {
+            localEdgeMap.copyTo(keys, values);
         }
         if (savePeakSimilarities) {
             PeakSimilarityVisualizer psv = new PeakSimilarityVisualizer();
             psv.visualizePairwisePeakSimilarities(outputDirectory, edgeMap, lhsName, lhsPeaks, rhsName, rhsPeaks, 256, "afterBIDI", false);
         }
-        PairwiseSimilarityResult result = new PairwiseSimilarityResult(bbhpr, keys, values);
+        PairwiseSimilarityResult result = new PairwiseSimilarityResult(bbhpr, keys, values, totalPairs, candidatePairs);
         return result;
     }
 
+    /**
+     * Scores all peak pairs within the retention time window and adds their
+     * similarities to the edge map. If <code>buffer</code> is not null, each
+     * added similarity is also recorded in it.
+     */
+    private long score(final IPeakEdgeMap edgeMap, final ScoreBuffer buffer) {
+        SpectrumBlockKernel kernel = new SpectrumBlockKernel(similarityFunction.copy());
+        double[] block = new double[LHS_BLOCK_SIZE * RHS_BLOCK_SIZE];
+        final int rhsSize = rhsStore.size();
+        long candidatePairs = 0;
+        // both stores are sorted by scan acquisition time, so the window of
+        // rhs peaks within maxRTDifference of a block of lhs peaks is a
+        // contiguous range [rhsLow,rhsHigh), whose bounds only move forward
+        int rhsLow = 0;
+        int rhsHigh = 0;
+        for (int lhsFrom = 0; lhsFrom < lhsStore.size(); lhsFrom += LHS_BLOCK_SIZE) {
+            int lhsTo = Math.min(lhsFrom + LHS_BLOCK_SIZE, lhsStore.size());
+            // cutoff to limit calculation work
+            // this has a better effect, than applying the limit
+            // within the similarity function only
+            // of course, this limit should be larger
+            // than the limit within the similarity function
+            final double minRt = lhsStore.getRt(lhsFrom);
+            final double maxRt = lhsStore.getRt(lhsTo - 1);
+            while (rhsLow < rhsSize && minRt - rhsStore.getRt(rhsLow) >= maxRTDifference) {
+                rhsLow++;
+            }
+            rhsHigh = Math.max(rhsLow, rhsHigh);
+            while (rhsHigh < rhsSize && rhsStore.getRt(rhsHigh) - maxRt < maxRTDifference) {
+                rhsHigh++;
+            }
+            // the blocks are visited in ascending order, so that the order
+            // of updates for each edge key follows the peak order
+            for (int rhsFrom = rhsLow; rhsFrom < rhsHigh; rhsFrom += RHS_BLOCK_SIZE) {
+                int rhsTo = Math.min(rhsFrom + RHS_BLOCK_SIZE, rhsHigh);
+                candidatePairs += kernel.score(lhsStore, lhsFrom, lhsTo, rhsStore, rhsFrom, rhsTo, maxRTDifference, block);
+                int cols = rhsTo - rhsFrom;
+                for (int i = lhsFrom; i < lhsTo; i++) {
+                    final IBipacePeak p1 = lhsStore.getPeak(i);
+                    final int row = (i - lhsFrom) * cols;
+                    for (int j = rhsFrom; j < rhsTo; j++) {
+                        final double d = block[row + j - rhsFrom];
+                        // pairs outside of the rt window are NaN and
+                        // are ignored by addSimilarity
+                        if (!Double.isNaN(d)) {
+                            // the similarity is symmetric:
+                            // sim(a,b) = sim(b,a)
+                            final IBipacePeak p2 = rhsStore.getPeak(j);
+                            p1.addSimilarity(edgeMap, p2, d);
+                            p2.addSimilarity(edgeMap, p1, d);
+                            if (buffer != null) {
+                                buffer.add(i, j, d);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return candidatePairs;
+    }
+
+    /**
+     * Adds the cached similarities to the edge map, in the order in which
+     * they were originally calculated.
+     */
+    private long replay(final PeakSimilarityCacheEntry entry,
+            final IPeakEdgeMap edgeMap) {
+        final int[] lhs = entry.getLhsIndices();
+        final int[] rhs = entry.getRhsIndices();
+        final double[] sims = entry.getSimilarities();
+        for (int k = 0; k < sims.length; k++) {
+            final IBipacePeak p1 = lhsStore.getPeak(lhs[k]);
+            final IBipacePeak p2 = rhsStore.getPeak(rhs[k]);
+            p1.addSimilarity(edgeMap, p2, sims[k]);
+            p2.addSimilarity(edgeMap, p1, sims[k]);
+        }
+        return entry.getCandidatePairs();
+    }
+
+    /**
+     * Growable buffer of scored peak index pairs.
+     */
+    private static final class ScoreBuffer {
+
+        private int[] lhs = new int[1024];
+        private int[] rhs = new int[1024];
+        private double[] sims = new double[1024];
+        private int size = 0;
+
+        void add(int i, int j, double d) {
+            if (size == sims.length) {
+                final int capacity = size * 2;
+                lhs = Arrays.copyOf(lhs, capacity);
+                rhs = Arrays.copyOf(rhs, capacity);
+                sims = Arrays.copyOf(sims, capacity);
+            }
+            lhs[size] = i;
+            rhs[size] = j;
+            sims[size] = d;
+            size++;
+        }
+
+        PeakSimilarityCacheEntry toCacheEntry(long candidatePairs) {
+            return new PeakSimilarityCacheEntry(Arrays.copyOf(lhs, size),
+                    Arrays.copyOf(rhs, size), Arrays.copyOf(sims, size),
+                    candidatePairs);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -27,12 +27,11 @@
  */
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
-import com.carrotsearch.hppc.LongObjectHashMap;
-import com.carrotsearch.hppc.cursors.LongObjectCursor;
 import cross.datastructures.tools.EvalTools;
 import java.io.File;
 import java.io.Serializable;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import lombok.Value;
@@ -62,6 +61,15 @@ public final class PairwiseSimilarityWorker2D implements Callable<PairwiseSimila
 
     private final double maxRTDifferenceRt1;
     private final double maxRTDifferenceRt2;
+    /**
+     * Shared edge map, which is filled directly if not null. Only keys with
+     * a source peak and target chromatogram of this worker's pair are
+     * written, so that workers may share the map, as long as no two of them
+     * compare the same pair of chromatograms. The map is not serialized, a
+     * remote worker falls back to a local edge map and returns its edges with
+     * the result.
+     */
+    private final transient IPeakEdgeMap sharedEdgeMap;
 
     /** {@inheritDoc} */
     @Override
@@ -70,30 +78,54 @@ public final class PairwiseSimilarityWorker2D implements Callable<PairwiseSimila
         EvalTools.notNull(lhsPeaks, this);
         EvalTools.notNull(rhsPeaks, this);
         IScalarArraySimilarity sim = similarityFunction.copy();
-        LongObjectHashMap<PeakEdge> edgeMap = new LongObjectHashMap<>();
-        for (final IBipacePeak p1 : lhsPeaks) {
-            final Peak2D p12d = (Peak2D) p1;
-            final double rt1p1 = p12d.getFirstColumnElutionTime();
-            final double rt2p1 = p12d.getSecondColumnElutionTime();
-            for (final IBipacePeak p2 : rhsPeaks) {
-                final Peak2D p22d = (Peak2D) p2;
-                // skip peaks, which are too far apart
-                final double rt1p2 = p22d.getFirstColumnElutionTime();
-                final double rt2p2 = p22d.getSecondColumnElutionTime();
-                // cutoff to limit calculation work
-                // this has a better effect, than applying the limit
-                // within the similarity function only
-                // of course, this limit should be larger
-                // than the limit within the similarity function
+        final HashPeakEdgeMap localEdgeMap = sharedEdgeMap == null ? new HashPeakEdgeMap() : null;
+        final IPeakEdgeMap edgeMap = localEdgeMap == null ? sharedEdgeMap : localEdgeMap;
+        // sort both peak lists by first column elution time, so that the
+        // rhs peaks within maxRTDifferenceRt1 of each lhs peak form a
+        // contiguous range [rhsLow,rhsHigh), whose bounds only move forward
+        final Peak2D[] lhs = sortByFirstColumnElutionTime(lhsPeaks);
+        final Peak2D[] rhs = sortByFirstColumnElutionTime(rhsPeaks);
+        final double[] s1 = new double[2];
+        final double[] s2 = new double[2];
+        long candidatePairs = 0;
+        int rhsLow = 0;
+        int rhsHigh = 0;
+        for (final Peak2D p1 : lhs) {
+            final double rt1p1 = p1.getFirstColumnElutionTime();
+            final double rt2p1 = p1.getSecondColumnElutionTime();
+            // skip peaks, which are too far apart
+            // cutoff to limit calculation work
+            // this has a better effect, than applying the limit
+            // within the similarity function only
+            // of course, this limit should be larger
+            // than the limit within the similarity function
+            while (rhsLow < rhs.length && rt1p1 - rhs[rhsLow].getFirstColumnElutionTime() >= this.maxRTDifferenceRt1) {
+                rhsLow++;
+            }
+            rhsHigh = Math.max(rhsLow, rhsHigh);
+            while (rhsHigh < rhs.length && rhs[rhsHigh].getFirstColumnElutionTime() - rt1p1 < this.maxRTDifferenceRt1) {
+                rhsHigh++;
+            }
+            for (int j = rhsLow; j < rhsHigh; j++) {
+                final Peak2D p2 = rhs[j];
+                final double rt1p2 = p2.getFirstColumnElutionTime();
+                final double rt2p2 = p2.getSecondColumnElutionTime();
                 if ((Math.abs(rt1p1 - rt1p2) < this.maxRTDifferenceRt1 && Math.abs(rt2p1 - rt2p2) < this.maxRTDifferenceRt2)) {
                     // the similarity is symmetric:
                     // sim(a,b) = sim(b,a)
-                    final double d = sim.apply(new double[]{rt1p1, rt2p1}, new double[]{rt1p2, rt2p2}, p1.getMsIntensities(), p2.getMsIntensities());
+                    s1[0] = rt1p1;
+                    s1[1] = rt2p1;
+                    s2[0] = rt1p2;
+                    s2[1] = rt2p2;
+                    final double d = sim.apply(s1, s2, p1.getMsIntensities(), p2.getMsIntensities());
                     p1.addSimilarity(edgeMap, p2, d);
                     p2.addSimilarity(edgeMap, p1, d);
+                    candidatePairs++;
                 }
             }
         }
+        final long totalPairs = (long) lhs.length * (long) rhs.length;
+        log.debug("{}: calculated {}/{} peak pair similarities", name, candidatePairs, totalPairs);
         sim=null;
         if (savePeakSimilarities) {
             PeakSimilarityVisualizer psv = new PeakSimilarityVisualizer();
@@ -101,25 +133,41 @@ public final class PairwiseSimilarityWorker2D implements Callable<PairwiseSimila
         }
         BBHFinder bbhfinder = new BBHFinder();
         BBHPeakList bbhpr = bbhfinder.findBiDiBestHits(edgeMap, lhsPeaks, rhsPeaks);
-        long[] keys = new long[edgeMap.size()];
-        PeakEdge[] values = new PeakEdge[edgeMap.size()];
-        int i = 0;
-        Iterator<LongObjectCursor<PeakEdge>> iter = edgeMap.iterator();
-        while (iter.hasNext()) {
-            LongObjectCursor<PeakEdge> l = iter.next();
-            keys[i] = l.key;
-            values[i] = l.value;
-            i++;
+        // edges in the shared map are not returned
+        final int edges = localEdgeMap == null ? 0 : localEdgeMap.size();
+        long[] keys = new long[edges];
+        PeakEdge[] values = new PeakEdge[edges];
+        if (localEdgeMap != null) {
+            localEdgeMap.copyTo(keys, values);
         }
         if (savePeakSimilarities) {
             PeakSimilarityVisualizer psv = new PeakSimilarityVisualizer();
             psv.visualizePairwisePeakSimilarities(outputDirectory, edgeMap, lhsName, lhsPeaks, rhsName, rhsPeaks, 256, "afterBIDI", false);
         }
-        PairwiseSimilarityResult result = new PairwiseSimilarityResult(bbhpr, keys, values);
+        PairwiseSimilarityResult result = new PairwiseSimilarityResult(bbhpr, keys, values, totalPairs, candidatePairs);
         //restore similarity function
         return result;
     }
 
+    /**
+     * Returns the peaks in ascending order of their first column elution
+     * time. Peaks with equal elution time retain their relative order.
+     */
+    private Peak2D[] sortByFirstColumnElutionTime(List<? extends IBipacePeak> peaks) {
+        Peak2D[] sorted = new Peak2D[peaks.size()];
+        int i = 0;
+        for (IBipacePeak p : peaks) {
+            sorted[i++] = (Peak2D) p;
+        }
+        Arrays.sort(sorted, new Comparator<Peak2D>() {
+            @Override
+            public int compare(Peak2D o1, Peak2D o2) {
+                return Double.compare(o1.getFirstColumnElutionTime(), o2.getFirstColumnElutionTime());
+            }
+        });
+        return sorted;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -58,6 +58,20 @@ public final class PeakEdge implements Serializable {
 //		log.info("Peak Edge from "+sourcePeak.getAssociation()+" at "+sourcePeak.getPeakIndex()+ " to "+targetPeak.getAssociation()+" at "+targetPeak.getPeakIndex()+ " = "+similarity);
     }
 
+    /**
+     * <p>Constructor for PeakEdge.</p>
+     *
+     * @param sourcePeakId the unique id of the source peak
+     * @param targetPeakId the unique id of the target peak
+     * @param similarity a double.
+     * @since 2.0.1
+     */
+    public PeakEdge(UUID sourcePeakId, UUID targetPeakId, double similarity) {
+        this.sourcePeakId = sourcePeakId;
+        this.targetPeakId = targetPeakId;
+        this.similarity = similarity;
+    }
+
     /** {@inheritDoc} */
     @Override
     public int hashCode() {
@@ -27,7 +27,6 @@
  */
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
-import com.carrotsearch.hppc.LongObjectMap;
 import cross.datastructures.cache.SerializableArray;
 import cross.exception.ResourceNotAvailableException;
 import java.io.IOException;
@@ -123,20 +122,14 @@ public class PeakNG extends DefaultFeatureVector implements IBipacePeak {
      * peakId.
      */
     @Override
-    public void addSimilarity(LongObjectMap<PeakEdge> bestHits, final IBipacePeak p, final double similarity) {
+    public void addSimilarity(IPeakEdgeMap bestHits, final IBipacePeak p, final double similarity) {
         if (!Double.isInfinite(similarity) && !Double.isNaN(similarity)) {
             long key = keyTo(p);
-            PeakEdge peakEdge = bestHits.get(key);
-            if (peakEdge != null) {
-                if (peakEdge.similarity < similarity) {
-//						log.info("Replacing PeakEdge");
-                    PeakEdge edge = new PeakEdge(this, p, similarity);
-                    bestHits.put(key, edge);
-                }
-            } else {
-                PeakEdge edge = new PeakEdge(this, p, similarity);
-                bestHits.put(key, edge);
-//					log.info("Key "+key+" value="+edge);
+            // NaN if there is no edge yet
+            double current = bestHits.getSimilarity(key);
+            if (Double.isNaN(current) || current < similarity) {
+//					log.info("Key "+key+" value="+similarity);
+                bestHits.put(key, this, p, similarity);
             }
         }
     }
@@ -214,7 +207,7 @@ public class PeakNG extends DefaultFeatureVector implements IBipacePeak {
 
     /** {@inheritDoc} */
     @Override
-    public void clearSimilarities(LongObjectMap<PeakEdge> bestHits, int associationId) {
+    public void clearSimilarities(IPeakEdgeMap bestHits, int associationId) {
         long key = keyTo(associationId);
         bestHits.remove(key);
     }
@@ -228,24 +221,20 @@ public class PeakNG extends DefaultFeatureVector implements IBipacePeak {
      * Only call this method, after having added all similarities!
      */
     @Override
-    public List<UUID> getPeaksSortedBySimilarity(LongObjectMap<PeakEdge> bestHits, final int associationId) {
+    public List<UUID> getPeaksSortedBySimilarity(IPeakEdgeMap bestHits, final int associationId) {
         long key = keyTo(associationId);
-        PeakEdge id = bestHits.get(key);
+        UUID id = bestHits.getTargetPeakId(key);
         if (id != null) {
-            return Arrays.asList(id.targetPeakId);
+            return Arrays.asList(id);
         }
         return java.util.Collections.emptyList();
     }
 
     /** {@inheritDoc} */
     @Override
-    public UUID getPeakWithHighestSimilarity(LongObjectMap<PeakEdge> bestHits, final int associationId) {
+    public UUID getPeakWithHighestSimilarity(IPeakEdgeMap bestHits, final int associationId) {
         long key = keyTo(associationId);
-        PeakEdge id = bestHits.get(key);
-        if (id != null) {
-            return id.targetPeakId;
-        }
-        return null;
+        return bestHits.getTargetPeakId(key);
     }
 
     /** {@inheritDoc} */
@@ -262,18 +251,18 @@ public class PeakNG extends DefaultFeatureVector implements IBipacePeak {
 
     /** {@inheritDoc} */
     @Override
-    public double getSimilarity(LongObjectMap<PeakEdge> bestHits, final IBipacePeak p) {
+    public double getSimilarity(IPeakEdgeMap bestHits, final IBipacePeak p) {
         long key = keyTo(p);
-        PeakEdge id = bestHits.get(key);
-        if (id != null && id.targetPeakId.equals(p.getUniqueId())) {
-            return id.similarity;
+        UUID id = bestHits.getTargetPeakId(key);
+        if (id != null && id.equals(p.getUniqueId())) {
+            return bestHits.getSimilarity(key);
         }
         return Double.NaN;
     }
 
     /** {@inheritDoc} */
     @Override
-    public boolean isBidiBestHitFor(LongObjectMap<PeakEdge> bestHits, final IBipacePeak p) {
+    public boolean isBidiBestHitFor(IPeakEdgeMap bestHits, final IBipacePeak p) {
         final UUID pT = getPeakWithHighestSimilarity(bestHits, p.getAssociationId());
         final UUID qT = p.getPeakWithHighestSimilarity(bestHits, this.associationId);
         if (qT == null || pT == null) {
@@ -288,7 +277,7 @@ public class PeakNG extends DefaultFeatureVector implements IBipacePeak {
 
     /** {@inheritDoc} */
     @Override
-    public void retainSimilarityRemoveRest(LongObjectMap<PeakEdge> bestHits, final IBipacePeak p) {
+    public void retainSimilarityRemoveRest(IPeakEdgeMap bestHits, final IBipacePeak p) {
 //		for (String association : keyMap.keySet()) {
 //			if (!p.getAssociation().equals(association)) {
 //				log.info("Removing non-best hit association!");
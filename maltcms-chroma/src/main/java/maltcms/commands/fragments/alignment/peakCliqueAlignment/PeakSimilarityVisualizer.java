@@ -27,7 +27,6 @@
  */
 package maltcms.commands.fragments.alignment.peakCliqueAlignment;
 
-import com.carrotsearch.hppc.LongObjectMap;
 import cross.datastructures.workflow.DefaultWorkflowResult;
 import cross.datastructures.workflow.IWorkflow;
 import cross.datastructures.workflow.IWorkflowElement;
@@ -69,7 +68,7 @@ public class PeakSimilarityVisualizer implements IWorkflowElement {
      * <p>visualizePairwisePeakSimilarities.</p>
      *
      * @param outputDir a {@link java.io.File} object.
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param lhsName a {@link java.lang.String} object.
      * @param lhsPeaks a {@link java.util.List} object.
      * @param rhsName a {@link java.lang.String} object.
@@ -80,7 +79,7 @@ public class PeakSimilarityVisualizer implements IWorkflowElement {
      * @return a {@link java.io.File} object.
      * @since 1.3.2
      */
-    public File visualizePairwisePeakSimilarities(File outputDir, final LongObjectMap<PeakEdge> edgeMap,
+    public File visualizePairwisePeakSimilarities(File outputDir, final IPeakEdgeMap edgeMap,
             final String lhsName, final List<? extends IBipacePeak> lhsPeaks,
             final String rhsName, final List<? extends IBipacePeak> rhsPeaks,
             final int samples, final String prefix, boolean minimize) {
@@ -138,12 +137,12 @@ public class PeakSimilarityVisualizer implements IWorkflowElement {
     /**
      * <p>visualizePeakSimilarities.</p>
      *
-     * @param edgeMap a {@link com.carrotsearch.hppc.LongObjectMap} object.
+     * @param edgeMap a {@link maltcms.commands.fragments.alignment.peakCliqueAlignment.IPeakEdgeMap} object.
      * @param hm a {@link java.util.Map} object.
      * @param samples a int.
      * @param prefix a {@link java.lang.String} object.
      */
-    public void visualizePeakSimilarities(final LongObjectMap<PeakEdge> edgeMap,
+    public void visualizePeakSimilarities(final IPeakEdgeMap edgeMap,
             final Map<String, List<? extends IBipacePeak>> hm, final int samples,
             final String prefix) {
 
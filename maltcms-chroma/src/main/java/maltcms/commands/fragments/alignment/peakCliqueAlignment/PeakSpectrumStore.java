@@ -0,0 +1,314 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import ucar.ma2.Array;
+
+/**
+ * Packed, read-only view of the peaks of one chromatogram for the pairwise
+ * peak similarity loop.
+ *
+ * The mass spectra of all peaks are copied into a single column-major matrix
+ * (one column of length {@link #getDimension()} per peak), together with the
+ * retention times, the euclidean norms and the integer peak ids. Peaks are
+ * stored in ascending order of their scan acquisition time, so that all peaks
+ * within a retention time window occupy a contiguous index range. Instances
+ * are immutable and may be shared between all workers that compare the same
+ * chromatogram.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class PeakSpectrumStore implements Serializable {
+
+    private static final long serialVersionUID = 2936152286917407761L;
+    private final List<? extends IBipacePeak> peaks;
+    private final int size;
+    private final int dimension;
+    private final boolean uniformLength;
+    private final double[] spectra;
+    private final double[] rts;
+    private final double[] norms;
+    private final double[] means;
+    private final int[] peakIds;
+    private transient volatile double[] centered;
+    private transient volatile double[] centeredNorms;
+    private transient volatile String contentHash;
+
+    /**
+     * Creates a new store for the given peaks. The mass spectra are copied,
+     * later modifications of the peaks are not reflected by the store. Peaks
+     * with equal scan acquisition time retain their relative order.
+     *
+     * @param peaks the peaks of one chromatogram
+     */
+    public PeakSpectrumStore(List<? extends IBipacePeak> peaks) {
+        List<IBipacePeak> sorted = new ArrayList<>(peaks);
+        Collections.sort(sorted, new Comparator<IBipacePeak>() {
+            @Override
+            public int compare(IBipacePeak o1, IBipacePeak o2) {
+                return Double.compare(o1.getScanAcquisitionTime(), o2.getScanAcquisitionTime());
+            }
+        });
+        this.peaks = sorted;
+        this.size = peaks.size();
+        double[][] tmp = new double[size][];
+        int dim = 0;
+        boolean uniform = true;
+        for (int i = 0; i < size; i++) {
+            Array a = sorted.get(i).getMsIntensities();
+            tmp[i] = (double[]) a.get1DJavaArray(double.class);
+            if (i > 0 && tmp[i].length != dim) {
+                uniform = false;
+            }
+            dim = Math.max(dim, tmp[i].length);
+        }
+        this.dimension = dim;
+        this.uniformLength = uniform;
+        this.spectra = new double[size * dimension];
+        this.rts = new double[size];
+        this.norms = new double[size];
+        this.means = new double[size];
+        this.peakIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            IBipacePeak p = sorted.get(i);
+            double[] s = tmp[i];
+            System.arraycopy(s, 0, spectra, i * dimension, s.length);
+            double sum = 0.0d;
+            double sumSq = 0.0d;
+            for (int k = 0; k < s.length; k++) {
+                sum += s[k];
+                sumSq += (s[k] * s[k]);
+            }
+            rts[i] = p.getScanAcquisitionTime();
+            norms[i] = Math.sqrt(sumSq);
+            means[i] = s.length == 0 ? 0.0d : sum / s.length;
+            peakIds[i] = p.getPeakId();
+        }
+    }
+
+    /**
+     * @return the number of peaks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the length of each packed spectrum column
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return true, if all mass spectra had the same length before packing
+     */
+    public boolean isUniformLength() {
+        return uniformLength;
+    }
+
+    /**
+     * @param i the peak index
+     * @return the peak at index i
+     */
+    public IBipacePeak getPeak(int i) {
+        return peaks.get(i);
+    }
+
+    /**
+     * @return the peaks of this store, in ascending scan acquisition time order
+     */
+    public List<? extends IBipacePeak> getPeaks() {
+        return peaks;
+    }
+
+    /**
+     * @param i the peak index
+     * @return the scan acquisition time of peak i
+     */
+    public double getRt(int i) {
+        return rts[i];
+    }
+
+    /**
+     * @param i the peak index
+     * @return the euclidean norm of the mass spectrum of peak i
+     */
+    public double getNorm(int i) {
+        return norms[i];
+    }
+
+    /**
+     * @param i the peak index
+     * @return the mean intensity of the mass spectrum of peak i
+     */
+    public double getMean(int i) {
+        return means[i];
+    }
+
+    /**
+     * @param i the peak index
+     * @return the peak id of peak i
+     */
+    public int getPeakId(int i) {
+        return peakIds[i];
+    }
+
+    /**
+     * @param i the peak index
+     * @return the offset of the column of peak i within {@link #getSpectra()}
+     */
+    public int getOffset(int i) {
+        return i * dimension;
+    }
+
+    /**
+     * Returns the packed spectrum matrix. Callers must not modify the returned
+     * array.
+     *
+     * @return the packed spectrum matrix
+     */
+    public double[] getSpectra() {
+        return spectra;
+    }
+
+    /**
+     * Returns the packed spectrum matrix with each column shifted by its mean.
+     * The matrix is created on first access. Callers must not modify the
+     * returned array.
+     *
+     * @return the mean-centered spectrum matrix
+     */
+    public double[] getCenteredSpectra() {
+        double[] c = centered;
+        if (c == null) {
+            synchronized (this) {
+                c = centered;
+                if (c == null) {
+                    initCentered();
+                    c = centered;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @param i the peak index
+     * @return the euclidean norm of the mean-centered spectrum of peak i
+     */
+    public double getCenteredNorm(int i) {
+        double[] n = centeredNorms;
+        if (n == null) {
+            getCenteredSpectra();
+            n = centeredNorms;
+        }
+        return n[i];
+    }
+
+    /**
+     * Returns a SHA-256 hash of the packed spectra and retention times of
+     * this store, in store index order. Peak ids are not included, since they
+     * depend on the order in which peaks were created within the current
+     * run. Two stores with equal content hashes produce the same pairwise
+     * peak similarities for the same similarity function.
+     *
+     * @return the hex encoded content hash
+     */
+    public String getContentHash() {
+        String h = contentHash;
+        if (h == null) {
+            final MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+            buffer.putInt(size).putInt(dimension);
+            for (double v : spectra) {
+                update(md, buffer, 8).putDouble(v);
+            }
+            for (int i = 0; i < size; i++) {
+                update(md, buffer, 8).putDouble(rts[i]);
+            }
+            buffer.flip();
+            md.update(buffer);
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            h = sb.toString();
+            contentHash = h;
+        }
+        return h;
+    }
+
+    private static ByteBuffer update(MessageDigest md, ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            md.update(buffer);
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    private void initCentered() {
+        double[] c = new double[spectra.length];
+        double[] n = new double[size];
+        for (int i = 0; i < size; i++) {
+            int off = i * dimension;
+            double mean = means[i];
+            //constant spectra are centered exactly, their correlation is
+            //undefined, as in PearsonsCorrelation
+            boolean constant = true;
+            for (int k = 1; k < dimension && constant; k++) {
+                constant = spectra[off + k] == spectra[off];
+            }
+            double sumSq = 0.0d;
+            for (int k = 0; k < dimension; k++) {
+                double v = constant ? 0.0d : spectra[off + k] - mean;
+                c[off + k] = v;
+                sumSq += (v * v);
+            }
+            n[i] = Math.sqrt(sumSq);
+        }
+        centeredNorms = n;
+        centered = c;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import maltcms.math.functions.IArraySimilarity;
+import maltcms.math.functions.IScalarArraySimilarity;
+import maltcms.math.functions.IScalarSimilarity;
+import maltcms.math.functions.ProductSimilarity;
+import maltcms.math.functions.similarities.ArrayCorr;
+import maltcms.math.functions.similarities.ArrayCos;
+import maltcms.math.functions.similarities.ArrayDot;
+
+/**
+ * Scores a block of peaks from one {@link PeakSpectrumStore} against a block of
+ * peaks from another store.
+ *
+ * If the similarity function is a {@link ProductSimilarity} whose array
+ * similarities are all {@link ArrayCos}, {@link ArrayCorr} or {@link ArrayDot},
+ * the array similarities are evaluated directly on the packed spectra, using
+ * the precomputed norms of the stores. Any other similarity function is
+ * evaluated through {@link IScalarArraySimilarity#apply}, reusing the retention
+ * time argument arrays between calls.
+ *
+ * Packed scores are computed with precomputed norms and mean-centered spectra
+ * and agree with {@link ProductSimilarity#apply} up to rounding. Dot products
+ * and cosines agree within a relative error of <code>1e-10</code>. The
+ * correlation is computed as the cosine of the mean-centered spectra, while
+ * <code>PearsonsCorrelation</code> takes the square root of the coefficient of
+ * determination, which loses precision for correlations close to zero. Both
+ * agree within an absolute error of <code>1e-7</code>. Degenerate spectra,
+ * i.e. zero spectra for the cosine and constant spectra for the correlation,
+ * yield the same non-finite values in both cases.
+ *
+ * Instances are not thread safe, each worker should use its own kernel.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class SpectrumBlockKernel {
+
+    private static final int DOT = 0;
+    private static final int COS = 1;
+    private static final int CORR = 2;
+    private final IScalarArraySimilarity similarity;
+    private final IScalarSimilarity[] scalarSimilarities;
+    private final int[] arrayKinds;
+    private final double[] arrayParameters;
+    private final double[] s1 = new double[1];
+    private final double[] s2 = new double[1];
+
+    /**
+     * Creates a new kernel for the given similarity function. The function is
+     * used as is and should not be shared with other threads.
+     *
+     * @param similarity the similarity function
+     */
+    public SpectrumBlockKernel(IScalarArraySimilarity similarity) {
+        this.similarity = similarity;
+        int[] kinds = null;
+        double[] params = null;
+        if (similarity.getClass() == ProductSimilarity.class) {
+            IArraySimilarity[] arraySims = similarity.getArraySimilarities();
+            kinds = new int[arraySims.length];
+            params = new double[arraySims.length];
+            for (int i = 0; i < arraySims.length && kinds != null; i++) {
+                Class<?> c = arraySims[i].getClass();
+                if (c == ArrayDot.class) {
+                    kinds[i] = DOT;
+                } else if (c == ArrayCos.class) {
+                    kinds[i] = COS;
+                    params[i] = ((ArrayCos) arraySims[i]).getMinimumSimilarity();
+                } else if (c == ArrayCorr.class) {
+                    kinds[i] = CORR;
+                    params[i] = ((ArrayCorr) arraySims[i]).isReturnCoeffDetermination() ? 1 : 0;
+                } else {
+                    kinds = null;
+                    params = null;
+                }
+            }
+        }
+        this.arrayKinds = kinds;
+        this.arrayParameters = params;
+        this.scalarSimilarities = kinds == null ? null : similarity.getScalarSimilarities();
+    }
+
+    /**
+     * @return true, if the array similarities are evaluated on the packed
+     * spectra
+     */
+    public boolean isPacked() {
+        return arrayKinds != null;
+    }
+
+    /**
+     * Scores the peaks <code>[lhsFrom,lhsTo)</code> of <code>lhs</code> against
+     * the peaks <code>[rhsFrom,rhsTo)</code> of <code>rhs</code>. The result for
+     * pair <code>(i,j)</code> is stored in row-major order at
+     * <code>out[(i-lhsFrom)*(rhsTo-rhsFrom)+(j-rhsFrom)]</code>. Pairs whose
+     * retention time difference is not smaller than
+     * <code>maxRTDifference</code> are not scored and receive
+     * {@link Double#NaN}.
+     *
+     * @param lhs the left hand side store
+     * @param lhsFrom the first left hand side peak, inclusive
+     * @param lhsTo the last left hand side peak, exclusive
+     * @param rhs the right hand side store
+     * @param rhsFrom the first right hand side peak, inclusive
+     * @param rhsTo the last right hand side peak, exclusive
+     * @param maxRTDifference the maximum retention time difference
+     * @param out the output buffer
+     * @return the number of scored pairs
+     */
+    public int score(PeakSpectrumStore lhs, int lhsFrom, int lhsTo,
+            PeakSpectrumStore rhs, int rhsFrom, int rhsTo,
+            double maxRTDifference, double[] out) {
+        final int cols = rhsTo - rhsFrom;
+        final boolean packed = arrayKinds != null && lhs.isUniformLength()
+                && rhs.isUniformLength()
+                && lhs.getDimension() == rhs.getDimension();
+        int scored = 0;
+        for (int i = lhsFrom; i < lhsTo; i++) {
+            final double rt1 = lhs.getRt(i);
+            final int row = (i - lhsFrom) * cols;
+            for (int j = rhsFrom; j < rhsTo; j++) {
+                final double rt2 = rhs.getRt(j);
+                if (Math.abs(rt1 - rt2) < maxRTDifference) {
+                    out[row + j - rhsFrom] = packed ? applyPacked(lhs, i, rt1, rhs, j, rt2) : applyGeneric(lhs, i, rt1, rhs, j, rt2);
+                    scored++;
+                } else {
+                    out[row + j - rhsFrom] = Double.NaN;
+                }
+            }
+        }
+        return scored;
+    }
+
+    private double applyGeneric(PeakSpectrumStore lhs, int i, double rt1, PeakSpectrumStore rhs, int j, double rt2) {
+        s1[0] = rt1;
+        s2[0] = rt2;
+        return similarity.apply(s1, s2, lhs.getPeak(i).getMsIntensities(), rhs.getPeak(j).getMsIntensities());
+    }
+
+    /*
+     * Mirrors ProductSimilarity#apply, ArrayDot, ArrayCos and ArrayCorr.
+     */
+    private double applyPacked(PeakSpectrumStore lhs, int i, double rt1, PeakSpectrumStore rhs, int j, double rt2) {
+        double val = 1.0d;
+        for (IScalarSimilarity scalarSimilarity : scalarSimilarities) {
+            double v = scalarSimilarity.apply(rt1, rt2);
+            if (Double.isInfinite(v) || Double.isNaN(v)) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            val *= v;
+        }
+        for (int k = 0; k < arrayKinds.length; k++) {
+            switch (arrayKinds[k]) {
+                case DOT:
+                    val *= dot(lhs.getSpectra(), lhs.getOffset(i), rhs.getSpectra(), rhs.getOffset(j), lhs.getDimension());
+                    break;
+                case COS: {
+                    double cos = dot(lhs.getSpectra(), lhs.getOffset(i), rhs.getSpectra(), rhs.getOffset(j), lhs.getDimension()) / (lhs.getNorm(i) * rhs.getNorm(j));
+                    val *= cos > arrayParameters[k] ? cos : Double.NEGATIVE_INFINITY;
+                    break;
+                }
+                case CORR: {
+                    double corr = dot(lhs.getCenteredSpectra(), lhs.getOffset(i), rhs.getCenteredSpectra(), rhs.getOffset(j), lhs.getDimension()) / (lhs.getCenteredNorm(i) * rhs.getCenteredNorm(j));
+                    val *= arrayParameters[k] == 1 ? corr * corr : corr;
+                    break;
+                }
+            }
+        }
+        return val;
+    }
+
+    private static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double dot = 0.0d;
+        for (int k = 0; k < length; k++) {
+            dot += (a[aOffset + k] * b[bOffset + k]);
+        }
+        return dot;
+    }
+}
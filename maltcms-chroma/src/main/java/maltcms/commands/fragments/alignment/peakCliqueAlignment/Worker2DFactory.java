@@ -59,6 +59,10 @@ public class Worker2DFactory implements IWorkerFactory {
     private IScalarArraySimilarity similarityFunction;
     private boolean assumeSymmetricSimilarity = false;
     private boolean savePeakSimilarities = false;
+    /**
+     * Shared edge map, which is filled directly by the workers, or null.
+     */
+    private transient IPeakEdgeMap peakEdgeMap;
 
     /**
      * <p>Constructor for Worker2DFactory.</p>
@@ -93,12 +97,18 @@ public class Worker2DFactory implements IWorkerFactory {
                         savePeakSimilarities,
                         outputDirectory,
                         maxRTDifferenceRt1,
-                        maxRTDifferenceRt2
+                        maxRTDifferenceRt2,
+                        peakEdgeMap
                 );
                 worker.add(psw);
             }
         } else {
+            // the reverse pair of chromatograms writes the same edge keys,
+            // so it uses a local edge map, whose edges are merged after all
+            // workers of its batch have finished
+            int i = 0;
             for (IFileFragment f1 : input) {
+                int j = 0;
                 for (IFileFragment f2 : input) {
                     final List<IBipacePeak> lhsPeaks = fragmentToPeaks.get(f1.getName());
                     final List<IBipacePeak> rhsPeaks = fragmentToPeaks.get(f2.getName());
@@ -114,10 +124,13 @@ public class Worker2DFactory implements IWorkerFactory {
                             savePeakSimilarities,
                             outputDirectory,
                             maxRTDifferenceRt1,
-                            maxRTDifferenceRt2
+                            maxRTDifferenceRt2,
+                            j < i ? null : peakEdgeMap
                     );
                     worker.add(psw);
+                    j++;
                 }
+                i++;
             }
         }
 
@@ -31,12 +31,14 @@ import cross.datastructures.fragments.IFileFragment;
 import cross.datastructures.tuple.Tuple2D;
 import cross.datastructures.tuple.TupleND;
 import java.io.File;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import maltcms.datastructures.caches.PairwiseResultCache;
 import maltcms.math.functions.IScalarArraySimilarity;
 import maltcms.math.functions.ProductSimilarity;
 import maltcms.math.functions.similarities.ArrayCorr;
@@ -58,6 +60,11 @@ public class WorkerFactory implements IWorkerFactory {
     private IScalarArraySimilarity similarityFunction;
     private boolean assumeSymmetricSimilarity = false;
     private boolean savePeakSimilarities = false;
+    private String cacheDirectory = "";
+    /**
+     * Shared edge map, which is filled directly by the workers, or null.
+     */
+    private transient IPeakEdgeMap peakEdgeMap;
 
     /**
      * <p>Constructor for WorkerFactory.</p>
@@ -74,6 +81,24 @@ public class WorkerFactory implements IWorkerFactory {
     @Override
     public List<Callable<PairwiseSimilarityResult>> create(File outputDirectory, TupleND<IFileFragment> input, Map<String, List<IBipacePeak>> fragmentToPeaks) {
         List<Callable<PairwiseSimilarityResult>> worker = new LinkedList<>();
+        // pack the spectra of each chromatogram once, the stores are shared
+        // by all workers
+        Map<String, PeakSpectrumStore> stores = new HashMap<>();
+        for (IFileFragment f : input) {
+            stores.put(f.getName(), new PeakSpectrumStore(fragmentToPeaks.get(f.getName())));
+        }
+        // entries are keyed by the content of both stores and the
+        // configuration of the similarity calculation
+        final PairwiseResultCache cache = cacheDirectory.isEmpty() ? null
+                : new PairwiseResultCache(new File(cacheDirectory));
+        String configurationHash = null;
+        if (cache != null) {
+            final Map<String, Object> parameters = new HashMap<>();
+            parameters.put("similarityFunction", similarityFunction);
+            parameters.put("maxRTDifference", maxRTDifference);
+            configurationHash = PairwiseResultCache.configurationHash(
+                    getClass().getName(), parameters);
+        }
         if (assumeSymmetricSimilarity) {
             for (Tuple2D<IFileFragment, IFileFragment> t : input.getPairs()) {
                 // calculate similarity between peaks
@@ -90,12 +115,24 @@ public class WorkerFactory implements IWorkerFactory {
                         similarityFunction.copy(),
                         savePeakSimilarities,
                         outputDirectory,
-                        maxRTDifference
+                        maxRTDifference,
+                        stores.get(t.getFirst().getName()),
+                        stores.get(t.getSecond().getName()),
+                        cache,
+                        cacheKey(cache, stores.get(t.getFirst().getName()),
+                                stores.get(t.getSecond().getName()),
+                                configurationHash),
+                        peakEdgeMap
                 );
                 worker.add(psw);
             }
         } else {
+            // the reverse pair of chromatograms writes the same edge keys,
+            // so it uses a local edge map, whose edges are merged after all
+            // workers of its batch have finished
+            int i = 0;
             for (IFileFragment f1 : input) {
+                int j = 0;
                 for (IFileFragment f2 : input) {
                     // calculate similarity between peaks
                     final List<IBipacePeak> lhsPeaks = fragmentToPeaks.get(f1.getName());
@@ -111,13 +148,30 @@ public class WorkerFactory implements IWorkerFactory {
                             similarityFunction.copy(),
                             savePeakSimilarities,
                             outputDirectory,
-                            maxRTDifference
+                            maxRTDifference,
+                            stores.get(f1.getName()),
+                            stores.get(f2.getName()),
+                            cache,
+                            cacheKey(cache, stores.get(f1.getName()),
+                                    stores.get(f2.getName()), configurationHash),
+                            j < i ? null : peakEdgeMap
                     );
                     worker.add(psw);
+                    j++;
                 }
+                i++;
             }
         }
 
         return worker;
     }
+
+    private String cacheKey(PairwiseResultCache cache, PeakSpectrumStore lhs,
+            PeakSpectrumStore rhs, String configurationHash) {
+        if (cache == null) {
+            return null;
+        }
+        return PairwiseResultCache.key(lhs.getContentHash(),
+                rhs.getContentHash(), configurationHash);
+    }
 }
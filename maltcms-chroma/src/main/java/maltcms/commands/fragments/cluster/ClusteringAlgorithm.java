@@ -660,6 +660,13 @@ public abstract class ClusteringAlgorithm extends AFragmentCommand implements
         for (int i = 0; i < pwdist.getShape()[0]; i++) {
             for (int j = 0; j < pwdist.getShape()[1]; j++) {
                 distances[i][j] = pwdist.get(i, j);
+                if (Double.isNaN(distances[i][j])) {
+                    throw new IllegalArgumentException("Pairwise distance of "
+                            + names1.getString(i) + " and " + names1.getString(j)
+                            + " in " + pwd.getName() + " was not computed! "
+                            + "Clustering requires all pairs, please disable the "
+                            + "cascade of the PairwiseDistanceCalculator.");
+                }
                 sb.append(distances[i][j] + "\t");
             }
             sb.append("\n");
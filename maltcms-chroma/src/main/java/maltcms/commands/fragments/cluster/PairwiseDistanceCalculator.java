@@ -33,6 +33,8 @@ import cross.annotations.ProvidesVariables;
 import cross.commands.fragments.AFragmentCommand;
 import cross.datastructures.fragments.FileFragment;
 import cross.datastructures.fragments.IFileFragment;
+import cross.datastructures.fragments.IVariableFragment;
+import cross.datastructures.fragments.VariableFragment;
 import cross.datastructures.tools.EvalTools;
 import cross.datastructures.tuple.Tuple2D;
 import cross.datastructures.tuple.TupleND;
@@ -41,24 +43,34 @@ import cross.datastructures.workflow.DefaultWorkflowResult;
 import cross.datastructures.workflow.WorkflowSlot;
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import lombok.Data;
 
+import maltcms.commands.distances.dtw.ADynamicTimeWarp;
+import maltcms.commands.distances.dtw.FeatureSequenceStore;
 import maltcms.commands.fragments.cluster.pairwiseDistanceCalculator.AWorkerFactory;
 import maltcms.commands.fragments.cluster.pairwiseDistanceCalculator.MziDtwWorkerFactory;
+import maltcms.commands.fragments.cluster.pairwiseDistanceCalculator.PairwiseDistanceCascade;
 import maltcms.commands.fragments.cluster.pairwiseDistanceCalculator.PairwiseDistanceResult;
 import maltcms.commands.fragments.cluster.pairwiseDistanceCalculator.PairwiseDistanceWorker;
+import maltcms.datastructures.caches.PairwiseResultCache;
 import maltcms.datastructures.fragments.PairwiseDistances;
 import maltcms.io.csv.CSVWriter;
+import maltcms.math.functions.similarities.SimilarityTools;
 import net.sf.mpaxs.api.ICompletionService;
 import org.apache.commons.configuration.Configuration;
 import org.openide.util.lookup.ServiceProvider;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.ArrayChar;
 import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayInt;
 import ucar.ma2.MAMath;
 import ucar.ma2.MAMath.MinMax;
 
@@ -92,6 +104,25 @@ public class PairwiseDistanceCalculator extends AFragmentCommand {
     private String pwdExtension = "";
     @Configurable(description="The worker factory to use for chromatogram / MS comparison. Use either TicDtwWorkerFactory or MziDtwWorkerFactory.")
     private AWorkerFactory workerFactory = new MziDtwWorkerFactory();
+    @Configurable(description="If true, workers running in the same JVM load the "
+            + "feature sequence of each chromatogram only once and share it, "
+            + "instead of reloading it for every pair.")
+    private boolean useFeatureStore = true;
+    @Configurable(description="Optional cascade of cheap bounds that selects the pairs "
+            + "requiring a full alignment for the selection of a center. All other "
+            + "pairs are stored as NaN, so the result can be used by a center star "
+            + "alignment, but not by clustering. If null, all pairs are aligned. "
+            + "Ignored if pairsWithFirstElement is true.")
+    private PairwiseDistanceCascade cascade = null;
+    @Configurable(description="Sets the variable name used to store which pairwise "
+            + "values were computed by a full alignment (1) and which were "
+            + "skipped by the cascade (0). Only written if a cascade is used.")
+    private String computedPairsVariable = "pairwise_distances_computed";
+    @Configurable(description="Optional directory of a persistent cache for "
+            + "pairwise alignments. Entries are keyed by the content of both "
+            + "chromatograms and the worker factory configuration, so only "
+            + "new or changed pairs are aligned. If empty, no cache is used.")
+    private String cacheDirectory = "";
 
     /*
      * (non-Javadoc)
@@ -133,6 +164,12 @@ public class PairwiseDistanceCalculator extends AFragmentCommand {
                 + ".pairsWithFirstElement", false);
         this.pwdExtension = cfg.getString(this.getClass().getName()
                 + ".pwdExtension", "");
+        this.useFeatureStore = cfg.getBoolean(this.getClass().getName()
+                + ".useFeatureStore", true);
+        this.cacheDirectory = cfg.getString(this.getClass().getName()
+                + ".cacheDirectory", "");
+        this.computedPairsVariable = cfg.getString(this.getClass().getName()
+                + ".computedPairsVariable", "pairwise_distances_computed");
     }
 
     /** {@inheritDoc} */
@@ -227,43 +264,44 @@ public class PairwiseDistanceCalculator extends AFragmentCommand {
                 maxlength);
 
         final TupleND<IFileFragment> alignments = new TupleND<>();
-        final Iterator<Tuple2D<IFileFragment, IFileFragment>> iter = list.iterator();
-        int tcnt = 0;
-        final int lsize = list.size();
-        final String[] stepnames = new String[t.getSize() * (t.getSize() - 1)
-                / 2];
-
-        ICompletionService<PairwiseDistanceResult> ccs = createCompletionService(PairwiseDistanceResult.class);
-        while (iter.hasNext()) {
-            final Tuple2D<IFileFragment, IFileFragment> tuple = iter.next();
-            stepnames[tcnt] = "Pairwise distance/similarity of "
+        final String[] stepnames = new String[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            final Tuple2D<IFileFragment, IFileFragment> tuple = list.get(i);
+            stepnames[i] = "Pairwise distance/similarity of "
                     + tuple.getFirst().getName() + " and "
                     + tuple.getSecond().getName();
-            log.debug("Creating job for tuple {}/{}: {} with {}", new Object[]{
-                (tcnt + 1), list.size(), tuple.getFirst().getName(),
-                tuple.getSecond().getName()});
-            final PairwiseDistanceWorker worker = workerFactory.create();
-            if (tcnt == 0) {
-                log.info("Using {} as pairwise sequence function.", worker.getSimilarity().getClass().getName());
-            }
-            worker.setInput(new Tuple2D<>(tuple.getFirst().getUri(), tuple.getSecond().getUri()));
-            worker.setJobNumber(tcnt);
-            worker.setNJobs(lsize);
-            worker.setWorkflow(getWorkflow());
-            worker.setOutputDirectory(getWorkflow().getOutputDirectory(this));
-            ccs.submit(worker);
-            tcnt++;
         }
+        final String featureStoreId = this.useFeatureStore ? UUID.randomUUID().
+                toString() : null;
         final DefaultWorkflowProgressResult dwpr = new DefaultWorkflowProgressResult(
                 stepnames, this, getWorkflowSlot());
-        List<PairwiseDistanceResult> results = Collections.emptyList();
+        final PairwiseResultCache cache = this.cacheDirectory.isEmpty() ? null
+                : new PairwiseResultCache(new File(this.cacheDirectory));
+        final Map<URI, String> contentHashes = new HashMap<>();
+        if (cache != null) {
+            log.info("Using pairwise result cache in {}", cache.getDirectory());
+            for (final IFileFragment f : t) {
+                contentHashes.put(f.getUri(), PairwiseResultCache.contentHash(f));
+            }
+        }
+        List<PairwiseDistanceResult> results;
+        boolean[][] computed = null;
         try {
-            results = ccs.call();
-        } catch (Exception ex) {
-            log.error("Caught exception while executing workers: ", ex);
-            throw new RuntimeException(ex);
+            if (this.cascade != null && !this.pairsWithFirstElement) {
+                computed = new boolean[t.getSize()][t.getSize()];
+                results = cascadePairs(t, filenameToIndex, pairwiseDistances,
+                        computed, featureStoreId, cache, contentHashes);
+            } else {
+                results = computePairs(list, featureStoreId, cache,
+                        contentHashes);
+            }
+        } finally {
+            if (featureStoreId != null) {
+                FeatureSequenceStore.release(featureStoreId);
+            }
+            SimilarityTools.logArrayValueCacheStatistics();
+            SimilarityTools.clearArrayValueCaches();
         }
-        log.info("{} workers succeeded, {} failed!", results.size(), ccs.getFailedTasks().size());
         for (final PairwiseDistanceResult tpl : results) {
             if (tpl != null) {
                 log.debug("Result: {}", tpl);
@@ -299,6 +337,9 @@ public class PairwiseDistanceCalculator extends AFragmentCommand {
         pd.setWorkflow(getWorkflow());
         final IFileFragment ret = new FileFragment(new File(getWorkflow().getOutputDirectory(pd), name));
         pd.modify(ret);
+        if (computed != null) {
+            addComputedPairs(ret, computed);
+        }
         ret.save();
         final DefaultWorkflowResult dwr = new DefaultWorkflowResult(new File(
                 ret.getUri()), this, WorkflowSlot.STATISTICS, ret);
@@ -323,6 +364,149 @@ public class PairwiseDistanceCalculator extends AFragmentCommand {
         return tple;
     }
 
+    private List<PairwiseDistanceResult> computePairs(
+            final List<Tuple2D<IFileFragment, IFileFragment>> list,
+            final String featureStoreId, final PairwiseResultCache cache,
+            final Map<URI, String> contentHashes) {
+        final Iterator<Tuple2D<IFileFragment, IFileFragment>> iter = list.iterator();
+        int tcnt = 0;
+        final int lsize = list.size();
+        final String configurationHash = cache == null ? null
+                : PairwiseResultCache.configurationHash(
+                        workerFactory.getClass().getName(),
+                        workerFactory.getResultParameters());
+        ICompletionService<PairwiseDistanceResult> ccs = createCompletionService(PairwiseDistanceResult.class);
+        while (iter.hasNext()) {
+            final Tuple2D<IFileFragment, IFileFragment> tuple = iter.next();
+            log.debug("Creating job for tuple {}/{}: {} with {}", new Object[]{
+                (tcnt + 1), list.size(), tuple.getFirst().getName(),
+                tuple.getSecond().getName()});
+            final PairwiseDistanceWorker worker = workerFactory.create();
+            if (tcnt == 0) {
+                log.info("Using {} as pairwise sequence function.", worker.getSimilarity().getClass().getName());
+            }
+            worker.setInput(new Tuple2D<>(tuple.getFirst().getUri(), tuple.getSecond().getUri()));
+            worker.setJobNumber(tcnt);
+            worker.setNJobs(lsize);
+            worker.setWorkflow(getWorkflow());
+            worker.setOutputDirectory(getWorkflow().getOutputDirectory(this));
+            worker.setFeatureStoreId(featureStoreId);
+            if (cache != null && worker.getSimilarity() instanceof ADynamicTimeWarp) {
+                final String lhs = contentHashes.get(tuple.getFirst().getUri());
+                final String rhs = contentHashes.get(tuple.getSecond().getUri());
+                if (lhs != null && rhs != null) {
+                    worker.setCache(cache);
+                    worker.setCacheKey(PairwiseResultCache.key(lhs, rhs,
+                            configurationHash));
+                }
+            }
+            ccs.submit(worker);
+            tcnt++;
+        }
+        List<PairwiseDistanceResult> results = Collections.emptyList();
+        try {
+            results = ccs.call();
+        } catch (Exception ex) {
+            log.error("Caught exception while executing workers: ", ex);
+            throw new RuntimeException(ex);
+        }
+        log.info("{} workers succeeded, {} failed!", results.size(), ccs.getFailedTasks().size());
+        return results;
+    }
+
+    /**
+     * Aligns only the pairs selected by the cascade and extends the selection
+     * until the center row is fully aligned. Estimates of the other values are
+     * only used to select the center and never enter
+     * <code>pairwiseDistances</code>, where pairs that were not aligned are
+     * set to NaN. The aligned pairs are marked in <code>computed</code>.
+     */
+    private List<PairwiseDistanceResult> cascadePairs(
+            final TupleND<IFileFragment> t,
+            final HashMap<URI, Integer> filenameToIndex,
+            final ArrayDouble.D2 pairwiseDistances,
+            final boolean[][] computed,
+            final String featureStoreId, final PairwiseResultCache cache,
+            final Map<URI, String> contentHashes) {
+        final int n = t.getSize();
+        final IFileFragment[] files = new IFileFragment[n];
+        for (final IFileFragment f : t) {
+            files[filenameToIndex.get(f.getUri())] = f;
+        }
+        final boolean[][] selected = cascade.selectPairs(Arrays.asList(files));
+        final boolean[][] submitted = new boolean[n][n];
+        final ArrayDouble.D2 estimates = new ArrayDouble.D2(n, n);
+        final List<PairwiseDistanceResult> results = new ArrayList<>();
+        while (true) {
+            final List<Tuple2D<IFileFragment, IFileFragment>> pairs = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (selected[i][j] && !submitted[i][j]) {
+                        submitted[i][j] = true;
+                        pairs.add(new Tuple2D<>(files[i], files[j]));
+                    }
+                }
+            }
+            if (pairs.isEmpty()) {
+                break;
+            }
+            for (final PairwiseDistanceResult tpl : computePairs(pairs, featureStoreId,
+                    cache, contentHashes)) {
+                if (tpl != null) {
+                    final int i1 = filenameToIndex.get(tpl.getInput().getFirst());
+                    final int i2 = filenameToIndex.get(tpl.getInput().getSecond());
+                    estimates.set(i1, i2, tpl.getValue());
+                    estimates.set(i2, i1, tpl.getValue());
+                    computed[i1][i2] = true;
+                    computed[i2][i1] = true;
+                    results.add(tpl);
+                }
+            }
+            final int center = cascade.estimate(estimates, computed,
+                    this.minimizingLocalDistance);
+            if (center < 0) {
+                break;
+            }
+            log.info("Aligning all pairs of center candidate {}", files[center].getName());
+            PairwiseDistanceCascade.selectRow(selected, center);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j && !computed[i][j]) {
+                    pairwiseDistances.set(i, j, Double.NaN);
+                }
+            }
+        }
+        final int[] counts = cascade.countPairs(computed);
+        log.info("Cascade computed {} pairs, bounded {} pairs and skipped {} pairs of {}",
+                new Object[]{counts[0], counts[1], counts[2], n * (n - 1) / 2});
+        if (counts[1] + counts[2] > 0) {
+            log.warn("{} of {} pairs were not aligned and are NaN in the pairwise "
+                    + "distance matrix! See variable {} for the computed pairs.",
+                    new Object[]{counts[1] + counts[2], n * (n - 1) / 2,
+                        this.computedPairsVariable});
+        }
+        return results;
+    }
+
+    /**
+     * Stores which pairs were aligned (1) and which were skipped (0).
+     * The diagonal is always marked as computed.
+     */
+    private void addComputedPairs(final IFileFragment ret,
+            final boolean[][] computed) {
+        final int n = computed.length;
+        final ArrayInt.D2 mask = new ArrayInt.D2(n, n, false);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                mask.set(i, j, i == j || computed[i][j] ? 1 : 0);
+            }
+        }
+        final IVariableFragment var = new VariableFragment(ret,
+                this.computedPairsVariable);
+        var.setArray(mask);
+    }
+
     /**
      * <p>saveToCSV.</p>
      *
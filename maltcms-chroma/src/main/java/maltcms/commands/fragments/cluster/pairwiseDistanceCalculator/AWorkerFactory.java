@@ -28,6 +28,8 @@
 package maltcms.commands.fragments.cluster.pairwiseDistanceCalculator;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * Extend this Factory in order to create custom worker instances.
@@ -43,4 +45,20 @@ public abstract class AWorkerFactory implements Serializable {
      * @return a {@link maltcms.commands.fragments.cluster.pairwiseDistanceCalculator.PairwiseDistanceWorker} object.
      */
     public abstract PairwiseDistanceWorker create();
+
+    /**
+     * Returns the parameters of this factory that influence the results of
+     * the created workers by name. These are hashed into the keys of the
+     * persistent pairwise result cache, so settings that only affect
+     * performance or auxiliary output, like thread counts, should be left out.
+     *
+     * The default implementation returns this factory, so that all of its
+     * non-transient fields contribute.
+     *
+     * @return the result relevant parameters
+     * @since 2.0.1
+     */
+    public Map<String, Object> getResultParameters() {
+        return Collections.<String, Object>singletonMap("factory", this);
+    }
 }
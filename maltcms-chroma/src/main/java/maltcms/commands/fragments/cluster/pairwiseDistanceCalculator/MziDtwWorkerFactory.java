@@ -27,6 +27,8 @@
  */
 package maltcms.commands.fragments.cluster.pairwiseDistanceCalculator;
 
+import java.util.HashMap;
+import java.util.Map;
 import lombok.Data;
 import maltcms.commands.distances.DtwRecurrence;
 import maltcms.commands.distances.IDtwSimilarityFunction;
@@ -64,6 +66,9 @@ public class MziDtwWorkerFactory extends AWorkerFactory {
     private boolean saveDtwMatrix = false;
     private boolean savePairwiseSimilarityMatrix = false;
     private boolean normalizeAlignmentValue = false;
+    private int wavefrontThreads = 1;
+    private int wavefrontTileSize = 256;
+    private boolean linearMemory = false;
 
     /** {@inheritDoc} */
     @Override
@@ -84,6 +89,9 @@ public class MziDtwWorkerFactory extends AWorkerFactory {
         mdtw.setSaveDtwMatrix(saveDtwMatrix);
         mdtw.setSavePairwiseSimilarityMatrix(savePairwiseSimilarityMatrix);
         mdtw.setNormalizeAlignmentValue(normalizeAlignmentValue);
+        mdtw.setWavefrontThreads(wavefrontThreads);
+        mdtw.setWavefrontTileSize(wavefrontTileSize);
+        mdtw.setLinearMemory(linearMemory);
         //setup pairwise comparison function
         PairwiseFeatureSimilarity pfs = new PairwiseFeatureSimilarity();
         pfs.setSimilarityFunction(similarity);
@@ -97,4 +105,27 @@ public class MziDtwWorkerFactory extends AWorkerFactory {
         worker.setSimilarity(mdtw);
         return worker;
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the similarity function, band, anchor, gap penalty and
+     * normalization settings are returned. Thread counts, tiling, the linear
+     * memory mode and the output options do not change the alignment.
+     */
+    @Override
+    public Map<String, Object> getResultParameters() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("similarity", similarity);
+        parameters.put("bandWidthPercentage", bandWidthPercentage);
+        parameters.put("globalBand", globalBand);
+        parameters.put("useAnchors", useAnchors);
+        parameters.put("minScansBetweenAnchors", minScansBetweenAnchors);
+        parameters.put("anchorRadius", anchorRadius);
+        parameters.put("globalGapPenalty", globalGapPenalty);
+        parameters.put("numberOfEICsToSelect", numberOfEICsToSelect);
+        parameters.put("useSparseArrays", useSparseArrays);
+        parameters.put("normalizeAlignmentValue", normalizeAlignmentValue);
+        return parameters;
+    }
 }
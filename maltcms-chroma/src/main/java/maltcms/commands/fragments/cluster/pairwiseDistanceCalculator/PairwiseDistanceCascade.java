@@ -0,0 +1,392 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.cluster.pairwiseDistanceCalculator;
+
+import cross.datastructures.fragments.IFileFragment;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import lombok.Data;
+import maltcms.math.window.SlidingWindow;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+
+/**
+ * Selects the pairs of chromatograms for which a full pairwise alignment is
+ * required and estimates the values of all other pairs.
+ *
+ * The cascade has three stages. First, the TICs of all chromatograms are
+ * resampled to <code>resolution</code> points, z-normalized and correlated.
+ * Second, the <code>nearestNeighbors</code> closest partners of each
+ * chromatogram are determined by a banded DTW on the resampled TICs. Partners
+ * are visited in order of decreasing correlation, and the coarse DTW is only
+ * evaluated if the LB_Keogh lower bound of the pair does not already exclude
+ * it from the current nearest neighbors. Third, the full alignment is run for
+ * the nearest neighbor pairs and for all pairs of the
+ * <code>centerCandidates</code> chromatograms with the highest correlation
+ * sums. {@link #estimate(ucar.ma2.ArrayDouble.D2, boolean[][], boolean)}
+ * fills in the remaining pairs of a working matrix and reports further rows
+ * that need to be computed before the center can be selected. The estimates
+ * carry no guarantee and must not be used as pairwise distances, e.g. by
+ * clustering, which reads all pairs.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@Data
+public class PairwiseDistanceCascade implements Serializable {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(PairwiseDistanceCascade.class);
+    private static final long serialVersionUID = -3196712548713017224L;
+    private String ticVariable = "total_intensity";
+    private int resolution = 256;
+    private double bandWidthPercentage = 0.1;
+    private int nearestNeighbors = 3;
+    private int centerCandidates = 3;
+    private transient double[][] correlations;
+    private transient double[][] coarse;
+
+    /**
+     * Runs the correlation and coarse DTW stages and returns the pairs that
+     * require a full alignment.
+     *
+     * @param files the chromatograms
+     * @return a symmetric matrix, true for pairs that need a full alignment
+     */
+    public boolean[][] selectPairs(List<IFileFragment> files) {
+        final int n = files.size();
+        final boolean[][] selected = new boolean[n][n];
+        this.correlations = new double[n][n];
+        this.coarse = new double[n][n];
+        for (double[] row : coarse) {
+            Arrays.fill(row, Double.NaN);
+        }
+        if (n < 2) {
+            return selected;
+        }
+        final double[][] profiles = new double[n][];
+        for (int i = 0; i < n; i++) {
+            IFileFragment f = files.get(i);
+            synchronized (f) {
+                profiles[i] = profile(f.getChild(ticVariable).getArray(),
+                        resolution);
+            }
+        }
+        final int band = Math.max(1, (int) Math.ceil(bandWidthPercentage
+                * resolution));
+        final double[][] upper = new double[n][];
+        final double[][] lower = new double[n][];
+        for (int i = 0; i < n; i++) {
+            upper[i] = SlidingWindow.max(profiles[i], band);
+            lower[i] = SlidingWindow.min(profiles[i], band);
+        }
+        final double[] correlationSums = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double c = correlation(profiles[i], profiles[j]);
+                correlations[i][j] = c;
+                correlations[j][i] = c;
+                correlationSums[i] += c;
+                correlationSums[j] += c;
+            }
+        }
+        final int k = Math.max(1, Math.min(nearestNeighbors, n - 1));
+        for (int i = 0; i < n; i++) {
+            final int[] candidates = orderByDecreasing(correlations[i], i);
+            final int[] best = new int[k];
+            final double[] bestDist = new double[k];
+            int found = 0;
+            for (int j : candidates) {
+                if (Double.isNaN(coarse[i][j])) {
+                    if (found == k) {
+                        double lb = Math.max(
+                                lbKeogh(upper[i], lower[i], profiles[j]),
+                                lbKeogh(upper[j], lower[j], profiles[i]));
+                        if (lb >= bestDist[k - 1]) {
+                            continue;
+                        }
+                    }
+                    double d = dtw(profiles[i], profiles[j], band);
+                    coarse[i][j] = d;
+                    coarse[j][i] = d;
+                }
+                double d = coarse[i][j];
+                if (found < k || d < bestDist[k - 1]) {
+                    // insertion into the sorted nearest neighbors
+                    int pos = found < k ? found++ : k - 1;
+                    while (pos > 0 && bestDist[pos - 1] > d) {
+                        best[pos] = best[pos - 1];
+                        bestDist[pos] = bestDist[pos - 1];
+                        pos--;
+                    }
+                    best[pos] = j;
+                    bestDist[pos] = d;
+                }
+            }
+            for (int m = 0; m < found; m++) {
+                selected[i][best[m]] = true;
+                selected[best[m]][i] = true;
+            }
+        }
+        final int[] centers = orderByDecreasing(correlationSums, -1);
+        for (int c = 0; c < Math.min(centerCandidates, n); c++) {
+            selectRow(selected, centers[c]);
+        }
+        int[] counts = countPairs(selected);
+        log.info("Selected {} pairs for full alignment, {} pairs excluded by lower bound, {} pairs by coarse DTW",
+                new Object[]{counts[0], counts[1], counts[2]});
+        return selected;
+    }
+
+    /**
+     * Fills the values of all pairs that have not been computed. The values
+     * are estimated from the TIC correlation by a linear fit on the computed
+     * pairs and are never better than the worst computed value of either
+     * chromatogram, so that nearest neighbors are only formed by computed
+     * pairs. Returns the row with the best value sum, if it still contains
+     * estimated values. Estimated values can not be told apart from computed
+     * ones in <code>values</code>, so <code>values</code> should be a working
+     * copy that is only used to select the center.
+     *
+     * @param values the pairwise values, updated in place
+     * @param computed the pairs with computed values
+     * @param minimize true, if smaller values are better
+     * @return the index of a row that needs to be computed completely, or -1
+     */
+    public int estimate(ArrayDouble.D2 values, boolean[][] computed,
+            boolean minimize) {
+        final int n = computed.length;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        int cnt = 0;
+        final double[] worst = new double[n];
+        Arrays.fill(worst, Double.NaN);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j && computed[i][j]) {
+                    double v = values.get(i, j);
+                    if (Double.isNaN(worst[i]) || (minimize ? v > worst[i] : v < worst[i])) {
+                        worst[i] = v;
+                    }
+                    if (j > i) {
+                        double x = correlations[i][j];
+                        sx += x;
+                        sy += v;
+                        sxx += x * x;
+                        sxy += x * v;
+                        cnt++;
+                    }
+                }
+            }
+        }
+        final double var = cnt * sxx - sx * sx;
+        final double slope = cnt > 1 && var > 0 ? (cnt * sxy - sx * sy) / var : 0.0d;
+        final double intercept = cnt > 0 ? (sy - slope * sx) / cnt : 0.0d;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (!computed[i][j]) {
+                    double v = intercept + slope * correlations[i][j];
+                    v = clamp(clamp(v, worst[i], minimize), worst[j], minimize);
+                    values.set(i, j, v);
+                    values.set(j, i, v);
+                }
+            }
+        }
+        int center = -1;
+        double bestSum = Double.NaN;
+        for (int i = 0; i < n; i++) {
+            double sum = 0.0d;
+            for (int j = 0; j < n; j++) {
+                if (i != j) {
+                    sum += values.get(i, j);
+                }
+            }
+            if (center == -1 || (minimize ? sum < bestSum : sum > bestSum)) {
+                center = i;
+                bestSum = sum;
+            }
+        }
+        if (center >= 0) {
+            for (int j = 0; j < n; j++) {
+                if (j != center && !computed[center][j]) {
+                    return center;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the pairs by the stage that decided them.
+     *
+     * @param computed the pairs with full alignments
+     * @return the number of computed pairs, of pairs excluded by the lower
+     * bound and of pairs excluded after the coarse DTW
+     */
+    public int[] countPairs(boolean[][] computed) {
+        final int[] counts = new int[3];
+        for (int i = 0; i < computed.length; i++) {
+            for (int j = i + 1; j < computed.length; j++) {
+                if (computed[i][j]) {
+                    counts[0]++;
+                } else if (Double.isNaN(coarse[i][j])) {
+                    counts[1]++;
+                } else {
+                    counts[2]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static double clamp(double v, double worst, boolean minimize) {
+        if (Double.isNaN(worst)) {
+            return v;
+        }
+        return minimize ? Math.max(v, worst) : Math.min(v, worst);
+    }
+
+    /**
+     * Marks all pairs of row <code>i</code> as selected.
+     *
+     * @param selected the selected pairs
+     * @param i the row
+     */
+    public static void selectRow(boolean[][] selected, int i) {
+        for (int j = 0; j < selected.length; j++) {
+            if (j != i) {
+                selected[i][j] = true;
+                selected[j][i] = true;
+            }
+        }
+    }
+
+    /**
+     * Resamples <code>a</code> to <code>length</code> points by averaging and
+     * z-normalizes the result.
+     */
+    static double[] profile(Array a, int length) {
+        final double[] values = (double[]) a.get1DJavaArray(double.class);
+        final double[] p = new double[length];
+        final int n = values.length;
+        for (int b = 0; b < length; b++) {
+            int start = (int) ((long) b * n / length);
+            int stop = Math.max(start + 1, (int) ((long) (b + 1) * n / length));
+            double sum = 0.0d;
+            for (int i = start; i < Math.min(stop, n); i++) {
+                sum += values[i];
+            }
+            p[b] = n == 0 ? 0.0d : sum / (Math.min(stop, n) - start);
+        }
+        double mean = 0.0d;
+        for (double v : p) {
+            mean += v;
+        }
+        mean /= length;
+        double var = 0.0d;
+        for (double v : p) {
+            var += (v - mean) * (v - mean);
+        }
+        final double sd = Math.sqrt(var / length);
+        for (int b = 0; b < length; b++) {
+            p[b] = sd > 0 ? (p[b] - mean) / sd : 0.0d;
+        }
+        return p;
+    }
+
+    static double correlation(double[] a, double[] b) {
+        double dot = 0.0d;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot / a.length;
+    }
+
+    /**
+     * LB_Keogh lower bound of the banded squared euclidean DTW between the
+     * sequence with envelope <code>upper</code>/<code>lower</code> and
+     * <code>c</code>.
+     */
+    static double lbKeogh(double[] upper, double[] lower, double[] c) {
+        double lb = 0.0d;
+        for (int i = 0; i < c.length; i++) {
+            if (c[i] > upper[i]) {
+                lb += (c[i] - upper[i]) * (c[i] - upper[i]);
+            } else if (c[i] < lower[i]) {
+                lb += (c[i] - lower[i]) * (c[i] - lower[i]);
+            }
+        }
+        return lb;
+    }
+
+    /**
+     * Banded DTW with squared euclidean local costs between two sequences of
+     * equal length.
+     */
+    static double dtw(double[] a, double[] b, int band) {
+        final int n = a.length;
+        double[] prev = new double[n + 1];
+        double[] curr = new double[n + 1];
+        Arrays.fill(prev, Double.POSITIVE_INFINITY);
+        prev[0] = 0.0d;
+        for (int i = 1; i <= n; i++) {
+            Arrays.fill(curr, Double.POSITIVE_INFINITY);
+            for (int j = Math.max(1, i - band); j <= Math.min(n, i + band); j++) {
+                double d = a[i - 1] - b[j - 1];
+                curr[j] = d * d + Math.min(prev[j - 1], Math.min(prev[j],
+                        curr[j - 1]));
+            }
+            double[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        return prev[n];
+    }
+
+    private static int[] orderByDecreasing(final double[] values, int exclude) {
+        Integer[] idx = new Integer[values.length - (exclude >= 0 ? 1 : 0)];
+        int m = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i != exclude) {
+                idx[m++] = i;
+            }
+        }
+        Arrays.sort(idx, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(values[o2], values[o1]);
+            }
+        });
+        int[] order = new int[idx.length];
+        for (int i = 0; i < idx.length; i++) {
+            order[i] = idx[i];
+        }
+        return order;
+    }
+}
@@ -34,18 +34,25 @@ import cross.datastructures.fragments.IFileFragment;
 import cross.datastructures.tools.EvalTools;
 import cross.datastructures.tools.FileTools;
 import cross.datastructures.tuple.Tuple2D;
+import cross.datastructures.tuple.Tuple2DI;
 import cross.datastructures.workflow.IWorkflow;
 import cross.tools.StringTools;
 import java.io.File;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import lombok.Data;
 
 import maltcms.commands.distances.PairwiseFeatureSequenceSimilarity;
+import maltcms.commands.distances.dtw.ADynamicTimeWarp;
+import maltcms.commands.distances.dtw.FeatureSequenceStore;
+import maltcms.datastructures.caches.PairwiseResultCache;
 import maltcms.io.misc.StatsWriter;
 import maltcms.tools.MaltcmsTools;
 import org.slf4j.LoggerFactory;
+import ucar.ma2.ArrayDouble;
 
 /**
  * <p>PairwiseDistanceWorker class.</p>
@@ -67,11 +74,18 @@ public class PairwiseDistanceWorker implements
     private File outputDirectory;
     private int jobNumber;
     private int nJobs;
+    private String featureStoreId = null;
+    private PairwiseResultCache cache = null;
+    private String cacheKey = null;
 
     /** {@inheritDoc} */
     @Override
     public PairwiseDistanceResult call() throws Exception {
         similarity.setWorkflow(getWorkflow());
+        if (featureStoreId != null && similarity instanceof ADynamicTimeWarp) {
+            ((ADynamicTimeWarp) similarity).setFeatureStore(
+                    FeatureSequenceStore.getInstance(featureStoreId));
+        }
         final String input1 = FileTools.getFilename(input.getFirst());
         final String input2 = FileTools.getFilename(input.getSecond());
         final String filename = "PW_DISTANCE_"
@@ -88,10 +102,22 @@ public class PairwiseDistanceWorker implements
                     input1,
                     input2});
         IFileFragment ff;
-        ff = similarity.apply(new FileFragment(input.getFirst()), new FileFragment(input.getSecond()));
+        final double d;
+        final PairwiseDistanceCacheEntry cached = cache != null && cacheKey != null
+                ? cache.get(cacheKey, PairwiseDistanceCacheEntry.class) : null;
+        if (cached != null) {
+            log.info("Restoring cached alignment {}", cacheKey);
+            ff = restore(cached);
+            d = cached.getValue();
+        } else {
+            ff = similarity.apply(new FileFragment(input.getFirst()), new FileFragment(input.getSecond()));
+            d = similarity.getResult().get();
+            if (cache != null && cacheKey != null) {
+                cache.put(cacheKey, createCacheEntry(ff, d));
+            }
+        }
         final long t_end = System.currentTimeMillis() - t_start;
         log.info("Finished dtw in {} seconds", t_end / 1000.0d);
-        final double d = similarity.getResult().get();
         final int maplength = MaltcmsTools.getWarpPath(ff).size();
         log.info("Map length: {}", maplength);
         sm.setLabel(input1 + "-"
@@ -108,4 +134,35 @@ public class PairwiseDistanceWorker implements
         PairwiseDistanceResult pdr = new PairwiseDistanceResult(input, ff.getUri(), d, sm);
         return pdr;
     }
+
+    private IFileFragment restore(final PairwiseDistanceCacheEntry entry) {
+        final int[] pi = entry.getPathI();
+        final int[] pj = entry.getPathJ();
+        final double[] dists = entry.getPathDistances();
+        final List<Tuple2DI> path = new ArrayList<>(pi.length);
+        final ArrayDouble.D1 pathDistances = new ArrayDouble.D1(pi.length);
+        for (int i = 0; i < pi.length; i++) {
+            path.add(new Tuple2DI(pi[i], pj[i]));
+            pathDistances.set(i, dists[i]);
+        }
+        return ((ADynamicTimeWarp) similarity).restore(new FileFragment(
+                input.getFirst()), new FileFragment(input.getSecond()), path,
+                pathDistances, entry.getValue());
+    }
+
+    private PairwiseDistanceCacheEntry createCacheEntry(final IFileFragment ff,
+            final double value) {
+        final List<Tuple2DI> path = MaltcmsTools.getWarpPath(ff);
+        final int[] pi = new int[path.size()];
+        final int[] pj = new int[path.size()];
+        for (int i = 0; i < pi.length; i++) {
+            pi[i] = path.get(i).getFirst();
+            pj[i] = path.get(i).getSecond();
+        }
+        final String pathDistanceVar = Factory.getInstance().getConfiguration().
+                getString("var.warp_path_distance", "warp_path_distance");
+        final double[] pathDistances = (double[]) ff.getChild(pathDistanceVar).
+                getArray().get1DJavaArray(double.class);
+        return new PairwiseDistanceCacheEntry(value, pi, pj, pathDistances);
+    }
 }
@@ -59,7 +59,6 @@ import org.apache.commons.math.stat.descriptive.rank.Percentile;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayDouble;
-import ucar.ma2.Index;
 
 /**
  * <p>
@@ -119,20 +118,12 @@ public class CwtEicPeakFinderCallable extends AbstractCwtPeakFinderCallable {
 
             List<Double> scales = new LinkedList<>();
 
-            final ArrayDouble.D2 scaleogram = new ArrayDouble.D2(
-                    values.getShape()[0],
-                    getMaxScale());
+            final double[] scaleArray = new double[getMaxScale()];
             for (int k = 1; k <= getMaxScale(); k++) {
-                double scale = ((double) k);
-                // log.info("Scale: " + scale);
-                cwt.setScale(scale);
-                Array res = cwt.apply(values);
-                Index resI = res.getIndex();
-                for (int j = 0; j < res.getShape()[0]; j++) {
-                    scaleogram.set(j, k - 1, res.getDouble(resI.set(j)));
-                }
-                scales.add(scale);
+                scaleArray[k - 1] = k;
+                scales.add(scaleArray[k - 1]);
             }
+            final ArrayDouble.D2 scaleogram = cwt.applyScales(values, scaleArray);
             List<Ridge> ridges = followRidgesBottomUp(fivePercent,
                     scaleogram, scales, getMinScale(), getMaxScale());
 
@@ -0,0 +1,367 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.peakfinding.eicPeakFinder;
+
+import cross.datastructures.fragments.FileFragment;
+import cross.datastructures.fragments.IFileFragment;
+import cross.datastructures.tools.EvalTools;
+import cross.datastructures.tuple.Tuple2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import lombok.Data;
+import maltcms.commands.filters.array.AArrayFilter;
+import maltcms.commands.filters.array.BatchFilter;
+import maltcms.commands.filters.array.FirstDerivativeFilter;
+import maltcms.commands.fragments.peakfinding.ticPeakFinder.IBaselineEstimator;
+import maltcms.commands.fragments.peakfinding.ticPeakFinder.PeakFinderUtils;
+import maltcms.commands.fragments.peakfinding.ticPeakFinder.PeakPositionsResultSet;
+import maltcms.datastructures.caches.RingBuffer;
+import maltcms.datastructures.peak.Peak1D;
+import maltcms.datastructures.peak.PeakType;
+import maltcms.tools.MaltcmsTools;
+import org.apache.commons.math.ArgumentOutsideDomainException;
+import org.apache.commons.math.analysis.polynomials.PolynomialSplineFunction;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayInt;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+
+/**
+ * <p>
+ * Finds peaks on the extracted ion chromatograms of a chunk of consecutive
+ * mass bins of one file.</p>
+ *
+ * Each worker owns its filters and baseline estimator, so workers of the same
+ * file can run concurrently.
+ *
+ * @author Nils Hoffmann
+ *
+ * @since 2.0.1
+ */
+@Data
+public class EICPeakFinderWorker implements Callable<EICPeakFinderWorkerResult>, Serializable {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(EICPeakFinderWorker.class);
+
+    private final URI inputUri;
+    private final int firstMassBin;
+    private final int massBins;
+    private final double massResolution;
+    private final double peakThreshold;
+    private final int peakSeparationWindow;
+    private final boolean integrateRawEic;
+    private final IBaselineEstimator baselineEstimator;
+    private final List<AArrayFilter> filter;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EICPeakFinderWorkerResult call() {
+        final IFileFragment f = new FileFragment(inputUri);
+        final int totalScans = MaltcmsTools.getNumberOfScans(f);
+        final int offset = 0;
+        final List<Peak1D> peaks = new ArrayList<>();
+        final Array sat = f.getChild("scan_acquisition_time").getArray();
+        log.info("Loading eics for mass bins {} to {}", firstMassBin,
+                firstMassBin + massBins - 1);
+        final Tuple2D<Array, List<Array>> eicPairs = MaltcmsTools.getEICs(f,
+                massResolution, offset, totalScans, firstMassBin, massBins);
+        final List<Array> eics = eicPairs.getSecond();
+        final Array binnedMasses = eicPairs.getFirst();
+        for (int i = 0; i < eics.size(); i++) {
+            double massBin = binnedMasses.getDouble(i);
+            try {
+                Array eicArray = eics.get(i);
+                if (eicArray != null) {
+                    Array eic = applyFilters(eicArray);
+                    if (eic != null) {
+                        PeakPositionsResultSet pprs;
+                        try {
+                            pprs = findPeakPositions(eic, sat.section(new int[]{offset}, new int[]{eic.getShape()[0]}));
+                            List<Peak1D> p = findPeakAreas(f, pprs.getTs(), eic, pprs.getCorrectedTIC(), pprs.getSnrValues());
+                            for (Peak1D peak : p) {
+                                peak.setMw(massBin);
+                                peak.setPeakType(PeakType.EIC_FILTERED);
+                                peak.setBaselineStartValue(eicArray.getDouble(peak.getStartIndex()) - eic.getDouble(peak.getStartIndex()));
+                                peak.setBaselineStopValue(eicArray.getDouble(peak.getStopIndex()) - eic.getDouble(peak.getStopIndex()));
+                                peak.setBaselineStartTime(sat.getDouble(peak.getStartIndex()));
+                                peak.setBaselineStopTime(sat.getDouble(peak.getStopIndex()));
+                            }
+                            peaks.addAll(p);
+                            log.info("Found " + pprs.getTs().size() + " peaks");
+                        } catch (InvalidRangeException ex) {
+                            Logger.getLogger(EICPeakFinderWorker.class.getName()).log(Level.SEVERE, null, ex);
+                        }
+                    }
+                } else {
+                    log.debug("Skipping empty eic at mass bin {}", massBin);
+                }
+            } catch (org.apache.commons.math.exception.NumberIsTooSmallException nte) {
+            }
+        }
+        return new EICPeakFinderWorkerResult(firstMassBin, peaks);
+    }
+
+    private Peak1D getPeakBoundsByEIC(final IFileFragment chromatogram,
+            final int scanIndex, final Array rawEIC,
+            final Array baselineCorrectedEIC,
+            final Array fdEIC, final Array sdEIC, final Array tdEIC) {
+
+        Array fdfTIC = baselineCorrectedEIC;
+        final Index idx = fdfTIC.getIndex();
+        final int size = fdfTIC.getShape()[0];
+        int startIndex = -1;
+        int stopIndex = -1;
+        final int apexIndex = scanIndex;
+        int r = scanIndex + 1;
+        int l = scanIndex - 1;
+        // start at peak apex = scanIndex
+        // order: prev, current, next
+        RingBuffer<Double> rb = new RingBuffer<>(3);
+        double oldest = fdfTIC.getDouble(idx.set(apexIndex));
+        double previous = fdfTIC.getDouble(idx.set(Math.min(size - 1, r)));
+        double current = fdfTIC.getDouble(idx.set(Math.min(size - 1, ++r)));
+        rb.push(oldest);
+        rb.push(previous);
+        rb.push(current);
+        while ((r < size)) {
+            if (PeakFinderUtils.isMinimum(rb.oldest(), rb.previous(), rb.current())) {
+                stopIndex = r - 2;
+                break;
+            }
+            if (tdEIC.getDouble(r) >= 0 && sdEIC.getDouble(r) <= 0
+                    && fdEIC.getDouble(r) >= 0) {
+                stopIndex = r - 1;
+                break;
+            }
+            rb.push(fdfTIC.getDouble(idx.set(Math.min(size - 1, r))));
+            r++;
+        }
+        stopIndex = Math.min(stopIndex, size - 1);
+
+        // start at peak apex = scanIndex
+        // order: prev, current, next
+        RingBuffer<Double> rb2 = new RingBuffer<>(3);
+        oldest = fdfTIC.getDouble(idx.set(apexIndex));
+        previous = fdfTIC.getDouble(idx.set(Math.max(0, l)));
+        current = fdfTIC.getDouble(idx.set(Math.max(0, --l)));
+        rb2.push(oldest);
+        rb2.push(previous);
+        rb2.push(current);
+        // decrease scan index
+        while ((l >= 0)) {
+            if (PeakFinderUtils.isMinimum(rb2.current(), rb2.previous(), rb2.oldest())) {
+                startIndex = l + 2;
+                break;
+            }
+            if (tdEIC.getDouble(l) < 0 && sdEIC.getDouble(l) > 0
+                    && fdEIC.getDouble(l) < 0) {
+                startIndex = l + 1;
+                break;
+            }
+            rb2.push(fdfTIC.getDouble(idx.set(Math.max(0, l))));
+            l--;
+        }
+        startIndex = Math.max(0, startIndex);
+
+        log.debug("start: {}, stop: {}", startIndex, stopIndex);
+        final Peak1D pb = Peak1D.builder1D().
+            startIndex(startIndex).
+            apexIndex(apexIndex).
+            stopIndex(stopIndex).
+        build();
+        pb.setFile(chromatogram.getUri().toString());
+        if (integrateRawEic) {
+            integratePeak(pb, rawEIC);
+        } else {
+            integratePeak(pb, baselineCorrectedEIC);
+        }
+        return pb;
+    }
+
+    /**
+     * Performs peak area integration within the area defined by Peak1D.
+     *
+     * @param pb
+     * @param tic
+     * @return
+     */
+    private double integratePeak(final Peak1D pb, final Array tic) {
+        double s = -1;
+        log.debug("Using EIC based integration!");
+        final Index ticIndex = tic.getIndex();
+        for (int i = pb.getStartIndex(); i <= pb.getStopIndex(); i++) {
+            s += (tic.getDouble(ticIndex.set(i)));
+        }
+        pb.setArea(s);
+        pb.setApexIntensity(tic.getDouble(ticIndex.set(pb.getApexIndex())));
+        log.debug("Raw peak area: {}", s);
+        return s;
+    }
+
+    /**
+     * <p>findPeakAreas.</p>
+     *
+     * @param chromatogram a {@link cross.datastructures.fragments.IFileFragment} object.
+     * @param ts a {@link java.util.List} object.
+     * @param rawEIC a {@link ucar.ma2.Array} object.
+     * @param baselineCorrectedEIC a {@link ucar.ma2.Array} object.
+     * @param snr an array of double.
+     * @return a {@link java.util.List} object.
+     */
+    public List<Peak1D> findPeakAreas(final IFileFragment chromatogram,
+            final List<Integer> ts, final Array rawEIC,
+            final Array baselineCorrectedEIC, final double[] snr) {
+        final ArrayList<Peak1D> pbs = new ArrayList<>();
+        Array scanAcquisitionTime = chromatogram.getChild("scan_acquisition_time").getArray();
+        log.debug("Using EIC based peak integration");
+        FirstDerivativeFilter fdf = new FirstDerivativeFilter();
+        Array fdTIC = fdf.apply(baselineCorrectedEIC);
+        Array sdTIC = fdf.apply(fdTIC);
+        Array tdTIC = fdf.apply(sdTIC);
+        for (final Integer scanApex : ts) {
+            log.debug("Adding peak at scan index {}", scanApex);
+            final Peak1D pb = getPeakBoundsByEIC(chromatogram, scanApex,
+                    rawEIC,
+                    baselineCorrectedEIC, fdTIC, sdTIC, tdTIC);
+            if (pb != null && pb.getArea() > 0) {
+                pb.setSnr(snr[pb.getApexIndex()]);
+                pb.setApexTime(scanAcquisitionTime.getDouble(pb.getApexIndex()));
+                pb.setStartTime(scanAcquisitionTime.getDouble(pb.getStartIndex()));
+                pb.setStopTime(scanAcquisitionTime.getDouble(pb.getStopIndex()));
+                pbs.add(pb);
+            }
+        }
+        Rectangle2D.Double l1 = null;
+        Peak1D prev = null;
+        log.debug(
+                "Checking peak areas for overlapping or completely contained peaks!");
+        List<Peak1D> overlaps = new ArrayList<>();
+        for (Peak1D peak : pbs) {
+            if (l1 == null) {
+                l1 = new Rectangle2D.Double(peak.getStartIndex(), 0, peak.getStopIndex()
+                        - peak.getStartIndex(), 1);
+                prev = peak;
+            } else {
+                Rectangle2D.Double l2 = new Rectangle2D.Double(peak.getStartIndex(), 0, peak.getStopIndex()
+                        - peak.getStartIndex(), 1);
+                if (l1.intersects(l2) || l1.contains(l2) || l2.contains(l1)) {
+                    log.warn("Peak area overlap detected!");
+                    overlaps.add(prev);
+                    overlaps.add(peak);
+                }
+                l1 = l2;
+                prev = peak;
+            }
+        }
+        if (overlaps.size() > 0) {
+            log.info("Overlapping peaks: {}", overlaps);
+        }
+
+        return pbs;
+    }
+
+    /**
+     * @param correctedtic
+     * @return
+     */
+    private Array applyFilters(final Array correctedtic) {
+        final Array filteredtic = BatchFilter.applyFilters(correctedtic,
+                this.filter);
+        return filteredtic;
+    }
+
+    /**
+     * <p>findPeakPositions.</p>
+     *
+     * @param tic a {@link ucar.ma2.Array} object.
+     * @param sat a {@link ucar.ma2.Array} object.
+     * @return a {@link maltcms.commands.fragments.peakfinding.ticPeakFinder.PeakPositionsResultSet} object.
+     */
+    public PeakPositionsResultSet findPeakPositions(Array tic, Array sat) {
+        EvalTools.notNull(tic, this);
+        Array correctedtic = null;
+        final ArrayList<Integer> ts = new ArrayList<>();
+        log.debug("Value\tLow\tMedian\tHigh\tDev\tGTMedian\tSNR");
+
+        double[] ticValues = (double[]) tic.get1DJavaArray(double.class
+        );
+        correctedtic = applyFilters(tic.copy());
+        double[] snrValues = new double[ticValues.length];
+        double[] satValues = (double[]) sat.get1DJavaArray(double.class);
+        double[] cticValues = (double[]) correctedtic.get1DJavaArray(
+                double.class);
+        PolynomialSplineFunction baselineEstimatorFunction = baselineEstimator.findBaseline(satValues, cticValues);
+        for (int i = 0;
+                i < snrValues.length;
+                i++) {
+            double snr = Double.NEGATIVE_INFINITY;
+            try {
+                double ratio = (cticValues[i])
+                        / baselineEstimatorFunction.value(sat.getDouble(i));
+                snr = 20.0d * Math.log10(ratio);
+            } catch (ArgumentOutsideDomainException ex) {
+                Logger.getLogger(EICPeakFinderWorker.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            snrValues[i] = Double.isInfinite(snr) ? 0 : snr;
+        }
+
+        log.debug(
+                "SNR: {}", Arrays.toString(snrValues));
+        final double threshold = this.peakThreshold;
+        for (int i = 0;
+                i < ticValues.length;
+                i++) {
+            log.debug("i=" + i);
+            PeakFinderUtils.checkExtremum(cticValues, snrValues, ts, threshold, i,
+                    this.peakSeparationWindow);
+        }
+        PeakPositionsResultSet pprs = new PeakPositionsResultSet(correctedtic,
+                createPeakCandidatesArray(tic, ts), snrValues, ts, baselineEstimatorFunction);
+        return pprs;
+    }
+
+    private ArrayInt.D1 createPeakCandidatesArray(final Array tic,
+            final ArrayList<Integer> ts) {
+        EvalTools.notNull(ts, this);
+        final ArrayInt.D1 extr = new ArrayInt.D1(ts.size(), false);
+        for (int i = 0; i < ts.size(); i++) {
+            extr.set(i, ts.get(i));
+        }
+        return extr;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import maltcms.math.functions.IArraySimilarity;
+import maltcms.math.functions.IScalarSimilarity;
+import maltcms.math.functions.ProductSimilarity;
+import maltcms.math.functions.similarities.ArrayCos;
+import maltcms.math.functions.similarities.GaussianDifferenceSimilarity;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+/**
+ * Compares {@link CompactPeakEdgeMap} with {@link HashPeakEdgeMap}.
+ *
+ * @author Nils Hoffmann
+ */
+public class CompactPeakEdgeMapTest {
+
+    private List<IBipacePeak> createPeaks(Random r, int n, String association, int associationId) {
+        List<IBipacePeak> peaks = new ArrayList<>();
+        double rt = 100.0d;
+        for (int i = 0; i < n; i++) {
+            rt += r.nextInt(3);
+            double[] spectrum = new double[20];
+            for (int j = 0; j < spectrum.length; j++) {
+                spectrum[j] = 1.0d + 1000.0d * r.nextDouble();
+            }
+            peaks.add(new PeakNG(i, Array.makeFromJavaArray(spectrum), rt, association, associationId));
+        }
+        return peaks;
+    }
+
+    private void assertEdgeEquals(IPeakEdgeMap expected, IPeakEdgeMap actual, long key) {
+        Assert.assertEquals(expected.getSimilarity(key), actual.getSimilarity(key), 0.0d);
+        Assert.assertEquals(expected.getTargetPeakId(key), actual.getTargetPeakId(key));
+        PeakEdge e = expected.get(key);
+        PeakEdge a = actual.get(key);
+        if (e == null) {
+            Assert.assertNull(a);
+        } else {
+            Assert.assertEquals(e.getSourcePeakId(), a.getSourcePeakId());
+            Assert.assertEquals(e.getTargetPeakId(), a.getTargetPeakId());
+            Assert.assertEquals(e.getSimilarity(), a.getSimilarity(), 0.0d);
+        }
+    }
+
+    /**
+     * Test that best hits are retained as by HashPeakEdgeMap, including
+     * ties, where the first edge is kept.
+     */
+    @Test
+    public void testBestHitLookups() {
+        Random r = new Random(3L);
+        List<List<IBipacePeak>> peakLists = Arrays.asList(
+                createPeaks(r, 40, "a", 0), createPeaks(r, 30, "b", 1),
+                createPeaks(r, 50, "c", 2));
+        HashPeakEdgeMap expected = new HashPeakEdgeMap();
+        CompactPeakEdgeMap actual = new CompactPeakEdgeMap(peakLists);
+        for (int k = 0; k < 5000; k++) {
+            List<IBipacePeak> l = peakLists.get(r.nextInt(peakLists.size()));
+            List<IBipacePeak> m = peakLists.get(r.nextInt(peakLists.size()));
+            IBipacePeak p = l.get(r.nextInt(l.size()));
+            IBipacePeak q = m.get(r.nextInt(m.size()));
+            //coarse similarities to create ties
+            double d = r.nextInt(20) / 20.0d;
+            p.addSimilarity(expected, q, d);
+            p.addSimilarity(actual, q, d);
+        }
+        Assert.assertEquals(expected.size(), actual.size());
+        for (List<IBipacePeak> l : peakLists) {
+            for (IBipacePeak p : l) {
+                for (List<IBipacePeak> m : peakLists) {
+                    int associationId = m.get(0).getAssociationId();
+                    assertEdgeEquals(expected, actual, p.keyTo(associationId));
+                    Assert.assertEquals(p.getPeakWithHighestSimilarity(expected, associationId),
+                            p.getPeakWithHighestSimilarity(actual, associationId));
+                    for (IBipacePeak q : m) {
+                        Assert.assertEquals(p.getSimilarity(expected, q), p.getSimilarity(actual, q), 0.0d);
+                        Assert.assertEquals(p.isBidiBestHitFor(expected, q), p.isBidiBestHitFor(actual, q));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test lookups of keys without an edge.
+     */
+    @Test
+    public void testMisses() {
+        Random r = new Random(5L);
+        List<IBipacePeak> a = createPeaks(r, 10, "a", 0);
+        List<IBipacePeak> b = createPeaks(r, 10, "b", 1);
+        IBipacePeak unknown = createPeaks(r, 1, "c", 1).get(0);
+        CompactPeakEdgeMap map = new CompactPeakEdgeMap(Arrays.asList(a, b));
+        IBipacePeak p = a.get(0);
+        long[] misses = new long[]{
+            //no edge added yet
+            p.keyTo(1),
+            //association ids out of range
+            p.keyTo(2), p.keyTo(-1),
+            //unknown source peak
+            unknown.keyTo(0)};
+        for (long key : misses) {
+            Assert.assertTrue(Double.isNaN(map.getSimilarity(key)));
+            Assert.assertNull(map.getTargetPeakId(key));
+            Assert.assertNull(map.get(key));
+            map.remove(key);
+        }
+        Assert.assertEquals(0, map.size());
+        Assert.assertNull(p.getPeakWithHighestSimilarity(map, 1));
+        Assert.assertTrue(p.getPeaksSortedBySimilarity(map, 1).isEmpty());
+        Assert.assertTrue(Double.isNaN(p.getSimilarity(map, b.get(0))));
+
+        p.addSimilarity(map, b.get(0), 0.5d);
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(0.5d, map.getSimilarity(p.keyTo(1)), 0.0d);
+        Assert.assertEquals(b.get(0).getUniqueId(), map.getTargetPeakId(p.keyTo(1)));
+        //edge to another than the best hit peak
+        Assert.assertTrue(Double.isNaN(p.getSimilarity(map, b.get(1))));
+        //NaN and infinite similarities are ignored
+        p.addSimilarity(map, b.get(1), Double.NaN);
+        p.addSimilarity(map, b.get(1), Double.POSITIVE_INFINITY);
+        Assert.assertEquals(b.get(0).getUniqueId(), map.getTargetPeakId(p.keyTo(1)));
+
+        p.clearSimilarities(map, 1);
+        Assert.assertEquals(0, map.size());
+        Assert.assertTrue(Double.isNaN(map.getSimilarity(p.keyTo(1))));
+        Assert.assertNull(map.getTargetPeakId(p.keyTo(1)));
+        Assert.assertNull(map.get(p.keyTo(1)));
+        try {
+            map.put(p.keyTo(1), p, unknown, 1.0d);
+            Assert.fail("Expected IllegalArgumentException for unknown target peak!");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Test that a worker filling a shared compact map creates the same edges
+     * as a worker returning the edges of its local map.
+     */
+    @Test
+    public void testWorkerFillsSharedMap() {
+        Random r = new Random(9L);
+        List<IBipacePeak> lhsPeaks = createPeaks(r, 150, "lhs", 0);
+        List<IBipacePeak> rhsPeaks = createPeaks(r, 200, "rhs", 1);
+        PeakSpectrumStore lhsStore = new PeakSpectrumStore(lhsPeaks);
+        PeakSpectrumStore rhsStore = new PeakSpectrumStore(rhsPeaks);
+        ProductSimilarity ps = new ProductSimilarity();
+        ps.setScalarSimilarities(new IScalarSimilarity[]{new GaussianDifferenceSimilarity()});
+        ps.setArraySimilarities(new IArraySimilarity[]{new ArrayCos()});
+        PairwiseSimilarityResult local = new PairwiseSimilarityWorker("lhs-rhs",
+                "lhs", "rhs", lhsPeaks, rhsPeaks, ps.copy(), false, null,
+                10.0d, lhsStore, rhsStore, null, null, null).call();
+        HashPeakEdgeMap expected = new HashPeakEdgeMap();
+        for (int i = 0; i < local.getPeakEdgeKeys().length; i++) {
+            expected.put(local.getPeakEdgeKeys()[i], local.getPeakEdgeValues()[i]);
+        }
+        Assert.assertTrue(expected.size() > 0);
+
+        CompactPeakEdgeMap actual = new CompactPeakEdgeMap(Arrays.asList(lhsPeaks, rhsPeaks));
+        PairwiseSimilarityResult shared = new PairwiseSimilarityWorker("lhs-rhs",
+                "lhs", "rhs", lhsPeaks, rhsPeaks, ps.copy(), false, null,
+                10.0d, lhsStore, rhsStore, null, null, actual).call();
+        Assert.assertEquals(0, shared.getPeakEdgeKeys().length);
+        Assert.assertEquals(0, shared.getPeakEdgeValues().length);
+        Assert.assertEquals(local.getCandidatePairs(), shared.getCandidatePairs());
+        Assert.assertEquals(new ArrayList<>(local.getBbhPeaks()), new ArrayList<>(shared.getBbhPeaks()));
+        Assert.assertEquals(expected.size(), actual.size());
+        for (IBipacePeak p : lhsPeaks) {
+            assertEdgeEquals(expected, actual, p.keyTo(1));
+        }
+        for (IBipacePeak p : rhsPeaks) {
+            assertEdgeEquals(expected, actual, p.keyTo(0));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import maltcms.math.functions.IArraySimilarity;
+import maltcms.math.functions.IScalarSimilarity;
+import maltcms.math.functions.ProductSimilarity;
+import maltcms.math.functions.similarities.ArrayCos;
+import maltcms.math.functions.similarities.GaussianDifferenceSimilarity;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+/**
+ * Compares the retention time window sweep of {@link PairwiseSimilarityWorker}
+ * and {@link PairwiseSimilarityWorker2D} with an exhaustive loop over all peak
+ * pairs.
+ *
+ * @author Nils Hoffmann
+ */
+public class PairwiseSimilarityWorkerTest {
+
+    private static final double RT_STEP = 0.5d;
+
+    private double[] createSpectrum(Random r, int dimension) {
+        double[] spectrum = new double[dimension];
+        for (int j = 0; j < dimension; j++) {
+            spectrum[j] = 1.0d + 1000.0d * r.nextDouble();
+        }
+        return spectrum;
+    }
+
+    /**
+     * Creates peaks in ascending retention time order. Retention times are
+     * multiples of {@link #RT_STEP}, so that several peaks share a retention
+     * time and retention time differences hit the window bounds exactly.
+     */
+    private List<IBipacePeak> createPeaks(Random r, int n, String association, int associationId) {
+        List<IBipacePeak> peaks = new ArrayList<>();
+        double rt = 100.0d;
+        for (int i = 0; i < n; i++) {
+            rt += RT_STEP * r.nextInt(3);
+            peaks.add(new PeakNG(i, Array.makeFromJavaArray(createSpectrum(r, 20)), rt, association, associationId));
+        }
+        return peaks;
+    }
+
+    private List<IBipacePeak> createPeaks2D(Random r, int n, String association, int associationId) {
+        List<IBipacePeak> peaks = new ArrayList<>();
+        double rt1 = 100.0d;
+        for (int i = 0; i < n; i++) {
+            rt1 += RT_STEP * r.nextInt(3);
+            Peak2D p = new Peak2D(i, Array.makeFromJavaArray(createSpectrum(r, 20)), rt1, association, associationId);
+            p.setFirstColumnElutionTime(rt1);
+            p.setSecondColumnElutionTime(RT_STEP * r.nextInt(8));
+            peaks.add(p);
+        }
+        return peaks;
+    }
+
+    private ProductSimilarity similarity(int dimensions) {
+        ProductSimilarity ps = new ProductSimilarity();
+        IScalarSimilarity[] scalarSimilarities = new IScalarSimilarity[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            scalarSimilarities[i] = new GaussianDifferenceSimilarity();
+        }
+        ps.setScalarSimilarities(scalarSimilarities);
+        ps.setArraySimilarities(new IArraySimilarity[]{new ArrayCos()});
+        return ps;
+    }
+
+    private Map<Long, PeakEdge> edges(PairwiseSimilarityResult result) {
+        Map<Long, PeakEdge> edges = new HashMap<>();
+        for (int i = 0; i < result.getPeakEdgeKeys().length; i++) {
+            edges.put(result.getPeakEdgeKeys()[i], result.getPeakEdgeValues()[i]);
+        }
+        return edges;
+    }
+
+    private Map<Long, PeakEdge> edges(HashPeakEdgeMap edgeMap) {
+        long[] keys = new long[edgeMap.size()];
+        PeakEdge[] values = new PeakEdge[edgeMap.size()];
+        edgeMap.copyTo(keys, values);
+        Map<Long, PeakEdge> edges = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            edges.put(keys[i], values[i]);
+        }
+        return edges;
+    }
+
+    private void assertEdgesEqual(Map<Long, PeakEdge> expected, Map<Long, PeakEdge> actual) {
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Long, PeakEdge> e : expected.entrySet()) {
+            PeakEdge a = actual.get(e.getKey());
+            Assert.assertEquals(e.getValue().getSourcePeakId(), a.getSourcePeakId());
+            Assert.assertEquals(e.getValue().getTargetPeakId(), a.getTargetPeakId());
+            Assert.assertEquals(e.getValue().getSimilarity(), a.getSimilarity(), 0.0d);
+        }
+    }
+
+    /**
+     * Test that the sweep over retention time sorted peaks creates the same
+     * edges as scoring all peak pairs, of class PairwiseSimilarityWorker.
+     */
+    @Test
+    public void testSweepEqualsExhaustive() {
+        Random r = new Random(7L);
+        List<IBipacePeak> lhsPeaks = createPeaks(r, 150, "lhs", 0);
+        List<IBipacePeak> rhsPeaks = createPeaks(r, 400, "rhs", 1);
+        PeakSpectrumStore lhsStore = new PeakSpectrumStore(lhsPeaks);
+        PeakSpectrumStore rhsStore = new PeakSpectrumStore(rhsPeaks);
+        ProductSimilarity ps = similarity(1);
+        //windows smaller than one block, at the retention time grid and
+        //larger than the rhs block size
+        for (double maxRTDifference : new double[]{RT_STEP, 2.0d, 7.25d, 1000.0d}) {
+            HashPeakEdgeMap expected = new HashPeakEdgeMap();
+            double[] block = new double[lhsStore.size() * rhsStore.size()];
+            new SpectrumBlockKernel(ps.copy()).score(lhsStore, 0, lhsStore.size(),
+                    rhsStore, 0, rhsStore.size(), maxRTDifference, block);
+            long candidatePairs = 0;
+            boolean boundary = false;
+            for (int i = 0; i < lhsStore.size(); i++) {
+                for (int j = 0; j < rhsStore.size(); j++) {
+                    double delta = Math.abs(lhsStore.getRt(i) - rhsStore.getRt(j));
+                    boundary |= delta == maxRTDifference;
+                    double d = block[i * rhsStore.size() + j];
+                    Assert.assertEquals(delta < maxRTDifference, !Double.isNaN(d));
+                    if (!Double.isNaN(d)) {
+                        candidatePairs++;
+                        lhsStore.getPeak(i).addSimilarity(expected, rhsStore.getPeak(j), d);
+                        rhsStore.getPeak(j).addSimilarity(expected, lhsStore.getPeak(i), d);
+                    }
+                }
+            }
+            if (maxRTDifference <= 2.0d) {
+                Assert.assertTrue(boundary);
+            }
+            PairwiseSimilarityWorker worker = new PairwiseSimilarityWorker("lhs-rhs",
+                    "lhs", "rhs", lhsPeaks, rhsPeaks, ps.copy(), false, null,
+                    maxRTDifference, lhsStore, rhsStore, null, null, null);
+            PairwiseSimilarityResult result = worker.call();
+            Assert.assertEquals(candidatePairs, result.getCandidatePairs());
+            Assert.assertEquals((long) lhsStore.size() * rhsStore.size(), result.getTotalPairs());
+            assertEdgesEqual(edges(expected), edges(result));
+        }
+    }
+
+    /**
+     * Test that the sweep over first column elution time sorted peaks creates
+     * the same edges as scoring all peak pairs, of class
+     * PairwiseSimilarityWorker2D.
+     */
+    @Test
+    public void testSweepEqualsExhaustive2D() {
+        Random r = new Random(11L);
+        List<IBipacePeak> lhsPeaks = createPeaks2D(r, 120, "lhs", 0);
+        List<IBipacePeak> rhsPeaks = createPeaks2D(r, 140, "rhs", 1);
+        ProductSimilarity ps = similarity(2);
+        for (double maxRTDifferenceRt1 : new double[]{RT_STEP, 2.0d, 7.25d, 1000.0d}) {
+            double maxRTDifferenceRt2 = 1.0d;
+            HashPeakEdgeMap expected = new HashPeakEdgeMap();
+            long candidatePairs = 0;
+            for (IBipacePeak lhs : lhsPeaks) {
+                Peak2D p1 = (Peak2D) lhs;
+                for (IBipacePeak rhs : rhsPeaks) {
+                    Peak2D p2 = (Peak2D) rhs;
+                    if (Math.abs(p1.getFirstColumnElutionTime() - p2.getFirstColumnElutionTime()) < maxRTDifferenceRt1
+                            && Math.abs(p1.getSecondColumnElutionTime() - p2.getSecondColumnElutionTime()) < maxRTDifferenceRt2) {
+                        double d = ps.apply(new double[]{p1.getFirstColumnElutionTime(), p1.getSecondColumnElutionTime()},
+                                new double[]{p2.getFirstColumnElutionTime(), p2.getSecondColumnElutionTime()},
+                                p1.getMsIntensities(), p2.getMsIntensities());
+                        p1.addSimilarity(expected, p2, d);
+                        p2.addSimilarity(expected, p1, d);
+                        candidatePairs++;
+                    }
+                }
+            }
+            PairwiseSimilarityWorker2D worker = new PairwiseSimilarityWorker2D("lhs-rhs",
+                    "lhs", "rhs", lhsPeaks, rhsPeaks, ps.copy(), false, null,
+                    maxRTDifferenceRt1, maxRTDifferenceRt2, null);
+            PairwiseSimilarityResult result = worker.call();
+            Assert.assertEquals(candidatePairs, result.getCandidatePairs());
+            assertEdgesEqual(edges(expected), edges(result));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class PeakSpectrumStoreTest {
+
+    private List<IBipacePeak> createPeaks(double[][] spectra, double[] rts, boolean reverse) {
+        List<IBipacePeak> peaks = new ArrayList<>();
+        for (int i = 0; i < spectra.length; i++) {
+            int k = reverse ? spectra.length - 1 - i : i;
+            peaks.add(new PeakNG(k, Array.makeFromJavaArray(spectra[k]), rts[k], "chrom", 0));
+        }
+        return peaks;
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testContentHashIndependentOfPeakCreationOrder() {
+        Random r = new Random(42);
+        int peaks = 20;
+        double[][] spectra = new double[peaks][50];
+        double[] rts = new double[peaks];
+        for (int i = 0; i < peaks; i++) {
+            for (int j = 0; j < spectra[i].length; j++) {
+                spectra[i][j] = r.nextDouble() * 1000.0d;
+            }
+            rts[i] = 100.0d + i * 2.5d;
+        }
+        List<IBipacePeak> forward = createPeaks(spectra, rts, false);
+        List<IBipacePeak> backward = createPeaks(spectra, rts, true);
+        Collections.shuffle(backward, r);
+        PeakSpectrumStore a = new PeakSpectrumStore(forward);
+        PeakSpectrumStore b = new PeakSpectrumStore(backward);
+        Assert.assertNotEquals(a.getPeakId(0), b.getPeakId(0));
+        Assert.assertEquals(a.getContentHash(), b.getContentHash());
+        //ids created later in the same run must not change the hash
+        PeakSpectrumStore c = new PeakSpectrumStore(createPeaks(spectra, rts, false));
+        Assert.assertEquals(a.getContentHash(), c.getContentHash());
+        spectra[3][7] += 1.0d;
+        PeakSpectrumStore d = new PeakSpectrumStore(createPeaks(spectra, rts, false));
+        Assert.assertNotEquals(a.getContentHash(), d.getContentHash());
+    }
+}
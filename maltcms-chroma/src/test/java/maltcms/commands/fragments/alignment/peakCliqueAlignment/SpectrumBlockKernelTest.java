@@ -0,0 +1,136 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import maltcms.math.functions.IArraySimilarity;
+import maltcms.math.functions.IScalarSimilarity;
+import maltcms.math.functions.ProductSimilarity;
+import maltcms.math.functions.similarities.ArrayCorr;
+import maltcms.math.functions.similarities.ArrayCos;
+import maltcms.math.functions.similarities.ArrayDot;
+import maltcms.math.functions.similarities.GaussianDifferenceSimilarity;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class SpectrumBlockKernelTest {
+
+    private List<IBipacePeak> createPeaks(Random r, int n, int dimension, int offset) {
+        List<IBipacePeak> peaks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double[] spectrum = new double[dimension];
+            switch (i % 6) {
+                case 0:
+                    //zero spectrum
+                    break;
+                case 1:
+                    //constant spectrum
+                    Arrays.fill(spectrum, 123.456d);
+                    break;
+                case 2:
+                    //single mass
+                    spectrum[r.nextInt(dimension)] = 1000.0d * r.nextDouble();
+                    break;
+                default:
+                    for (int j = 0; j < dimension; j++) {
+                        spectrum[j] = r.nextInt(3) == 0 ? 0.0d : 1000.0d * r.nextDouble();
+                    }
+            }
+            peaks.add(new PeakNG(offset + i, Array.makeFromJavaArray(spectrum),
+                    100.0d + 2.0d * r.nextDouble() * i, "chrom" + offset, 0));
+        }
+        return peaks;
+    }
+
+    private ProductSimilarity similarity(IArraySimilarity... arraySimilarities) {
+        ProductSimilarity ps = new ProductSimilarity();
+        ps.setScalarSimilarities(new IScalarSimilarity[]{new GaussianDifferenceSimilarity()});
+        ps.setArraySimilarities(arraySimilarities);
+        return ps;
+    }
+
+    /**
+     * Test that packed scores match ProductSimilarity#apply for every array
+     * similarity evaluated on the packed spectra, of class
+     * SpectrumBlockKernel.
+     */
+    @Test
+    public void testPackedScoresMatchProductSimilarity() {
+        Random r = new Random(42L);
+        PeakSpectrumStore lhs = new PeakSpectrumStore(createPeaks(r, 30, 40, 0));
+        PeakSpectrumStore rhs = new PeakSpectrumStore(createPeaks(r, 25, 40, 100));
+        ArrayCorr rsquared = new ArrayCorr();
+        rsquared.setReturnCoeffDetermination(true);
+        ArrayCos minimumCos = new ArrayCos();
+        minimumCos.setMinimumSimilarity(0.5d);
+        List<ProductSimilarity> similarities = new ArrayList<>();
+        similarities.add(similarity(new ArrayDot()));
+        similarities.add(similarity(new ArrayCos()));
+        similarities.add(similarity(minimumCos));
+        similarities.add(similarity(new ArrayCorr()));
+        similarities.add(similarity(rsquared));
+        similarities.add(similarity(new ArrayCos(), new ArrayCorr()));
+        double[] out = new double[lhs.size() * rhs.size()];
+        for (ProductSimilarity ps : similarities) {
+            boolean correlation = false;
+            for (IArraySimilarity as : ps.getArraySimilarities()) {
+                correlation |= as instanceof ArrayCorr;
+            }
+            SpectrumBlockKernel kernel = new SpectrumBlockKernel(ps.copy());
+            Assert.assertTrue(kernel.isPacked());
+            Assert.assertEquals(lhs.size() * rhs.size(), kernel.score(lhs, 0,
+                    lhs.size(), rhs, 0, rhs.size(), Double.POSITIVE_INFINITY, out));
+            for (int i = 0; i < lhs.size(); i++) {
+                for (int j = 0; j < rhs.size(); j++) {
+                    double expected = ps.apply(new double[]{lhs.getRt(i)},
+                            new double[]{rhs.getRt(j)},
+                            lhs.getPeak(i).getMsIntensities(),
+                            rhs.getPeak(j).getMsIntensities());
+                    double actual = out[i * rhs.size() + j];
+                    String msg = ps.getArraySimilarities()[0] + " " + i + "," + j;
+                    if (Double.isNaN(expected) || Double.isInfinite(expected)) {
+                        Assert.assertEquals(msg, expected, actual, 0.0d);
+                    } else if (correlation) {
+                        Assert.assertEquals(msg, expected, actual, 1.0e-7);
+                    } else {
+                        Assert.assertEquals(msg, expected, actual,
+                                1.0e-10 * Math.max(1.0d, Math.abs(expected)));
+                    }
+                }
+            }
+        }
+    }
+}
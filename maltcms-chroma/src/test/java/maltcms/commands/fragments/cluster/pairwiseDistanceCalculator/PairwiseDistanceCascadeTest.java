@@ -0,0 +1,130 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.cluster.pairwiseDistanceCalculator;
+
+import java.util.Random;
+import maltcms.math.window.SlidingWindow;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class PairwiseDistanceCascadeTest {
+
+    private double[] randomProfile(Random r, int length, int resolution) {
+        final double[] v = new double[length];
+        final double center = r.nextInt(length);
+        final double width = 5 + r.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            v[i] = Math.exp(-Math.pow((i - center) / width, 2))
+                    * (1 + r.nextInt(3)) + 0.1 * r.nextDouble();
+        }
+        return PairwiseDistanceCascade.profile(Array.factory(v), resolution);
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testLbKeoghIsLowerBoundOfDtw() {
+        final Random r = new Random(42);
+        for (int t = 0; t < 500; t++) {
+            final int resolution = 16 + r.nextInt(64);
+            final int band = 1 + r.nextInt(8);
+            final double[] q = randomProfile(r, 100 + r.nextInt(200), resolution);
+            final double[] c = randomProfile(r, 100 + r.nextInt(200), resolution);
+            final double lb = PairwiseDistanceCascade.lbKeogh(
+                    SlidingWindow.max(q, band), SlidingWindow.min(q, band), c);
+            final double dtw = PairwiseDistanceCascade.dtw(q, c, band);
+            Assert.assertTrue("LB_Keogh " + lb + " exceeds DTW " + dtw,
+                    lb <= dtw + 1.0e-9 * Math.max(1.0, dtw));
+        }
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testEstimateIsNeverBetterThanWorstComputedValue() {
+        final Random r = new Random(42);
+        for (final boolean minimize : new boolean[]{true, false}) {
+            for (int t = 0; t < 100; t++) {
+                final int n = 3 + r.nextInt(12);
+                final double[][] correlations = new double[n][n];
+                final boolean[][] computed = new boolean[n][n];
+                final ArrayDouble.D2 values = new ArrayDouble.D2(n, n);
+                for (int i = 0; i < n; i++) {
+                    correlations[i][i] = 1.0;
+                    for (int j = i + 1; j < n; j++) {
+                        correlations[i][j] = correlations[j][i] = 2.0 * r.nextDouble() - 1.0;
+                        // every row keeps at least one computed pair
+                        if (j == i + 1 || r.nextDouble() < 0.3) {
+                            computed[i][j] = computed[j][i] = true;
+                            final double v = 10.0 * r.nextDouble();
+                            values.set(i, j, v);
+                            values.set(j, i, v);
+                        }
+                    }
+                }
+                final double[] worst = new double[n];
+                for (int i = 0; i < n; i++) {
+                    worst[i] = minimize ? Double.NEGATIVE_INFINITY
+                            : Double.POSITIVE_INFINITY;
+                    for (int j = 0; j < n; j++) {
+                        if (computed[i][j]) {
+                            worst[i] = minimize ? Math.max(worst[i], values.get(i, j))
+                                    : Math.min(worst[i], values.get(i, j));
+                        }
+                    }
+                }
+                final PairwiseDistanceCascade cascade = new PairwiseDistanceCascade();
+                cascade.setCorrelations(correlations);
+                cascade.estimate(values, computed, minimize);
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        if (i == j || computed[i][j]) {
+                            continue;
+                        }
+                        final double v = values.get(i, j);
+                        Assert.assertFalse(Double.isNaN(v));
+                        Assert.assertEquals(v, values.get(j, i), 0.0d);
+                        if (minimize) {
+                            Assert.assertTrue(v >= worst[i] && v >= worst[j]);
+                        } else {
+                            Assert.assertTrue(v <= worst[i] && v <= worst[j]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.peakfinding;
+
+import cross.Factory;
+import cross.datastructures.fragments.FileFragment;
+import cross.datastructures.fragments.IFileFragment;
+import cross.test.LogMethodName;
+import cross.test.SetupLogging;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import maltcms.commands.filters.array.AArrayFilter;
+import maltcms.commands.filters.array.SavitzkyGolayFilter;
+import maltcms.commands.fragments.peakfinding.eicPeakFinder.EICPeakFinderWorkerResult;
+import maltcms.commands.fragments.peakfinding.ticPeakFinder.PeakPositionsResultSet;
+import maltcms.datastructures.peak.Peak1D;
+import maltcms.tools.MaltcmsTools;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class EICPeakFinderTest {
+
+    @Rule
+    public TemporaryFolder tf = new TemporaryFolder();
+    @Rule
+    public SetupLogging sl = new SetupLogging();
+    @Rule
+    public LogMethodName lmn = new LogMethodName();
+
+    private static final int SCANS = 400;
+    private static final int MASSES = 30;
+    private static final double MIN_MASS = 50.0d;
+
+    /**
+     * Creates a chromatogram with noise on all mass channels and a few
+     * gaussian peaks on every third mass channel.
+     */
+    private IFileFragment createTestFragment() throws IOException {
+        Random r = new Random(23);
+        double[] sats = new double[SCANS];
+        int[] scanIndex = new int[SCANS];
+        double[] massRangeMin = new double[SCANS];
+        double[] massRangeMax = new double[SCANS];
+        double[] tic = new double[SCANS];
+        double[] masses = new double[SCANS * MASSES];
+        double[] intensities = new double[SCANS * MASSES];
+        double[][] apices = new double[MASSES][];
+        for (int m = 0; m < MASSES; m += 3) {
+            apices[m] = new double[]{40 + r.nextInt(80), 160 + r.nextInt(80), 280 + r.nextInt(80)};
+        }
+        for (int i = 0; i < SCANS; i++) {
+            sats[i] = 300.0d + i * 0.5d;
+            scanIndex[i] = i * MASSES;
+            massRangeMin[i] = MIN_MASS;
+            massRangeMax[i] = MIN_MASS + MASSES - 1;
+            for (int m = 0; m < MASSES; m++) {
+                double v = 10 + r.nextInt(20);
+                if (apices[m] != null) {
+                    for (double apex : apices[m]) {
+                        v += 10000.0d * Math.exp(-(i - apex) * (i - apex) / 50.0d);
+                    }
+                }
+                masses[i * MASSES + m] = MIN_MASS + m + 0.1d * r.nextDouble();
+                intensities[i * MASSES + m] = v;
+                tic[i] += v;
+            }
+        }
+        FileFragment f = new FileFragment(tf.newFile("eicPeakFinderTest.cdf"));
+        f.addChild("scan_acquisition_time").setArray(Array.makeFromJavaArray(sats));
+        f.addChild("scan_index").setArray(Array.makeFromJavaArray(scanIndex));
+        f.addChild("mass_range_min").setArray(Array.makeFromJavaArray(massRangeMin));
+        f.addChild("mass_range_max").setArray(Array.makeFromJavaArray(massRangeMax));
+        f.addChild("mass_values").setArray(Array.makeFromJavaArray(masses));
+        f.addChild("intensity_values").setArray(Array.makeFromJavaArray(intensities));
+        f.addChild("total_intensity").setArray(Array.makeFromJavaArray(tic));
+        f.save();
+        return new FileFragment(f.getUri());
+    }
+
+    private EICPeakFinder createPeakFinder() {
+        EICPeakFinder finder = new EICPeakFinder();
+        finder.setPeakThreshold(3.0d);
+        finder.setPeakSeparationWindow(10);
+        return finder;
+    }
+
+    private int getMassBins(IFileFragment f, EICPeakFinder finder) {
+        return MaltcmsTools.getNumberOfIntegerMassBins(
+                MaltcmsTools.getMinMaxMassRange(f).getFirst(),
+                MaltcmsTools.getMinMaxMassRange(f).getSecond(),
+                finder.getMassResolution());
+    }
+
+    private List<EICPeakFinderWorkerResult> findPeaks(IFileFragment f,
+            EICPeakFinder finder, int binsPerTask) throws InterruptedException,
+            ExecutionException {
+        int massBins = getMassBins(f, finder);
+        List<AArrayFilter> filters = finder.createFilters();
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<EICPeakFinderWorkerResult>> futures = new ArrayList<>();
+            for (int firstBin = 0; firstBin < massBins; firstBin += binsPerTask) {
+                futures.add(es.submit(finder.createWorker(f.getUri(), firstBin,
+                        Math.min(binsPerTask, massBins - firstBin), filters)));
+            }
+            List<EICPeakFinderWorkerResult> results = new ArrayList<>();
+            for (Future<EICPeakFinderWorkerResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    private void assertPeaksEqual(List<Peak1D> expected, List<Peak1D> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Peak1D e = expected.get(i);
+            Peak1D a = actual.get(i);
+            Assert.assertEquals(e.getMw(), a.getMw(), 0.0d);
+            Assert.assertEquals(e.getStartIndex(), a.getStartIndex());
+            Assert.assertEquals(e.getApexIndex(), a.getApexIndex());
+            Assert.assertEquals(e.getStopIndex(), a.getStopIndex());
+            Assert.assertEquals(e.getApexTime(), a.getApexTime(), 0.0d);
+            Assert.assertEquals(e.getArea(), a.getArea(), 0.0d);
+            Assert.assertEquals(e.getApexIntensity(), a.getApexIntensity(), 0.0d);
+            Assert.assertEquals(e.getSnr(), a.getSnr(), 0.0d);
+        }
+    }
+
+    /**
+     * Test that peaks found by tasks over chunks of mass bins equal those
+     * found by a single task over all mass bins, independent of the order in
+     * which the task results are merged.
+     */
+    @Test
+    public void testChunkedEqualsSingleTask() throws Exception {
+        IFileFragment f = createTestFragment();
+        EICPeakFinder finder = createPeakFinder();
+        List<Peak1D> expected = EICPeakFinder.mergeResults(findPeaks(f, finder, Integer.MAX_VALUE));
+        Assert.assertFalse(expected.isEmpty());
+        List<EICPeakFinderWorkerResult> chunked = findPeaks(f, finder, 7);
+        Assert.assertTrue(chunked.size() > 1);
+        assertPeaksEqual(expected, EICPeakFinder.mergeResults(chunked));
+        Collections.reverse(chunked);
+        assertPeaksEqual(expected, EICPeakFinder.mergeResults(chunked));
+        Collections.shuffle(chunked, new Random(5));
+        assertPeaksEqual(expected, EICPeakFinder.mergeResults(chunked));
+        //extraction without an m/z index must find the same peaks
+        String key = MaltcmsTools.class.getName() + ".useMzIndex";
+        Factory.getInstance().getConfiguration().setProperty(key, false);
+        try {
+            assertPeaksEqual(expected, EICPeakFinder.mergeResults(findPeaks(new FileFragment(f.getUri()), finder, Integer.MAX_VALUE)));
+        } finally {
+            Factory.getInstance().getConfiguration().clearProperty(key);
+        }
+    }
+
+    /**
+     * Test that the smoothing filter is added to a copy of the configured
+     * filters, instead of accumulating in the configured filters on every
+     * invocation.
+     */
+    @Test
+    public void testCreateFiltersDoesNotModifyConfiguredFilters() {
+        EICPeakFinder finder = createPeakFinder();
+        List<AArrayFilter> configured = new ArrayList<>();
+        SavitzkyGolayFilter sgf = new SavitzkyGolayFilter();
+        sgf.setWindow(5);
+        configured.add(sgf);
+        finder.setFilter(configured);
+        for (int i = 0; i < 3; i++) {
+            List<AArrayFilter> filters = finder.createFilters();
+            Assert.assertEquals(2, filters.size());
+            Assert.assertNotSame(sgf, filters.get(0));
+            Assert.assertTrue(filters.get(1) instanceof SavitzkyGolayFilter);
+            Assert.assertEquals(1, finder.getFilter().size());
+            Assert.assertSame(sgf, finder.getFilter().get(0));
+        }
+        Random r = new Random(11);
+        double[] eic = new double[200];
+        double[] sat = new double[eic.length];
+        for (int i = 0; i < eic.length; i++) {
+            eic[i] = 10 + r.nextInt(20) + 1000.0d * Math.exp(-(i - 100) * (i - 100) / 20.0d);
+            sat[i] = i;
+        }
+        PeakPositionsResultSet first = finder.findPeakPositions(Array.makeFromJavaArray(eic), Array.makeFromJavaArray(sat));
+        PeakPositionsResultSet second = finder.findPeakPositions(Array.makeFromJavaArray(eic), Array.makeFromJavaArray(sat));
+        Assert.assertArrayEquals((double[]) first.getCorrectedTIC().get1DJavaArray(double.class),
+                (double[]) second.getCorrectedTIC().get1DJavaArray(double.class), 0.0d);
+        Assert.assertEquals(first.getTs(), second.getTs());
+        Assert.assertEquals(1, finder.getFilter().size());
+    }
+}
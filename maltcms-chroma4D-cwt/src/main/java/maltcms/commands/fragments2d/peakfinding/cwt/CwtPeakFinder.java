@@ -84,6 +84,10 @@ public class CwtPeakFinder extends AFragmentCommand {
     private int minPercentile = 95;
     @Configurable(name = "var.peak_index_list", value = "peak_index_list")
     private String peakListVar = "peak_index_list";
+    @Configurable(value = "-1", description = "The parallelism of the executor used for the wavelet transform "
+            + "and ridge detection. The executor is shared by all files processed in parallel. "
+            + "Values smaller than 1 use all available processors.")
+    private int maxThreads = -1;
 
     /**
      * {@inheritDoc}
@@ -122,6 +126,7 @@ public class CwtPeakFinder extends AFragmentCommand {
             cwt.setMaxRidges(maxRidges);
             cwt.setInputFile(f.getUri());
             cwt.setMinPercentile(minPercentile);
+            cwt.setMaxThreads(maxThreads);
             log.info("Running {}", cwt);
             ics.submit(cwt);
         }
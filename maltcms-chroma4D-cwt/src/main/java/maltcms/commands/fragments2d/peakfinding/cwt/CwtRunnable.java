@@ -55,13 +55,13 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
@@ -69,6 +69,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
+import maltcms.commands.distances.SharedExecutor;
 import maltcms.commands.filters.array.FirstDerivativeFilter;
 import maltcms.commands.filters.array.MultiplicationFilter;
 import maltcms.commands.filters.array.wavelet.MexicanHatWaveletFilter;
@@ -165,6 +166,10 @@ public class CwtRunnable implements Callable<File>, IPeakPicking, Serializable {
     private int minPercentile = 95;
     @Configurable(name = "var.peak_index_list", value = "peak_index_list")
     private String peakListVar = "peak_index_list";
+    @Configurable(value = "-1", description = "The parallelism of the executor used for the wavelet transform "
+            + "and ridge detection. The executor is shared by all files processed in parallel. "
+            + "Values smaller than 1 use all available processors.")
+    private int maxThreads = -1;
 
     private QuadTree<Ridge> ridgeTree = null;
 
@@ -318,21 +323,18 @@ public class CwtRunnable implements Callable<File>, IPeakPicking, Serializable {
 
         List<Double> scales = new LinkedList<>();
 
-        final ArrayDouble.D2 scaleogram = new ArrayDouble.D2(arr.getShape()[0],
-                maxScale);
+        final double[] scaleArray = new double[maxScale];
         for (int i = 1; i <= maxScale; i++) {
-            double scale = ((double) i);
-            // log.info("Scale: " + scale);
-            cwt.setScale(scale);
-            Array res = cwt.apply(arr);
-            Index resI = res.getIndex();
-            for (int j = 0; j < res.getShape()[0]; j++) {
-                scaleogram.set(j, i - 1, res.getDouble(resI.set(j)));
-            }
-            scales.add(scale);
+            scaleArray[i - 1] = i;
+            scales.add(scaleArray[i - 1]);
         }
+        // shared by all files processed in this JVM, so that parallel files
+        // do not multiply the number of threads
+        final ExecutorService es = SharedExecutor.get(this.maxThreads);
+        final int threads = SharedExecutor.getParallelism(this.maxThreads);
+        final ArrayDouble.D2 scaleogram = cwt.applyScales(arr, scaleArray, es);
         List<Ridge> ridges = followRidgesBottomUp(minPercentileValue,
-                scaleogram, scales, minScale, maxScale);
+                scaleogram, scales, minScale, maxScale, es, threads);
         if (saveScaleogramImage) {
             saveScaleogramImage(f, scales, scaleogram, arr, sat);
         }
@@ -342,8 +344,8 @@ public class CwtRunnable implements Callable<File>, IPeakPicking, Serializable {
                     modulations, spm, ridges);
         }
         Rectangle2D.Double boundingBox = getBoundingBox(ridges, spm);
-        QuadTree<Ridge> qr = getQuadTree(ridges, boundingBox, spm);
         if (saveQuadTreeImage) {
+            QuadTree<Ridge> qr = getQuadTree(ridges, boundingBox, spm);
             QuadTreeVisualizer qtv = new QuadTreeVisualizer();
             RenderedImage qtimg = qtv.createImage(qr);//, modulationTime, Math.ceil(1.0 / scanRate));
             String fname = StringTools.removeFileExt(filename);
@@ -352,12 +354,13 @@ public class CwtRunnable implements Callable<File>, IPeakPicking, Serializable {
             ImageTools.saveImage(ImageTools.flipVertical(qtimg), "quad-tree", "png",
                     dir, null);
         }
-        List<Rank<Ridge>> ranks = new LinkedList<>();
+        List<Rank<Ridge>> ranks = new ArrayList<>(ridges.size());
         for (Ridge r : ridges) {
             ranks.add(new Rank<>(r));
         }
         filterByRidgeCost(ranks);
-        ranks = filterByRidgeNeighborhood(ranks, radius, spm, qr, maxNeighbors);
+        ranks = filterByRidgeNeighborhood(ranks, radius, spm, maxNeighbors,
+                es, threads);
         Collections.sort(ranks);
 
         ridges = filterRidges(ranks, maxRidges);
@@ -373,6 +376,30 @@ public class CwtRunnable implements Callable<File>, IPeakPicking, Serializable {
         return ridges;
     }
 
+    /**
+     * Runs the given tasks on <code>es</code> and returns their results in
+     * task order.
+     */
+    private <T> List<T> invokeAll(ExecutorService es,
+            List<Callable<T>> tasks) {
+        try {
+            List<Future<T>> futures = es.invokeAll(tasks);
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private List<Ridge> filterRidges(List<Rank<Ridge>> l, int topk) {
         RankSorter rs = new RankSorter(l);
         String[] fields = new String[]{
@@ -402,30 +429,117 @@ public class CwtRunnable implements Callable<File>, IPeakPicking, Serializable {
     }
 
     private List<Rank<Ridge>> filterByRidgeNeighborhood(List<Rank<Ridge>> r, double i,
-            int spm, QuadTree<Ridge> qt, int threshold) {
-        double[] vals = new double[r.size()];
+            int spm, int threshold, ExecutorService es, int threads) {
         log.info("Using threshold: " + threshold);
+        final double[] xs = new double[r.size()];
+        final double[] ys = new double[r.size()];
         int cnt = 0;
         for (Rank<Ridge> rank : r) {
-            Ridge ridge = rank.getRidge();
-            Point2D root = ridge.getRidgePoints().get(0).getFirst();
-            double x = root.getX() / spm;
-            double y = root.getX() % spm;
-            double v = qt.getNeighborsInRadius(new Point2D.Double(x, y), i).size();
-            vals[cnt] = v;
+            Point2D.Double root = getPointForRidge(rank.getRidge(), spm);
+            xs[cnt] = root.getX();
+            ys[cnt] = root.getY();
             cnt++;
         }
-        LinkedHashSet<Rank<Ridge>> filtered = new LinkedHashSet<>();
+        double[] vals = countNeighborsInRadius(xs, ys, i, es, threads);
+        List<Rank<Ridge>> filtered = new ArrayList<>();
         for (int k = 0; k < vals.length; k++) {
+            r.get(k).addRank("ridgeNeighborhood", vals[k]);
             if (vals[k] <= threshold) {// keep
-                r.get(k).addRank("ridgeNeighborhood", vals[k]);
                 filtered.add(r.get(k));
-            } else {
-                r.get(k).addRank("ridgeNeighborhood", vals[k]);
             }
+        }
+        return filtered;
+    }
 
+    /**
+     * Counts, for every point, the other points within L1 distance
+     * <code>radius</code>, excluding points at identical coordinates. This
+     * matches the distinct neighbors returned by
+     * {@link QuadTree#getNeighborsInRadius(Point2D, double)}, but answers all
+     * queries in bulk from a uniform grid whose cells are at least
+     * <code>radius</code> wide, so that only the 3x3 surrounding cells need to
+     * be visited. Unlike the quad tree, which stores its first point twice,
+     * every neighbor is counted once.
+     */
+    double[] countNeighborsInRadius(final double[] xs,
+            final double[] ys, final double radius, ExecutorService es,
+            int threads) {
+        final int n = xs.length;
+        final double[] counts = new double[n];
+        if (n == 0 || !(radius >= 0)) {
+            return counts;
+        }
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < n; k++) {
+            minX = Math.min(minX, xs[k]);
+            maxX = Math.max(maxX, xs[k]);
+            minY = Math.min(minY, ys[k]);
+            maxY = Math.max(maxY, ys[k]);
+        }
+        final double width = maxX - minX;
+        final double height = maxY - minY;
+        // keep the number of cells in the order of the number of points
+        double cellSize = Math.max(radius, Math.max(
+                Math.sqrt(width * height / n), Math.max(width, height) / n));
+        if (!(cellSize > 0)) {
+            cellSize = 1.0d;
         }
-        return new ArrayList<>(filtered);
+        final double cell = cellSize;
+        final double originX = minX;
+        final double originY = minY;
+        final int cols = (int) (width / cell) + 1;
+        final int rows = (int) (height / cell) + 1;
+        // compressed cell lists: points of cell c are order[start[c]..start[c+1])
+        final int[] cellOf = new int[n];
+        final int[] start = new int[cols * rows + 1];
+        for (int k = 0; k < n; k++) {
+            int c = (int) ((xs[k] - originX) / cell) * rows
+                    + (int) ((ys[k] - originY) / cell);
+            cellOf[k] = c;
+            start[c + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            start[c + 1] += start[c];
+        }
+        final int[] fill = Arrays.copyOf(start, start.length - 1);
+        final int[] order = new int[n];
+        for (int k = 0; k < n; k++) {
+            order[fill[cellOf[k]]++] = k;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        final int chunk = Math.max(1, (n + threads * 4 - 1) / (threads * 4));
+        for (int lo = 0; lo < n; lo += chunk) {
+            final int from = lo;
+            final int to = Math.min(n, lo + chunk);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int k = from; k < to; k++) {
+                        int cx = cellOf[k] / rows;
+                        int cy = cellOf[k] % rows;
+                        int count = 0;
+                        for (int gx = Math.max(0, cx - 1); gx <= Math.min(cols - 1, cx + 1); gx++) {
+                            for (int gy = Math.max(0, cy - 1); gy <= Math.min(rows - 1, cy + 1); gy++) {
+                                int c = gx * rows + gy;
+                                for (int o = start[c]; o < start[c + 1]; o++) {
+                                    int j = order[o];
+                                    double dist = Math.abs(xs[j] - xs[k])
+                                            + Math.abs(ys[j] - ys[k]);
+                                    if (dist <= radius && (xs[j] != xs[k] || ys[j] != ys[k])) {
+                                        count++;
+                                    }
+                                }
+                            }
+                        }
+                        counts[k] = count;
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(es, tasks);
+        return counts;
     }
 
 //	private void exportPeaks(String name, List<Ridge> r, Array tic, Array sat,
@@ -450,91 +564,145 @@ public class CwtRunnable implements Callable<File>, IPeakPicking, Serializable {
 //		pe.setWorkflow(dw);
 //		pe.exportPeakInformation(name, peaks);
 //	}
-    private List<Integer> getPeakMaxima(ArrayDouble.D2 scaleogram, int row) {
+    private int[] getPeakMaxima(ArrayDouble.D2 scaleogram, int row) {
         double[] scaleResponse = (double[]) scaleogram.slice(1, row).
                 get1DJavaArray(double.class);
         FirstDerivativeFilter fdf = new FirstDerivativeFilter();
         double[] res = (double[]) fdf.apply(Array.makeFromJavaArray(scaleResponse)).
                 get1DJavaArray(double.class);
-        List<Integer> peakMaxima = new LinkedList<>();
+        int[] peakMaxima = new int[Math.max(0, scaleResponse.length - 2)];
+        int cnt = 0;
         for (int i = 1; i < scaleResponse.length - 1; i++) {
             if (res[i - 1] >= 0 && res[i + 1] <= 0) {
                 // remove peaks, which are not true maxima
-                peakMaxima.add(i);
+                peakMaxima[cnt++] = i;
             }
         }
-        return peakMaxima;
+        return Arrays.copyOf(peakMaxima, cnt);
     }
 
-    private List<Ridge> followRidgesBottomUp(double minPercentileValue,
-            ArrayDouble.D2 scaleogram, List<Double> scales, int minScale,
-            int maxScale) {
-        int columns = scaleogram.getShape()[0];
-        // get peak maxima for first scale
-        List<Integer> seeds = getPeakMaxima(scaleogram, 0);
-        HashMap<Integer, Ridge> ridges = buildRidges(seeds, 0, scaleogram);
-        // build array for maxima
-        for (int i = 1; i < maxScale; i++) {
-            List<Integer> maxima = getPeakMaxima(scaleogram, i);
-            int scaleDiff = 1;
-            // log.info("Checking scale " + scales.get(i)
-            // + " with max trace diff " + scaleDiff);
-            double[] newSeedlings = fillSeeds(columns, maxima, scaleogram, i);
-            List<Integer> ridgesToRemove = new LinkedList<>();
-            for (Integer key : ridges.keySet()) {
-                Ridge r = ridges.get(key);
-                if (r.addPoint(scaleDiff, i, newSeedlings)) {
-                    // log.info("Extended ridge: " + r);
-                } else {
-                    // log.info("Marking ridge for removal: " + r);
-                    ridgesToRemove.add(key);
+    /**
+     * Links the local maxima of the first scale to the maxima of the following
+     * scales. The maxima of all scales are located in parallel first, then
+     * every seed is followed upwards independently, tracking its positions in
+     * primitive arrays. Only ridges that survive <code>minScale</code> scales
+     * and start above <code>minPercentileValue</code> are materialized as
+     * {@link Ridge} objects, in ascending order of their seed position.
+     */
+    List<Ridge> followRidgesBottomUp(final double minPercentileValue,
+            final ArrayDouble.D2 scaleogram, List<Double> scales, final int minScale,
+            final int maxScale, ExecutorService es, int threads) {
+        final int columns = scaleogram.getShape()[0];
+        List<Callable<int[]>> maximaTasks = new ArrayList<>(maxScale);
+        for (int i = 0; i < maxScale; i++) {
+            final int row = i;
+            maximaTasks.add(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return getPeakMaxima(scaleogram, row);
                 }
-            }
-            for (Integer key : ridgesToRemove) {
-                // log.info("Removing ridge: " + ridges.get(key));
-                Ridge r = ridges.get(key);
-                if (r.getSize() < minScale) {
-                    ridges.remove(key);
+            });
+        }
+        final int[][] maxima = invokeAll(es, maximaTasks).toArray(new int[0][]);
+        final int[] seeds = maxima[0];
+        List<Callable<List<Ridge>>> ridgeTasks = new ArrayList<>();
+        final int chunk = Math.max(1, (seeds.length + threads * 4 - 1) / (threads * 4));
+        for (int lo = 0; lo < seeds.length; lo += chunk) {
+            final int from = lo;
+            final int to = Math.min(seeds.length, lo + chunk);
+            ridgeTasks.add(new Callable<List<Ridge>>() {
+                @Override
+                public List<Ridge> call() {
+                    List<Ridge> l = new ArrayList<>();
+                    int[] positions = new int[maxScale];
+                    double[] values = new double[maxScale];
+                    for (int k = from; k < to; k++) {
+                        positions[0] = seeds[k];
+                        values[0] = scaleogram.get(seeds[k], 0);
+                        if (!(values[0] >= minPercentileValue)) {
+                            continue;
+                        }
+                        int size = 1;
+                        for (int i = 1; i < maxScale; i++) {
+                            int x = nextRidgePosition(positions[size - 1],
+                                    values[size - 1], scaleogram, maxima[i], i,
+                                    columns);
+                            if (x < 0) {
+                                break;
+                            }
+                            positions[size] = x;
+                            values[size] = response(scaleogram, maxima[i], i, x);
+                            size++;
+                        }
+                        if (size >= minScale) {
+                            Ridge r = new Ridge(new Point2D.Double(positions[0], 0),
+                                    values[0]);
+                            for (int i = 1; i < size; i++) {
+                                r.extend(i, positions[i], values[i]);
+                            }
+                            l.add(r);
+                        }
+                    }
+                    return l;
                 }
-            }
-            ridgesToRemove.clear();
-            // log.info("Maxima at scale: " + maxima);
-            // ridges.put(Integer.valueOf(i),findDiffs(seedlings,newSeedlings,i));
-        }
-        // put all Ridges with size>=maxScale into return list
-        List<Ridge> l = new LinkedList<>();
-        for (Integer key : ridges.keySet()) {
-            Ridge r = ridges.get(key);
-            if (r.getSize() >= minScale && r.getRidgePoints().get(0).getSecond() >= minPercentileValue) {
-                // log.info("RidgePenalty: " + r.getRidgePenalty());
-                l.add(r);
-            }
+            });
+        }
+        List<Ridge> l = new ArrayList<>();
+        for (List<Ridge> part : invokeAll(es, ridgeTasks)) {
+            l.addAll(part);
         }
         log.info("Found " + l.size() + " initial ridges.");
         return l;
     }
 
-    private HashMap<Integer, Ridge> buildRidges(List<Integer> seeds,
-            int scaleIdx, ArrayDouble.D2 scaleogram) {
-        // log.info("Peak maxima: "+seeds);
-        HashMap<Integer, Ridge> l = new LinkedHashMap<>();
-        for (Integer itg : seeds) {
-            Ridge r = new Ridge(new Point2D.Double(itg, scaleIdx),
-                    scaleogram.get(itg, scaleIdx));
-            // log.info("Adding ridge: "+r);
-            l.put(itg, r);
+    /**
+     * Returns the position on scale <code>scaleIdx</code> that continues a
+     * ridge ending at <code>x</code> with response <code>xval</code>, or -1 if
+     * the ridge ends. Mirrors {@link Ridge#addPoint(int, int, double[])} for a
+     * scale difference of one, where only local maxima carry a response.
+     */
+    private static int nextRidgePosition(int x, double xval,
+            ArrayDouble.D2 scaleogram, int[] maxima, int scaleIdx, int columns) {
+        int minX = Math.max(0, x - 1);
+        int maxX = Math.min(columns - 1, x + 1);
+        int maximumR = -1;
+        int maximumL = -1;
+        for (int i = x; i <= maxX; i++) {
+            if (response(scaleogram, maxima, scaleIdx, i) >= xval) {
+                maximumR = i;
+            }
         }
-        return l;
+        for (int j = x; j >= minX; j--) {
+            if (response(scaleogram, maxima, scaleIdx, j) >= xval) {
+                maximumL = j;
+            }
+        }
+        if (maximumR == -1) {
+            return maximumL;
+        } else if (maximumL == -1 || maximumR == maximumL) {
+            return maximumR;
+        }
+        int dr = Math.abs(x - maximumR);
+        int dl = Math.abs(x - maximumL);
+        if (dr != dl) {
+            return dr < dl ? maximumR : maximumL;
+        }
+        // two candidates at same distance, choose larger one
+        double vr = response(scaleogram, maxima, scaleIdx, maximumR);
+        double vl = response(scaleogram, maxima, scaleIdx, maximumL);
+        if (vr < vl) {
+            return maximumL;
+        } else if (vr > vl) {
+            return maximumR;
+        }
+        log.warn("Potential problem, detected a draw in value and positions!");
+        return -1;
     }
 
-    private double[] fillSeeds(int size, List<Integer> seeds,
-            ArrayDouble.D2 scaleogram, int scaleIdx) {
-        double[] b = new double[size];
-        for (Integer itg : seeds) {
-            int idx = itg;
-            b[idx] = scaleogram.get(idx, scaleIdx);
-        }
-        return b;
+    private static double response(ArrayDouble.D2 scaleogram, int[] maxima,
+            int scaleIdx, int position) {
+        return Arrays.binarySearch(maxima, position) >= 0 ? scaleogram.get(
+                position, scaleIdx) : 0.0d;
     }
 
     /**
@@ -0,0 +1,250 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments2d.peakfinding.cwt;
+
+import cross.datastructures.tuple.Tuple2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import maltcms.commands.filters.array.FirstDerivativeFilter;
+import maltcms.commands.filters.array.wavelet.MexicanHatWaveletFilter;
+import maltcms.datastructures.quadTree.QuadTree;
+import maltcms.datastructures.ridge.Ridge;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class CwtRunnableTest {
+
+    /**
+     * Returns the local maxima of scale <code>row</code>, as located before
+     * ridges were linked in bulk.
+     */
+    private List<Integer> getPeakMaxima(ArrayDouble.D2 scaleogram, int row) {
+        double[] scaleResponse = (double[]) scaleogram.slice(1, row).
+                get1DJavaArray(double.class);
+        double[] res = (double[]) new FirstDerivativeFilter().apply(
+                Array.makeFromJavaArray(scaleResponse)).get1DJavaArray(double.class);
+        List<Integer> peakMaxima = new LinkedList<>();
+        for (int i = 1; i < scaleResponse.length - 1; i++) {
+            if (res[i - 1] >= 0 && res[i + 1] <= 0) {
+                peakMaxima.add(i);
+            }
+        }
+        return peakMaxima;
+    }
+
+    /**
+     * Follows ridges scale by scale with {@link Ridge#addPoint(int, int, double[])}.
+     */
+    private List<Ridge> followRidgesWithAddPoint(double minPercentileValue,
+            ArrayDouble.D2 scaleogram, int minScale, int maxScale) {
+        int columns = scaleogram.getShape()[0];
+        Map<Integer, Ridge> ridges = new LinkedHashMap<>();
+        for (Integer x : getPeakMaxima(scaleogram, 0)) {
+            ridges.put(x, new Ridge(new Point2D.Double(x, 0), scaleogram.get(x, 0)));
+        }
+        for (int i = 1; i < maxScale; i++) {
+            double[] nextScale = new double[columns];
+            for (Integer x : getPeakMaxima(scaleogram, i)) {
+                nextScale[x] = scaleogram.get(x, i);
+            }
+            Iterator<Ridge> iter = ridges.values().iterator();
+            while (iter.hasNext()) {
+                Ridge r = iter.next();
+                if (!r.addPoint(1, i, nextScale) && r.getSize() < minScale) {
+                    iter.remove();
+                }
+            }
+        }
+        List<Ridge> l = new ArrayList<>();
+        for (Ridge r : ridges.values()) {
+            if (r.getSize() >= minScale
+                    && r.getRidgePoints().get(0).getSecond() >= minPercentileValue) {
+                l.add(r);
+            }
+        }
+        return l;
+    }
+
+    private ArrayDouble.D2 createScaleogram(Random r, int columns, int maxScale,
+            boolean quantize) {
+        double[] signal = new double[columns];
+        for (int k = 0; k < 20; k++) {
+            double center = r.nextInt(columns);
+            double width = 1 + r.nextInt(10);
+            double height = 1 + 10 * r.nextDouble();
+            for (int i = 0; i < columns; i++) {
+                signal[i] += height * Math.exp(-Math.pow((i - center) / width, 2));
+            }
+        }
+        for (int i = 0; i < columns; i++) {
+            signal[i] += 0.2 * r.nextGaussian();
+        }
+        double[] scales = new double[maxScale];
+        for (int i = 0; i < maxScale; i++) {
+            scales[i] = i + 1;
+        }
+        ArrayDouble.D2 scaleogram = new MexicanHatWaveletFilter().applyScales(
+                Array.makeFromJavaArray(signal), scales);
+        if (quantize) {
+            // provoke equal responses and draws between candidates
+            for (int i = 0; i < columns; i++) {
+                for (int j = 0; j < maxScale; j++) {
+                    scaleogram.set(i, j, Math.rint(scaleogram.get(i, j)));
+                }
+            }
+        }
+        return scaleogram;
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testRidgesMatchAddPoint() {
+        Random r = new Random(42);
+        CwtRunnable cwt = new CwtRunnable();
+        ExecutorService es = Executors.newFixedThreadPool(3);
+        try {
+            for (int t = 0; t < 40; t++) {
+                int columns = 3 + r.nextInt(1000);
+                int maxScale = 1 + r.nextInt(20);
+                int minScale = 1 + r.nextInt(maxScale);
+                ArrayDouble.D2 scaleogram = createScaleogram(r, columns,
+                        maxScale, t % 2 == 1);
+                double minPercentileValue = t % 4 < 2 ? Double.NEGATIVE_INFINITY
+                        : r.nextDouble();
+                List<Ridge> expected = followRidgesWithAddPoint(
+                        minPercentileValue, scaleogram, minScale, maxScale);
+                List<Ridge> actual = cwt.followRidgesBottomUp(
+                        minPercentileValue, scaleogram, null, minScale, maxScale,
+                        es, 3);
+                Assert.assertEquals(expected.size(), actual.size());
+                for (int k = 0; k < expected.size(); k++) {
+                    List<Tuple2D<Point2D, Double>> e = expected.get(k).getRidgePoints();
+                    List<Tuple2D<Point2D, Double>> a = actual.get(k).getRidgePoints();
+                    Assert.assertEquals(e.size(), a.size());
+                    for (int p = 0; p < e.size(); p++) {
+                        Assert.assertEquals(e.get(p).getFirst(), a.get(p).getFirst());
+                        Assert.assertEquals(e.get(p).getSecond(), a.get(p).getSecond(), 0.0d);
+                    }
+                    Assert.assertEquals(expected.get(k).getIndexOfMaximum(),
+                            actual.get(k).getIndexOfMaximum());
+                }
+            }
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testNeighborCountsMatchQuadTree() {
+        Random r = new Random(42);
+        CwtRunnable cwt = new CwtRunnable();
+        ExecutorService es = Executors.newFixedThreadPool(3);
+        try {
+            for (int t = 0; t < 40; t++) {
+                int spm = 50 + r.nextInt(500);
+                int scans = spm * (1 + r.nextInt(100));
+                int n = r.nextInt(Math.min(scans, 2000));
+                double radius = t % 5 == 0 ? 0.0d : 1 + r.nextInt(20);
+                // distinct scan indices, mapped like ridge seeds
+                int[] seeds = new int[scans];
+                for (int k = 0; k < scans; k++) {
+                    seeds[k] = k;
+                }
+                for (int k = 0; k < n; k++) {
+                    int j = k + r.nextInt(scans - k);
+                    int tmp = seeds[k];
+                    seeds[k] = seeds[j];
+                    seeds[j] = tmp;
+                }
+                double[] xs = new double[n];
+                double[] ys = new double[n];
+                Rectangle2D.Double bbox = null;
+                for (int k = 0; k < n; k++) {
+                    xs[k] = ((double) seeds[k]) / spm;
+                    ys[k] = ((double) seeds[k]) % spm;
+                    if (bbox == null) {
+                        bbox = new Rectangle2D.Double(xs[k], ys[k], 1, 1);
+                    } else {
+                        bbox.add(xs[k], ys[k]);
+                    }
+                }
+                double[] counts = cwt.countNeighborsInRadius(xs, ys, radius,
+                        es, 3);
+                Assert.assertEquals(n, counts.length);
+                if (n == 0) {
+                    continue;
+                }
+                QuadTree<Integer> qt = new QuadTree<>(bbox.x, bbox.y,
+                        bbox.width + 1, bbox.height + 1, 5);
+                for (int k = 0; k < n; k++) {
+                    qt.put(new Point2D.Double(xs[k], ys[k]), k);
+                }
+                for (int k = 0; k < n; k++) {
+                    List<Tuple2D<Point2D, Integer>> neighbors = qt.
+                            getNeighborsInRadius(new Point2D.Double(xs[k], ys[k]),
+                                    radius);
+                    Set<Integer> distinct = new HashSet<>();
+                    for (Tuple2D<Point2D, Integer> neighbor : neighbors) {
+                        distinct.add(neighbor.getSecond());
+                    }
+                    Assert.assertEquals("Neighbors of point " + k,
+                            distinct.size(), counts[k], 0.0d);
+                    // the quad tree stores its first point twice
+                    boolean firstIsNeighbor = k != 0 && Math.abs(xs[0] - xs[k])
+                            + Math.abs(ys[0] - ys[k]) <= radius;
+                    Assert.assertEquals(distinct.size() + (firstIsNeighbor ? 1 : 0),
+                            neighbors.size());
+                }
+            }
+        } finally {
+            es.shutdownNow();
+        }
+    }
+}
@@ -223,6 +223,7 @@ public class SeededRegionGrowing extends AFragmentCommand {
             getWorkflow().append(dwr);
             fret.save();
             ret.add(fret);
+            chrom.getScanLineImpl().clear();
         }
         return new TupleND<>(ret);
     }
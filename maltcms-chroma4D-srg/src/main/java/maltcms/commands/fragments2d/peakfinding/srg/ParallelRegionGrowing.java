@@ -0,0 +1,457 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments2d.peakfinding.srg;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import cross.annotations.Configurable;
+import cross.datastructures.collections.CachedReadWriteList;
+import cross.datastructures.fragments.IFileFragment;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import lombok.Data;
+import maltcms.commands.distances.SharedExecutor;
+import maltcms.datastructures.caches.IScanLine;
+import maltcms.datastructures.caches.MappedScanLineCache;
+import maltcms.datastructures.caches.SparseScanLineCache;
+import maltcms.datastructures.ms.IChromatogram2D;
+import maltcms.datastructures.peak.PeakArea2D;
+import maltcms.math.functions.IArraySimilarity;
+import maltcms.math.functions.similarities.ArrayCos;
+import org.apache.commons.configuration.Configuration;
+import org.openide.util.lookup.ServiceProvider;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.IndexIterator;
+
+/**
+ * <p>
+ * Concurrent variant of {@link OneByOneRegionGrowing}.</p>
+ *
+ * Seeds are grown in parallel, following the same rules as the sequential
+ * implementation. Ownership of pixels is tracked in a label image shared by
+ * all regions. A region claims a pixel with an atomic compare-and-set before
+ * adding it, so every pixel belongs to at most one region. A pixel that is
+ * already owned by another region becomes a boundary point. Seeds lying within
+ * an already grown region are skipped. Regions that are discarded release
+ * their pixels again. Which region wins a contested pixel depends on the
+ * thread schedule, so region borders may differ slightly between runs.
+ * Seeds whose regions do not touch yield the same areas as the sequential
+ * implementation.
+ *
+ * Mass spectra are read from {@link SparseScanLineCache} and
+ * {@link MappedScanLineCache} without additional locking, since both support
+ * concurrent readers. Other scan line implementations are accessed one thread
+ * at a time. The tasks run on the {@link SharedExecutor} pool for the
+ * configured number of threads.
+ *
+ * The per-region state is kept in primitive int sets of pixel indices and the
+ * mean mass spectrum is updated incrementally, when <code>useMeanMS</code> is
+ * enabled. Since the mean differs from the sum of the spectra only by a
+ * constant factor, results are identical to {@link OneByOneRegionGrowing} for
+ * scale invariant similarities such as {@link ArrayCos}.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@Data
+@ServiceProvider(service = IRegionGrowing.class)
+public class ParallelRegionGrowing implements IRegionGrowing {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(ParallelRegionGrowing.class);
+
+    @Configurable(name = "var.total_intensity", value = "total_intensity")
+    private String totalIntensityVar = "total_intensity";
+    @Configurable(value = "0.99d")
+    private double minDistance = 0.99d;
+    private IArraySimilarity similarity = new ArrayCos();
+    @Configurable(value = "2")
+    private int minPeakSize = 2;
+    @Configurable(value = "1000")
+    private int maxPeakSize = 1000;
+    @Configurable(value = "true")
+    private boolean useMeanMS = false;
+    private boolean discardPeaksWithMaxArea = true;
+    private boolean discardPeaksWithMinArea = true;
+    @Configurable(value = "-1", description = "The number of threads to use. "
+            + "Values smaller than 1 use all available processors.")
+    private int maxThreads = -1;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return getClass().getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PeakArea2D> getAreasFor(List<Point> seeds, IFileFragment ff,
+            IChromatogram2D chrom) {
+        log.info("Using distance {} with minDist:{}",
+                this.similarity.toString(), this.minDistance);
+        final IScanLine slc = chrom.getScanLineImpl();
+        final ArrayDouble.D1 intensities = (ArrayDouble.D1) ff.getChild(
+                this.totalIntensityVar).getArray();
+        final AtomicIntegerArray labels = new AtomicIntegerArray(
+                slc.getScanLineCount() * slc.getScansPerModulation());
+        final int threads = this.maxThreads < 1 ? Runtime.getRuntime().
+                availableProcessors() : this.maxThreads;
+        log.info("Growing {} seeds with {} threads", seeds.size(), threads);
+        final boolean concurrentReads = slc instanceof SparseScanLineCache
+                || slc instanceof MappedScanLineCache;
+        if (!concurrentReads) {
+            log.info("Serializing mass spectrum access for scan line cache {}",
+                    slc.getClass().getName());
+        }
+        final List<PeakArea2D> peakAreaList = new CachedReadWriteList<>(ff.getName() + "-peakArea2D-cache", 100);
+        final List<Future<PeakArea2D>> results = new ArrayList<>(seeds.size());
+        final ExecutorService es = SharedExecutor.get(threads);
+        try {
+            int label = 1;
+            for (final Point seed : seeds) {
+                results.add(es.submit(new RegionGrower(
+                        label++, seed, slc, concurrentReads, intensities,
+                        labels, chrom.getNumberOfScansPerModulation())));
+            }
+            for (Future<PeakArea2D> f : results) {
+                final PeakArea2D s = f.get();
+                if (s != null) {
+                    peakAreaList.add(s);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<PeakArea2D> f : results) {
+                f.cancel(true);
+            }
+        }
+        return peakAreaList;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configure(Configuration cfg) {
+        this.totalIntensityVar = cfg.getString(this.getClass().getName()
+                + ".totalIntensityVar", "total_intensity");
+    }
+
+    /**
+     * Grows the region of a single seed. Pixels are addressed by
+     * <code>x * scansPerModulation + y</code> of the scan line cache, which
+     * preserves the column-major visiting order of
+     * {@link OneByOneRegionGrowing}.
+     */
+    private final class RegionGrower implements Callable<PeakArea2D> {
+
+        private final int label;
+        private final Point seed;
+        private final IScanLine slc;
+        private final boolean concurrentReads;
+        private final ArrayDouble.D1 intensities;
+        private final AtomicIntegerArray labels;
+        private final int spm;
+        private final int width;
+        private final int height;
+        private final IArraySimilarity sim;
+        private final IntMinHeap active = new IntMinHeap();
+        private final IntHashSet activeSet = new IntHashSet();
+        private final IntHashSet region = new IntHashSet();
+        private final IntArrayList regionOrder = new IntArrayList();
+        private final List<Array> regionMS = new ArrayList<>();
+        private IntHashSet boundary = new IntHashSet();
+        private IntArrayList boundaryOrder = new IntArrayList();
+        private int seedPixel;
+        private double[] sumMS;
+
+        RegionGrower(int label, Point seed, IScanLine slc,
+                boolean concurrentReads, ArrayDouble.D1 intensities,
+                AtomicIntegerArray labels, int spm) {
+            this.label = label;
+            this.seed = seed;
+            this.slc = slc;
+            this.concurrentReads = concurrentReads;
+            this.intensities = intensities;
+            this.labels = labels;
+            this.spm = spm;
+            this.width = slc.getScanLineCount();
+            this.height = slc.getScansPerModulation();
+            this.sim = similarity.copy();
+        }
+
+        @Override
+        public PeakArea2D call() {
+            if (!inBounds(seed.x, seed.y)) {
+                return null;
+            }
+            final Array seedMS = getMassSpectrum(seed.x, seed.y);
+            if (seedMS == null) {
+                return null;
+            }
+            seedPixel = seed.x * height + seed.y;
+            if (!labels.compareAndSet(seedPixel, 0, label)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Seed {} lies within another region", seed);
+                }
+                return null;
+            }
+            sumMS = (double[]) seedMS.get1DJavaArray(double.class);
+            sumMS = Arrays.copyOf(sumMS, sumMS.length);
+            addNeighborsOf(seedPixel);
+            Array meanMS = seedMS;
+            while (!active.isEmpty()) {
+                while (!active.isEmpty()) {
+                    meanMS = check(popActivePixel(), meanMS);
+                    if (region.size() > maxPeakSize) {
+                        break;
+                    }
+                }
+                if (region.size() > maxPeakSize) {
+                    log.error(
+                            "Stopping region growing: Limit of {} points/peakarea exceeded (maxPeakSize)",
+                            maxPeakSize);
+                    while (!active.isEmpty()) {
+                        addBoundaryPixel(popActivePixel());
+                    }
+                    break;
+                }
+                if (useMeanMS) {
+                    final int[] boundaryPixels = boundaryOrder.toArray();
+                    boundary = new IntHashSet();
+                    boundaryOrder = new IntArrayList();
+                    for (int bp : boundaryPixels) {
+                        meanMS = check(bp, meanMS);
+                    }
+                }
+                if (region.size() > maxPeakSize) {
+                    return discardedOrArea(discardPeaksWithMaxArea, seedMS);
+                }
+                if (region.size() < minPeakSize) {
+                    return discardedOrArea(discardPeaksWithMinArea, seedMS);
+                }
+            }
+            return createPeakArea(seedMS);
+        }
+
+        private PeakArea2D discardedOrArea(boolean discard, Array seedMS) {
+            if (discard) {
+                for (int i = 0; i < regionOrder.size(); i++) {
+                    labels.set(regionOrder.get(i), 0);
+                }
+                labels.set(seedPixel, 0);
+                return null;
+            }
+            return createPeakArea(seedMS);
+        }
+
+        private PeakArea2D createPeakArea(Array seedMS) {
+            final int seedIndex = slc.mapPoint(seed.x, seed.y);
+            final PeakArea2D pa = new PeakArea2D(seed, seedMS.copy(),
+                    intensities.get(seedIndex), seedIndex, spm);
+            for (int i = 0; i < regionOrder.size(); i++) {
+                final Point p = toPoint(regionOrder.get(i));
+                try {
+                    pa.addRegionPoint(p, regionMS.get(i), intensities.get(
+                            slc.mapPoint(p.x, p.y)));
+                } catch (ArrayIndexOutOfBoundsException ex) {
+                    log.error(
+                            "Tried to use point {} and access index {}, allowed : [0,{}]",
+                            new Object[]{p, slc.mapPoint(p.x, p.y),
+                                intensities.getShape()[0] - 1});
+                }
+            }
+            for (int i = 0; i < boundaryOrder.size(); i++) {
+                pa.addBoundaryPoint(toPoint(boundaryOrder.get(i)));
+            }
+            return pa;
+        }
+
+        /**
+         * Adds the pixel to the region, if its mass spectrum is similar
+         * enough to <code>meanMS</code> and no other region owns it. Otherwise,
+         * the pixel becomes a boundary pixel.
+         *
+         * @return the mean mass spectrum to use for the next comparison
+         */
+        private Array check(final int pixel, final Array meanMS) {
+            if (labels.get(pixel) != 0) {
+                addBoundaryPixel(pixel);
+                return meanMS;
+            }
+            final Array apMS = getMassSpectrum(pixel / height, pixel % height);
+            if (apMS == null) {
+                return meanMS;
+            }
+            if (sim.apply(meanMS, apMS) >= minDistance
+                    && labels.compareAndSet(pixel, 0, label)) {
+                region.add(pixel);
+                regionOrder.add(pixel);
+                regionMS.add(apMS);
+                addNeighborsOf(pixel);
+                if (useMeanMS) {
+                    return updateMeanMS(apMS);
+                }
+            } else {
+                addBoundaryPixel(pixel);
+            }
+            return meanMS;
+        }
+
+        private Array updateMeanMS(final Array apMS) {
+            final IndexIterator iter = apMS.getIndexIterator();
+            int i = 0;
+            while (iter.hasNext()) {
+                sumMS[i++] += iter.getDoubleNext();
+            }
+            final double n = region.size() + 1;
+            final double[] mean = new double[sumMS.length];
+            for (int j = 0; j < mean.length; j++) {
+                mean[j] = sumMS[j] / n;
+            }
+            //a new array per update, similarities may cache values by identity
+            return Array.factory(mean);
+        }
+
+        private void addNeighborsOf(final int pixel) {
+            final int x = pixel / height;
+            final int y = pixel % height;
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (inBounds(x + i, y + j)) {
+                        final int np = (x + i) * height + y + j;
+                        if (np != seedPixel && !activeSet.contains(np)
+                                && !region.contains(np)
+                                && !boundary.contains(np)) {
+                            activeSet.add(np);
+                            active.add(np);
+                        }
+                    }
+                }
+            }
+        }
+
+        private int popActivePixel() {
+            final int pixel = active.poll();
+            activeSet.remove(pixel);
+            return pixel;
+        }
+
+        private void addBoundaryPixel(final int pixel) {
+            boundary.add(pixel);
+            boundaryOrder.add(pixel);
+        }
+
+        private boolean inBounds(final int x, final int y) {
+            return x >= 0 && x < width && y >= 0 && y < height;
+        }
+
+        private Point toPoint(final int pixel) {
+            return new Point(pixel / height, pixel % height);
+        }
+
+        private Array getMassSpectrum(final int x, final int y) {
+            if (concurrentReads) {
+                return slc.getMassSpectrum(x, y);
+            }
+            synchronized (slc) {
+                return slc.getMassSpectrum(x, y);
+            }
+        }
+    }
+
+    /**
+     * Minimal binary min-heap of primitive ints.
+     */
+    private static final class IntMinHeap {
+
+        private int[] heap = new int[16];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(int value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        int poll() {
+            final int min = heap[0];
+            final int last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return min;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments2d.peakfinding.srg;
+
+import cross.datastructures.fragments.FileFragment;
+import cross.test.LogMethodName;
+import cross.test.SetupLogging;
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import maltcms.datastructures.ms.Chromatogram2D;
+import maltcms.datastructures.peak.PeakArea2D;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+
+/**
+ * Compares {@link ParallelRegionGrowing} with {@link OneByOneRegionGrowing}
+ * on seeds whose regions do not touch.
+ *
+ * @author Nils Hoffmann
+ */
+public class ParallelRegionGrowingTest {
+
+    @Rule
+    public TemporaryFolder tf = new TemporaryFolder();
+    @Rule
+    public SetupLogging sl = new SetupLogging();
+    @Rule
+    public LogMethodName lmn = new LogMethodName();
+
+    private static final int MODULATIONS = 40;
+    private static final int SCANS_PER_MODULATION = 30;
+    private static final int MASSES = 20;
+    private static final double MIN_MASS = 50.0d;
+
+    /**
+     * Seeds lie on a regular grid, far enough apart that neither their
+     * regions nor their boundaries touch. The last seed lies on noise and its
+     * region is discarded.
+     */
+    private List<Point> createSeeds() {
+        List<Point> seeds = new ArrayList<>();
+        for (int x = 5; x < MODULATIONS; x += 9) {
+            for (int y = 5; y < SCANS_PER_MODULATION; y += 10) {
+                seeds.add(new Point(x, y));
+            }
+        }
+        seeds.add(new Point(MODULATIONS - 1, SCANS_PER_MODULATION - 1));
+        return seeds;
+    }
+
+    /**
+     * Creates a chromatogram with random background spectra. Around each
+     * blob seed, a patch of 3x5 pixels shares one random spectrum, scaled by
+     * the distance to the seed.
+     */
+    private Chromatogram2D createTestChromatogram2D(File file, List<Point> seeds) {
+        Random r = new Random(42);
+        int scans = MODULATIONS * SCANS_PER_MODULATION;
+        double[][] spectra = new double[scans][MASSES];
+        for (double[] spectrum : spectra) {
+            for (int m = 0; m < MASSES; m++) {
+                spectrum[m] = 1 + r.nextInt(1000);
+            }
+        }
+        for (Point seed : seeds.subList(0, seeds.size() - 1)) {
+            double[] pattern = new double[MASSES];
+            for (int m = 0; m < MASSES; m++) {
+                pattern[m] = 1 + r.nextInt(1000);
+            }
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -2; dy <= 2; dy++) {
+                    double scale = 100.0d / (1 + dx * dx + dy * dy);
+                    int scan = (seed.x + dx) * SCANS_PER_MODULATION + seed.y + dy;
+                    for (int m = 0; m < MASSES; m++) {
+                        spectra[scan][m] = pattern[m] * scale;
+                    }
+                }
+            }
+        }
+        double[] sats = new double[scans];
+        int[] scanIndex = new int[scans];
+        double[] massRangeMin = new double[scans];
+        double[] massRangeMax = new double[scans];
+        double[] tic = new double[scans];
+        double[] masses = new double[scans * MASSES];
+        double[] intensities = new double[scans * MASSES];
+        for (int i = 0; i < scans; i++) {
+            sats[i] = i / 6.0d;
+            scanIndex[i] = i * MASSES;
+            massRangeMin[i] = MIN_MASS;
+            massRangeMax[i] = MIN_MASS + MASSES - 1;
+            for (int m = 0; m < MASSES; m++) {
+                masses[i * MASSES + m] = MIN_MASS + m;
+                intensities[i * MASSES + m] = spectra[i][m];
+                tic[i] += spectra[i][m];
+            }
+        }
+        int[] secondColumnScanIndex = new int[MODULATIONS];
+        for (int i = 0; i < MODULATIONS; i++) {
+            secondColumnScanIndex[i] = i * SCANS_PER_MODULATION;
+        }
+        FileFragment f = new FileFragment(file);
+        f.addChild("scan_acquisition_time").setArray(Array.makeFromJavaArray(sats));
+        f.addChild("modulation_time").setArray(Array.makeFromJavaArray(new double[]{5.0d}));
+        f.addChild("scan_rate").setArray(Array.makeFromJavaArray(new double[]{6.0d}));
+        f.addChild("scan_index").setArray(Array.makeFromJavaArray(scanIndex));
+        f.addChild("second_column_scan_index").setArray(Array.makeFromJavaArray(secondColumnScanIndex));
+        f.addChild("mass_range_min").setArray(Array.makeFromJavaArray(massRangeMin));
+        f.addChild("mass_range_max").setArray(Array.makeFromJavaArray(massRangeMax));
+        f.addChild("mass_values").setArray(Array.makeFromJavaArray(masses));
+        f.addChild("intensity_values").setArray(Array.makeFromJavaArray(intensities));
+        f.addChild("total_intensity").setArray(Array.makeFromJavaArray(tic));
+        f.save();
+        return new Chromatogram2D(f);
+    }
+
+    private void compare(boolean useMeanMS) throws IOException {
+        List<Point> seeds = createSeeds();
+        Chromatogram2D chrom = createTestChromatogram2D(tf.newFile("srgTest.cdf"), seeds);
+        OneByOneRegionGrowing sequential = new OneByOneRegionGrowing();
+        sequential.setUseMeanMS(useMeanMS);
+        ParallelRegionGrowing parallel = new ParallelRegionGrowing();
+        parallel.setUseMeanMS(useMeanMS);
+        parallel.setMaxThreads(4);
+        List<PeakArea2D> expected = sequential.getAreasFor(seeds, chrom.getParent(), chrom);
+        List<PeakArea2D> actual = parallel.getAreasFor(seeds, chrom.getParent(), chrom);
+        Assert.assertEquals(seeds.size() - 1, expected.size());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            PeakArea2D e = expected.get(i);
+            PeakArea2D a = actual.get(i);
+            Assert.assertEquals(e.getSeedPoint(), a.getSeedPoint());
+            Assert.assertEquals(14, e.getRegionPoints().size());
+            Assert.assertEquals(sorted(e.getRegionPoints()), sorted(a.getRegionPoints()));
+            Assert.assertEquals(sorted(e.getBoundaryPointsCopy()), sorted(a.getBoundaryPointsCopy()));
+            Assert.assertEquals(e.getSeedIntensity(), a.getSeedIntensity(), 0.0d);
+            Assert.assertEquals(e.getAreaIntensity(), a.getAreaIntensity(), 1.0e-9 * e.getAreaIntensity());
+            Assert.assertArrayEquals((double[]) e.getMeanMS().get1DJavaArray(double.class),
+                    (double[]) a.getMeanMS().get1DJavaArray(double.class), 1.0e-9);
+        }
+    }
+
+    private List<Point> sorted(List<Point> points) {
+        List<Point> l = new ArrayList<>(points);
+        Collections.sort(l, new Comparator<Point>() {
+            @Override
+            public int compare(Point o1, Point o2) {
+                if (o1.x != o2.x) {
+                    return Integer.compare(o1.x, o2.x);
+                }
+                return Integer.compare(o1.y, o2.y);
+            }
+        });
+        return l;
+    }
+
+    /**
+     * Regions grown with a fixed seed spectrum.
+     */
+    @Test
+    public void testSameAreasAsOneByOne() throws IOException {
+        compare(false);
+    }
+
+    /**
+     * Regions grown with the running mean spectrum.
+     */
+    @Test
+    public void testSameAreasAsOneByOneWithMeanMS() throws IOException {
+        compare(true);
+    }
+}
@@ -48,6 +48,7 @@ import lombok.Data;
 
 import maltcms.commands.scanners.ArrayStatsScanner;
 import maltcms.io.csv.ColorRampReader;
+import maltcms.math.fft.FftCorrelation;
 import maltcms.tools.ImageTools;
 import maltcms.tools.MaltcmsTools;
 import maltcms.ui.charts.CombinedDomainXYChart;
@@ -230,6 +231,33 @@ public class ModulationTimeEstimator extends AFragmentCommand {
         // return v;
     }
 
+    /**
+     * Estimates the autocorrelation of <code>a</code> for lags
+     * <code>1</code> to <code>acr.getShape()[0]-1</code> via FFT and stores
+     * the value for each lag at index <code>lag-1</code> of
+     * <code>acr</code>.
+     *
+     * @param a the array
+     * @param mean a double.
+     * @param variance a double.
+     * @param acr a {@link ucar.ma2.ArrayDouble.D1} object.
+     * @since 2.0.1
+     */
+    protected void calcEstimatedAutoCorrelation(final Array a,
+            final double mean, final double variance, final ArrayDouble.D1 acr) {
+        EvalTools.eqI(a.getRank(), 1, this);
+        final int maxLag = Math.min(acr.getShape()[0] - 1, a.getShape()[0] - 1);
+        if (maxLag < 1) {
+            return;
+        }
+        final double[] r = FftCorrelation.autoCorrelation(
+                (double[]) a.get1DJavaArray(double.class), mean, variance,
+                maxLag);
+        for (int lag = 1; lag <= maxLag; lag++) {
+            acr.set(lag - 1, r[lag]);
+        }
+    }
+
     /**
      * <p>checkDeltas.</p>
      *
@@ -392,12 +420,10 @@ public class ModulationTimeEstimator extends AFragmentCommand {
         // double min = Double.POSITIVE_INFINITY;
         // int minindex = 0;
         final ArrayInt.D1 domain = new ArrayInt.D1(ubound, false);
-        final int dindex = 0;
-        // double current, next, prev;
-        // for (int lag = 1; lag < ubound; lag++) {
-        // domain.set(dindex++, lag);
-        // calcEstimatedAutoCorrelation(tic, mean, variance, lag, acr);
-        // }
+        for (int lag = 1; lag < ubound; lag++) {
+            domain.set(lag - 1, lag);
+        }
+        calcEstimatedAutoCorrelation(tic, mean, variance, acr);
         //
         // log.info("Autocorrelation: ");
         // // log.info("{}",acr);
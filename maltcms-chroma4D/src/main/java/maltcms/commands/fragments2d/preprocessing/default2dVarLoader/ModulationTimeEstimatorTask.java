@@ -42,6 +42,7 @@ import java.util.logging.Logger;
 import lombok.Data;
 
 import maltcms.commands.scanners.ArrayStatsScanner;
+import maltcms.math.fft.FftCorrelation;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayDouble;
@@ -103,7 +104,18 @@ public class ModulationTimeEstimatorTask implements Callable<Double>,
         final double variance = sma[0].get(cross.datastructures.Vars.Variance.
                 toString());
         final ArrayDouble.D1 acr = new ArrayDouble.D1(numberOfScans);
-        for (int lag = 1; lag < numberOfScans - 1; lag++) {
+        final int n = ticPart.getShape()[0];
+        final int maxLag = Math.min(numberOfScans - 2, n - 1);
+        if (maxLag >= 1) {
+            final double[] r = FftCorrelation.autoCorrelation(
+                    (double[]) ticPart.get1DJavaArray(double.class), mean,
+                    variance, maxLag);
+            for (int lag = 1; lag <= maxLag; lag++) {
+                acr.setDouble(lag - 1, r[lag]);
+            }
+        }
+        // lags beyond the length of the tic part have no overlap
+        for (int lag = Math.max(1, maxLag + 1); lag < numberOfScans - 1; lag++) {
             acr.setDouble(lag - 1, calcEstimatedAutoCorrelation(ticPart, mean,
                     variance, lag));
         }
@@ -200,7 +200,7 @@ public class ScanlineMeanMSWarp extends ADynamicTimeWarp {
     }
 
     /**
-     * Getter.
+     * Getter. Clears the scan line cache afterwards.
      *
      * @param slc scanline cache
      * @return list of mean mass spectras
@@ -209,20 +209,24 @@ public class ScanlineMeanMSWarp extends ADynamicTimeWarp {
         final List<Array> meanMS = new ArrayList<>();
         List<Array> scanline = null;
         Array sum = null;
-        for (int i = 0; i < slc.getScanLineCount(); i++) {
-            if (i % 100 == 0) {
-                log.info("	{}", i);
-            }
-            scanline = slc.getScanlineMS(i);
-            sum = null;
-            for (final Array ms : scanline) {
-                if (sum == null) {
-                    sum = ms.copy();
-                } else {
-                    sum = ArrayTools.sum(sum, ms);
+        try {
+            for (int i = 0; i < slc.getScanLineCount(); i++) {
+                if (i % 100 == 0) {
+                    log.info("	{}", i);
+                }
+                scanline = slc.getScanlineMS(i);
+                sum = null;
+                for (final Array ms : scanline) {
+                    if (sum == null) {
+                        sum = ms.copy();
+                    } else {
+                        sum = ArrayTools.sum(sum, ms);
+                    }
                 }
+                meanMS.add(ArrayTools.mult(sum, scanline.size()));
             }
-            meanMS.add(ArrayTools.mult(sum, scanline.size()));
+        } finally {
+            slc.clear();
         }
         return meanMS;
     }
@@ -27,7 +27,6 @@
  */
 package maltcms.commands.distances;
 
-import cross.Factory;
 import cross.IConfigurable;
 import cross.annotations.Configurable;
 import java.awt.Rectangle;
@@ -39,8 +38,6 @@ import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
@@ -76,6 +73,8 @@ public class PairwiseFeatureSimilarity implements IConfigurable {
     private IDtwSimilarityFunction similarityFunction = new DtwTimePenalizedPairwiseSimilarity();
     @Configurable(name = "cross.Factory.maxthreads")
     private int nthreads = 1;
+    private int tilesPerThread = 8;
+    private int minTileSize = 32;
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
     private IArrayD2Double pad = null;
@@ -108,6 +107,14 @@ public class PairwiseFeatureSimilarity implements IConfigurable {
      * distances/similarites. Values are set within the paramter ArrayDouble.D2
      * d and can be retrieved from it.
      *
+     * Only the stored elements of <code>d</code> are calculated. They are
+     * partitioned into tiles, whose size adapts to the number of stored
+     * elements and threads, so that each thread receives approximately
+     * <code>tilesPerThread</code> tiles. Tiles without any stored elements are
+     * not created. The tiles are calculated on the {@link SharedExecutor}, or
+     * on the calling thread, if <code>nthreads</code> is 1. Failures of the
+     * similarity function are propagated to the caller.
+     *
      * @param d a {@link maltcms.datastructures.array.IArrayD2Double} object.
      * @param ref a {@link java.util.List} object.
      * @param query a {@link java.util.List} object.
@@ -117,53 +124,88 @@ public class PairwiseFeatureSimilarity implements IConfigurable {
     public void calculatePairwiseDistances(final IArrayD2Double d,
             final ArrayDouble.D1 satRef1, final ArrayDouble.D1 satQuery1,
             final List<Array> ref, final List<Array> query) {
-        if (this.nthreads == 1) {
-            log.info("Skipping precalculation, only one thread available!");
-            return;
-        }
-
         final ArrayDouble.D1 satRef = (satRef1 == null) ? new ArrayDouble.D1(
                 ref.size()) : satRef1;
         final ArrayDouble.D1 satQuery = (satQuery1 == null) ? new ArrayDouble.D1(
                 query.size())
                 : satQuery1;
-
-        final int rows = ref.size();
-        final int cols = query.size();
-        final float nelements = (rows * cols);
-        // float onebynelemens = 1.0f / nelements;
-        log.info("Calculating {} elements", nelements);
-        int i = 0;
-        int j = 0;
-        this.pad = d;
-        final ExecutorService es = Executors.newFixedThreadPool(this.nthreads);
-        // int threadpoolsize = Math.max(1, Math.min(50, Math.max(sx, sy)/10));
-        // ExecutorService es = Executors.newFixedThreadPool(nthreads);
-        log.info("Precalculating the distance matrix with {} thread(s)!",
-                this.nthreads);
-        final int tilesRows = 2;
-        final int tilesCols = 2;
-        final int tileSizeRows = (int) Math.ceil((float) rows
-                / (float) tilesRows);
-        final int tileSizeCols = (int) Math.ceil((float) cols
-                / (float) tilesCols);
-        final ArrayList<Callable<Integer>> solvers = new ArrayList<>();
-        for (i = 0; i < tilesRows; i++) {
-            for (j = 0; j < tilesCols; j++) {
-                final Rectangle r = new Rectangle(i * tileSizeCols, j
-                        * tileSizeRows, tileSizeCols, tileSizeRows);
-                log.debug("Creating rectangle: {}", r);
-                final PartitionCalculator pc = new PartitionCalculator(r,
-                        this.pad, satRef, satQuery, ref, query);
-                pc.configure(Factory.getInstance().getConfiguration());
-                solvers.add(pc);
+        final int threads = this.nthreads < 1 ? Runtime.getRuntime().
+                availableProcessors() : this.nthreads;
+        final List<Callable<Integer>> solvers = createTiles(d, threads,
+                satRef, satQuery, ref, query);
+        log.info("Precalculating {} elements in {} tiles with {} thread(s)!",
+                new Object[]{d.getNumberOfStoredElements(), solvers.size(),
+                    threads});
+        this.pad = null;
+        try {
+            if (threads == 1) {
+                int cnt = 0;
+                for (final Callable<Integer> s : solvers) {
+                    cnt += s.call();
+                }
+                log.info("Calculated {}/{} similarities/distances", cnt,
+                        d.getNumberOfStoredElements());
+            } else {
+                calcPWD(SharedExecutor.get(threads), solvers, d);
+            }
+            this.pad = d;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
         }
-        try {
-            calcPWD(es, solvers, this.pad);
-        } catch (final InterruptedException | ExecutionException e) {
-            log.error(e.getLocalizedMessage());
+    }
+
+    private List<Callable<Integer>> createTiles(final IArrayD2Double d,
+            final int threads, final ArrayDouble.D1 satRef,
+            final ArrayDouble.D1 satQuery, final List<Array> ref,
+            final List<Array> query) {
+        final int rows = d.rows();
+        final double targetTiles = Math.max(1, threads * this.tilesPerThread);
+        final int tileSize = Math.max(Math.max(1, this.minTileSize),
+                (int) Math.ceil(Math.sqrt(d.getNumberOfStoredElements()
+                                / targetTiles)));
+        final List<Callable<Integer>> solvers = new ArrayList<>();
+        for (int rowStart = 0; rowStart < rows; rowStart += tileSize) {
+            final int rowEnd = Math.min(rows, rowStart + tileSize);
+            final int[] starts = new int[rowEnd - rowStart];
+            final int[] ends = new int[rowEnd - rowStart];
+            int minCol = Integer.MAX_VALUE;
+            int maxCol = -1;
+            for (int i = rowStart; i < rowEnd; i++) {
+                final int[] bounds = d.getColumnBounds(i);
+                starts[i - rowStart] = bounds[0];
+                ends[i - rowStart] = bounds[0] + bounds[1];
+                if (bounds[1] > 0) {
+                    minCol = Math.min(minCol, bounds[0]);
+                    maxCol = Math.max(maxCol, bounds[0] + bounds[1]);
+                }
+            }
+            for (int colStart = minCol; colStart < maxCol; colStart += tileSize) {
+                final int colEnd = Math.min(maxCol, colStart + tileSize);
+                boolean stored = false;
+                for (int k = 0; k < starts.length && !stored; k++) {
+                    stored = starts[k] < colEnd && ends[k] > colStart;
+                }
+                if (stored) {
+                    final Rectangle r = new Rectangle(colStart, rowStart,
+                            colEnd - colStart, rowEnd - rowStart);
+                    solvers.add(new PartitionCalculator(r, d,
+                            this.similarityFunction, satRef, satQuery, ref,
+                            query));
+                }
+            }
         }
+        log.debug("Created {} tiles of size {}", solvers.size(), tileSize);
+        return solvers;
     }
 
     /** {@inheritDoc} */
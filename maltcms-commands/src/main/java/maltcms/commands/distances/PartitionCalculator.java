@@ -30,7 +30,6 @@ package maltcms.commands.distances;
 import cross.Factory;
 import cross.IConfigurable;
 import java.awt.Rectangle;
-import java.awt.geom.Area;
 import java.util.List;
 import java.util.concurrent.Callable;
 import lombok.Data;
@@ -85,6 +84,26 @@ public class PartitionCalculator implements Callable<Integer>, IConfigurable {
         this.query = query1;
     }
 
+    /**
+     * <p>Constructor for PartitionCalculator.</p>
+     *
+     * @param shape1 a {@link java.awt.Rectangle} object.
+     * @param pa1 a {@link maltcms.datastructures.array.IArrayD2Double} object.
+     * @param costFunction1 a {@link maltcms.commands.distances.IDtwSimilarityFunction} object.
+     * @param satRef1 a {@link ucar.ma2.ArrayDouble.D1} object.
+     * @param satQuery1 a {@link ucar.ma2.ArrayDouble.D1} object.
+     * @param ref1 a {@link java.util.List} object.
+     * @param query1 a {@link java.util.List} object.
+     * @since 2.0.1
+     */
+    public PartitionCalculator(final Rectangle shape1,
+            final IArrayD2Double pa1, final IDtwSimilarityFunction costFunction1,
+            final ArrayDouble.D1 satRef1, final ArrayDouble.D1 satQuery1,
+            final List<Array> ref1, final List<Array> query1) {
+        this(shape1, pa1, satRef1, satQuery1, ref1, query1);
+        this.costFunction = costFunction1;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -93,31 +112,29 @@ public class PartitionCalculator implements Callable<Integer>, IConfigurable {
     /** {@inheritDoc} */
     @Override
     public Integer call() throws Exception {
-        final Area a = this.pa.getShape();
-        if (a.intersects(this.shape)) {
-            log.debug("Bounds before intersection: {}", this.shape);
-            final Area b = new Area(this.shape);
-            b.intersect(a);
-            final Rectangle r = b.getBounds();
-            log.debug("Bounds after intersection: {}", r);
-            int counter = 0;
-            for (int i = r.y; i < r.y + r.height; i++) {
-                final int[] bounds = this.pa.getColumnBounds(i);
-                for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
-                    this.pa.set(i, j, this.costFunction.apply(i, j,
-                            this.satRef.get(i), this.satQuery.get(j),
-                            this.ref.get(i), this.query.get(j)));
-                    counter++;
-                }
+        final int rowStart = Math.max(0, this.shape.y);
+        final int rowEnd = Math.min(this.pa.rows(), this.shape.y
+                + this.shape.height);
+        final int colStart = this.shape.x;
+        final int colEnd = this.shape.x + this.shape.width;
+        int counter = 0;
+        for (int i = rowStart; i < rowEnd; i++) {
+            final int[] bounds = this.pa.getColumnBounds(i);
+            final int start = Math.max(colStart, bounds[0]);
+            final int end = Math.min(colEnd, bounds[0] + bounds[1]);
+            for (int j = start; j < end; j++) {
+                this.pa.set(i, j, this.costFunction.apply(i, j,
+                        this.satRef.get(i), this.satQuery.get(j),
+                        this.ref.get(i), this.query.get(j)));
+                counter++;
             }
-            return counter;
-        } else {
+        }
+        if (counter == 0) {
             log.debug(
                     "Job outside of defined bounds on PartitionedArray for rectangle {}",
                     this.shape);
         }
-
-        return 0;
+        return counter;
     }
 
     /*
@@ -0,0 +1,169 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides a process wide, work stealing executor for fine grained, compute
+ * bound tasks, like the calculation of tiles of pairwise distance or
+ * cumulative distance matrices. Reusing the same executor avoids creating and
+ * leaking a new thread pool for each pairwise comparison. The worker threads
+ * are daemon threads and do not need to be shut down explicitly.
+ *
+ * All tasks run on a single pool with one thread per available processor.
+ * Callers request a view of that pool, which runs at most the requested
+ * number of their tasks at the same time and queues the rest. Views hold no
+ * threads of their own and can not be shut down.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class SharedExecutor {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(SharedExecutor.class);
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().
+            availableProcessors());
+
+    private SharedExecutor() {
+
+    }
+
+    /**
+     * Returns the parallelism of the views returned by
+     * {@link #get(int)} for the given request.
+     *
+     * @param parallelism the requested parallelism, values &lt; 1 select the
+     * number of available processors.
+     * @return the effective parallelism, at most the size of the shared pool
+     */
+    public static int getParallelism(final int parallelism) {
+        final int p = parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism;
+        return Math.min(p, POOL.getParallelism());
+    }
+
+    /**
+     * Returns a view of the shared executor, that runs at most
+     * <code>parallelism</code> of the tasks submitted to it at the same time.
+     *
+     * @param parallelism the requested parallelism, values &lt; 1 select the
+     * number of available processors.
+     * @return the bounded view of the shared executor.
+     */
+    public static ExecutorService get(final int parallelism) {
+        final int p = getParallelism(parallelism);
+        log.debug("Using shared work stealing executor with parallelism {}", p);
+        return new BoundedExecutor(p);
+    }
+
+    /**
+     * Runs queued tasks on the shared pool with at most
+     * <code>parallelism</code> drainers at a time.
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+
+        private final int parallelism;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger active = new AtomicInteger();
+        private final Runnable drainer = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Runnable r;
+                    while ((r = queue.poll()) != null) {
+                        r.run();
+                    }
+                } finally {
+                    active.decrementAndGet();
+                    //tasks queued while this drainer was finishing
+                    schedule();
+                }
+            }
+        };
+
+        BoundedExecutor(final int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (command == null) {
+                throw new NullPointerException();
+            }
+            queue.add(command);
+            schedule();
+        }
+
+        private void schedule() {
+            while (!queue.isEmpty()) {
+                final int a = active.get();
+                if (a >= parallelism) {
+                    return;
+                }
+                if (active.compareAndSet(a, a + 1)) {
+                    POOL.execute(drainer);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            throw new UnsupportedOperationException("Shared executors can not be shut down!");
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            throw new UnsupportedOperationException("Shared executors can not be shut down!");
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+            return false;
+        }
+    }
+}
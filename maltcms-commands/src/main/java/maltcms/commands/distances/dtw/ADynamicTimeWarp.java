@@ -48,10 +48,12 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import javax.imageio.ImageIO;
 import lombok.Data;
 
 import maltcms.commands.distances.DtwRecurrence;
+import maltcms.commands.distances.IDtwSimilarityFunction;
 import maltcms.commands.distances.PairwiseFeatureSimilarity;
 import maltcms.commands.scanners.ArrayStatsScanner;
 import maltcms.datastructures.alignment.AnchorPairSet;
@@ -59,6 +61,7 @@ import maltcms.datastructures.array.ArrayFactory;
 import maltcms.datastructures.array.IArrayD2Double;
 import maltcms.datastructures.fragments.PairwiseAlignment;
 import maltcms.datastructures.ms.IAnchor;
+import maltcms.math.functions.similarities.SimilarityTools;
 import maltcms.tools.ImageTools;
 import maltcms.tools.MaltcmsTools;
 import org.apache.commons.configuration.Configuration;
@@ -161,6 +164,11 @@ public abstract class ADynamicTimeWarp implements IDynamicTimeWarp {
     private boolean saveDtwMatrix = false;
     private boolean savePairwiseSimilarityMatrix = false;
     private boolean normalizeAlignmentValue = false;
+    private int wavefrontThreads = 1;
+    private int wavefrontTileSize = 256;
+    private boolean linearMemory = false;
+    private int linearMemoryBaseCells = 65536;
+    private transient FeatureSequenceStore featureStore = null;
 
     /**
      * <p>Constructor for ADynamicTimeWarp.</p>
@@ -345,6 +353,9 @@ public abstract class ADynamicTimeWarp implements IDynamicTimeWarp {
      */
     private IFileFragment calcAlignment(
             final Tuple2D<IFileFragment, IFileFragment> t) {
+        if (this.linearMemory) {
+            return calcLinearMemoryAlignment(t);
+        }
         this.pa = new PairwiseAlignment();
         this.pa.setWorkflow(getWorkflow());
         this.pa.setSaveCDM(saveDtwMatrix);
@@ -431,6 +442,146 @@ public abstract class ADynamicTimeWarp implements IDynamicTimeWarp {
         return forwardAlignment;
     }
 
+    /**
+     * Calculates the alignment without keeping the cumulative, pairwise and
+     * predecessor matrices. Only the path, the pairwise distances along the
+     * path and the alignment value are stored.
+     *
+     * @param t
+     * @return
+     */
+    private IFileFragment calcLinearMemoryAlignment(
+            final Tuple2D<IFileFragment, IFileFragment> t) {
+        this.pa = new PairwiseAlignment();
+        this.pa.setWorkflow(getWorkflow());
+        this.pa.setSaveCDM(false);
+        this.pa.setSavePWDM(false);
+        this.pa.setNormalizeByMapLength(false);
+        this.pa.setFileFragments(t.getFirst(), t.getSecond(), this.getClass());
+        if (saveDtwMatrix || savePairwiseSimilarityMatrix || saveLayoutImage) {
+            log.warn("Matrices and layout images are not available in linear memory mode!");
+        }
+        final Tuple2D<List<Array>, List<Array>> tuple = createTuple(t);
+        final AnchorPairSet aps = buildAnchorPairSet(t);
+        final ArrayDouble.D1 sat_ref = getScanAcquisitionTime(t.getFirst());
+        final ArrayDouble.D1 sat_query = getScanAcquisitionTime(t.getSecond());
+        final int rows = tuple.getFirst().size();
+        final int cols = tuple.getSecond().size();
+        EvalTools.neqI(0, rows, this);
+        EvalTools.neqI(0, cols, this);
+        final long start = System.currentTimeMillis();
+        final ArrayFactory f = Factory.getInstance().getObjectFactory().
+                instantiate(ArrayFactory.class);
+        final int[][] columnBounds = f.createColumnBounds(rows, cols, aps,
+                this.anchorRadius, this.bandWidthPercentage, this.globalBand);
+        final DtwRecurrence rec = this.recurrence;
+        final LinearMemoryDtw dtw = new LinearMemoryDtw(rec,
+                this.pairwiseFeatureSimilarity.getSimilarityFunction(),
+                tuple.getFirst(), tuple.getSecond(), sat_ref, sat_query,
+                columnBounds, this.linearMemoryBaseCells);
+        double value = dtw.align();
+        final long time = System.currentTimeMillis() - start;
+        log.info("Time to calculate linear memory alignment: {} milliseconds",
+                time);
+        if (this.normalizeAlignmentValue) {
+            final IDtwSimilarityFunction sim = this.pairwiseFeatureSimilarity.
+                    getSimilarityFunction();
+            final double gapPenaltiesW = (dtw.getNexp() + dtw.getNcomp())
+                    * rec.getGlobalGapPenalty();
+            value = (value - gapPenaltiesW)
+                    / (dtw.getNexp() * sim.getExpansionWeight()
+                    + dtw.getNcomp() * sim.getCompressionWeight()
+                    + dtw.getNdiag() * sim.getMatchWeight());
+            log.info("Alignment value normalized by path weights: {}", value);
+        }
+        this.pa.setIsMinimizing(minimize());
+        this.pa.setCumulativeDistance(rec);
+        this.pa.setPairwiseDistance(getPairwiseFeatureSimilarity());
+        this.pa.setNumberOfScansReference(this.ref_num_scans);
+        this.pa.setNumberOfScansQuery(this.query_num_scans);
+        this.pa.setAnchors(aps);
+        this.pa.setPath(dtw.getPath());
+        this.pa.setPathDistances(dtw.getPathDistances());
+        this.pa.setResult(value);
+        if (getStatsMap() != null) {
+            getStatsMap().put("totalMatrixCalculationTime", (double) time);
+            getStatsMap().put("nanchors", (double) (aps.getSize() - 2));
+            getStatsMap().put("lhsNscans", (double) this.ref_num_scans);
+            getStatsMap().put("rhsNscans", (double) this.query_num_scans);
+            getStatsMap().put("longestPath",
+                    (double) (this.ref_num_scans + this.query_num_scans - 1));
+            getStatsMap().put("w_exp", rec.getExpansionWeight());
+            getStatsMap().put("w_comp", rec.getCompressionWeight());
+            getStatsMap().put("w_diag", rec.getDiagonalWeight());
+            getStatsMap().put("gap_global", rec.getGlobalGapPenalty());
+            getStatsMap().put("pairwiseEvaluations",
+                    (double) dtw.getEvaluations());
+        }
+        this.alignment = null;
+        this.distance = null;
+        this.predecessors = null;
+        this.resF = this.pa.provideFileFragment();
+        this.result = this.pa.getResult();
+        this.resultVector = this.pa.getResultVector();
+        if (getStatsMap() != null) {
+            getStatsMap().put("pathLength", (double) pa.getPath().size());
+        }
+        final IFileFragment forwardAlignment = saveState(this.resF);
+        t.getFirst().clearArrays();
+        t.getSecond().clearArrays();
+        return forwardAlignment;
+    }
+
+    /**
+     * Recreates the alignment fragment of <code>a</code> and <code>b</code>
+     * from a previously calculated warping path, the pairwise distances along
+     * that path and the alignment value, without aligning the feature
+     * sequences again.
+     *
+     * @param a the reference fragment
+     * @param b the query fragment
+     * @param path the warping path
+     * @param pathDistances the pairwise distances along the path
+     * @param value the alignment value
+     * @return the alignment fragment
+     * @since 2.0.1
+     */
+    public IFileFragment restore(final IFileFragment a, final IFileFragment b,
+            final List<Tuple2DI> path, final ArrayDouble.D1 pathDistances,
+            final double value) {
+        EvalTools.notNull(new Object[]{a, b, path, pathDistances}, this);
+        EvalTools.neqI(0, path.size(), this);
+        final Tuple2DI last = path.get(path.size() - 1);
+        this.ref_num_scans = last.getFirst() + 1;
+        this.query_num_scans = last.getSecond() + 1;
+        this.pa = new PairwiseAlignment();
+        this.pa.setWorkflow(getWorkflow());
+        this.pa.setSaveCDM(false);
+        this.pa.setSavePWDM(false);
+        this.pa.setNormalizeByMapLength(false);
+        this.pa.setFileFragments(a, b, this.getClass());
+        this.pa.setIsMinimizing(minimize());
+        this.pa.setCumulativeDistance(this.recurrence);
+        this.pa.setPairwiseDistance(getPairwiseFeatureSimilarity());
+        this.pa.setNumberOfScansReference(this.ref_num_scans);
+        this.pa.setNumberOfScansQuery(this.query_num_scans);
+        this.pa.setPath(path);
+        this.pa.setPathDistances(pathDistances);
+        this.pa.setResult(value);
+        this.alignment = null;
+        this.distance = null;
+        this.predecessors = null;
+        this.resF = this.pa.provideFileFragment();
+        this.result = this.pa.getResult();
+        this.resultVector = this.pa.getResultVector();
+        if (getStatsMap() != null) {
+            getStatsMap().put("lhsNscans", (double) this.ref_num_scans);
+            getStatsMap().put("rhsNscans", (double) this.query_num_scans);
+            getStatsMap().put("pathLength", (double) path.size());
+        }
+        return saveState(this.resF);
+    }
+
     /**
      * @param aps
      * @param alignmentName
@@ -505,7 +656,14 @@ public abstract class ADynamicTimeWarp implements IDynamicTimeWarp {
         log.debug("Set up anchors!");
         final long elements = this.alignment.getNumberOfStoredElements();
         log.info("Calculating {} pairwise scores/costs", elements);
-        if (precalculatePairwiseDistances) {
+        if (wavefrontThreads != 1) {
+            final WavefrontDtwEngine engine = new WavefrontDtwEngine(
+                    wavefrontThreads, wavefrontTileSize);
+            engine.fill(distance2, alignment2, predecessors, this.recurrence,
+                    this.pairwiseFeatureSimilarity,
+                    precalculatePairwiseDistances, ref, query, sat_ref,
+                    sat_query);
+        } else if (precalculatePairwiseDistances) {
             for (int i = 0; i < this.alignment.rows(); i++) {
                 final int[] bounds = this.alignment.getColumnBounds(i);
                 for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
@@ -596,7 +754,62 @@ public abstract class ADynamicTimeWarp implements IDynamicTimeWarp {
         return this.resF;
     }
 
+    /**
+     * Returns the features produced by <code>loader</code> for
+     * <code>f</code>. If a {@link FeatureSequenceStore} has been set, the
+     * features are loaded once per run and shared with all other alignments
+     * of that run, and their precomputed norms are published to the shared
+     * norm cache of the cosine similarity.
+     *
+     * @param f the chromatogram
+     * @param feature the name of the feature, including all parameters that
+     * influence its value
+     * @param loader the loader of the features
+     * @return the features, which must not be modified
+     * @since 2.0.1
+     */
+    protected List<Array> getFeatures(final IFileFragment f,
+            final String feature, final Callable<List<Array>> loader) {
+        if (this.featureStore == null) {
+            return call(loader);
+        }
+        final FeatureSequenceStore.FeatureSequence seq = this.featureStore.get(
+                f.getUri(), feature,
+                new Callable<FeatureSequenceStore.FeatureSequence>() {
+            @Override
+            public FeatureSequenceStore.FeatureSequence call() throws Exception {
+                return new FeatureSequenceStore.FeatureSequence(loader.call());
+            }
+        });
+        seq.publishNorms(SimilarityTools.<Double>getArrayValueCache(
+                "ArrayCos.norm"));
+        return seq.getFeatures();
+    }
+
+    private <T> T call(final Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private ArrayDouble.D1 getScanAcquisitionTime(final IFileFragment f) {
+        if (this.featureStore == null) {
+            return loadScanAcquisitionTime(f);
+        }
+        return this.featureStore.get(f.getUri(), this.scan_acquisition_time,
+                new Callable<ArrayDouble.D1>() {
+            @Override
+            public ArrayDouble.D1 call() {
+                return loadScanAcquisitionTime(f);
+            }
+        });
+    }
+
+    private ArrayDouble.D1 loadScanAcquisitionTime(final IFileFragment f) {
         Array sat_ref = null;
         try {
             sat_ref = f.getChild(this.scan_acquisition_time).getArray();
@@ -0,0 +1,270 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances.dtw;
+
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import maltcms.math.functions.similarities.ArrayValueCache;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.MAVector;
+
+/**
+ * Run-scoped, thread-safe store of per-chromatogram feature sequences.
+ *
+ * All pairwise alignments of one run that compare the same chromatogram share
+ * the sequence loaded by the first of them, instead of reloading and
+ * re-binning the chromatogram for each of its N-1 partners. Values are loaded
+ * at most once per key; concurrent requests for a key that is still loading
+ * wait for the first loader. Stored values must be treated as read-only.
+ *
+ * Values are only softly referenced by the store, so that the JVM may reclaim
+ * them under memory pressure instead of keeping the sequences of all
+ * chromatograms until the end of the run. A reclaimed value is loaded again on
+ * its next request.
+ *
+ * Stores are registered by id within the current JVM, so that serializable
+ * workers only need to carry the id. The owner of a run is responsible for
+ * calling {@link #release(java.lang.String)} once all workers have finished.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class FeatureSequenceStore {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(FeatureSequenceStore.class);
+    private static final ConcurrentMap<String, FeatureSequenceStore> STORES = new ConcurrentHashMap<>();
+    private final String id;
+    private final ConcurrentMap<String, FutureTask<SoftReference<Object>>> values = new ConcurrentHashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    private FeatureSequenceStore(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the store registered for <code>id</code>, creating it if
+     * necessary.
+     *
+     * @param id the run id
+     * @return the store for the given id
+     */
+    public static FeatureSequenceStore getInstance(String id) {
+        FeatureSequenceStore store = STORES.get(id);
+        if (store == null) {
+            FeatureSequenceStore newStore = new FeatureSequenceStore(id);
+            store = STORES.putIfAbsent(id, newStore);
+            if (store == null) {
+                store = newStore;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Removes the store registered for <code>id</code> and drops all of its
+     * values.
+     *
+     * @param id the run id
+     */
+    public static void release(String id) {
+        FeatureSequenceStore store = STORES.remove(id);
+        if (store != null) {
+            log.info("Releasing feature store {} with {} values, {} loads and {} hits",
+                    new Object[]{id, store.size(), store.getLoads(), store.getHits()});
+            store.values.clear();
+        }
+    }
+
+    /**
+     * Returns the value of <code>feature</code> for the chromatogram at
+     * <code>uri</code>, calling <code>loader</code> if it has not been loaded
+     * yet or if it has been reclaimed.
+     *
+     * @param <T> the value type
+     * @param uri the chromatogram uri
+     * @param feature the name of the feature, including all parameters that
+     * influence its value
+     * @param loader the loader to use if the value is not yet available
+     * @return the stored value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(URI uri, String feature, final Callable<T> loader) {
+        final String key = uri.toString() + "#" + feature;
+        while (true) {
+            // keeps the value reachable for the loading thread
+            final Object[] loaded = new Object[1];
+            FutureTask<SoftReference<Object>> task = values.get(key);
+            boolean owner = false;
+            if (task == null) {
+                FutureTask<SoftReference<Object>> newTask = new FutureTask<>(new Callable<SoftReference<Object>>() {
+                    @Override
+                    public SoftReference<Object> call() throws Exception {
+                        loaded[0] = loader.call();
+                        return new SoftReference<>(loaded[0]);
+                    }
+                });
+                task = values.putIfAbsent(key, newTask);
+                if (task == null) {
+                    task = newTask;
+                    owner = true;
+                    loads.incrementAndGet();
+                    task.run();
+                }
+            }
+            final Object value;
+            try {
+                value = task.get().get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (final ExecutionException e) {
+                // allow a later request to retry
+                values.remove(key, task);
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+            if (owner) {
+                return (T) loaded[0];
+            }
+            if (value != null) {
+                hits.incrementAndGet();
+                return (T) value;
+            }
+            log.debug("Value for {} has been reclaimed, loading it again", key);
+            values.remove(key, task);
+        }
+    }
+
+    /**
+     * @return the id of this store
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the number of stored values, including reclaimed values that
+     * have not been requested again
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @return the number of values loaded
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return the number of requests answered from a stored value
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Immutable feature sequence of one chromatogram. Each feature is copied
+     * into its own primitive double array, and the euclidean norms of all
+     * features are computed once on construction.
+     */
+    public static final class FeatureSequence {
+
+        private final List<Array> features;
+        private final double[] norms;
+
+        /**
+         * Creates a new feature sequence from the given features.
+         *
+         * @param features the features, one array per scan
+         */
+        public FeatureSequence(List<Array> features) {
+            List<Array> l = new ArrayList<>(features.size());
+            this.norms = new double[features.size()];
+            int i = 0;
+            for (Array a : features) {
+                double[] values = (double[]) a.get1DJavaArray(double.class);
+                ArrayDouble.D1 copy = new ArrayDouble.D1(values.length);
+                System.arraycopy(values, 0, (double[]) copy.getStorage(), 0,
+                        values.length);
+                l.add(copy);
+                norms[i++] = new MAVector(copy).norm();
+            }
+            this.features = Collections.unmodifiableList(l);
+        }
+
+        /**
+         * @return the read-only features
+         */
+        public List<Array> getFeatures() {
+            return features;
+        }
+
+        /**
+         * @return the number of features
+         */
+        public int size() {
+            return norms.length;
+        }
+
+        /**
+         * @param i the feature index
+         * @return the euclidean norm of feature <code>i</code>
+         */
+        public double getNorm(int i) {
+            return norms[i];
+        }
+
+        /**
+         * Publishes the precomputed norms to the given cache, so that
+         * similarities using it do not need to recompute them.
+         *
+         * @param cache the norm cache
+         */
+        public void publishNorms(ArrayValueCache<Double> cache) {
+            for (int i = 0; i < norms.length; i++) {
+                cache.put(features.get(i), norms[i]);
+            }
+        }
+    }
+}
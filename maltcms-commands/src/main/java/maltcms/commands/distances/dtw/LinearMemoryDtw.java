@@ -0,0 +1,460 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances.dtw;
+
+import cross.datastructures.tuple.Tuple2DI;
+import cross.exception.ConstraintViolationException;
+import cross.tools.MathTools;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import maltcms.commands.distances.DtwRecurrence;
+import maltcms.commands.distances.IDtwSimilarityFunction;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+
+/**
+ * Dynamic time warping with a memory footprint linear in the number of rows
+ * and columns.
+ *
+ * Instead of storing the cumulative distance, pairwise distance and
+ * predecessor matrices, the optimal path is recovered by divide and conquer,
+ * following Hirschberg's approach: a forward pass over the rows of a
+ * subproblem keeps only two rows of cumulative values and propagates, for each
+ * cell below the middle row, the cells where its optimal path crosses from the
+ * middle row to the next one. The crossing of the end cell's path splits the
+ * subproblem into two smaller ones, which are solved recursively, until they
+ * are small enough to be solved with full predecessor matrices.
+ *
+ * Cells are evaluated with the weights, gap penalty and tie breaking order of
+ * {@link DtwRecurrence}, so the resulting path is identical to the traceback
+ * of the full matrices. Pairwise distances are recalculated during the
+ * recursion, which requires roughly twice as many evaluations of the
+ * similarity function as the full matrix variant.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class LinearMemoryDtw {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(LinearMemoryDtw.class);
+
+    private final IDtwSimilarityFunction similarity;
+    private final List<Array> ref, query;
+    private final ArrayDouble.D1 satRef, satQuery;
+    private final int[] colStart, rowLength;
+    private final int baseCells;
+    private final boolean minimize;
+    private final double init;
+    private final double compWeight, expWeight, diagWeight, gapPenalty;
+    private byte lastPredecessor = 0;
+    private final List<Tuple2DI> path = new ArrayList<>();
+    private double[] pathDistances;
+    private int pathLength = 0;
+    private double value = Double.NaN;
+    private int ndiag = 0, ncomp = 0, nexp = 0;
+    private long evaluations = 0;
+
+    /**
+     * <p>Constructor for LinearMemoryDtw.</p>
+     *
+     * @param recurrence the recurrence providing weights and gap penalty.
+     * @param similarity the pairwise similarity function.
+     * @param ref the reference features.
+     * @param query the query features.
+     * @param satRef the reference scan acquisition times, may be null.
+     * @param satQuery the query scan acquisition times, may be null.
+     * @param columnBounds the lowest column and number of columns for each
+     * row, as returned by
+     * {@link maltcms.datastructures.array.ArrayFactory#createColumnBounds(int, int, maltcms.datastructures.alignment.AnchorPairSet, int, double, boolean)}.
+     * @param baseCells the maximum number of cells of a subproblem that is
+     * solved with full matrices.
+     */
+    public LinearMemoryDtw(final DtwRecurrence recurrence,
+            final IDtwSimilarityFunction similarity, final List<Array> ref,
+            final List<Array> query, final ArrayDouble.D1 satRef,
+            final ArrayDouble.D1 satQuery, final int[][] columnBounds,
+            final int baseCells) {
+        this.similarity = similarity;
+        this.ref = ref;
+        this.query = query;
+        this.satRef = satRef;
+        this.satQuery = satQuery;
+        this.colStart = columnBounds[0];
+        this.rowLength = columnBounds[1];
+        this.baseCells = Math.max(1, baseCells);
+        this.minimize = recurrence.isMinimize();
+        this.init = this.minimize ? Double.POSITIVE_INFINITY
+                : Double.NEGATIVE_INFINITY;
+        this.compWeight = recurrence.getCompressionWeight();
+        this.expWeight = recurrence.getExpansionWeight();
+        this.diagWeight = recurrence.getDiagonalWeight();
+        this.gapPenalty = recurrence.getGlobalGapPenalty();
+    }
+
+    /**
+     * Calculates the optimal path from the first to the last cell.
+     *
+     * @return the cumulative value of the last cell.
+     */
+    public double align() {
+        final int rows = ref.size();
+        final int cols = query.size();
+        path.clear();
+        pathDistances = new double[rows + cols];
+        pathLength = 0;
+        evaluations = 0;
+        final double c00 = cost(0, 0);
+        value = solve(0, 0, rows - 1, cols - 1, this.diagWeight * c00);
+        countSteps();
+        log.debug("Calculated path of length {} with {} pairwise evaluations",
+                path.size(), evaluations);
+        return value;
+    }
+
+    /**
+     * Returns the optimal path in increasing order.
+     *
+     * @return the path.
+     */
+    public List<Tuple2DI> getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the pairwise distances along the path.
+     *
+     * @return the pairwise distances.
+     */
+    public ArrayDouble.D1 getPathDistances() {
+        final ArrayDouble.D1 arr = new ArrayDouble.D1(pathLength);
+        for (int i = 0; i < pathLength; i++) {
+            arr.set(i, pathDistances[i]);
+        }
+        return arr;
+    }
+
+    /**
+     * Returns the cumulative value of the last cell.
+     *
+     * @return the value.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * <p>getNdiag.</p>
+     *
+     * @return the number of diagonal steps, including the first cell.
+     */
+    public int getNdiag() {
+        return ndiag;
+    }
+
+    /**
+     * <p>getNcomp.</p>
+     *
+     * @return the number of vertical (compression) steps.
+     */
+    public int getNcomp() {
+        return ncomp;
+    }
+
+    /**
+     * <p>getNexp.</p>
+     *
+     * @return the number of horizontal (expansion) steps.
+     */
+    public int getNexp() {
+        return nexp;
+    }
+
+    /**
+     * <p>getEvaluations.</p>
+     *
+     * @return the number of pairwise similarity evaluations.
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    private double cost(final int i, final int j) {
+        evaluations++;
+        return similarity.apply(i, j, satRef == null ? -1 : satRef.get(i),
+                satQuery == null ? -1 : satQuery.get(j), ref.get(i),
+                query.get(j));
+    }
+
+    private int lo(final int row, final int c0) {
+        return Math.max(c0, colStart[row]);
+    }
+
+    private int hi(final int row, final int c1) {
+        return Math.min(c1, colStart[row] + rowLength[row] - 1);
+    }
+
+    /**
+     * Evaluates a cell in the same way as {@link DtwRecurrence}, storing the
+     * predecessor in <code>lastPredecessor</code>.
+     */
+    private double evaluate(final double up, final double diag,
+            final double left, final double cij) {
+        final double n = (this.compWeight * cij) + up + this.gapPenalty;
+        final double nw = (this.diagWeight * cij) + diag;
+        final double w = (this.expWeight * cij) + left + this.gapPenalty;
+        final double m = this.minimize ? MathTools.min(n, w, nw) : MathTools.max(n, w, nw);
+        if (m == nw) {
+            lastPredecessor = 1;
+        } else if (m == n) {
+            lastPredecessor = 2;
+        } else if (m == w) {
+            lastPredecessor = 3;
+        } else {
+            lastPredecessor = 0;
+        }
+        return m;
+    }
+
+    private boolean unreachable(final double d) {
+        return d == this.init || Double.isNaN(d);
+    }
+
+    private ConstraintViolationException illegalState(final int row,
+            final int column) {
+        return new ConstraintViolationException(
+                "Illegal recursion state detected at " + row + "," + column
+                + "! Please check alignment constraints and pairwise similarity! Example: rtEpsilon should not be set too low for DTW!");
+    }
+
+    private double solve(final int r0, final int c0, final int r1,
+            final int c1, final double startValue) {
+        final long cells = (long) (r1 - r0 + 1) * (long) (c1 - c0 + 1);
+        if (r0 == r1 || cells <= this.baseCells) {
+            return solveBase(r0, c0, r1, c1, startValue);
+        }
+        final int mid = (r0 + r1) / 2;
+        final int width = c1 - c0 + 1;
+        double[] prevV = new double[width];
+        double[] curV = new double[width];
+        int[] prevFrom = new int[width];
+        int[] curFrom = new int[width];
+        int[] prevTo = new int[width];
+        int[] curTo = new int[width];
+        double[] prevCV = new double[width];
+        double[] curCV = new double[width];
+        Arrays.fill(prevV, init);
+        Arrays.fill(curV, init);
+        int prevLo = 0, prevHi = -1, curLo = 0, curHi = -1;
+        for (int i = r0; i <= r1; i++) {
+            if (curHi >= curLo) {
+                Arrays.fill(curV, curLo - c0, curHi - c0 + 1, init);
+            }
+            final int lo = lo(i, c0);
+            final int hi = hi(i, c1);
+            for (int j = lo; j <= hi; j++) {
+                final int k = j - c0;
+                if (i == r0 && j == c0) {
+                    curV[k] = startValue;
+                    continue;
+                }
+                final double up = prevV[k];
+                final double diag = k > 0 ? prevV[k - 1] : init;
+                final double left = k > 0 ? curV[k - 1] : init;
+                final double m = evaluate(up, diag, left, cost(i, j));
+                curV[k] = m;
+                if (i > mid) {
+                    if (unreachable(m)) {
+                        lastPredecessor = 0;
+                    }
+                    switch (lastPredecessor) {
+                        case 1:
+                            if (i == mid + 1) {
+                                curFrom[k] = j - 1;
+                                curTo[k] = j;
+                                curCV[k] = m;
+                            } else {
+                                curFrom[k] = prevFrom[k - 1];
+                                curTo[k] = prevTo[k - 1];
+                                curCV[k] = prevCV[k - 1];
+                            }
+                            break;
+                        case 2:
+                            if (i == mid + 1) {
+                                curFrom[k] = j;
+                                curTo[k] = j;
+                                curCV[k] = m;
+                            } else {
+                                curFrom[k] = prevFrom[k];
+                                curTo[k] = prevTo[k];
+                                curCV[k] = prevCV[k];
+                            }
+                            break;
+                        case 3:
+                            curFrom[k] = curFrom[k - 1];
+                            curTo[k] = curTo[k - 1];
+                            curCV[k] = curCV[k - 1];
+                            break;
+                        default:
+                            curFrom[k] = -1;
+                            curTo[k] = -1;
+                            curCV[k] = init;
+                    }
+                }
+            }
+            curLo = lo;
+            curHi = hi;
+            //swap rows
+            final double[] tv = prevV;
+            prevV = curV;
+            curV = tv;
+            final int[] tf = prevFrom;
+            prevFrom = curFrom;
+            curFrom = tf;
+            final int[] tt = prevTo;
+            prevTo = curTo;
+            curTo = tt;
+            final double[] tc = prevCV;
+            prevCV = curCV;
+            curCV = tc;
+            final int tlo = prevLo;
+            prevLo = curLo;
+            curLo = tlo;
+            final int thi = prevHi;
+            prevHi = curHi;
+            curHi = thi;
+        }
+        final int k1 = c1 - c0;
+        final double endValue = prevV[k1];
+        final int crossFrom = prevFrom[k1];
+        final int crossTo = prevTo[k1];
+        final double crossValue = prevCV[k1];
+        if (unreachable(endValue) || crossFrom < c0 || crossTo < crossFrom) {
+            throw illegalState(r1, c1);
+        }
+        //release row buffers before descending
+        prevV = curV = prevCV = curCV = null;
+        prevFrom = curFrom = prevTo = curTo = null;
+        solve(r0, c0, mid, crossFrom, startValue);
+        solve(mid + 1, crossTo, r1, c1, crossValue);
+        return endValue;
+    }
+
+    private double solveBase(final int r0, final int c0, final int r1,
+            final int c1, final double startValue) {
+        final int width = c1 - c0 + 1;
+        final int height = r1 - r0 + 1;
+        final double[] values = new double[width * height];
+        final double[] costs = new double[width * height];
+        final byte[] predecessors = new byte[width * height];
+        Arrays.fill(values, init);
+        for (int i = r0; i <= r1; i++) {
+            final int offset = (i - r0) * width;
+            final int hi = hi(i, c1);
+            for (int j = lo(i, c0); j <= hi; j++) {
+                final int k = j - c0;
+                final double cij = cost(i, j);
+                costs[offset + k] = cij;
+                if (i == r0 && j == c0) {
+                    values[offset + k] = startValue;
+                    continue;
+                }
+                final double up = i > r0 ? values[offset - width + k] : init;
+                final double diag = (i > r0 && k > 0) ? values[offset - width + k - 1] : init;
+                final double left = k > 0 ? values[offset + k - 1] : init;
+                values[offset + k] = evaluate(up, diag, left, cij);
+                predecessors[offset + k] = lastPredecessor;
+            }
+        }
+        final double endValue = values[(height - 1) * width + width - 1];
+        if (unreachable(endValue)) {
+            throw illegalState(r1, c1);
+        }
+        //traceback from end to start cell
+        final int start = pathLength;
+        int i = r1;
+        int j = c1;
+        while (i != r0 || j != c0) {
+            final int idx = (i - r0) * width + (j - c0);
+            addToPath(i, j, costs[idx]);
+            switch (predecessors[idx]) {
+                case 1:
+                    i--;
+                    j--;
+                    break;
+                case 2:
+                    i--;
+                    break;
+                case 3:
+                    j--;
+                    break;
+                default:
+                    throw illegalState(i, j);
+            }
+            if (i < r0 || j < c0) {
+                throw illegalState(i, j);
+            }
+        }
+        addToPath(r0, c0, costs[0]);
+        //reverse the segment just added
+        for (int a = start, b = pathLength - 1; a < b; a++, b--) {
+            final Tuple2DI t = path.get(a);
+            path.set(a, path.get(b));
+            path.set(b, t);
+            final double d = pathDistances[a];
+            pathDistances[a] = pathDistances[b];
+            pathDistances[b] = d;
+        }
+        return endValue;
+    }
+
+    private void addToPath(final int i, final int j, final double cost) {
+        path.add(new Tuple2DI(i, j));
+        pathDistances[pathLength++] = cost;
+    }
+
+    private void countSteps() {
+        ndiag = 1;
+        ncomp = 0;
+        nexp = 0;
+        for (int k = 1; k < path.size(); k++) {
+            final Tuple2DI p = path.get(k - 1);
+            final Tuple2DI q = path.get(k);
+            final int di = q.getFirst() - p.getFirst();
+            final int dj = q.getSecond() - p.getSecond();
+            if (di == 1 && dj == 1) {
+                ndiag++;
+            } else if (di == 1) {
+                ncomp++;
+            } else {
+                nexp++;
+            }
+        }
+    }
+}
@@ -33,6 +33,7 @@ import cross.datastructures.fragments.IVariableFragment;
 import cross.datastructures.tools.EvalTools;
 import cross.datastructures.tuple.Tuple2D;
 import java.util.List;
+import java.util.concurrent.Callable;
 import lombok.Data;
 
 import maltcms.commands.distances.PairwiseFeatureSequenceSimilarity;
@@ -102,45 +103,24 @@ public class MZIDynamicTimeWarp extends ADynamicTimeWarp {
         if (this.useSparseArrays) {
             final Tuple2D<Double, Double> tple = MaltcmsTools.getMinMaxMassRange(t.
                     getFirst(), t.getSecond());
-            synchronized (t.getFirst()) {
-                intens1 = MaltcmsTools.prepareSparseMZI(t.getFirst(),
-                        this.scan_index, this.mass_values,
-                        this.intensity_values, tple.getFirst(), tple.getSecond());
-            }
-            synchronized (t.getSecond()) {
-                intens2 = MaltcmsTools.prepareSparseMZI(t.getSecond(),
-                        this.scan_index, this.mass_values,
-                        this.intensity_values, tple.getFirst(), tple.getSecond());
-            }
+            // sparse arrays depend on the mass range of both chromatograms
+            // and are therefore not shared via the feature store
+            intens1 = prepareSparseArrays(t.getFirst(), tple);
+            intens2 = prepareSparseArrays(t.getSecond(), tple);
         } else {
-            synchronized (t.getFirst()) {
-                final IVariableFragment index1 = t.getFirst().getChild(
-                        "binned_" + this.scan_index);
-                final IVariableFragment binnedMassValues1 = t.getFirst().getChild("binned_" + this.mass_values);
-                final IVariableFragment binnedIntensityValues1 = t.getFirst().getChild("binned_" + this.intensity_values);
-                if (binnedMassValues1.getIndex() == null) {
-                    binnedMassValues1.setIndex(
-                            index1);
-                    binnedIntensityValues1.
-                            setIndex(index1);
+            final String feature = "binned_" + this.intensity_values;
+            intens1 = getFeatures(t.getFirst(), feature, new Callable<List<Array>>() {
+                @Override
+                public List<Array> call() {
+                    return getBinnedArrays(t.getFirst());
                 }
-                intens1 = binnedIntensityValues1.getIndexedArray();
-                EvalTools.notNull(intens1, this);
-            }
-            synchronized (t.getSecond()) {
-                final IVariableFragment index2 = t.getSecond().getChild(
-                        "binned_" + this.scan_index);
-                final IVariableFragment binnedMassValues2 = t.getSecond().getChild("binned_" + this.mass_values);
-                final IVariableFragment binnedIntensityValues2 = t.getSecond().getChild("binned_" + this.intensity_values);
-                if (binnedMassValues2.getIndex() == null) {
-                    binnedMassValues2.setIndex(
-                            index2);
-                    binnedIntensityValues2.
-                            setIndex(index2);
+            });
+            intens2 = getFeatures(t.getSecond(), feature, new Callable<List<Array>>() {
+                @Override
+                public List<Array> call() {
+                    return getBinnedArrays(t.getSecond());
                 }
-                intens2 = binnedIntensityValues2.getIndexedArray();
-                EvalTools.notNull(intens2, this);
-            }
+            });
         }
 
         Tuple2D<List<Array>, List<Array>> tuple = null;
@@ -175,4 +155,31 @@ public class MZIDynamicTimeWarp extends ADynamicTimeWarp {
         this.query_num_scans = intens2.size();
         return tuple;
     }
+
+    private List<Array> prepareSparseArrays(final IFileFragment f,
+            final Tuple2D<Double, Double> massRange) {
+        synchronized (f) {
+            return MaltcmsTools.prepareSparseMZI(f, this.scan_index,
+                    this.mass_values, this.intensity_values,
+                    massRange.getFirst(), massRange.getSecond());
+        }
+    }
+
+    private List<Array> getBinnedArrays(final IFileFragment f) {
+        synchronized (f) {
+            final IVariableFragment index = f.getChild(
+                    "binned_" + this.scan_index);
+            final IVariableFragment binnedMassValues = f.getChild("binned_" + this.mass_values);
+            final IVariableFragment binnedIntensityValues = f.getChild("binned_" + this.intensity_values);
+            if (binnedMassValues.getIndex() == null) {
+                binnedMassValues.setIndex(
+                        index);
+                binnedIntensityValues.
+                        setIndex(index);
+            }
+            final List<Array> intens = binnedIntensityValues.getIndexedArray();
+            EvalTools.notNull(intens, this);
+            return intens;
+        }
+    }
 }
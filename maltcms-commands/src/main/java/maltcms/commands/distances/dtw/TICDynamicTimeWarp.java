@@ -32,6 +32,7 @@ import cross.datastructures.fragments.IFileFragment;
 import cross.datastructures.tuple.Tuple2D;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import lombok.Data;
 import maltcms.commands.distances.PairwiseFeatureSequenceSimilarity;
 import org.apache.commons.configuration.Configuration;
@@ -72,37 +73,41 @@ public class TICDynamicTimeWarp extends ADynamicTimeWarp {
     @Override
     public Tuple2D<List<Array>, List<Array>> createTuple(
             final Tuple2D<IFileFragment, IFileFragment> t) {
-        Array ticRef = null;
-        synchronized (t.getFirst()) {
-            ticRef = t.getFirst().getChild(this.arrayVariable).getArray();
-        }
-        Array queryRef = null;
-        synchronized (t.getSecond()) {
-            queryRef = t.getSecond().getChild(this.arrayVariable).getArray();
+        final List<Array> ref = getFeatures(t.getFirst(), this.arrayVariable,
+                new Callable<List<Array>>() {
+            @Override
+            public List<Array> call() {
+                return getScalarArrays(t.getFirst());
+            }
+        });
+        final List<Array> query = getFeatures(t.getSecond(), this.arrayVariable,
+                new Callable<List<Array>>() {
+            @Override
+            public List<Array> call() {
+                return getScalarArrays(t.getSecond());
+            }
+        });
+        final Tuple2D<List<Array>, List<Array>> tuple = new Tuple2D<>(
+                ref, query);
+        this.ref_num_scans = ref.size();
+        this.query_num_scans = query.size();
+        return tuple;
+    }
+
+    private List<Array> getScalarArrays(final IFileFragment f) {
+        Array tic = null;
+        synchronized (f) {
+            tic = f.getChild(this.arrayVariable).getArray();
         }
-        final List<Array> ref = new ArrayList<>();
-        final List<Array> query = new ArrayList<>();
-        IndexIterator iref = ticRef.getIndexIterator();
+        final List<Array> l = new ArrayList<>();
+        final IndexIterator iter = tic.getIndexIterator();
         final Index idx = Index.scalarIndexImmutable;
-        while (iref.hasNext()) {
-            final Array a = Array.factory(ticRef.getDataType(),
+        while (iter.hasNext()) {
+            final Array a = Array.factory(tic.getDataType(),
                     new int[]{1});
-            a.setObject(idx, iref.next());
-            ref.add(a);
+            a.setObject(idx, iter.next());
+            l.add(a);
         }
-        iref = queryRef.getIndexIterator();
-        while (iref.hasNext()) {
-            final Array a = Array.factory(queryRef.getDataType(),
-                    new int[]{1});
-            a.setObject(idx, iref.next());
-            query.add(a);
-        }
-        // ref.add(ticRef);
-        // query.add(queryRef);
-        final Tuple2D<List<Array>, List<Array>> tuple = new Tuple2D<>(
-                ref, query);
-        this.ref_num_scans = ticRef.getShape()[0];
-        this.query_num_scans = queryRef.getShape()[0];
-        return tuple;
+        return l;
     }
 }
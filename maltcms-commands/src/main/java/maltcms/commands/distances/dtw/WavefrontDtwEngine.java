@@ -0,0 +1,245 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances.dtw;
+
+import cross.datastructures.tools.EvalTools;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import maltcms.commands.distances.IRecurrence;
+import maltcms.commands.distances.PairwiseFeatureSimilarity;
+import maltcms.commands.distances.SharedExecutor;
+import maltcms.datastructures.array.IArrayD2Double;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayByte;
+import ucar.ma2.ArrayDouble;
+
+/**
+ * Calculates the cumulative distance matrix of a dynamic time warping in
+ * parallel.
+ *
+ * The matrix is partitioned into square tiles of <code>tileSize</code> rows and
+ * columns. A tile only depends on its upper, left and upper left neighbor
+ * tiles, so all tiles on the same anti-diagonal of the tile grid can be
+ * calculated concurrently, once the previous anti-diagonal has been completed.
+ * Within a tile, cells are visited row by row in ascending column order, which
+ * is the same order as in the serial implementation. Every cell is therefore
+ * evaluated by the recurrence with exactly the same inputs, yielding identical
+ * cumulative values and predecessors. Tiles that do not contain any stored
+ * cells of the matrix layout, e.g. outside of a band constraint, are skipped.
+ *
+ * The pairwise similarity function is called concurrently for different cells,
+ * unless the pairwise distances have been precalculated. Tiles are executed on
+ * the {@link SharedExecutor}.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class WavefrontDtwEngine {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(WavefrontDtwEngine.class);
+
+    private final int nthreads;
+    private final int tileSize;
+
+    /**
+     * <p>Constructor for WavefrontDtwEngine.</p>
+     *
+     * @param nthreads the number of threads to use, values &lt; 1 use all
+     * available processors.
+     * @param tileSize the number of rows and columns of a tile.
+     */
+    public WavefrontDtwEngine(final int nthreads, final int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be >= 1, was: " + tileSize);
+        }
+        this.nthreads = nthreads < 1 ? Runtime.getRuntime().availableProcessors() : nthreads;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Calculates all stored cells of <code>alignment</code> using the given
+     * recurrence.
+     *
+     * @param distance the pairwise distance matrix, filled by this method if
+     * <code>precalculated</code> is false.
+     * @param alignment the cumulative distance matrix.
+     * @param predecessors the predecessor matrix.
+     * @param recurrence the recurrence.
+     * @param pfs the pairwise feature similarity.
+     * @param precalculated whether pairwise distances have already been
+     * calculated.
+     * @param ref the reference features.
+     * @param query the query features.
+     * @param satRef the reference scan acquisition times, may be null.
+     * @param satQuery the query scan acquisition times, may be null.
+     * @return the number of calculated cells.
+     */
+    public long fill(final IArrayD2Double distance,
+            final IArrayD2Double alignment, final ArrayByte.D2 predecessors,
+            final IRecurrence recurrence, final PairwiseFeatureSimilarity pfs,
+            final boolean precalculated, final List<Array> ref,
+            final List<Array> query, final ArrayDouble.D1 satRef,
+            final ArrayDouble.D1 satQuery) {
+        EvalTools.notNull(new Object[]{distance, alignment, predecessors, recurrence, pfs}, this);
+        final int rows = alignment.rows();
+        final int cols = alignment.columns();
+        final int tileRows = (rows + tileSize - 1) / tileSize;
+        final int tileCols = (cols + tileSize - 1) / tileSize;
+        //range of tile columns containing stored cells for each tile row
+        final int[] firstTileCol = new int[tileRows];
+        final int[] lastTileCol = new int[tileRows];
+        for (int ti = 0; ti < tileRows; ti++) {
+            int minCol = Integer.MAX_VALUE;
+            int maxCol = -1;
+            for (int i = ti * tileSize; i < Math.min(rows, (ti + 1) * tileSize); i++) {
+                final int[] bounds = alignment.getColumnBounds(i);
+                if (bounds[1] > 0) {
+                    minCol = Math.min(minCol, bounds[0]);
+                    maxCol = Math.max(maxCol, bounds[0] + bounds[1] - 1);
+                }
+            }
+            if (maxCol == -1) {
+                firstTileCol[ti] = 0;
+                lastTileCol[ti] = -1;
+            } else {
+                firstTileCol[ti] = minCol / tileSize;
+                lastTileCol[ti] = maxCol / tileSize;
+            }
+        }
+        log.debug("Calculating {}x{} matrix in {}x{} tiles of size {} with {} threads",
+                new Object[]{rows, cols, tileRows, tileCols, tileSize, nthreads});
+        final ExecutorService es = SharedExecutor.get(nthreads);
+        long cells = 0;
+        try {
+            final List<Callable<Long>> tasks = new ArrayList<>();
+            for (int diagonal = 0; diagonal < tileRows + tileCols - 1; diagonal++) {
+                tasks.clear();
+                final int minTileRow = Math.max(0, diagonal - tileCols + 1);
+                final int maxTileRow = Math.min(diagonal, tileRows - 1);
+                for (int ti = minTileRow; ti <= maxTileRow; ti++) {
+                    final int tj = diagonal - ti;
+                    if (tj >= firstTileCol[ti] && tj <= lastTileCol[ti]) {
+                        tasks.add(new TileCalculator(ti * tileSize,
+                                Math.min(rows, (ti + 1) * tileSize),
+                                tj * tileSize, Math.min(cols, (tj + 1) * tileSize),
+                                distance, alignment, predecessors, recurrence,
+                                pfs, precalculated, ref, query, satRef,
+                                satQuery));
+                    }
+                }
+                if (tasks.size() == 1) {
+                    cells += tasks.get(0).call();
+                } else if (!tasks.isEmpty()) {
+                    for (final Future<Long> f : es.invokeAll(tasks)) {
+                        cells += f.get();
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        return cells;
+    }
+
+    private static class TileCalculator implements Callable<Long> {
+
+        private final int rowStart, rowEnd, colStart, colEnd;
+        private final IArrayD2Double distance, alignment;
+        private final ArrayByte.D2 predecessors;
+        private final IRecurrence recurrence;
+        private final PairwiseFeatureSimilarity pfs;
+        private final boolean precalculated;
+        private final List<Array> ref, query;
+        private final ArrayDouble.D1 satRef, satQuery;
+
+        TileCalculator(final int rowStart, final int rowEnd,
+                final int colStart, final int colEnd,
+                final IArrayD2Double distance, final IArrayD2Double alignment,
+                final ArrayByte.D2 predecessors, final IRecurrence recurrence,
+                final PairwiseFeatureSimilarity pfs,
+                final boolean precalculated, final List<Array> ref,
+                final List<Array> query, final ArrayDouble.D1 satRef,
+                final ArrayDouble.D1 satQuery) {
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.colStart = colStart;
+            this.colEnd = colEnd;
+            this.distance = distance;
+            this.alignment = alignment;
+            this.predecessors = predecessors;
+            this.recurrence = recurrence;
+            this.pfs = pfs;
+            this.precalculated = precalculated;
+            this.ref = ref;
+            this.query = query;
+            this.satRef = satRef;
+            this.satQuery = satQuery;
+        }
+
+        @Override
+        public Long call() {
+            long cells = 0;
+            for (int i = rowStart; i < rowEnd; i++) {
+                final int[] bounds = alignment.getColumnBounds(i);
+                final int start = Math.max(colStart, bounds[0]);
+                final int end = Math.min(colEnd, bounds[0] + bounds[1]);
+                final double sat_r = satRef == null ? -1 : satRef.get(i);
+                final Array refi = ref.get(i);
+                for (int j = start; j < end; j++) {
+                    final double sat_q = satQuery == null ? -1 : satQuery.get(j);
+                    if (precalculated) {
+                        recurrence.eval(i, j, alignment, pfs.getDistance(i, j,
+                                sat_r, sat_q, refi, query.get(j)), predecessors);
+                    } else {
+                        distance.set(i, j, pfs.getDistance(i, j, sat_r, sat_q,
+                                refi, query.get(j)));
+                        recurrence.eval(i, j, alignment, distance.get(i, j),
+                                predecessors);
+                    }
+                    cells++;
+                }
+            }
+            return cells;
+        }
+    }
+}
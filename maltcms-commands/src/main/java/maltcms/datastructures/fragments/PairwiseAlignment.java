@@ -115,6 +115,7 @@ public class PairwiseAlignment implements IFileFragmentProvider, IConfigurable,
     @Configurable(name = "normalizeAlignmentValueByMapWeights")
     private boolean normalizeAlignmentValueByMapWeights;
     private List<Tuple2DI> interppath;
+    private ArrayDouble.D1 pathDistances;
 
     /**
      * <p>Getter for the field <code>interppath</code>.</p>
@@ -404,6 +405,8 @@ public class PairwiseAlignment implements IFileFragmentProvider, IConfigurable,
                 pt.savePathCSV(this.ff, this.alignment, this.distance,
                         this.path, getWorkflow(), isMinimize());
                 pt.decorate(this.ff, this.distance);
+            } else if (this.pathDistances != null) {
+                PathTools.getFragments(this.ff, this.path, this.pathDistances);
             } else {
                 PathTools.getFragments(this.ff, this.path, this.distance);
             }
@@ -452,7 +455,7 @@ public class PairwiseAlignment implements IFileFragmentProvider, IConfigurable,
             // / path.size());
             final int maplength = this.path.size();
 
-            if (this.saveCDM) {
+            if (this.saveCDM && this.alignment != null) {
                 final IVariableFragment vf = new VariableFragment(this.ff,
                         this.cumulativeDistanceVariableName, null);
                 vf.setDimensions(new Dimension[]{
@@ -466,7 +469,7 @@ public class PairwiseAlignment implements IFileFragmentProvider, IConfigurable,
                 // csvw.write(new File(target.getAbsolutePath()).getParent(),
                 // target.getName()+"_cdist.csv", this.alignment);
             }
-            if (this.savePWDM) {
+            if (this.savePWDM && this.distance != null) {
                 final IVariableFragment vf = new VariableFragment(this.ff,
                         this.pairwiseDistanceVariableName, null);
                 vf.setDimensions(new Dimension[]{
@@ -764,6 +767,28 @@ public class PairwiseAlignment implements IFileFragmentProvider, IConfigurable,
         this.path = path1;
     }
 
+    /**
+     * Set the pairwise distances along the path. If the path is set
+     * explicitly, these are used instead of looking them up in the pairwise
+     * distance matrix, which may then be omitted.
+     *
+     * @param pathDistances a {@link ucar.ma2.ArrayDouble.D1} object.
+     * @since 2.0.1
+     */
+    public void setPathDistances(final ArrayDouble.D1 pathDistances) {
+        this.pathDistances = pathDistances;
+    }
+
+    /**
+     * <p>Getter for the field <code>pathDistances</code>.</p>
+     *
+     * @return the pairwise distances along the path, may be null.
+     * @since 2.0.1
+     */
+    public ArrayDouble.D1 getPathDistances() {
+        return this.pathDistances;
+    }
+
     /**
      * <p>Setter for the field <code>predecessors</code>.</p>
      *
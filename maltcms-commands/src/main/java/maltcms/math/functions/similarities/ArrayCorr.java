@@ -27,7 +27,6 @@
  */
 package maltcms.math.functions.similarities;
 
-import cross.cache.ICacheDelegate;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import maltcms.math.functions.IArraySimilarity;
@@ -46,7 +45,7 @@ import ucar.ma2.Array;
 @ServiceProvider(service = IArraySimilarity.class)
 public class ArrayCorr implements IArraySimilarity {
 
-    private transient final ICacheDelegate<Array, double[]> cache;
+    private transient final ArrayValueCache<double[]> cache;
     private boolean returnCoeffDetermination = false;
     private final PearsonsCorrelation pc = new PearsonsCorrelation();
 
@@ -54,7 +53,7 @@ public class ArrayCorr implements IArraySimilarity {
      * <p>Constructor for ArrayCorr.</p>
      */
     public ArrayCorr() {
-        cache = SimilarityTools.newValueCache("ArrayCorrCache");
+        cache = SimilarityTools.getArrayValueCache("SimilarityTools.javaArray");
     }
 
     /** {@inheritDoc} */
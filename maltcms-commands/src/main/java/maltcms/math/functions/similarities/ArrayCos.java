@@ -27,7 +27,6 @@
  */
 package maltcms.math.functions.similarities;
 
-import cross.cache.ICacheDelegate;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import maltcms.math.functions.IArraySimilarity;
@@ -49,14 +48,14 @@ import ucar.ma2.MAVector;
 @NotThreadSafe
 public class ArrayCos implements IArraySimilarity {
 
-    private transient final ICacheDelegate<Array, Double> cache;
+    private transient final ArrayValueCache<Double> cache;
     private double minimumSimilarity = 0.0d;
 
     /**
      * <p>Constructor for ArrayCos.</p>
      */
     public ArrayCos() {
-        cache = SimilarityTools.newValueCache("ArrayCosCache");
+        cache = SimilarityTools.getArrayValueCache("ArrayCos.norm");
     }
 
     private double getLength(Array a) {
@@ -27,7 +27,6 @@
  */
 package maltcms.math.functions.similarities;
 
-import cross.cache.ICacheDelegate;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import maltcms.math.functions.IArraySimilarity;
@@ -48,14 +47,14 @@ import ucar.ma2.Array;
 @NotThreadSafe
 public class ArrayCov implements IArraySimilarity {
 
-    private transient final ICacheDelegate<Array, double[]> cache;
+    private transient final ArrayValueCache<double[]> cache;
     private boolean returnCoeffDetermination = false;
 
     /**
      * <p>Constructor for ArrayCov.</p>
      */
     public ArrayCov() {
-        cache = SimilarityTools.newValueCache("ArrayCovCache");
+        cache = SimilarityTools.getArrayValueCache("SimilarityTools.javaArray");
     }
 
     /** {@inheritDoc} */
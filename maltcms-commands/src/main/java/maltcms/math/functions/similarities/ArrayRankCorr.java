@@ -27,7 +27,6 @@
  */
 package maltcms.math.functions.similarities;
 
-import cross.cache.ICacheDelegate;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import maltcms.math.functions.IArraySimilarity;
@@ -49,14 +48,14 @@ import ucar.ma2.Array;
 public class ArrayRankCorr implements IArraySimilarity {
 
     private boolean returnCoeffDetermination = false;
-    private transient final ICacheDelegate<Array, double[]> cache;
+    private transient final ArrayValueCache<double[]> cache;
     private final SpearmansCorrelation sc = new SpearmansCorrelation();
 
     /**
      * <p>Constructor for ArrayRankCorr.</p>
      */
     public ArrayRankCorr() {
-        cache = SimilarityTools.newValueCache("ArrayCovCache");
+        cache = SimilarityTools.getArrayValueCache("SimilarityTools.javaArray");
     }
 
     /** {@inheritDoc} */
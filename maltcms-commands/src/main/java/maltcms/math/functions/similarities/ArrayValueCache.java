@@ -0,0 +1,315 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.functions.similarities;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import ucar.ma2.Array;
+
+/**
+ * Bounded cache for values derived from an {@link ucar.ma2.Array}, such as
+ * norms or maximum intensities. Keys are compared by identity and are only
+ * weakly referenced, so lookups never call {@link Object#hashCode()} or
+ * {@link Object#equals(java.lang.Object)} on the array and cached arrays may
+ * be garbage collected. Lookups and invalidations do not allocate, only
+ * {@link #put(ucar.ma2.Array, java.lang.Object)} creates a weak key.
+ *
+ * The cache is split into segments that evict their least recently used
+ * entries, so that it can be shared between threads with little contention.
+ * Arrays that are modified in place must be {@link #invalidate(ucar.ma2.Array) invalidated}.
+ *
+ * @author Nils Hoffmann
+ * @param <V> the value type
+ * @since 2.0.1
+ */
+public final class ArrayValueCache<V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final String name;
+    private final Segment<V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param name the name of the cache
+     * @param maxSize the maximum number of entries
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayValueCache(String name, int maxSize) {
+        this.name = name;
+        this.segments = new Segment[SEGMENTS];
+        final int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Returns the value cached for the given array.
+     *
+     * @param a the array
+     * @return the value, or null if none is cached
+     */
+    public V get(Array a) {
+        final int hash = System.identityHashCode(a);
+        final V v = segmentFor(hash).get(a, hash);
+        if (v == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return v;
+    }
+
+    /**
+     * Caches the value for the given array.
+     *
+     * @param a the array
+     * @param value the value
+     */
+    public void put(Array a, V value) {
+        final int hash = System.identityHashCode(a);
+        segmentFor(hash).put(a, hash, value);
+    }
+
+    /**
+     * Removes the value cached for the given array.
+     *
+     * @param a the array
+     */
+    public void invalidate(Array a) {
+        final int hash = System.identityHashCode(a);
+        segmentFor(hash).remove(a, hash);
+    }
+
+    /**
+     * Removes all cached values and resets the statistics.
+     */
+    public void clear() {
+        for (Segment<V> s : segments) {
+            s.clear();
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Returns the number of cached values.
+     *
+     * @return the number of cached values
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> s : segments) {
+            size += s.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the name of this cache.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached value.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached value.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that found a cached value.
+     *
+     * @return the hit rate, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0.0d : (double) h / (double) total;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return name + "{size=" + size() + ", hits=" + getHits() + ", misses="
+                + getMisses() + ", hitRate=" + getHitRate() + "}";
+    }
+
+    /**
+     * Weak, identity-based key.
+     */
+    private static final class Key extends WeakReference<Array> {
+
+        private final int hash;
+
+        Key(Array a, int hash, ReferenceQueue<Array> queue) {
+            super(a, queue);
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            final Array a = get();
+            if (a == null) {
+                return false;
+            }
+            if (o instanceof Key) {
+                return a == ((Key) o).get();
+            }
+            return o instanceof LookupKey && a == ((LookupKey) o).array;
+        }
+    }
+
+    /**
+     * Reusable, strong key for lookups, only used while holding the lock of
+     * its segment.
+     */
+    private static final class LookupKey {
+
+        private Array array;
+        private int hash;
+
+        LookupKey set(Array a, int hash) {
+            this.array = a;
+            this.hash = hash;
+            return this;
+        }
+
+        void reset() {
+            this.array = null;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            return o instanceof Key && array != null && array == ((Key) o).get();
+        }
+    }
+
+    /**
+     * Synchronized least recently used segment.
+     */
+    private static final class Segment<V> {
+
+        private final ReferenceQueue<Array> queue = new ReferenceQueue<>();
+        private final LookupKey lookup = new LookupKey();
+        //holds Keys only, LookupKeys are used for get and remove
+        private final LinkedHashMap<Object, V> map;
+
+        Segment(final int maxSize) {
+            this.map = new LinkedHashMap<Object, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, V> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized V get(Array a, int hash) {
+            expunge();
+            try {
+                return map.get(lookup.set(a, hash));
+            } finally {
+                lookup.reset();
+            }
+        }
+
+        synchronized void put(Array a, int hash, V value) {
+            expunge();
+            map.put(new Key(a, hash, queue), value);
+        }
+
+        synchronized void remove(Array a, int hash) {
+            expunge();
+            try {
+                map.remove(lookup.set(a, hash));
+            } finally {
+                lookup.reset();
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            while (queue.poll() != null) {
+            }
+        }
+
+        synchronized int size() {
+            expunge();
+            return map.size();
+        }
+
+        private void expunge() {
+            Object k;
+            while ((k = queue.poll()) != null) {
+                map.remove((Key) k);
+            }
+        }
+    }
+}
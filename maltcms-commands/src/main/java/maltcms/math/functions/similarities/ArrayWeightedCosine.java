@@ -27,7 +27,6 @@
  */
 package maltcms.math.functions.similarities;
 
-import cross.cache.ICacheDelegate;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import maltcms.math.functions.IArraySimilarity;
@@ -48,7 +47,7 @@ import ucar.ma2.MAMath;
 @NotThreadSafe
 public class ArrayWeightedCosine implements IArraySimilarity {
 
-    private transient final ICacheDelegate<Array, Double> cache;
+    private transient final ArrayValueCache<Double> cache;
 
     private double minimumSimilarity = 0.0d;
 
@@ -56,7 +55,7 @@ public class ArrayWeightedCosine implements IArraySimilarity {
      * <p>Constructor for ArrayWeightedCosine.</p>
      */
     public ArrayWeightedCosine() {
-        cache = SimilarityTools.newValueCache("ArrayWeightedCosineCache");
+        cache = SimilarityTools.getArrayValueCache("ArrayWeightedCosine.maximumIntensity");
     }
 
     private double getMaximumIntensity(final Array a) {
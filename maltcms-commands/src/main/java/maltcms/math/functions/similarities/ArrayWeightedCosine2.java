@@ -27,7 +27,6 @@
  */
 package maltcms.math.functions.similarities;
 
-import cross.cache.ICacheDelegate;
 import lombok.Data;
 import maltcms.math.functions.IArraySimilarity;
 import maltcms.tools.ArrayTools;
@@ -49,7 +48,7 @@ import ucar.ma2.MAMath;
 @NotThreadSafe
 public class ArrayWeightedCosine2 implements IArraySimilarity {
 
-    private transient final ICacheDelegate<Array, Array> cache;
+    private transient final ArrayValueCache<Array> cache;
 
     private double minimumSimilarity = 0.0d;
 
@@ -57,7 +56,7 @@ public class ArrayWeightedCosine2 implements IArraySimilarity {
      * <p>Constructor for ArrayWeightedCosine2.</p>
      */
     public ArrayWeightedCosine2() {
-        cache = SimilarityTools.newValueCache("ArrayWeightedCosineCache");
+        cache = SimilarityTools.getArrayValueCache("ArrayWeightedCosine2.normalizedArray");
     }
 
     private Array getNormalizedArray(final Array a) {
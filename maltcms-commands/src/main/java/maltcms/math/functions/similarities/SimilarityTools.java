@@ -29,7 +29,12 @@ package maltcms.math.functions.similarities;
 
 import cross.cache.CacheFactory;
 import cross.cache.ICacheDelegate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import maltcms.math.functions.IArraySimilarity;
+import org.slf4j.LoggerFactory;
 import ucar.ma2.Array;
 
 /**
@@ -40,6 +45,10 @@ import ucar.ma2.Array;
  */
 public class SimilarityTools {
 
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(SimilarityTools.class);
+    private static final int ARRAY_VALUE_CACHE_SIZE = 100000;
+    private static final ConcurrentMap<String, ArrayValueCache<?>> ARRAY_VALUE_CACHES = new ConcurrentHashMap<>();
+
     /**
      * <p>toSimilarity.</p>
      *
@@ -79,4 +88,67 @@ public class SimilarityTools {
     public static <K, V> ICacheDelegate<K, V> newValueCache(String name) {
         return CacheFactory.createVolatileCache(name, 30, 60, 100000);
     }
+
+    /**
+     * Returns the shared {@link ArrayValueCache} with the given name, creating
+     * it on first access. All similarity instances, including their copies,
+     * that request the same name share the same cache, so the name must
+     * uniquely identify the derived value.
+     *
+     * @param name the name of the cache
+     * @param <V> the value type
+     * @return the shared cache
+     * @since 2.0.1
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> ArrayValueCache<V> getArrayValueCache(String name) {
+        ArrayValueCache<?> cache = ARRAY_VALUE_CACHES.get(name);
+        if (cache == null) {
+            ArrayValueCache<?> newCache = new ArrayValueCache<>(name, ARRAY_VALUE_CACHE_SIZE);
+            cache = ARRAY_VALUE_CACHES.putIfAbsent(name, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return (ArrayValueCache<V>) cache;
+    }
+
+    /**
+     * Returns all shared {@link ArrayValueCache} instances.
+     *
+     * @return the shared caches
+     * @since 2.0.1
+     */
+    public static List<ArrayValueCache<?>> getArrayValueCaches() {
+        return new ArrayList<>(ARRAY_VALUE_CACHES.values());
+    }
+
+    /**
+     * Clears all shared {@link ArrayValueCache} instances.
+     *
+     * @since 2.0.1
+     */
+    public static void clearArrayValueCaches() {
+        for (ArrayValueCache<?> cache : ARRAY_VALUE_CACHES.values()) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Logs the hit rate statistics of all shared {@link ArrayValueCache}
+     * instances that have been used at debug level. Should be called once at
+     * the end of a run, before the caches are cleared.
+     *
+     * @since 2.0.1
+     */
+    public static void logArrayValueCacheStatistics() {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        for (ArrayValueCache<?> cache : ARRAY_VALUE_CACHES.values()) {
+            if (cache.getHits() + cache.getMisses() > 0) {
+                log.debug("{}", cache);
+            }
+        }
+    }
 }
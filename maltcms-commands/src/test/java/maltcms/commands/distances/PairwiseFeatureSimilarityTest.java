@@ -0,0 +1,99 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import maltcms.commands.distances.dtw.AbsoluteDifferenceSimilarity;
+import maltcms.datastructures.alignment.AnchorPairSet;
+import maltcms.datastructures.array.ArrayFactory;
+import maltcms.datastructures.array.IArrayD2Double;
+import maltcms.datastructures.ms.IAnchor;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class PairwiseFeatureSimilarityTest {
+
+    private List<Array> createFeatures(Random r, int n) {
+        List<Array> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            l.add(Array.factory(new double[]{r.nextDouble()}));
+        }
+        return l;
+    }
+
+    private IArrayD2Double createLayout(int rows, int cols, double band) {
+        AnchorPairSet aps = new AnchorPairSet(new ArrayList<IAnchor>(),
+                new ArrayList<IAnchor>(), rows, cols);
+        return new ArrayFactory().create(rows, cols, aps, 0, band,
+                Double.POSITIVE_INFINITY, false);
+    }
+
+    /**
+     * Test that the tiled precalculation returns the same values as the
+     * on-demand calculation, of class PairwiseFeatureSimilarity.
+     */
+    @Test
+    public void testTiledEqualsUntiled() {
+        Random r = new Random(42L);
+        for (int[] dims : new int[][]{{1, 1}, {1, 57}, {57, 1}, {93, 71}, {200, 150}}) {
+            for (double band : new double[]{1.0d, 0.1d}) {
+                for (int threads : new int[]{1, 4}) {
+                    List<Array> ref = createFeatures(r, dims[0]);
+                    List<Array> query = createFeatures(r, dims[1]);
+                    PairwiseFeatureSimilarity untiled = new PairwiseFeatureSimilarity();
+                    untiled.setSimilarityFunction(new AbsoluteDifferenceSimilarity());
+                    PairwiseFeatureSimilarity tiled = new PairwiseFeatureSimilarity();
+                    tiled.setSimilarityFunction(new AbsoluteDifferenceSimilarity());
+                    tiled.setNthreads(threads);
+                    tiled.setMinTileSize(4);
+                    IArrayD2Double d = createLayout(dims[0], dims[1], band);
+                    tiled.calculatePairwiseDistances(d, null, null, ref, query);
+                    String msg = dims[0] + "x" + dims[1] + ", band=" + band
+                            + ", threads=" + threads;
+                    for (int i = 0; i < dims[0]; i++) {
+                        final int[] bounds = d.getColumnBounds(i);
+                        for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                            double expected = untiled.getDistance(i, j, -1, -1,
+                                    ref.get(i), query.get(j));
+                            Assert.assertEquals(msg, expected, d.get(i, j), 0.0d);
+                            Assert.assertEquals(msg, expected, tiled.getDistance(i,
+                                    j, -1, -1, ref.get(i), query.get(j)), 0.0d);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
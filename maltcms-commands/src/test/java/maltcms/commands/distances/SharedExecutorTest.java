@@ -0,0 +1,77 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class SharedExecutorTest {
+
+    /**
+     * Test that a view runs at most its parallelism of tasks at the same
+     * time, of class SharedExecutor.
+     */
+    @Test
+    public void testParallelismIsBounded() throws Exception {
+        final int parallelism = Math.max(1, SharedExecutor.getParallelism(0) / 2);
+        final ExecutorService es = SharedExecutor.get(parallelism);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            futures.add(es.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    final int r = running.incrementAndGet();
+                    int max;
+                    while ((max = maxRunning.get()) < r && !maxRunning.compareAndSet(max, r)) {
+                    }
+                    Thread.sleep(2);
+                    running.decrementAndGet();
+                    return value;
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(i, futures.get(i).get().intValue());
+        }
+        Assert.assertTrue(maxRunning.get() <= parallelism);
+        Assert.assertFalse(es.isShutdown());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances.dtw;
+
+import maltcms.commands.distances.IDtwSimilarityFunction;
+import org.apache.commons.configuration.Configuration;
+import ucar.ma2.Array;
+
+/**
+ * Absolute difference of the first feature values. Integer valued features
+ * produce many ties between the predecessors of a cell.
+ *
+ * @author Nils Hoffmann
+ */
+public class AbsoluteDifferenceSimilarity implements IDtwSimilarityFunction {
+
+    @Override
+    public double apply(int i1, int i2, double time1, double time2, Array t1,
+            Array t2) {
+        return Math.abs(t1.getDouble(0) - t2.getDouble(0));
+    }
+
+    @Override
+    public double getCompressionWeight() {
+        return 1.0d;
+    }
+
+    @Override
+    public double getMatchWeight() {
+        return 1.0d;
+    }
+
+    @Override
+    public double getExpansionWeight() {
+        return 1.0d;
+    }
+
+    @Override
+    public void setCompressionWeight(double d) {
+    }
+
+    @Override
+    public void setMatchWeight(double d) {
+    }
+
+    @Override
+    public void setExpansionWeight(double d) {
+    }
+
+    @Override
+    public boolean minimize() {
+        return true;
+    }
+
+    @Override
+    public void configure(Configuration cfg) {
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances.dtw;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class FeatureSequenceStoreTest {
+
+    /**
+     *
+     */
+    @Test
+    public void testConcurrentRequestsLoadEachKeyOnce() throws Exception {
+        final String id = UUID.randomUUID().toString();
+        final FeatureSequenceStore store = FeatureSequenceStore.getInstance(id);
+        final int keys = 4;
+        final int requestsPerKey = 8;
+        final AtomicInteger[] loadCounts = new AtomicInteger[keys];
+        final URI[] uris = new URI[keys];
+        for (int k = 0; k < keys; k++) {
+            loadCounts[k] = new AtomicInteger();
+            uris[k] = new File("chromatogram" + k + ".cdf").toURI();
+        }
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService es = Executors.newFixedThreadPool(keys * requestsPerKey);
+        try {
+            List<Future<double[]>> futures = new ArrayList<>();
+            for (int i = 0; i < keys * requestsPerKey; i++) {
+                final int k = i % keys;
+                futures.add(es.submit(new Callable<double[]>() {
+                    @Override
+                    public double[] call() throws Exception {
+                        startSignal.await();
+                        return store.get(uris[k], "tic", new Callable<double[]>() {
+                            @Override
+                            public double[] call() throws Exception {
+                                loadCounts[k].incrementAndGet();
+                                // widen the window for concurrent requests
+                                Thread.sleep(100);
+                                return new double[]{k};
+                            }
+                        });
+                    }
+                }));
+            }
+            startSignal.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertSame(futures.get(i % keys).get(), futures.get(i).get());
+            }
+            for (int k = 0; k < keys; k++) {
+                Assert.assertEquals(1, loadCounts[k].get());
+            }
+            Assert.assertEquals(keys, store.getLoads());
+            Assert.assertEquals(keys * (requestsPerKey - 1), store.getHits());
+            Assert.assertEquals(keys, store.size());
+        } finally {
+            es.shutdownNow();
+            FeatureSequenceStore.release(id);
+        }
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testFailedLoadIsRetried() {
+        final String id = UUID.randomUUID().toString();
+        final FeatureSequenceStore store = FeatureSequenceStore.getInstance(id);
+        final URI uri = new File("chromatogram.cdf").toURI();
+        try {
+            try {
+                store.get(uri, "tic", new Callable<double[]>() {
+                    @Override
+                    public double[] call() {
+                        throw new IllegalStateException("load failed");
+                    }
+                });
+                Assert.fail("Expected the loader's exception");
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("load failed", e.getMessage());
+            }
+            double[] value = store.get(uri, "tic", new Callable<double[]>() {
+                @Override
+                public double[] call() {
+                    return new double[]{1.0};
+                }
+            });
+            Assert.assertArrayEquals(new double[]{1.0}, value, 0.0d);
+            Assert.assertEquals(2, store.getLoads());
+        } finally {
+            FeatureSequenceStore.release(id);
+        }
+    }
+}
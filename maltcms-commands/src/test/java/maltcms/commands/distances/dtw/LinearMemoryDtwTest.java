@@ -0,0 +1,154 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances.dtw;
+
+import cross.datastructures.tuple.Tuple2DI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import maltcms.commands.distances.DtwRecurrence;
+import maltcms.datastructures.alignment.AnchorPairSet;
+import maltcms.datastructures.array.ArrayFactory;
+import maltcms.datastructures.array.IArrayD2Double;
+import maltcms.datastructures.ms.IAnchor;
+import maltcms.tools.PathTools;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayByte;
+import ucar.ma2.ArrayDouble;
+
+/**
+ * Compares the divide and conquer traceback of {@link LinearMemoryDtw} with
+ * the traceback of the full cumulative distance and predecessor matrices.
+ *
+ * @author Nils Hoffmann
+ */
+public class LinearMemoryDtwTest {
+
+    private List<Array> createFeatures(Random r, int n, boolean integral) {
+        List<Array> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double v = integral ? r.nextInt(4) : r.nextDouble();
+            l.add(Array.factory(new double[]{v}));
+        }
+        return l;
+    }
+
+    private void compare(int rows, int cols, double band, int baseCells,
+            boolean integral, Random r) {
+        List<Array> ref = createFeatures(r, rows, integral);
+        List<Array> query = createFeatures(r, cols, integral);
+        DtwRecurrence recurrence = new DtwRecurrence();
+        recurrence.setGlobalGapPenalty(integral ? 1.0d : 0.25d);
+        AbsoluteDifferenceSimilarity similarity = new AbsoluteDifferenceSimilarity();
+        AnchorPairSet aps = new AnchorPairSet(new ArrayList<IAnchor>(),
+                new ArrayList<IAnchor>(), rows, cols);
+        ArrayFactory f = new ArrayFactory();
+
+        IArrayD2Double alignment = f.create(rows, cols, aps, 0, band,
+                Double.POSITIVE_INFINITY, false);
+        IArrayD2Double distance = f.createSharedLayout(alignment);
+        ArrayByte.D2 predecessors = new ArrayByte.D2(rows, cols, false);
+        for (int i = 0; i < rows; i++) {
+            final int[] bounds = alignment.getColumnBounds(i);
+            for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                distance.set(i, j, similarity.apply(i, j, -1, -1, ref.get(i),
+                        query.get(j)));
+                recurrence.eval(i, j, alignment, distance.get(i, j),
+                        predecessors);
+            }
+        }
+        List<Tuple2DI> expPath = new PathTools().traceback(predecessors, null,
+                null);
+
+        LinearMemoryDtw dtw = new LinearMemoryDtw(recurrence, similarity, ref,
+                query, null, null, f.createColumnBounds(rows, cols, aps, 0,
+                        band, false), baseCells);
+        double value = dtw.align();
+
+        String msg = rows + "x" + cols + ", band=" + band + ", baseCells="
+                + baseCells;
+        Assert.assertEquals(msg, Double.doubleToLongBits(alignment.get(rows - 1,
+                cols - 1)), Double.doubleToLongBits(value));
+        List<Tuple2DI> path = dtw.getPath();
+        ArrayDouble.D1 pathDistances = dtw.getPathDistances();
+        Assert.assertEquals(msg, expPath.size(), path.size());
+        Assert.assertEquals(msg, expPath.size(), pathDistances.getShape()[0]);
+        int ndiag = 0;
+        for (int k = 0; k < expPath.size(); k++) {
+            Tuple2DI e = expPath.get(k);
+            Tuple2DI a = path.get(k);
+            Assert.assertEquals(msg, e.getFirst(), a.getFirst());
+            Assert.assertEquals(msg, e.getSecond(), a.getSecond());
+            Assert.assertEquals(msg, distance.get(e.getFirst(), e.getSecond()),
+                    pathDistances.get(k), 0.0d);
+            if (k == 0 || (e.getFirst() - expPath.get(k - 1).getFirst() == 1
+                    && e.getSecond() - expPath.get(k - 1).getSecond() == 1)) {
+                ndiag++;
+            }
+        }
+        Assert.assertEquals(msg, ndiag, dtw.getNdiag());
+        Assert.assertEquals(msg, expPath.size(), dtw.getNdiag() + dtw.getNcomp()
+                + dtw.getNexp());
+    }
+
+    /**
+     * Unconstrained matrices. Base cell limits of one and four force the
+     * recursion down to single rows, larger limits solve small inputs
+     * directly with full matrices.
+     */
+    @Test
+    public void testAlignWithoutBand() {
+        Random r = new Random(1);
+        int[][] shapes = {{1, 1}, {1, 9}, {9, 1}, {2, 2}, {23, 37}, {50, 31}, {64, 64}};
+        for (int[] shape : shapes) {
+            for (int baseCells : new int[]{1, 4, 64, 100000}) {
+                compare(shape[0], shape[1], 0.0d, baseCells, true, r);
+                compare(shape[0], shape[1], 0.0d, baseCells, false, r);
+            }
+        }
+    }
+
+    /**
+     * Band constrained matrices.
+     */
+    @Test
+    public void testAlignWithBand() {
+        Random r = new Random(2);
+        int[][] shapes = {{23, 37}, {50, 31}, {64, 64}};
+        for (int[] shape : shapes) {
+            for (double band : new double[]{0.1d, 0.3d}) {
+                for (int baseCells : new int[]{1, 4, 64, 100000}) {
+                    compare(shape[0], shape[1], band, baseCells, true, r);
+                    compare(shape[0], shape[1], band, baseCells, false, r);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances.dtw;
+
+import cross.datastructures.tuple.Tuple2DI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import maltcms.commands.distances.DtwRecurrence;
+import maltcms.commands.distances.PairwiseFeatureSimilarity;
+import maltcms.datastructures.alignment.AnchorPairSet;
+import maltcms.datastructures.array.ArrayFactory;
+import maltcms.datastructures.array.IArrayD2Double;
+import maltcms.datastructures.ms.IAnchor;
+import maltcms.tools.PathTools;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayByte;
+
+/**
+ * Compares the tiled wavefront evaluation of the cumulative distance matrix
+ * with the serial row by row evaluation of {@link ADynamicTimeWarp}.
+ *
+ * @author Nils Hoffmann
+ */
+public class WavefrontDtwEngineTest {
+
+    private List<Array> createFeatures(Random r, int n, boolean integral) {
+        List<Array> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double v = integral ? r.nextInt(4) : r.nextDouble();
+            l.add(Array.factory(new double[]{v}));
+        }
+        return l;
+    }
+
+    private IArrayD2Double createLayout(int rows, int cols, double band) {
+        AnchorPairSet aps = new AnchorPairSet(new ArrayList<IAnchor>(),
+                new ArrayList<IAnchor>(), rows, cols);
+        return new ArrayFactory().create(rows, cols, aps, 0, band,
+                Double.POSITIVE_INFINITY, false);
+    }
+
+    /**
+     * The serial evaluation order of
+     * {@link ADynamicTimeWarp#calculateCumulativeDistances}.
+     */
+    private void fillSerial(IArrayD2Double distance, IArrayD2Double alignment,
+            ArrayByte.D2 predecessors, DtwRecurrence recurrence,
+            PairwiseFeatureSimilarity pfs, List<Array> ref,
+            List<Array> query) {
+        for (int i = 0; i < alignment.rows(); i++) {
+            final int[] bounds = alignment.getColumnBounds(i);
+            for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                distance.set(i, j, pfs.getDistance(i, j, -1, -1, ref.get(i),
+                        query.get(j)));
+                recurrence.eval(i, j, alignment, distance.get(i, j),
+                        predecessors);
+            }
+        }
+    }
+
+    private void compare(int rows, int cols, double band, int tileSize,
+            boolean integral, Random r) {
+        List<Array> ref = createFeatures(r, rows, integral);
+        List<Array> query = createFeatures(r, cols, integral);
+        DtwRecurrence recurrence = new DtwRecurrence();
+        recurrence.setGlobalGapPenalty(integral ? 1.0d : 0.25d);
+        PairwiseFeatureSimilarity pfs = new PairwiseFeatureSimilarity();
+        pfs.setSimilarityFunction(new AbsoluteDifferenceSimilarity());
+
+        IArrayD2Double expAlignment = createLayout(rows, cols, band);
+        IArrayD2Double expDistance = new ArrayFactory().createSharedLayout(expAlignment);
+        ArrayByte.D2 expPredecessors = new ArrayByte.D2(rows, cols, false);
+        fillSerial(expDistance, expAlignment, expPredecessors, recurrence,
+                pfs, ref, query);
+
+        IArrayD2Double alignment = createLayout(rows, cols, band);
+        IArrayD2Double distance = new ArrayFactory().createSharedLayout(alignment);
+        ArrayByte.D2 predecessors = new ArrayByte.D2(rows, cols, false);
+        long cells = new WavefrontDtwEngine(4, tileSize).fill(distance,
+                alignment, predecessors, recurrence, pfs, false, ref, query,
+                null, null);
+
+        String msg = rows + "x" + cols + ", band=" + band + ", tileSize="
+                + tileSize;
+        Assert.assertEquals(msg, expAlignment.getNumberOfStoredElements(), cells);
+        for (int i = 0; i < rows; i++) {
+            final int[] bounds = expAlignment.getColumnBounds(i);
+            for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                Assert.assertEquals(msg, Double.doubleToLongBits(expAlignment.get(i, j)),
+                        Double.doubleToLongBits(alignment.get(i, j)));
+                Assert.assertEquals(msg, Double.doubleToLongBits(expDistance.get(i, j)),
+                        Double.doubleToLongBits(distance.get(i, j)));
+                Assert.assertEquals(msg, expPredecessors.get(i, j),
+                        predecessors.get(i, j));
+            }
+        }
+        List<Tuple2DI> expPath = new PathTools().traceback(expPredecessors,
+                null, null);
+        List<Tuple2DI> path = new PathTools().traceback(predecessors, null,
+                null);
+        Assert.assertEquals(msg, expPath.size(), path.size());
+        for (int k = 0; k < expPath.size(); k++) {
+            Assert.assertEquals(msg, expPath.get(k).getFirst(), path.get(k).getFirst());
+            Assert.assertEquals(msg, expPath.get(k).getSecond(), path.get(k).getSecond());
+        }
+    }
+
+    /**
+     * Unconstrained matrices, including single rows and columns and tile
+     * sizes that do not divide the dimensions.
+     */
+    @Test
+    public void testFillWithoutBand() {
+        Random r = new Random(1);
+        int[][] shapes = {{1, 1}, {1, 9}, {9, 1}, {23, 37}, {50, 31}, {64, 64}};
+        for (int[] shape : shapes) {
+            for (int tileSize : new int[]{1, 3, 7, 16, 100}) {
+                compare(shape[0], shape[1], 0.0d, tileSize, true, r);
+                compare(shape[0], shape[1], 0.0d, tileSize, false, r);
+            }
+        }
+    }
+
+    /**
+     * Band constrained matrices, where tiles outside of the band are skipped.
+     */
+    @Test
+    public void testFillWithBand() {
+        Random r = new Random(2);
+        int[][] shapes = {{23, 37}, {50, 31}, {64, 64}};
+        for (int[] shape : shapes) {
+            for (double band : new double[]{0.1d, 0.3d}) {
+                for (int tileSize : new int[]{1, 3, 7, 16, 100}) {
+                    compare(shape[0], shape[1], band, tileSize, true, r);
+                    compare(shape[0], shape[1], band, tileSize, false, r);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.functions.similarities;
+
+import java.util.Random;
+import maltcms.math.functions.IArraySimilarity;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class ArrayValueCacheTest {
+
+    private Array randomArray(Random r, int n) {
+        double[] d = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = r.nextInt(4) == 0 ? 0.0d : r.nextDouble() * 1000.0d;
+        }
+        return Array.makeFromJavaArray(d);
+    }
+
+    /**
+     * Test of get, put and invalidate, of class ArrayValueCache.
+     */
+    @Test
+    public void testHitsAndMisses() {
+        ArrayValueCache<Double> cache = new ArrayValueCache<>("test", 1024);
+        Array a = Array.makeFromJavaArray(new double[]{1.0d, 2.0d});
+        Array b = Array.makeFromJavaArray(new double[]{1.0d, 2.0d});
+        Assert.assertNull(cache.get(a));
+        cache.put(a, 3.0d);
+        Assert.assertEquals(3.0d, cache.get(a), 0.0d);
+        //keys are compared by identity, not by content
+        Assert.assertNull(cache.get(b));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(1, cache.size());
+        cache.invalidate(a);
+        Assert.assertNull(cache.get(a));
+        Assert.assertEquals(0, cache.size());
+        cache.put(a, 3.0d);
+        cache.put(b, 4.0d);
+        Assert.assertEquals(4.0d, cache.get(b), 0.0d);
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    /**
+     * Test of the size bound, of class ArrayValueCache.
+     */
+    @Test
+    public void testEviction() {
+        ArrayValueCache<Integer> cache = new ArrayValueCache<>("test", 64);
+        Array[] arrays = new Array[1000];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = Array.makeFromJavaArray(new double[]{i});
+            cache.put(arrays[i], i);
+        }
+        Assert.assertTrue(cache.size() <= 64);
+        for (int i = 0; i < arrays.length; i++) {
+            Integer v = cache.get(arrays[i]);
+            Assert.assertTrue(v == null || v == i);
+        }
+    }
+
+    /**
+     * Test that similarities using the shared caches return the same values
+     * as without cached values.
+     */
+    @Test
+    public void testCachedEqualsUncached() {
+        Random r = new Random(42L);
+        IArraySimilarity[] similarities = new IArraySimilarity[]{new ArrayCos(),
+            new ArrayWeightedCosine(), new ArrayWeightedCosine2(),
+            new ArrayCorr(), new ArrayRankCorr(), new ArrayCov()};
+        Array[] arrays = new Array[20];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = randomArray(r, 50);
+        }
+        for (IArraySimilarity sim : similarities) {
+            double[][] uncached = new double[arrays.length][arrays.length];
+            for (int i = 0; i < arrays.length; i++) {
+                for (int j = 0; j < arrays.length; j++) {
+                    SimilarityTools.clearArrayValueCaches();
+                    uncached[i][j] = sim.apply(arrays[i], arrays[j]);
+                }
+            }
+            SimilarityTools.clearArrayValueCaches();
+            IArraySimilarity copy = sim.copy();
+            for (int k = 0; k < 2; k++) {
+                for (int i = 0; i < arrays.length; i++) {
+                    for (int j = 0; j < arrays.length; j++) {
+                        Assert.assertEquals(sim.getClass().getName(),
+                                uncached[i][j], copy.apply(arrays[i], arrays[j]), 0.0d);
+                    }
+                }
+            }
+        }
+        long hits = 0;
+        for (ArrayValueCache<?> cache : SimilarityTools.getArrayValueCaches()) {
+            hits += cache.getHits();
+        }
+        Assert.assertTrue(hits > 0);
+        SimilarityTools.clearArrayValueCaches();
+    }
+}
@@ -30,9 +30,11 @@ package maltcms.datastructures.array;
 import java.awt.Color;
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import maltcms.datastructures.alignment.AnchorPairSet;
 import maltcms.datastructures.constraint.ConstraintFactory;
 import ucar.ma2.Array;
+import ucar.ma2.ArrayInt;
 
 /**
  * A factory abstraction for creation of IArrayD2Double implementations.
@@ -84,6 +86,50 @@ public class ArrayFactory {
         return create(rows, cols, default_value);
     }
 
+    /**
+     * Calculates the column bounds of each row of the layout that
+     * {@link #create(int, int, maltcms.datastructures.alignment.AnchorPairSet, int, double, double, boolean)}
+     * would create for the same arguments, without allocating the storage for
+     * the elements.
+     *
+     * @param rows a int.
+     * @param cols a int.
+     * @param aps a {@link maltcms.datastructures.alignment.AnchorPairSet} object.
+     * @param neighborhood a int.
+     * @param band a double.
+     * @param globalBand a boolean.
+     * @return an array of two arrays of length rows, the first containing the
+     * lowest column of each row, the second the number of columns of each row
+     * @since 2.0.1
+     */
+    public int[][] createColumnBounds(final int rows, final int cols,
+            final AnchorPairSet aps, final int neighborhood, final double band,
+            final boolean globalBand) {
+        final int[][] bounds = new int[2][rows];
+        Area shape = null;
+        if (aps.getSize() > 2) {
+            shape = PartitionedArray.createShape(rows, cols, aps,
+                    neighborhood, band, globalBand);
+        } else if (band > 0.0d) {
+            shape = ConstraintFactory.getInstance().createBandConstraint(0, 0,
+                    rows, cols, band);
+        }
+        if (shape == null) {
+            Arrays.fill(bounds[1], cols);
+        } else {
+            final ArrayInt.D1 colStart = new ArrayInt.D1(rows, false);
+            final ArrayInt.D1 rowLength = new ArrayInt.D1(rows, false);
+            final ArrayInt.D1 rowOffset = new ArrayInt.D1(rows, false);
+            PartitionedArray.initLayout(rows, cols, shape, colStart,
+                    rowLength, rowOffset);
+            for (int i = 0; i < rows; i++) {
+                bounds[0][i] = colStart.get(i);
+                bounds[1][i] = rowLength.get(i);
+            }
+        }
+        return bounds;
+    }
+
     /**
      * Creates a DenseArray with given number of rows, columns and default_value
      * as initial value of elements.
@@ -87,6 +87,27 @@ public class PartitionedArray implements IArrayD2Double {
             final AnchorPairSet aps, final int neighborhood1,
             final double band, final double defaultValue,
             final boolean globalBand) {
+        final Area shape = PartitionedArray.createShape(rows, cols, aps,
+                neighborhood1, band, globalBand);
+        return PartitionedArray.create(rows, cols, defaultValue, shape);
+    }
+
+    /**
+     * Creates the shape of the layout defined by the anchors and band
+     * constraint, without allocating any storage.
+     *
+     * @param rows a int.
+     * @param cols a int.
+     * @param aps a {@link maltcms.datastructures.alignment.AnchorPairSet} object.
+     * @param neighborhood1 a int.
+     * @param band a double.
+     * @param globalBand a boolean.
+     * @return a {@link java.awt.geom.Area} object.
+     * @since 2.0.1
+     */
+    public static Area createShape(final int rows, final int cols,
+            final AnchorPairSet aps, final int neighborhood1,
+            final double band, final boolean globalBand) {
         Area shape = null;
         if (globalBand) {
             shape = ConstraintFactory.getInstance().calculateLayout(rows, cols,
@@ -102,8 +123,7 @@ public class PartitionedArray implements IArrayD2Double {
             shape = ConstraintFactory.getInstance().calculateLayout(rows, cols,
                     neighborhood1, aps, band, 0, 0);
         }
-
-        return PartitionedArray.create(rows, cols, defaultValue, shape);
+        return shape;
     }
 
     /**
@@ -175,6 +195,26 @@ public class PartitionedArray implements IArrayD2Double {
     public static ArrayDouble.D1 initArrays(final int rows, final int cols,
             final Area bounds, final ArrayInt.D1 colStart,
             final ArrayInt.D1 rowLength, final ArrayInt.D1 rowOffset) {
+        return new ArrayDouble.D1(PartitionedArray.initLayout(rows, cols,
+                bounds, colStart, rowLength, rowOffset));
+    }
+
+    /**
+     * Initializes the row layout of the given bounds, without allocating the
+     * data array.
+     *
+     * @param rows a int.
+     * @param cols a int.
+     * @param bounds a {@link java.awt.geom.Area} object.
+     * @param colStart a {@link ucar.ma2.ArrayInt.D1} object.
+     * @param rowLength a {@link ucar.ma2.ArrayInt.D1} object.
+     * @param rowOffset a {@link ucar.ma2.ArrayInt.D1} object.
+     * @return the number of stored elements.
+     * @since 2.0.1
+     */
+    public static int initLayout(final int rows, final int cols,
+            final Area bounds, final ArrayInt.D1 colStart,
+            final ArrayInt.D1 rowLength, final ArrayInt.D1 rowOffset) {
         final long start = System.currentTimeMillis();
         int offset = 0;
         Area a = null;// new Area(r);
@@ -219,7 +259,7 @@ public class PartitionedArray implements IArrayD2Double {
         final long end = System.currentTimeMillis() - start;
         log.debug(
                 "Time to calculate row layout: " + end);
-        return new ArrayDouble.D1(offset);
+        return offset;
     }
 
 //	public static void main(final String[] args) {
@@ -0,0 +1,432 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.caches;
+
+import cross.annotations.RequiresVariables;
+import cross.datastructures.fragments.IFileFragment;
+import cross.datastructures.tuple.Tuple2D;
+import cross.exception.NotImplementedException;
+import cross.tools.StringTools;
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import maltcms.tools.ArrayTools2;
+import maltcms.tools.MaltcmsTools;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+
+/**
+ * Scan line cache that densifies every mass spectrum of a GCxGC chromatogram
+ * exactly once and spills the binned intensities to a local, memory-mapped
+ * file. Subsequent requests are served from the mapped file instead of being
+ * re-read and re-binned, so the cache can not be evicted by the garbage
+ * collector and does not occupy heap space.
+ *
+ * Reads use absolute bulk gets on shared read-only buffers and are therefore
+ * safe for concurrent use by multiple threads without locking. Only the
+ * initial spill is synchronized. Since {@link ucar.ma2.Array} requires a heap
+ * backed storage, each returned mass spectrum is a fresh array filled by one
+ * bulk copy from the mapped region.
+ *
+ * The sparse accessors are delegated to a {@link SparseScanLineCache}.
+ *
+ * {@link #clear()} unmaps the spill file and deletes it. It must not be called
+ * while other threads read from the cache.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@RequiresVariables(names = {"var.mass_values", "var.intensity_values",
+    "var.scan_index", "var.mass_range_min", "var.mass_range_max",
+    "var.modulation_time", "var.scan_rate"})
+public class MappedScanLineCache implements IScanLine {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(MappedScanLineCache.class);
+
+    private final IFileFragment iff;
+    private final SparseScanLineCache sparse;
+    private final double minMass;
+    private final double maxMass;
+    private final double massResolution;
+    private final int bins;
+    private final int spectraPerSegment;
+    private volatile DoubleBuffer[] segments = null;
+    private MappedByteBuffer[] mapped = null;
+    private int[] scanLineLengths;
+    private DataType dataType = DataType.DOUBLE;
+    private File spillFile = null;
+    private boolean cacheModulations = true;
+
+    /**
+     * Creates a new mapped scan line cache. The spill file is created lazily
+     * on first access to a dense mass spectrum.
+     *
+     * @param iff1 file fragment
+     * @param minMass a double.
+     * @param maxMass a double.
+     * @param massResolution a double.
+     */
+    protected MappedScanLineCache(final IFileFragment iff1, double minMass, double maxMass, double massResolution) {
+        this.iff = iff1;
+        this.sparse = new SparseScanLineCache(iff1, minMass, maxMass, massResolution);
+        this.minMass = minMass;
+        this.maxMass = maxMass;
+        this.massResolution = massResolution;
+        this.bins = MaltcmsTools.getNumberOfIntegerMassBins(minMass, maxMass, massResolution);
+        this.spectraPerSegment = Math.max(1, Integer.MAX_VALUE / (Math.max(1, this.bins) * 8));
+    }
+
+    /**
+     * Returns the mapped segments, spilling all scan lines on first access.
+     *
+     * @return the mapped segments
+     */
+    private DoubleBuffer[] getSegments() {
+        DoubleBuffer[] s = this.segments;
+        if (s == null) {
+            synchronized (this) {
+                s = this.segments;
+                if (s == null) {
+                    s = spill();
+                    this.segments = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Densifies all mass spectra, writes them to the spill file and maps the
+     * file read-only in segments of at most {@link Integer#MAX_VALUE} bytes.
+     *
+     * @return the mapped segments
+     */
+    private DoubleBuffer[] spill() {
+        final int scanLines = this.sparse.getScanLineCount();
+        final int spm = this.sparse.getScansPerModulation();
+        final long slots = (long) scanLines * spm;
+        final int nsegments = (int) ((slots + this.spectraPerSegment - 1) / this.spectraPerSegment);
+        final long start = System.nanoTime();
+        this.scanLineLengths = new int[scanLines];
+        final boolean cacheMod = this.sparse.getCacheModulation();
+        this.sparse.setCacheModulations(false);
+        try {
+            this.spillFile = File.createTempFile(StringTools.removeFileExt(this.iff.getName()) + "-scanLineCache", ".bin");
+            this.spillFile.deleteOnExit();
+            try (RandomAccessFile raf = new RandomAccessFile(this.spillFile, "rw");
+                    FileChannel channel = raf.getChannel()) {
+                final long stride = (long) this.bins * 8;
+                raf.setLength(slots * stride);
+                final ByteBuffer buffer = ByteBuffer.allocateDirect((int) stride).order(ByteOrder.nativeOrder());
+                for (int x = 0; x < scanLines; x++) {
+                    final List<Tuple2D<Array, Array>> sl = this.sparse.getScanlineSparseMS(x);
+                    final int n = Math.min(sl.size(), spm);
+                    this.scanLineLengths[x] = n;
+                    for (int y = 0; y < n; y++) {
+                        final Tuple2D<Array, Array> ms = sl.get(y);
+                        if (x == 0 && y == 0) {
+                            this.dataType = ms.getSecond().getDataType();
+                        }
+                        final Array dense = ArrayTools2.normalize(ms.getFirst(), ms.getSecond(), this.massResolution, log, this.minMass, this.maxMass);
+                        buffer.clear();
+                        for (int i = 0; i < this.bins; i++) {
+                            buffer.putDouble(dense.getDouble(i));
+                        }
+                        buffer.flip();
+                        long position = mapPoint(x, y) * stride;
+                        while (buffer.hasRemaining()) {
+                            position += channel.write(buffer, position);
+                        }
+                    }
+                }
+                final MappedByteBuffer[] m = new MappedByteBuffer[nsegments];
+                final DoubleBuffer[] s = new DoubleBuffer[nsegments];
+                for (int i = 0; i < nsegments; i++) {
+                    final long first = (long) i * this.spectraPerSegment;
+                    final long count = Math.min(this.spectraPerSegment, slots - first);
+                    m[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * stride, count * stride);
+                    s[i] = m[i].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+                }
+                this.mapped = m;
+                log.info("Spilled {} scan lines with {} bins to {} in {} ms", new Object[]{scanLines, this.bins, this.spillFile, (System.nanoTime() - start) / 1000000L});
+                return s;
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create scan line spill file for " + this.iff.getName(), ex);
+        } finally {
+            this.sparse.setCacheModulations(cacheMod);
+        }
+    }
+
+    /**
+     * Copies the binned intensities of the given slot from the mapped file.
+     *
+     * @param s the mapped segments
+     * @param slot the slot index, as returned by {@link #mapPoint(int, int)}
+     * @return the dense mass spectrum
+     */
+    private Array read(final DoubleBuffer[] s, final int slot) {
+        final double[] values = new double[this.bins];
+        s[slot / this.spectraPerSegment].get((slot % this.spectraPerSegment) * this.bins, values);
+        if (this.dataType == DataType.DOUBLE) {
+            return Array.factory(values);
+        }
+        final Array a = Array.factory(this.dataType, new int[]{this.bins});
+        for (int i = 0; i < this.bins; i++) {
+            a.setDouble(i, values[i]);
+        }
+        return a;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void configure(final Configuration cfg) {
+        this.sparse.configure(cfg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBinsSize() {
+        return this.bins;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getCacheModulation() {
+        return this.cacheModulations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLastIndex() {
+        return this.sparse.getLastIndex();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Array getMassSpectrum(final int x, final int y) {
+        final DoubleBuffer[] s = getSegments();
+        if ((x >= 0) && (y >= 0) && (x < this.scanLineLengths.length)
+                && (y < this.scanLineLengths[x])) {
+            return read(s, mapPoint(x, y));
+        }
+        log.error("Tried to access mass spectrum outside of bounds at x=" + x + " y=" + y);
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Array getMassSpectrum(final Point p) {
+        return getMassSpectrum(p.x, p.y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tuple2D<Array, Array> getSparseMassSpectrum(int x, int y) {
+        return this.sparse.getSparseMassSpectrum(x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tuple2D<Array, Array> getSparseMassSpectrum(Point p) {
+        return getSparseMassSpectrum(p.x, p.y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getScanLineCount() {
+        return this.sparse.getScanLineCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Array> getScanlineMS(final int x) {
+        final DoubleBuffer[] s = getSegments();
+        if (x < 0 || x >= this.scanLineLengths.length) {
+            return Collections.emptyList();
+        }
+        final int n = this.scanLineLengths[x];
+        final List<Array> l = new ArrayList<>(n);
+        for (int y = 0; y < n; y++) {
+            l.add(read(s, mapPoint(x, y)));
+        }
+        return l;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Tuple2D<Array, Array>> getScanlineSparseMS(int x) {
+        return this.sparse.getScanlineSparseMS(x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getScansPerModulation() {
+        return this.sparse.getScansPerModulation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBinSize(final int size) {
+        throw new NotImplementedException("This method is deprecated!");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only affects the sparse accessors, dense spectra are always served
+     * from the spill file.
+     */
+    @Override
+    public void setCacheModulations(final boolean cacheMod) {
+        this.cacheModulations = cacheMod;
+        this.sparse.setCacheModulations(cacheMod);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLastIndex(final int index) {
+        this.sparse.setLastIndex(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void showStat() {
+        log.info("Spill file: {}, bins: {}, segments: {}", new Object[]{this.spillFile, this.bins, this.segments == null ? 0 : this.segments.length});
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Point mapIndex(int scanIndex) {
+        return this.sparse.mapIndex(scanIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int mapPoint(int x, int y) {
+        return this.sparse.mapPoint(x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int mapPoint(Point p) {
+        return mapPoint(p.x, p.y);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Unmaps the segments and deletes the spill file. The next access to a
+     * dense mass spectrum will recreate it.
+     */
+    @Override
+    public synchronized void clear() {
+        this.segments = null;
+        if (this.mapped != null) {
+            for (MappedByteBuffer m : this.mapped) {
+                unmap(m);
+            }
+            this.mapped = null;
+        }
+        if (this.spillFile != null) {
+            if (!this.spillFile.delete()) {
+                log.debug("Could not delete spill file {}, will be removed on exit", this.spillFile);
+            }
+            this.spillFile = null;
+        }
+        this.sparse.clear();
+    }
+
+    /**
+     * Releases the mapping of the given buffer immediately, instead of waiting
+     * for the buffer to be garbage collected. Falls back to the latter, if the
+     * runtime does not allow to release the mapping.
+     *
+     * @param buffer the mapped buffer, must not be accessed afterwards
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.debug("Could not unmap scan line cache segment, it will be unmapped when it is garbage collected", ex);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.caches;
+
+import cross.datastructures.fragments.IFileFragment;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent, content addressed cache for the results of pairwise
+ * comparisons.
+ *
+ * Entries are stored as serialized objects below a cache directory, named by
+ * a key that is derived from the content hashes of both inputs and a hash of
+ * the configuration used to compare them. Changing either input or any
+ * configuration value therefore yields a new key, so stale entries are never
+ * returned and only new pairs need to be computed when inputs are added.
+ * Failing to read or write an entry is never fatal, the entry is simply
+ * treated as missing.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class PairwiseResultCache implements Serializable {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(PairwiseResultCache.class);
+
+    private static final long serialVersionUID = -2398472034987123401L;
+    /**
+     * Version of the canonical configuration text, increased whenever its
+     * format changes.
+     */
+    public static final int CONFIGURATION_FORMAT = 1;
+    private final File directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new cache below the given directory.
+     *
+     * @param directory the cache directory, created on demand
+     */
+    public PairwiseResultCache(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return the cache directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the number of successful lookups of this instance.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of failed lookups of this instance.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the cached value for <code>key</code>.
+     *
+     * @param <T> the value type
+     * @param key the key
+     * @param type the expected value type
+     * @return the cached value or null, if no valid entry exists
+     */
+    public <T extends Serializable> T get(final String key, final Class<T> type) {
+        final File file = getFile(key);
+        if (file.isFile()) {
+            try (ObjectInputStream ois = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                final Object o = ois.readObject();
+                if (type.isInstance(o)) {
+                    hits.incrementAndGet();
+                    return type.cast(o);
+                }
+                log.warn("Discarding cache entry {} of unexpected type {}", file, o.getClass().getName());
+            } catch (IOException | ClassNotFoundException ex) {
+                log.warn("Discarding unreadable cache entry " + file, ex);
+            }
+            if (!file.delete()) {
+                log.warn("Could not delete cache entry {}", file);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores <code>value</code> for <code>key</code>. The entry is written to
+     * a temporary file first and then moved into place, so that concurrent
+     * readers never see partially written entries.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final String key, final Serializable value) {
+        final File file = getFile(key);
+        final File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            log.warn("Could not create cache directory {}", parent);
+            return;
+        }
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(key, ".tmp", parent);
+            try (ObjectOutputStream oos = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                oos.writeObject(value);
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            log.warn("Could not write cache entry " + file, ex);
+            if (tmp != null && tmp.isFile() && !tmp.delete()) {
+                log.warn("Could not delete temporary file {}", tmp);
+            }
+        }
+    }
+
+    private File getFile(final String key) {
+        return new File(new File(directory, key.substring(0, 2)), key + ".ser");
+    }
+
+    /**
+     * Combines the given hashes into a single key. The order of the hashes is
+     * significant.
+     *
+     * @param hashes the hashes of the inputs and of the configuration
+     * @return the key
+     */
+    public static String key(final String... hashes) {
+        final MessageDigest md = createDigest();
+        for (final String hash : hashes) {
+            md.update(hash.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Hashes the given result relevant parameters of <code>owner</code>. The
+     * hash is computed from a canonical text of the form
+     * <code>name=value</code>, one line per parameter and sorted by name,
+     * preceded by the name of the owner and the version of this format.
+     * Values are rendered by {@link #canonical(java.lang.Object)}, so the hash
+     * does not depend on the serialized form of the values.
+     *
+     * @param owner the name of the class whose results are cached
+     * @param parameters the result relevant parameters by name
+     * @return the configuration hash
+     */
+    public static String configurationHash(final String owner,
+            final Map<String, ?> parameters) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("format=").append(CONFIGURATION_FORMAT).append('\n');
+        sb.append("owner=").append(owner).append('\n');
+        for (final Map.Entry<String, ?> e : new TreeMap<>(parameters).entrySet()) {
+            sb.append(e.getKey()).append('=').append(canonical(e.getValue())).
+                    append('\n');
+        }
+        final MessageDigest md = createDigest();
+        md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return toHex(md.digest());
+    }
+
+    /**
+     * Renders a parameter value as canonical text. Primitive wrappers,
+     * strings and enums are rendered by their string value, arrays and
+     * collections element by element, maps and sets sorted by their rendered
+     * elements. Any other object is rendered as its class name followed by
+     * its non-static, non-transient fields, sorted by name and rendered
+     * recursively, so that e.g. the settings of a similarity function
+     * contribute.
+     *
+     * @param value the value
+     * @return the canonical text
+     */
+    public static String canonical(final Object value) {
+        final StringBuilder sb = new StringBuilder();
+        canonical(value, sb, Collections.newSetFromMap(
+                new IdentityHashMap<Object, Boolean>()));
+        return sb.toString();
+    }
+
+    private static void canonical(final Object value, final StringBuilder sb,
+            final Set<Object> path) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof CharSequence
+                || value instanceof Enum || value instanceof Class) {
+            sb.append(value instanceof Class ? ((Class<?>) value).getName() : value);
+        } else if (!path.add(value)) {
+            sb.append("<cycle>");
+        } else {
+            try {
+                if (value.getClass().isArray()) {
+                    final List<Object> elements = new ArrayList<>();
+                    for (int i = 0; i < Array.getLength(value); i++) {
+                        elements.add(Array.get(value, i));
+                    }
+                    canonicalElements(elements, false, sb, path);
+                } else if (value instanceof Set) {
+                    canonicalElements((Set<?>) value, true, sb, path);
+                } else if (value instanceof Collection) {
+                    canonicalElements((Collection<?>) value, false, sb, path);
+                } else if (value instanceof Map) {
+                    final List<String> entries = new ArrayList<>();
+                    for (final Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                        final StringBuilder entry = new StringBuilder();
+                        canonical(e.getKey(), entry, path);
+                        entry.append('=');
+                        canonical(e.getValue(), entry, path);
+                        entries.add(entry.toString());
+                    }
+                    Collections.sort(entries);
+                    sb.append(entries);
+                } else if (value.getClass().getName().startsWith("java.")) {
+                    sb.append(value.getClass().getName()).append('(').
+                            append(value).append(')');
+                } else {
+                    canonicalFields(value, sb, path);
+                }
+            } finally {
+                path.remove(value);
+            }
+        }
+    }
+
+    private static void canonicalElements(final Collection<?> elements,
+            final boolean sort, final StringBuilder sb, final Set<Object> path) {
+        final List<String> rendered = new ArrayList<>();
+        for (final Object element : elements) {
+            final StringBuilder e = new StringBuilder();
+            canonical(element, e, path);
+            rendered.add(e.toString());
+        }
+        if (sort) {
+            Collections.sort(rendered);
+        }
+        sb.append(rendered);
+    }
+
+    private static void canonicalFields(final Object value,
+            final StringBuilder sb, final Set<Object> path) {
+        final Map<String, Field> fields = new TreeMap<>();
+        for (Class<?> c = value.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (final Field f : c.getDeclaredFields()) {
+                final int mod = f.getModifiers();
+                if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod)
+                        && !f.isSynthetic()) {
+                    fields.put(c == value.getClass() ? f.getName()
+                            : c.getName() + "." + f.getName(), f);
+                }
+            }
+        }
+        sb.append(value.getClass().getName()).append('{');
+        boolean first = true;
+        for (final Map.Entry<String, Field> e : fields.entrySet()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(e.getKey()).append('=');
+            try {
+                e.getValue().setAccessible(true);
+                canonical(e.getValue().get(value), sb, path);
+            } catch (IllegalAccessException | RuntimeException ex) {
+                throw new IllegalArgumentException("Can not render field "
+                        + e.getKey() + " of " + value.getClass().getName(), ex);
+            }
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Hashes the content of the given fragment's file together with the
+     * content hashes of all of its source files, since variables of a
+     * fragment may be resolved from its sources.
+     *
+     * @param f the fragment
+     * @return the content hash or null, if the fragment is not backed by a
+     * file
+     */
+    public static String contentHash(final IFileFragment f) {
+        final String own = contentHash(f.getUri());
+        if (own == null) {
+            return null;
+        }
+        final List<String> sources = new ArrayList<>();
+        for (final IFileFragment source : f.getSourceFiles()) {
+            final String hash = contentHash(source);
+            if (hash == null) {
+                return null;
+            }
+            sources.add(hash);
+        }
+        if (sources.isEmpty()) {
+            return own;
+        }
+        Collections.sort(sources);
+        sources.add(0, own);
+        return key(sources.toArray(new String[sources.size()]));
+    }
+
+    /**
+     * Hashes the content of the file at the given uri.
+     *
+     * @param uri the file uri
+     * @return the content hash or null, if the uri does not denote a readable
+     * file
+     */
+    public static String contentHash(final URI uri) {
+        if (!"file".equals(uri.getScheme())) {
+            return null;
+        }
+        final File file = new File(uri);
+        if (!file.isFile()) {
+            return null;
+        }
+        final MessageDigest md = createDigest();
+        try (InputStream is = new FileInputStream(file)) {
+            final byte[] buffer = new byte[65536];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+        } catch (IOException ex) {
+            log.warn("Could not hash " + file, ex);
+            return null;
+        }
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
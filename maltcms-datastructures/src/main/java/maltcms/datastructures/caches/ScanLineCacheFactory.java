@@ -27,6 +27,7 @@
  */
 package maltcms.datastructures.caches;
 
+import cross.Factory;
 import cross.datastructures.fragments.IFileFragment;
 import org.slf4j.LoggerFactory;
 
@@ -81,15 +82,25 @@ public class ScanLineCacheFactory {
     public static void setMassResolution(double massResolution) {
         ScanLineCacheFactory.massResolution = massResolution;
     }
+
     /**
      * This method will automatically create a new {@link maltcms.datastructures.caches.IScanLine} for the
      * given {@link cross.datastructures.fragments.IFileFragment} if no one is cached. Otherwise it will return
      * the known {@link maltcms.datastructures.caches.IScanLine}.
      *
+     * If the configuration key
+     * <code>maltcms.datastructures.caches.ScanLineCacheFactory.useMappedScanLineCache</code>
+     * is true, a {@link maltcms.datastructures.caches.MappedScanLineCache} is
+     * returned.
+     *
      * @param ff file fragment
      * @return scanline cache for this file fragment
      */
     public static IScanLine getScanLineCache(final IFileFragment ff) {
+        if (Factory.getInstance().getConfiguration().getBoolean(
+                ScanLineCacheFactory.class.getName() + ".useMappedScanLineCache", false)) {
+            return ScanLineCacheFactory.getMappedScanLineCache(ff);
+        }
         return ScanLineCacheFactory.getSparseScanLineCache(ff);
     }
 
@@ -105,4 +116,17 @@ public class ScanLineCacheFactory {
         log.info("Using scan line cache implementation: {}", slc.getClass().getName());
         return slc;
     }
+
+    /**
+     * <p>getMappedScanLineCache.</p>
+     *
+     * @param ff a {@link cross.datastructures.fragments.IFileFragment} object.
+     * @return a {@link maltcms.datastructures.caches.IScanLine} object.
+     * @since 2.0.1
+     */
+    public static IScanLine getMappedScanLineCache(final IFileFragment ff) {
+        IScanLine slc = new MappedScanLineCache(ff, minMass, maxMass, massResolution);
+        log.info("Using scan line cache implementation: {}", slc.getClass().getName());
+        return slc;
+    }
 }
@@ -335,6 +335,8 @@ public class SparseScanLineCache implements IScanLine {
 
     /**
      * Getter. Will load the scanline from a given {@link IFileFragment}.
+     * The variables are resolved and re-indexed while holding the lock of this
+     * cache, so concurrent readers may call the public getters.
      *
      * @param x scan line number
      * @return complete ms list of the scan line
@@ -343,6 +345,16 @@ public class SparseScanLineCache implements IScanLine {
         if (x > this.lastIndex) {
             return Collections.emptyList();
         }
+        if (this.scanIndex == null) {
+            this.scanIndex = this.iff.getChild(this.scanIndexVar);
+        }
+        if (this.massValues == null) {
+            this.massValues = this.iff.getChild(this.massValuesVar, true);
+        }
+        if (this.massIntensities == null) {
+            this.massIntensities = this.iff.getChild(this.intensityValuesVar,
+                    true);
+        }
         try {
             int last = this.xyToScanIndexMap.get(x).length - 1;
             int maxindex = this.xyToScanIndexMap.get(x)[last];
@@ -423,16 +435,6 @@ public class SparseScanLineCache implements IScanLine {
      */
     @Override
     public List<Tuple2D<Array, Array>> getScanlineSparseMS(int x) {
-        if (this.scanIndex == null) {
-            this.scanIndex = this.iff.getChild(this.scanIndexVar);
-        }
-        if (this.massValues == null) {
-            this.massValues = this.iff.getChild(this.massValuesVar, true);
-        }
-        if (this.massIntensities == null) {
-            this.massIntensities = this.iff.getChild(this.intensityValuesVar,
-                    true);
-        }
         final Integer scan = x;
         List<Tuple2D<Array, Array>> t = this.cache.get(scan);
         if (t != null && !t.isEmpty()) {
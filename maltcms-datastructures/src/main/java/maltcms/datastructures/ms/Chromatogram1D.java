@@ -74,6 +74,7 @@ public class Chromatogram1D implements IChromatogram1D {
     private int numberOfScans = -1;
     private Array msLevel;
     private Map<Short, List<Integer>> msScanMap;
+    private volatile double[] scanAcquisitionTimes;
 
     /**
      * <p>Constructor for Chromatogram1D.</p>
@@ -173,17 +174,57 @@ public class Chromatogram1D implements IChromatogram1D {
      * @return a {@link maltcms.datastructures.ms.Scan1D} object.
      */
     protected Scan1D buildScan(int i) {
-        log.info("Building scan {}", i);
+        log.debug("Building scan {}", i);
         final Array masses = massValues.get(i);
         final Array intens = intensityValues.get(i);
         short scanMsLevel = 1;
         if (msLevel != null) {
             scanMsLevel = msLevel.getByte(i);
         }
-        final Scan1D s = new Scan1D(masses, intens, i, scanAcquisitionTimeVar.getArray().getDouble(i), scanMsLevel);
+        final Scan1D s = new Scan1D(masses, intens, i, getScanAcquisitionTimes()[i], scanMsLevel);
         return s;
     }
 
+    /**
+     * Returns the scan acquisition times as a primitive array. The array is
+     * created on first access and shared afterwards, so callers must not
+     * modify it.
+     *
+     * @return the scan acquisition times of all scans.
+     * @since 2.0.1
+     */
+    protected double[] getScanAcquisitionTimes() {
+        double[] d = scanAcquisitionTimes;
+        if (d == null) {
+            d = (double[]) getScanAcquisitionTime().get1DJavaArray(double.class);
+            scanAcquisitionTimes = d;
+        }
+        return d;
+    }
+
+    /**
+     * Returns a cursor over all scans of this chromatogram.
+     *
+     * @return a new {@link maltcms.datastructures.ms.ScanCursor} object.
+     * @since 2.0.1
+     */
+    public ScanCursor cursor() {
+        return cursor(0, getNumberOfScans());
+    }
+
+    /**
+     * Returns a cursor over the scans in the given index range.
+     *
+     * @param startIndex the first scan index, inclusive.
+     * @param stopIndex the last scan index, exclusive.
+     * @return a new {@link maltcms.datastructures.ms.ScanCursor} object.
+     * @since 2.0.1
+     */
+    public ScanCursor cursor(final int startIndex, final int stopIndex) {
+        return new ScanCursor(massValues, intensityValues,
+                getScanAcquisitionTimes(), msLevel, startIndex, stopIndex);
+    }
+
     /** {@inheritDoc} */
     @Override
     public Tuple2D<Double, Double> getTimeRange() {
@@ -398,11 +439,10 @@ public class Chromatogram1D implements IChromatogram1D {
     /** {@inheritDoc} */
     @Override
     public int getIndexFor(double scan_acquisition_time) throws ArrayIndexOutOfBoundsException {
-        double[] d = (double[]) getScanAcquisitionTime().get1DJavaArray(
-                double.class);
+        double[] d = getScanAcquisitionTimes();
         int idx = Arrays.binarySearch(d, scan_acquisition_time);
         if (idx >= 0) {// exact hit
-            log.info("sat {}, scan_index {}",
+            log.debug("sat {}, scan_index {}",
                     scan_acquisition_time, idx);
             return idx;
         } else {// imprecise hit, find closest element
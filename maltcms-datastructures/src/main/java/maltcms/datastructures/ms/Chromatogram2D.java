@@ -79,6 +79,7 @@ public class Chromatogram2D implements IChromatogram2D {
     private int numberOfScans = -1;
     private Array msLevel;
     private Map<Short, List<Integer>> msScanMap;
+    private volatile double[] scanAcquisitionTimes;
 
     /**
      * <p>
@@ -167,7 +168,7 @@ public class Chromatogram2D implements IChromatogram2D {
         if (p!=null && p.x >= 0 && p.y >= 0 && (p.x + p.y < getNumberOfScans())) {
             final Tuple2D<Array, Array> t = this.isl.getSparseMassSpectrum(p.x, p.y);
             double sat1 = satOffset + (p.x * getModulationDuration());
-            double sat = MaltcmsTools.getScanAcquisitionTime(this.parent, i);
+            double sat = getScanAcquisitionTimes()[i];
             double sat2 = sat - sat1;
             short scanMsLevel = 1;
             if (msLevel != null) {
@@ -184,6 +185,49 @@ public class Chromatogram2D implements IChromatogram2D {
         }
     }
 
+    /**
+     * Returns the scan acquisition times as a primitive array. The array is
+     * created on first access and shared afterwards, so callers must not
+     * modify it.
+     *
+     * @return the scan acquisition times of all scans.
+     * @since 2.0.1
+     */
+    protected double[] getScanAcquisitionTimes() {
+        double[] d = scanAcquisitionTimes;
+        if (d == null) {
+            d = (double[]) getScanAcquisitionTime().get1DJavaArray(double.class);
+            scanAcquisitionTimes = d;
+        }
+        return d;
+    }
+
+    /**
+     * Returns a cursor over all scans of this chromatogram. Use
+     * {@link #getPointFor(int)} with the cursor's scan index to obtain the
+     * modulation and the position within the modulation.
+     *
+     * @return a new {@link maltcms.datastructures.ms.ScanCursor} object.
+     * @since 2.0.1
+     */
+    public ScanCursor cursor() {
+        return cursor(0, getNumberOfScans());
+    }
+
+    /**
+     * Returns a cursor over the scans in the given index range.
+     *
+     * @param startIndex the first scan index, inclusive.
+     * @param stopIndex the last scan index, exclusive.
+     * @return a new {@link maltcms.datastructures.ms.ScanCursor} object.
+     * @since 2.0.1
+     */
+    public ScanCursor cursor(final int startIndex, final int stopIndex) {
+        Tuple2D<List<Array>, List<Array>> mzi = MaltcmsTools.getMZIs(this.parent);
+        return new ScanCursor(mzi.getFirst(), mzi.getSecond(),
+                getScanAcquisitionTimes(), msLevel, startIndex, stopIndex);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -382,11 +426,10 @@ public class Chromatogram2D implements IChromatogram2D {
      */
     @Override
     public int getIndexFor(double scan_acquisition_time) {
-        double[] d = (double[]) getScanAcquisitionTime().get1DJavaArray(
-                double.class);
+        double[] d = getScanAcquisitionTimes();
         int idx = Arrays.binarySearch(d, scan_acquisition_time);
         if (idx >= 0) {// exact hit
-            log.info("sat {}, scan_index {}",
+            log.debug("sat {}, scan_index {}",
                     scan_acquisition_time, idx);
             return idx;
         } else {// imprecise hit, find closest element
@@ -0,0 +1,652 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.ms;
+
+import cross.Factory;
+import cross.datastructures.fragments.IFileFragment;
+import cross.datastructures.fragments.IVariableFragment;
+import cross.datastructures.tuple.Tuple2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import maltcms.tools.MaltcmsTools;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayInt;
+import ucar.ma2.IndexIterator;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Range;
+
+/**
+ * Inverted m/z index of the mass spectra of a file fragment.
+ *
+ * All (m/z, scan, intensity) triples of a fragment are grouped into buckets of
+ * width <code>1/BUCKETS_PER_MZ</code>, starting at the minimum m/z. Within a
+ * bucket, the triples are ordered by scan index. An extracted ion chromatogram
+ * for an m/z window thus only needs to visit the buckets overlapping that
+ * window, instead of scanning every m/z of every scan.
+ *
+ * Indices are built once per fragment and kept in memory. Fragments whose mass
+ * spectra have been modified in memory are not indexed. If
+ * <code>maltcms.datastructures.ms.MzIndex.persist</code> is set to
+ * <code>true</code> and the fragment is backed by a file, the index is
+ * persisted next to it as <code>&lt;name&gt;.&lt;ext&gt;.mzidx</code> and
+ * reused as long as the size and modification time of the fragment's file do
+ * not change. Persisting is disabled by default, so that no files are written
+ * next to the input data.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class MzIndex {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(MzIndex.class);
+    /**
+     * Number of buckets per unit m/z.
+     */
+    public static final int BUCKETS_PER_MZ = 10;
+    private static final int MAGIC = 0x4D5A4958;
+    private static final int VERSION = 1;
+    private static final String FILE_SUFFIX = ".mzidx";
+    private static final ConcurrentMap<URI, SoftReference<MzIndex>> INDICES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<URI, FutureTask<MzIndex>> LOADING = new ConcurrentHashMap<>();
+    private final long sourceLength;
+    private final long sourceLastModified;
+    private final int scans;
+    private final double minMz;
+    private final double maxMz;
+    private final int[] bucketOffsets;
+    private final double[] mz;
+    private final int[] scan;
+    private final double[] intensity;
+
+    private MzIndex(long sourceLength, long sourceLastModified, int scans,
+            double minMz, double maxMz, int[] bucketOffsets, double[] mz,
+            int[] scan, double[] intensity) {
+        this.sourceLength = sourceLength;
+        this.sourceLastModified = sourceLastModified;
+        this.scans = scans;
+        this.minMz = minMz;
+        this.maxMz = maxMz;
+        this.bucketOffsets = bucketOffsets;
+        this.mz = mz;
+        this.scan = scan;
+        this.intensity = intensity;
+    }
+
+    /**
+     * Returns the index for the given fragment. The index is looked up in
+     * memory, then loaded from its persistent file and only built from the
+     * fragment's mass spectra if neither is available or up to date. Indices
+     * of different fragments are loaded concurrently, concurrent requests for
+     * the same fragment wait for the first one.
+     *
+     * @param f the file fragment
+     * @return the index, or <code>null</code>, if the fragment is not backed by
+     * a file or if its mass spectra have been modified in memory
+     */
+    public static MzIndex getInstance(final IFileFragment f) {
+        final File source = getSourceFile(f);
+        if (source == null) {
+            return null;
+        }
+        if (hasModifiedSpectra(f)) {
+            log.debug("Not using m/z index for {}, mass spectra have been modified in memory",
+                    f.getName());
+            return null;
+        }
+        final URI key = source.toURI();
+        final SoftReference<MzIndex> ref = INDICES.get(key);
+        final MzIndex index = ref == null ? null : ref.get();
+        if (index != null && index.isValidFor(source)) {
+            return index;
+        }
+        FutureTask<MzIndex> task = LOADING.get(key);
+        if (task == null) {
+            final FutureTask<MzIndex> newTask = new FutureTask<>(new Callable<MzIndex>() {
+                @Override
+                public MzIndex call() {
+                    final MzIndex built = loadOrBuild(f, source);
+                    INDICES.put(key, new SoftReference<>(built));
+                    return built;
+                }
+            });
+            task = LOADING.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            LOADING.remove(key, task);
+        }
+    }
+
+    private static MzIndex loadOrBuild(final IFileFragment f, final File source) {
+        final File indexFile = getIndexFile(source);
+        MzIndex index = null;
+        if (indexFile.isFile()) {
+            try {
+                index = load(indexFile);
+            } catch (IOException ex) {
+                log.warn("Could not read m/z index from " + indexFile, ex);
+                index = null;
+            }
+        }
+        if (index == null || !index.isValidFor(source)) {
+            index = build(f, source.length(), source.lastModified());
+            if (Factory.getInstance().getConfiguration().getBoolean(
+                    MzIndex.class.getName() + ".persist", false)) {
+                try {
+                    index.save(indexFile);
+                } catch (IOException ex) {
+                    log.warn("Could not persist m/z index to {}: {}",
+                            indexFile, ex.getLocalizedMessage());
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns true, if the scan index, mass or intensity values of
+     * <code>f</code> have been modified in memory. The file backing
+     * <code>f</code> then no longer reflects its mass spectra.
+     */
+    private static boolean hasModifiedSpectra(final IFileFragment f) {
+        final String[] vars = new String[]{
+            Factory.getInstance().getConfiguration().getString("var.scan_index", "scan_index"),
+            Factory.getInstance().getConfiguration().getString("var.mass_values", "mass_values"),
+            Factory.getInstance().getConfiguration().getString("var.intensity_values", "intensity_values")};
+        for (String var : vars) {
+            if (f.hasChild(var) && f.getChild(var).isModified()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds a new index from the mass spectra of the given fragment.
+     *
+     * @param f the file fragment
+     * @param sourceLength the length of the file backing the fragment
+     * @param sourceLastModified the modification time of the file backing the
+     * fragment
+     * @return the index
+     */
+    public static MzIndex build(final IFileFragment f, final long sourceLength,
+            final long sourceLastModified) {
+        final long start = System.currentTimeMillis();
+        final IVariableFragment index1 = f.getChild(Factory.getInstance().
+                getConfiguration().getString("var.scan_index", "scan_index"));
+        final Range[] originalRange = index1.getRange();
+        try {
+            index1.setRange(new Range[0]);
+            final String massVar = Factory.getInstance().getConfiguration().getString("var.mass_values", "mass_values");
+            final String intensVar = Factory.getInstance().getConfiguration().getString("var.intensity_values", "intensity_values");
+            final IVariableFragment masses = f.getChild(massVar);
+            masses.clear();
+            final IVariableFragment intensities = f.getChild(intensVar);
+            intensities.clear();
+            if (masses.getIndex() == null) {
+                masses.setIndex(index1);
+            }
+            if (intensities.getIndex() == null) {
+                intensities.setIndex(index1);
+            }
+            final List<Array> mass1 = masses.getIndexedArray();
+            final List<Array> intens1 = intensities.getIndexedArray();
+            final int nscans = Math.min(mass1.size(), intens1.size());
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int n = 0;
+            for (int i = 0; i < nscans; i++) {
+                final IndexIterator iter = mass1.get(i).getIndexIterator();
+                while (iter.hasNext()) {
+                    final double m = iter.getDoubleNext();
+                    min = Math.min(min, m);
+                    max = Math.max(max, m);
+                    n++;
+                }
+            }
+            if (n == 0) {
+                min = 0;
+                max = 0;
+            }
+            final int[] offsets = new int[getBucket(max, min) + 2];
+            for (int i = 0; i < nscans; i++) {
+                final IndexIterator iter = mass1.get(i).getIndexIterator();
+                while (iter.hasNext()) {
+                    offsets[getBucket(iter.getDoubleNext(), min) + 1]++;
+                }
+            }
+            for (int b = 1; b < offsets.length; b++) {
+                offsets[b] += offsets[b - 1];
+            }
+            final int[] fill = new int[offsets.length - 1];
+            System.arraycopy(offsets, 0, fill, 0, fill.length);
+            final double[] mz = new double[n];
+            final int[] scan = new int[n];
+            final double[] intensity = new double[n];
+            for (int i = 0; i < nscans; i++) {
+                final IndexIterator miter = mass1.get(i).getIndexIterator();
+                final IndexIterator iiter = intens1.get(i).getIndexIterator();
+                while (miter.hasNext() && iiter.hasNext()) {
+                    final double m = miter.getDoubleNext();
+                    final int pos = fill[getBucket(m, min)]++;
+                    mz[pos] = m;
+                    scan[pos] = i;
+                    intensity[pos] = iiter.getDoubleNext();
+                }
+            }
+            log.info("Built m/z index with {} entries for {} scans of {} in {} ms",
+                    new Object[]{n, nscans, f.getName(), System.currentTimeMillis() - start});
+            return new MzIndex(sourceLength, sourceLastModified, nscans, min,
+                    max, offsets, mz, scan, intensity);
+        } finally {
+            index1.setRange(originalRange);
+        }
+    }
+
+    /**
+     * Returns the number of scans covered by this index.
+     *
+     * @return the number of scans
+     */
+    public int getNumberOfScans() {
+        return this.scans;
+    }
+
+    /**
+     * Returns the smallest and largest m/z covered by this index.
+     *
+     * @return the m/z range
+     */
+    public Tuple2D<Double, Double> getMassRange() {
+        return new Tuple2D<>(this.minMz, this.maxMz);
+    }
+
+    /**
+     * Returns the extracted ion chromatogram for all m/z in
+     * <code>[eicStart, eicStop)</code> and the scans
+     * <code>[start, start + nscans)</code>. Intensities are truncated to
+     * integers, as in
+     * {@link MaltcmsTools#getEIC(IFileFragment, double, double, boolean, boolean, int, int)}.
+     *
+     * @param eicStart the lower m/z bound, inclusive
+     * @param eicStop the upper m/z bound, exclusive
+     * @param normalize if true, summed intensities are divided by the number
+     * of m/z in the window
+     * @param keepMaxInBin if true, only the maximum intensity within the
+     * window is kept
+     * @param start the first scan
+     * @param nscans the number of scans
+     * @return the extracted ion chromatogram
+     */
+    public Array getEIC(final double eicStart, final double eicStop,
+            final boolean normalize, final boolean keepMaxInBin,
+            final int start, final int nscans) {
+        final ArrayDouble.D1 eic = new ArrayDouble.D1(nscans);
+        final ArrayInt.D1 eicbinCnt = new ArrayInt.D1(nscans, false);
+        final int[] max = new int[nscans];
+        final int stop = start + nscans;
+        final int firstBucket = Math.max(0, getBucket(eicStart, minMz));
+        final int lastBucket = Math.min(bucketOffsets.length - 2,
+                getBucket(eicStop, minMz));
+        for (int b = firstBucket; b <= lastBucket; b++) {
+            final int to = bucketOffsets[b + 1];
+            for (int k = firstScanPosition(b, start); k < to && scan[k] < stop; k++) {
+                final double m = mz[k];
+                if ((m >= eicStart) && (m < eicStop)) {
+                    final int i = scan[k] - start;
+                    final int val = (int) intensity[k];
+                    if (keepMaxInBin) {
+                        if (eicbinCnt.get(i) == 0 || val > max[i]) {
+                            eic.set(i, val);
+                            max[i] = val;
+                        }
+                    } else {
+                        eic.set(i, val + eic.get(i));
+                    }
+                    eicbinCnt.set(i, eicbinCnt.get(i) + 1);
+                }
+            }
+        }
+        if (normalize && !keepMaxInBin) {
+            for (int i = 0; i < nscans; i++) {
+                eic.set(i, eic.get(i) / (double) eicbinCnt.get(i));
+            }
+        }
+        return eic;
+    }
+
+    /**
+     * Returns the extracted ion chromatograms for all mass bins of the given
+     * mass range and resolution in a single pass over the index. Bins are
+     * assigned by
+     * {@link MaltcmsTools#binMZ(double, double, double, double)}.
+     * The chromatograms are added to <code>eics</code> at the index of their
+     * bin, bins without any intensities are left unset.
+     *
+     * @param eics the list receiving the extracted ion chromatograms
+     * @param minMass the minimum mass
+     * @param maxMass the maximum mass
+     * @param resolution the mass resolution
+     * @param start the first scan
+     * @param nscans the number of scans
+     */
+    public void getEICs(final List<Array> eics, final double minMass,
+            final double maxMass, final double resolution, final int start,
+            final int nscans) {
+        getEICs(eics, minMass, maxMass, resolution, start, nscans, 0,
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the extracted ion chromatograms for the mass bins
+     * <code>[firstBin, firstBin + nbins)</code>, see
+     * {@link #getEICs(List, double, double, double, int, int)}. The
+     * chromatogram of bin <code>b</code> is set at index
+     * <code>b - firstBin</code> of <code>eics</code>. Only buckets overlapping
+     * the requested bins are visited.
+     *
+     * @param eics the list receiving the extracted ion chromatograms
+     * @param minMass the minimum mass
+     * @param maxMass the maximum mass
+     * @param resolution the mass resolution
+     * @param start the first scan
+     * @param nscans the number of scans
+     * @param firstBin the first mass bin
+     * @param nbins the number of mass bins
+     */
+    public void getEICs(final List<Array> eics, final double minMass,
+            final double maxMass, final double resolution, final int start,
+            final int nscans, final int firstBin, final int nbins) {
+        final int stop = start + nscans;
+        final long stopBin = (long) firstBin + nbins;
+        //bins are monotone in m/z, so a bin can no longer receive intensities
+        //once the lower bound of the current bucket lies beyond it
+        final Map<Integer, ArrayDouble.D1> open = new HashMap<>();
+        for (int b = 0; b < bucketOffsets.length - 1; b++) {
+            final int minBin = MaltcmsTools.binMZ(minMz
+                    + (double) b / BUCKETS_PER_MZ, minMass, maxMass, resolution);
+            flush(eics, open, minBin, firstBin);
+            if (minBin >= stopBin) {
+                break;
+            }
+            if (MaltcmsTools.binMZ(minMz + (double) (b + 1) / BUCKETS_PER_MZ,
+                    minMass, maxMass, resolution) < firstBin) {
+                continue;
+            }
+            final int to = bucketOffsets[b + 1];
+            for (int k = firstScanPosition(b, start); k < to && scan[k] < stop; k++) {
+                final int bin = MaltcmsTools.binMZ(mz[k], minMass,
+                        maxMass, resolution);
+                if (bin < firstBin || bin >= stopBin) {
+                    continue;
+                }
+                ArrayDouble.D1 eic = open.get(bin);
+                if (eic == null) {
+                    eic = new ArrayDouble.D1(nscans);
+                    open.put(bin, eic);
+                }
+                final int i = scan[k] - start;
+                eic.set(i, intensity[k] + eic.get(i));
+            }
+        }
+        flush(eics, open, Integer.MAX_VALUE, firstBin);
+    }
+
+    private void flush(final List<Array> eics,
+            final Map<Integer, ArrayDouble.D1> open, final int minBin,
+            final int firstBin) {
+        if (open.isEmpty()) {
+            return;
+        }
+        final Integer[] bins = open.keySet().toArray(new Integer[open.size()]);
+        Arrays.sort(bins);
+        for (Integer bin : bins) {
+            if (bin < minBin) {
+                eics.set(bin - firstBin, open.remove(bin));
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the first entry of bucket <code>b</code> with a
+     * scan index of at least <code>start</code>.
+     */
+    private int firstScanPosition(final int b, final int start) {
+        int lo = bucketOffsets[b];
+        int hi = bucketOffsets[b + 1];
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (scan[mid] < start) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int getBucket(final double m, final double minMz) {
+        return (int) Math.floor((m - minMz) * BUCKETS_PER_MZ);
+    }
+
+    private boolean isValidFor(final File source) {
+        return source.length() == this.sourceLength
+                && source.lastModified() == this.sourceLastModified;
+    }
+
+    private static File getSourceFile(final IFileFragment f) {
+        final URI uri = f.getUri();
+        if (uri == null || !"file".equals(uri.getScheme())) {
+            return null;
+        }
+        final File file = new File(uri);
+        return file.isFile() ? file : null;
+    }
+
+    static File getIndexFile(final File source) {
+        return new File(source.getParentFile(), source.getName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Writes this index to the given file. The index is written to a
+     * temporary file in the same directory first, which then replaces
+     * <code>file</code>, so that readers never see a partially written index.
+     *
+     * @param file the target file
+     * @throws IOException if the file can not be written
+     */
+    public void save(final File file) throws IOException {
+        final File tmp = File.createTempFile(file.getName(), ".tmp",
+                file.getAbsoluteFile().getParentFile());
+        try {
+            write(tmp);
+            try {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmp.isFile() && !tmp.delete()) {
+                log.warn("Could not delete temporary file {}", tmp);
+            }
+        }
+    }
+
+    private void write(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).
+                    putLong(sourceLastModified).putInt(scans).
+                    putInt(BUCKETS_PER_MZ).putDouble(minMz).putDouble(maxMz).
+                    putInt(bucketOffsets.length).putInt(mz.length);
+            for (int v : bucketOffsets) {
+                putInt(channel, buffer, v);
+            }
+            for (double v : mz) {
+                putDouble(channel, buffer, v);
+            }
+            for (int v : scan) {
+                putInt(channel, buffer, v);
+            }
+            for (double v : intensity) {
+                putDouble(channel, buffer, v);
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    /**
+     * Reads an index from the given file.
+     *
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file can not be read or is not a valid index
+     */
+    public static MzIndex load(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.limit(0);
+            if (getInt(channel, buffer) != MAGIC || getInt(channel, buffer) != VERSION) {
+                throw new IOException("Not an m/z index: " + file);
+            }
+            final long sourceLength = getLong(channel, buffer);
+            final long sourceLastModified = getLong(channel, buffer);
+            final int scans = getInt(channel, buffer);
+            if (getInt(channel, buffer) != BUCKETS_PER_MZ) {
+                throw new IOException("Unsupported bucket width in " + file);
+            }
+            final double minMz = getDouble(channel, buffer);
+            final double maxMz = getDouble(channel, buffer);
+            final int[] offsets = new int[getInt(channel, buffer)];
+            final int n = getInt(channel, buffer);
+            final double[] mz = new double[n];
+            final int[] scan = new int[n];
+            final double[] intensity = new double[n];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = getInt(channel, buffer);
+            }
+            for (int i = 0; i < n; i++) {
+                mz[i] = getDouble(channel, buffer);
+            }
+            for (int i = 0; i < n; i++) {
+                scan[i] = getInt(channel, buffer);
+            }
+            for (int i = 0; i < n; i++) {
+                intensity[i] = getDouble(channel, buffer);
+            }
+            return new MzIndex(sourceLength, sourceLastModified, scans, minMz,
+                    maxMz, offsets, mz, scan, intensity);
+        }
+    }
+
+    private static void putInt(FileChannel channel, ByteBuffer buffer, int v) throws IOException {
+        if (buffer.remaining() < 4) {
+            drain(channel, buffer);
+        }
+        buffer.putInt(v);
+    }
+
+    private static void putDouble(FileChannel channel, ByteBuffer buffer, double v) throws IOException {
+        if (buffer.remaining() < 8) {
+            drain(channel, buffer);
+        }
+        buffer.putDouble(v);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of m/z index");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static int getInt(FileChannel channel, ByteBuffer buffer) throws IOException {
+        fill(channel, buffer, 4);
+        return buffer.getInt();
+    }
+
+    private static long getLong(FileChannel channel, ByteBuffer buffer) throws IOException {
+        fill(channel, buffer, 8);
+        return buffer.getLong();
+    }
+
+    private static double getDouble(FileChannel channel, ByteBuffer buffer) throws IOException {
+        fill(channel, buffer, 8);
+        return buffer.getDouble();
+    }
+}
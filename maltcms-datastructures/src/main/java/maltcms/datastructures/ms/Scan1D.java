@@ -56,7 +56,7 @@ public class Scan1D implements IScan1D {
     private double total_intensity = Double.NaN;
     private transient Array masses = null;
     private transient Array intensities = null;
-    private UUID uniqueId = UUID.randomUUID();
+    private volatile UUID uniqueId = null;
     private short msLevel = 1;
     private double precursorCharge = Double.NaN;
     private double precursorMz = Double.NaN;
@@ -215,14 +215,29 @@ public class Scan1D implements IScan1D {
         return d;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * The id is created on first access, so scans that are never identified
+     * do not pay for the random number generation.
+     */
     @Override
     public UUID getUniqueId() {
-        return uniqueId;
+        UUID id = uniqueId;
+        if (id == null) {
+            synchronized (this) {
+                id = uniqueId;
+                if (id == null) {
+                    id = UUID.randomUUID();
+                    uniqueId = id;
+                }
+            }
+        }
+        return id;
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
-        out.writeObject(uniqueId);
+        out.writeObject(getUniqueId());
         out.writeInt(scanNumber);
         out.writeDouble(scanAcquisitionTime);
         out.writeDouble(total_intensity);
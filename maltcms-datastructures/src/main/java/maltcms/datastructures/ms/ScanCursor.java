@@ -0,0 +1,260 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.ms;
+
+import java.util.List;
+import ucar.ma2.Array;
+
+/**
+ * Reusable, forward-moving view over the scans of a chromatogram.
+ *
+ * Unlike {@link IScanProvider#getScan(int)} and the scan iterators, a cursor
+ * does not create an {@link IScan} object per scan. It exposes the values of
+ * the current scan directly from the mass and intensity arrays and the cached
+ * scan acquisition times of its chromatogram. Call {@link #toScan()} to
+ * materialize the current position if a scan object is required.
+ *
+ * A cursor is not thread-safe; create one cursor per thread.
+ *
+ * <pre>
+ * ScanCursor cursor = chromatogram.cursor();
+ * while (cursor.next()) {
+ *     double tic = cursor.getTotalIntensity();
+ * }
+ * </pre>
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class ScanCursor {
+
+    private final List<Array> masses;
+    private final List<Array> intensities;
+    private final double[] scanAcquisitionTimes;
+    private final Array msLevel;
+    private final int start;
+    private final int stop;
+    private int position;
+    private Array currentMasses;
+    private Array currentIntensities;
+    private double currentTotalIntensity = Double.NaN;
+
+    /**
+     * <p>Constructor for ScanCursor.</p>
+     *
+     * @param masses the mass arrays of all scans.
+     * @param intensities the intensity arrays of all scans.
+     * @param scanAcquisitionTimes the scan acquisition times of all scans.
+     * @param msLevel the ms level of all scans, may be null if all scans are
+     * MS1.
+     * @param start the first scan index, inclusive.
+     * @param stop the last scan index, exclusive.
+     */
+    ScanCursor(List<Array> masses, List<Array> intensities,
+            double[] scanAcquisitionTimes, Array msLevel, int start, int stop) {
+        if (start < 0) {
+            throw new ArrayIndexOutOfBoundsException(start);
+        }
+        if (stop > scanAcquisitionTimes.length || stop < start) {
+            throw new ArrayIndexOutOfBoundsException(stop);
+        }
+        this.masses = masses;
+        this.intensities = intensities;
+        this.scanAcquisitionTimes = scanAcquisitionTimes;
+        this.msLevel = msLevel;
+        this.start = start;
+        this.stop = stop;
+        reset();
+    }
+
+    /**
+     * Moves the cursor to the next scan.
+     *
+     * @return true if the cursor points to a valid scan, false if the end was
+     * reached.
+     */
+    public boolean next() {
+        if (position + 1 < stop) {
+            moveTo(position + 1);
+            return true;
+        }
+        position = stop;
+        return false;
+    }
+
+    /**
+     * Moves the cursor to the given scan index.
+     *
+     * @param scan the scan index.
+     * @throws ArrayIndexOutOfBoundsException if the scan index is outside of
+     * the range of this cursor.
+     */
+    public void seek(int scan) {
+        if (scan < start || scan >= stop) {
+            throw new ArrayIndexOutOfBoundsException("Requested index " + scan + " was out of bounds [" + start + "," + (stop - 1) + "]");
+        }
+        moveTo(scan);
+    }
+
+    /**
+     * Moves the cursor before the first scan, so that the following call to
+     * {@link #next()} returns the first scan again.
+     */
+    public void reset() {
+        moveTo(start - 1);
+    }
+
+    private void moveTo(int scan) {
+        position = scan;
+        currentMasses = null;
+        currentIntensities = null;
+        currentTotalIntensity = Double.NaN;
+    }
+
+    private void checkPosition() {
+        if (position < start || position >= stop) {
+            throw new IllegalStateException("Cursor is not positioned on a scan!");
+        }
+    }
+
+    /**
+     * <p>getScanIndex.</p>
+     *
+     * @return the index of the current scan.
+     */
+    public int getScanIndex() {
+        checkPosition();
+        return position;
+    }
+
+    /**
+     * <p>getScanAcquisitionTime.</p>
+     *
+     * @return the scan acquisition time of the current scan.
+     */
+    public double getScanAcquisitionTime() {
+        checkPosition();
+        return scanAcquisitionTimes[position];
+    }
+
+    /**
+     * <p>getMsLevel.</p>
+     *
+     * @return the ms level of the current scan.
+     */
+    public short getMsLevel() {
+        checkPosition();
+        if (msLevel == null) {
+            return 1;
+        }
+        return msLevel.getShort(position);
+    }
+
+    /**
+     * <p>getMasses.</p>
+     *
+     * @return the mass values of the current scan.
+     */
+    public Array getMasses() {
+        checkPosition();
+        if (currentMasses == null) {
+            currentMasses = masses.get(position);
+        }
+        return currentMasses;
+    }
+
+    /**
+     * <p>getIntensities.</p>
+     *
+     * @return the intensity values of the current scan.
+     */
+    public Array getIntensities() {
+        checkPosition();
+        if (currentIntensities == null) {
+            currentIntensities = intensities.get(position);
+        }
+        return currentIntensities;
+    }
+
+    /**
+     * <p>getPeakCount.</p>
+     *
+     * @return the number of mass / intensity pairs of the current scan.
+     */
+    public int getPeakCount() {
+        return (int) getIntensities().getSize();
+    }
+
+    /**
+     * <p>getMass.</p>
+     *
+     * @param i the peak index within the current scan.
+     * @return the mass value.
+     */
+    public double getMass(int i) {
+        return getMasses().getDouble(i);
+    }
+
+    /**
+     * <p>getIntensity.</p>
+     *
+     * @param i the peak index within the current scan.
+     * @return the intensity value.
+     */
+    public double getIntensity(int i) {
+        return getIntensities().getDouble(i);
+    }
+
+    /**
+     * <p>getTotalIntensity.</p>
+     *
+     * @return the sum of all intensities of the current scan.
+     */
+    public double getTotalIntensity() {
+        if (Double.isNaN(currentTotalIntensity)) {
+            final Array intens = getIntensities();
+            final int n = (int) intens.getSize();
+            double d = 0;
+            for (int i = 0; i < n; i++) {
+                d += intens.getDouble(i);
+            }
+            currentTotalIntensity = d;
+        }
+        return currentTotalIntensity;
+    }
+
+    /**
+     * Creates a scan object for the current position of this cursor.
+     *
+     * @return a new {@link maltcms.datastructures.ms.Scan1D} object.
+     */
+    public Scan1D toScan() {
+        return new Scan1D(getMasses(), getIntensities(), getScanIndex(),
+                getScanAcquisitionTime(), getMsLevel());
+    }
+}
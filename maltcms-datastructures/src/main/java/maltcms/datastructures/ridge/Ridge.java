@@ -301,11 +301,25 @@ public class Ridge implements Comparable<Ridge> {
         // / ((double) scaleIdx) +
         // 0.5*(Math.pow(ridgePoints.get(ridgePoints.size()-1).getFirst().getX()
         // - maximum, 2));
+        extend(scaleIdx, maximum, nextScale[maximum]);
+    }
+
+    /**
+     * Appends the point at <code>position</code> of scale
+     * <code>scaleIdx</code> to this ridge without checking its neighborhood.
+     * Used when ridges have already been linked across scales elsewhere.
+     *
+     * @param scaleIdx the scale index of the new point.
+     * @param position the position of the new point on that scale.
+     * @param value the scale response at that position.
+     * @since 2.0.1
+     */
+    public void extend(int scaleIdx, int position, double value) {
         ridgePoints.add(new Tuple2D<Point2D, Double>(new Point2D.Double(
-                maximum, scaleIdx), nextScale[maximum]));
-        gp.lineTo(maximum, scaleIdx);
+                position, scaleIdx), value));
+        gp.lineTo(position, scaleIdx);
         double oldMax = ridgePoints.get(getIndexOfMaximum()).getSecond();
-        if (nextScale[maximum] > oldMax) {
+        if (value > oldMax) {
             this.maximumIndex = scaleIdx;
         }
     }
@@ -66,6 +66,7 @@ import maltcms.datastructures.ms.ChromatogramFactory;
 import maltcms.datastructures.ms.IAnchor;
 import maltcms.datastructures.ms.IChromatogram1D;
 import maltcms.datastructures.ms.IScan1D;
+import maltcms.datastructures.ms.MzIndex;
 import maltcms.datastructures.ms.RetentionInfo;
 import maltcms.io.csv.CSVWriter;
 import org.slf4j.LoggerFactory;
@@ -651,6 +652,13 @@ public class MaltcmsTools {
     public static Array getEIC(final IFileFragment f, final double eicStart,
             final double eicStop, final boolean normalize,
             final boolean keepMaxInBin, int start, int nscans) {
+        if (isUseMzIndex()) {
+            final MzIndex mzIndex = MzIndex.getInstance(f);
+            if (mzIndex != null) {
+                return mzIndex.getEIC(eicStart, eicStop, normalize,
+                        keepMaxInBin, start, nscans);
+            }
+        }
         Range[] originalRange = null;
         IVariableFragment index1 = null;
         try {
@@ -736,6 +744,19 @@ public class MaltcmsTools {
         }
     }
 
+    /**
+     * Returns whether extracted ion chromatograms are retrieved from an
+     * {@link MzIndex} of the file fragment. Configured via
+     * <code>maltcms.tools.MaltcmsTools.useMzIndex</code>, enabled by default.
+     *
+     * @return true, if the m/z index is used
+     * @since 2.0.1
+     */
+    public static boolean isUseMzIndex() {
+        return Factory.getInstance().getConfiguration().getBoolean(
+                MaltcmsTools.class.getName() + ".useMzIndex", true);
+    }
+
     /**
      * <p>getEICs.</p>
      *
@@ -748,14 +769,40 @@ public class MaltcmsTools {
      * @since 1.3.2
      */
     public static Tuple2D<Array, List<Array>> getEICs(final IFileFragment f, final double resolution, int start, int nscans) {
-        Range[] originalRange = null;
-        IVariableFragment index1 = null;
         Tuple2D<Double, Double> mm = MaltcmsTools.getMinMaxMassRange(f);
         double minMass = mm.getFirst(), maxMass = mm.getSecond();
         int maxScans = MaltcmsTools.getNumberOfScans(f);
         int scans = Math.min(maxScans, nscans);
         int massBins = MaltcmsTools.getNumberOfIntegerMassBins(minMass, maxMass, resolution);
         Array binnedMassValues = Array.makeFromJavaArray(MathTools.seq(minMass, maxMass, 1.0d / resolution));
+        if (isUseMzIndex()) {
+            final MzIndex mzIndex = MzIndex.getInstance(f);
+            if (mzIndex != null) {
+                List<Array> eicCache = new CachedReadWriteList<Array>(StringTools.removeFileExt(f.getName()) + "-eic", new SerializableArrayProxy(), 10000);
+                mzIndex.getEICs(eicCache, minMass, maxMass, resolution, start,
+                        scans);
+                return new Tuple2D<>(binnedMassValues, eicCache);
+            }
+        }
+        List<Array> eicCache = new CachedReadWriteList<Array>(StringTools.removeFileExt(f.getName()) + "-eic", new SerializableArrayProxy(), 10000);
+        readEICs(f, minMass, maxMass, resolution, start, scans, eicCache, 0,
+                Integer.MAX_VALUE);
+        return new Tuple2D<>(binnedMassValues, eicCache);
+    }
+
+    /**
+     * Reads the mass and intensity values of the given scan range in a single
+     * pass and sums the intensities of each mass bin within
+     * <code>[firstBin, firstBin + nbins)</code> into <code>eics</code>, at
+     * position <code>bin - firstBin</code>. Intensities of all other bins are
+     * skipped.
+     */
+    private static void readEICs(final IFileFragment f, final double minMass,
+            final double maxMass, final double resolution, final int start,
+            final int scans, final List<Array> eics, final int firstBin,
+            final int nbins) {
+        Range[] originalRange = null;
+        IVariableFragment index1 = null;
         try {
             MaltcmsTools.log.info(
                     "Retrieving EIC from {}, scan start {}, stop {}, mz start {}, stop {}",
@@ -768,7 +815,6 @@ public class MaltcmsTools {
             } catch (InvalidRangeException ex) {
                 throw new ResourceNotAvailableException(ex);
             }
-//		final Array scanIndex = index1.getArray();
             final String massVar = Factory.getInstance().getConfiguration().getString("var.mass_values", "mass_values");
             final String intensVar = Factory.getInstance().getConfiguration().getString("var.intensity_values", "intensity_values");
             final IVariableFragment masses = f.getChild(massVar);
@@ -784,12 +830,10 @@ public class MaltcmsTools {
 
             final List<Array> intens1 = intensities.getIndexedArray();
             final List<Array> mass1 = masses.getIndexedArray();
-//		EvalTools.eqI(intens1.size(), mass1.size(), MaltcmsTools.class);
-            List<Array> eicCache = new CachedReadWriteList<Array>(StringTools.removeFileExt(f.getName()) + "-eic", new SerializableArrayProxy(), 10000);
-//            Array[] eics = new Array[massBins];
+            final int logInterval = Math.max(1, scans / 10);
             for (int i = 0; i < scans; i++) {
-                if (i % (scans / 10) == 0) {
-                    log.info("Processing scans {}-{}", (i), Math.min(scans - 1, i + (scans / 10) - 1));
+                if (i % logInterval == 0) {
+                    log.info("Processing scans {}-{}", (i), Math.min(scans - 1, i + logInterval - 1));
                 }
                 final Array massesArray = mass1.get(i);
                 final Index mind = massesArray.getIndex();
@@ -798,20 +842,22 @@ public class MaltcmsTools {
                 // sum all intensities in bin
                 for (int j = 0; j < massesArray.getShape()[0]; j++) {
                     mind.set(j);
-                    intind.set(j);
                     final double m = massesArray.getDouble(mind);
-                    int idx = MaltcmsTools.binMZ(m, minMass, maxMass, resolution);
-                    Array eicArray = eicCache.get(idx);
+                    final int idx = MaltcmsTools.binMZ(m, minMass, maxMass, resolution) - firstBin;
+                    if (idx < 0 || idx >= nbins) {
+                        continue;
+                    }
+                    intind.set(j);
+                    Array eicArray = eics.get(idx);
                     if (eicArray == null) {
-                        eicArray = Array.makeFromJavaArray(new int[]{scans});
-                        eicCache.set(idx, eicArray);
+                        eicArray = new ArrayDouble.D1(scans);
+                        eics.set(idx, eicArray);
                     }
                     // in range
                     final double val = intensitiesArray.getDouble(intind);
                     eicArray.setDouble(i, val + eicArray.getDouble(i));
                 }
             }
-            return new Tuple2D<>(binnedMassValues, eicCache);
         } finally {
             if (originalRange != null && index1 != null) {
                 index1.setRange(originalRange);
@@ -819,6 +865,50 @@ public class MaltcmsTools {
         }
     }
 
+    /**
+     * Returns the extracted ion chromatograms for the mass bins
+     * <code>[firstBin, firstBin + nbins)</code> of
+     * {@link #getEICs(IFileFragment, double, int, int)}. Only the requested
+     * bins are extracted, either from the {@link MzIndex} or, if it is not
+     * available, in a single pass over the scans of the file.
+     *
+     * @param f a {@link cross.datastructures.fragments.IFileFragment} object.
+     * @param resolution a double.
+     * @param start a int.
+     * @param nscans a int.
+     * @param firstBin the first mass bin.
+     * @param nbins the number of mass bins.
+     * @return a pair holding an array with the binned mass values and a list
+     * with eics corresponding to each binned mass value, eics of bins without
+     * intensities are <code>null</code>
+     * @since 2.0.1
+     */
+    public static Tuple2D<Array, List<Array>> getEICs(final IFileFragment f,
+            final double resolution, int start, int nscans, int firstBin,
+            int nbins) {
+        Tuple2D<Double, Double> mm = MaltcmsTools.getMinMaxMassRange(f);
+        double minMass = mm.getFirst(), maxMass = mm.getSecond();
+        int scans = Math.min(MaltcmsTools.getNumberOfScans(f), nscans);
+        Array allMassValues = Array.makeFromJavaArray(MathTools.seq(minMass, maxMass, 1.0d / resolution));
+        final int from = Math.min(firstBin, (int) allMassValues.getSize());
+        final int to = Math.min(firstBin + nbins, (int) allMassValues.getSize());
+        final ArrayDouble.D1 binnedMassValues = new ArrayDouble.D1(to - from);
+        for (int i = from; i < to; i++) {
+            binnedMassValues.set(i - from, allMassValues.getDouble(i));
+        }
+        final List<Array> eics = new ArrayList<>(Collections.<Array>nCopies(
+                to - from, null));
+        final MzIndex mzIndex = isUseMzIndex() ? MzIndex.getInstance(f) : null;
+        if (mzIndex != null) {
+            mzIndex.getEICs(eics, minMass, maxMass, resolution, start, scans,
+                    from, to - from);
+        } else {
+            readEICs(f, minMass, maxMass, resolution, start, scans, eics,
+                    from, to - from);
+        }
+        return new Tuple2D<Array, List<Array>>(binnedMassValues, eics);
+    }
+
     /**
      * <p>getEIC.</p>
      *
@@ -147,6 +147,26 @@ public class PathTools implements IConfigurable {
      */
     public static void getFragments(final IFileFragment parent,
             final List<Tuple2DI> al, final IArrayD2Double ia) {
+        final ArrayDouble.D1 dists = new ArrayDouble.D1(al.size());
+        int i = 0;
+        for (final Tuple2DI tp : al) {
+            dists.set(i, ia.get(tp.getFirst(), tp.getSecond()));
+            i++;
+        }
+        PathTools.getFragments(parent, al, dists);
+    }
+
+    /**
+     * Adds VariableFragments and arrays corresponding to path to parent
+     * FileFragment, using the given pairwise distances along the path.
+     *
+     * @param parent a {@link cross.datastructures.fragments.IFileFragment} object.
+     * @param al a {@link java.util.List} object.
+     * @param dists the pairwise distances of the path elements.
+     * @since 2.0.1
+     */
+    public static void getFragments(final IFileFragment parent,
+            final List<Tuple2DI> al, final ArrayDouble.D1 dists) {
         final Tuple2D<Array, Array> t = PathTools.toArrays(al);
         final Dimension d = new Dimension("steps", al.size(), true, false,
                 false);
@@ -158,12 +178,6 @@ public class PathTools implements IConfigurable {
                         "warp_path_i"));
         wpi.setDimensions(new Dimension[]{d});
         pathDist.setDimensions(new Dimension[]{d});
-        final ArrayDouble.D1 dists = new ArrayDouble.D1(al.size());
-        int i = 0;
-        for (final Tuple2DI tp : al) {
-            dists.set(i, ia.get(tp.getFirst(), tp.getSecond()));
-            i++;
-        }
         pathDist.setArray(dists);
         final IVariableFragment wpj = new VariableFragment(parent, Factory
                 .getInstance().getConfiguration().getString("var.warp.path.j",
@@ -0,0 +1,169 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.caches;
+
+import cross.Factory;
+import cross.datastructures.fragments.FileFragment;
+import cross.datastructures.fragments.IFileFragment;
+import cross.test.LogMethodName;
+import cross.test.SetupLogging;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+
+/**
+ * Compares {@link MappedScanLineCache} with {@link SparseScanLineCache}.
+ *
+ * @author Nils Hoffmann
+ */
+public class MappedScanLineCacheTest {
+
+    @Rule
+    public TemporaryFolder tf = new TemporaryFolder();
+    @Rule
+    public SetupLogging sl = new SetupLogging();
+    @Rule
+    public LogMethodName lmn = new LogMethodName();
+
+    private static final int MODULATIONS = 12;
+    private static final int SCANS_PER_MODULATION = 15;
+    private static final double MIN_MASS = 50.0d;
+    private static final double MAX_MASS = 80.0d;
+
+    /**
+     * Creates a chromatogram with a random subset of masses per scan.
+     */
+    private IFileFragment createTestFragment() throws IOException {
+        Random r = new Random(17);
+        int scans = MODULATIONS * SCANS_PER_MODULATION;
+        int maxMasses = (int) (MAX_MASS - MIN_MASS) + 1;
+        double[] sats = new double[scans];
+        int[] scanIndex = new int[scans];
+        double[] massRangeMin = new double[scans];
+        double[] massRangeMax = new double[scans];
+        double[] tic = new double[scans];
+        double[] masses = new double[scans * maxMasses];
+        double[] intensities = new double[scans * maxMasses];
+        int n = 0;
+        for (int i = 0; i < scans; i++) {
+            sats[i] = i / 3.0d;
+            scanIndex[i] = n;
+            massRangeMin[i] = MIN_MASS;
+            massRangeMax[i] = MAX_MASS;
+            for (int m = 0; m < maxMasses; m++) {
+                if (r.nextInt(3) == 0) {
+                    masses[n] = MIN_MASS + m + 0.2d * r.nextDouble();
+                    intensities[n] = 1 + r.nextInt(10000);
+                    tic[i] += intensities[n];
+                    n++;
+                }
+            }
+        }
+        int[] secondColumnScanIndex = new int[MODULATIONS];
+        for (int i = 0; i < MODULATIONS; i++) {
+            secondColumnScanIndex[i] = i * SCANS_PER_MODULATION;
+        }
+        double[] m = new double[n];
+        double[] v = new double[n];
+        System.arraycopy(masses, 0, m, 0, n);
+        System.arraycopy(intensities, 0, v, 0, n);
+        FileFragment f = new FileFragment(tf.newFile("mappedScanLineCacheTest.cdf"));
+        f.addChild("scan_acquisition_time").setArray(Array.makeFromJavaArray(sats));
+        f.addChild("modulation_time").setArray(Array.makeFromJavaArray(new double[]{5.0d}));
+        f.addChild("scan_rate").setArray(Array.makeFromJavaArray(new double[]{3.0d}));
+        f.addChild("scan_index").setArray(Array.makeFromJavaArray(scanIndex));
+        f.addChild("second_column_scan_index").setArray(Array.makeFromJavaArray(secondColumnScanIndex));
+        f.addChild("mass_range_min").setArray(Array.makeFromJavaArray(massRangeMin));
+        f.addChild("mass_range_max").setArray(Array.makeFromJavaArray(massRangeMax));
+        f.addChild("mass_values").setArray(Array.makeFromJavaArray(m));
+        f.addChild("intensity_values").setArray(Array.makeFromJavaArray(v));
+        f.addChild("total_intensity").setArray(Array.makeFromJavaArray(tic));
+        f.save();
+        return new FileFragment(f.getUri());
+    }
+
+    private void assertEquals(IScanLine expected, IScanLine actual) {
+        Assert.assertEquals(expected.getScanLineCount(), actual.getScanLineCount());
+        Assert.assertEquals(expected.getScansPerModulation(), actual.getScansPerModulation());
+        for (int x = 0; x < expected.getScanLineCount(); x++) {
+            List<Array> e = expected.getScanlineMS(x);
+            List<Array> a = actual.getScanlineMS(x);
+            Assert.assertEquals(e.size(), a.size());
+            for (int y = 0; y < e.size(); y++) {
+                double[] es = (double[]) e.get(y).get1DJavaArray(double.class);
+                Assert.assertArrayEquals(es, (double[]) a.get(y).get1DJavaArray(double.class), 0.0d);
+                Assert.assertArrayEquals(es, (double[]) actual.getMassSpectrum(x, y).get1DJavaArray(double.class), 0.0d);
+            }
+        }
+    }
+
+    /**
+     * Test that dense mass spectra of the mapped cache equal those of the
+     * sparse cache, also after the mapped cache was cleared.
+     */
+    @Test
+    public void testMappedEqualsSparse() throws IOException {
+        IFileFragment f = createTestFragment();
+        ScanLineCacheFactory.setMinMass(MIN_MASS);
+        ScanLineCacheFactory.setMaxMass(MAX_MASS);
+        IScanLine sparse = ScanLineCacheFactory.getSparseScanLineCache(f);
+        IScanLine mapped = ScanLineCacheFactory.getMappedScanLineCache(f);
+        try {
+            Assert.assertEquals(MODULATIONS, sparse.getScanLineCount());
+            assertEquals(sparse, mapped);
+            mapped.clear();
+            assertEquals(sparse, mapped);
+        } finally {
+            mapped.clear();
+            sparse.clear();
+        }
+    }
+
+    /**
+     * Test that the configuration selects the scan line cache implementation.
+     */
+    @Test
+    public void testFactoryConfiguration() throws IOException {
+        IFileFragment f = createTestFragment();
+        String key = ScanLineCacheFactory.class.getName() + ".useMappedScanLineCache";
+        Assert.assertTrue(ScanLineCacheFactory.getScanLineCache(f) instanceof SparseScanLineCache);
+        Factory.getInstance().getConfiguration().setProperty(key, true);
+        try {
+            IScanLine slc = ScanLineCacheFactory.getScanLineCache(f);
+            Assert.assertTrue(slc instanceof MappedScanLineCache);
+            slc.clear();
+        } finally {
+            Factory.getInstance().getConfiguration().clearProperty(key);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.caches;
+
+import cross.datastructures.fragments.FileFragment;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class PairwiseResultCacheTest {
+
+    /**
+     *
+     */
+    @Rule
+    public TemporaryFolder tf = new TemporaryFolder();
+
+    private FileFragment createFragment(String name, double[] sat) throws IOException {
+        File file = tf.newFile(name);
+        FileFragment f = new FileFragment(file);
+        f.addChild("scan_acquisition_time").setArray(Array.makeFromJavaArray(sat));
+        f.save();
+        return f;
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testContentHash() throws IOException {
+        FileFragment a = createFragment("a.cdf", new double[]{1.0, 2.0, 3.0});
+        FileFragment b = createFragment("b.cdf", new double[]{1.0, 2.0, 3.0});
+        FileFragment c = createFragment("c.cdf", new double[]{1.0, 2.0, 4.0});
+        String ha = PairwiseResultCache.contentHash(a);
+        Assert.assertNotNull(ha);
+        Assert.assertEquals(ha, PairwiseResultCache.contentHash(new FileFragment(a.getUri())));
+        Assert.assertFalse(ha.equals(PairwiseResultCache.contentHash(c)));
+        Assert.assertNull(PairwiseResultCache.contentHash(new File(tf.getRoot(), "missing.cdf").toURI()));
+        Assert.assertFalse(PairwiseResultCache.key(ha, PairwiseResultCache.contentHash(b), "cfg").equals(
+                PairwiseResultCache.key(PairwiseResultCache.contentHash(b), ha, "cfg")));
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testConfigurationHash() {
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("similarity", new Setting(0.5d, "x"));
+        a.put("maxRTDifference", 60.0d);
+        Map<String, Object> b = new LinkedHashMap<>();
+        b.put("maxRTDifference", 60.0d);
+        b.put("similarity", new Setting(0.5d, "y"));
+        //insertion order and transient fields do not matter
+        Assert.assertEquals(PairwiseResultCache.configurationHash("owner", a),
+                PairwiseResultCache.configurationHash("owner", b));
+        Assert.assertFalse(PairwiseResultCache.configurationHash("owner", a).equals(
+                PairwiseResultCache.configurationHash("other", a)));
+        b.put("maxRTDifference", 30.0d);
+        Assert.assertFalse(PairwiseResultCache.configurationHash("owner", a).equals(
+                PairwiseResultCache.configurationHash("owner", b)));
+        b.put("maxRTDifference", 60.0d);
+        b.put("similarity", new Setting(0.25d, "x"));
+        Assert.assertFalse(PairwiseResultCache.configurationHash("owner", a).equals(
+                PairwiseResultCache.configurationHash("owner", b)));
+        Assert.assertEquals(Setting.class.getName() + "{threshold=0.5, values=[1, 2]}",
+                PairwiseResultCache.canonical(new Setting(0.5d, "z")));
+    }
+
+    private static class Setting {
+
+        private final double threshold;
+        private final int[] values = new int[]{1, 2};
+        private transient final String cache;
+
+        Setting(double threshold, String cache) {
+            this.threshold = threshold;
+            this.cache = cache;
+        }
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testPutAndGet() throws IOException {
+        PairwiseResultCache cache = new PairwiseResultCache(tf.newFolder("cache"));
+        String key = PairwiseResultCache.key("lhs", "rhs", "cfg");
+        Assert.assertNull(cache.get(key, double[].class));
+        cache.put(key, new double[]{0.5, 0.25});
+        Assert.assertArrayEquals(new double[]{0.5, 0.25}, cache.get(key, double[].class), 0.0d);
+        Assert.assertNull(new PairwiseResultCache(cache.getDirectory()).get(
+                PairwiseResultCache.key("lhs", "rhs", "other"), double[].class));
+        // entries of an unexpected type are discarded
+        Assert.assertNull(cache.get(key, String.class));
+        Assert.assertNull(cache.get(key, double[].class));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+    }
+}
@@ -119,6 +119,56 @@ public class Chromatogram1DTest {
         }
     }
 
+    /**
+     *
+     */
+    @Test
+    public void testScanCursor() throws IOException {
+        File file = tf.newFile("testFragment.cdf");
+        FileFragment f = new FileFragment(file);
+        IVariableFragment sat = f.addChild("scan_acquisition_time");
+        double[] sats = new double[]{0.432, 0.442, 0.463, 0.472, 0.491, 1.21, 1.35};
+        sat.setArray(Array.makeFromJavaArray(sats));
+        IVariableFragment si = f.addChild("scan_index");
+        int[] sis = new int[]{0, 1, 2, 3, 4, 5, 6};
+        si.setArray(Array.makeFromJavaArray(sis));
+        IVariableFragment ms = f.addChild("mass_values");
+        double[] mvs = new double[]{74.241, 74.521, 70.4214, 75.869, 90.421, 61.515, 89.124};
+        ms.setArray(Array.makeFromJavaArray(mvs));
+        IVariableFragment is = f.addChild("intensity_values");
+        int[] ivs = new int[]{896, 89613, 8979694, 78585, 89563, 56704, 76124};
+        is.setArray(Array.makeFromJavaArray(ivs));
+        f.save();
+        Chromatogram1D chrom = new Chromatogram1D(f);
+        ScanCursor cursor = chrom.cursor();
+        int scans = 0;
+        while (cursor.next()) {
+            Scan1D scan = chrom.getScan(scans);
+            Assert.assertEquals(scans, cursor.getScanIndex());
+            Assert.assertEquals(scan.getScanAcquisitionTime(), cursor.getScanAcquisitionTime(), 0.0d);
+            Assert.assertEquals(scan.getTotalIntensity(), cursor.getTotalIntensity(), 0.0d);
+            Assert.assertEquals(scan.getMasses().getSize(), cursor.getPeakCount());
+            Assert.assertEquals(1, cursor.getMsLevel());
+            for (int i = 0; i < cursor.getPeakCount(); i++) {
+                Assert.assertEquals(scan.getMasses().getDouble(i), cursor.getMass(i), 0.0d);
+                Assert.assertEquals(scan.getIntensities().getDouble(i), cursor.getIntensity(i), 0.0d);
+            }
+            scans++;
+        }
+        Assert.assertEquals(sats.length, scans);
+        ScanCursor range = chrom.cursor(2, 4);
+        Assert.assertTrue(range.next());
+        Assert.assertEquals(2, range.getScanIndex());
+        Assert.assertTrue(range.next());
+        Assert.assertEquals(sats[3], range.toScan().getScanAcquisitionTime(), 0.0d);
+        Assert.assertFalse(range.next());
+        range.seek(2);
+        Assert.assertEquals(sats[2], range.getScanAcquisitionTime(), 0.0d);
+        Scan1D scan = chrom.getScan(0);
+        Assert.assertEquals(scan.getUniqueId(), scan.getUniqueId());
+        Assert.assertNotEquals(scan.getUniqueId(), chrom.getScan(0).getUniqueId());
+    }
+
     /**
      *
      * @param rt
@@ -0,0 +1,192 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.ms;
+
+import cross.Factory;
+import cross.datastructures.fragments.FileFragment;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class MzIndexTest {
+
+    /**
+     *
+     */
+    @Rule
+    public TemporaryFolder tf = new TemporaryFolder();
+
+    private FileFragment createFragment() throws IOException {
+        File file = tf.newFile("testFragment.cdf");
+        FileFragment f = new FileFragment(file);
+        f.addChild("scan_acquisition_time").setArray(Array.makeFromJavaArray(
+                new double[]{1.0, 2.0, 3.0, 4.0}));
+        f.addChild("scan_index").setArray(Array.makeFromJavaArray(
+                new int[]{0, 3, 5, 8}));
+        f.addChild("mass_values").setArray(Array.makeFromJavaArray(
+                new double[]{50.1, 60.05, 60.12, 60.0, 70.3, 50.15, 60.09,
+                    80.0, 59.99, 60.11}));
+        f.addChild("intensity_values").setArray(Array.makeFromJavaArray(
+                new int[]{10, 20, 5, 7, 3, 1, 4, 9, 2, 6}));
+        f.save();
+        // reopen, so that no variable is modified in memory
+        return new FileFragment(file);
+    }
+
+    private void assertEIC(double[] expected, Array actual) {
+        Assert.assertArrayEquals(expected,
+                (double[]) actual.get1DJavaArray(double.class), 1.0e-10);
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testGetEIC() throws IOException {
+        MzIndex index = MzIndex.getInstance(createFragment());
+        Assert.assertNotNull(index);
+        Assert.assertEquals(4, index.getNumberOfScans());
+        assertEIC(new double[]{20, 7, 4, 0},
+                index.getEIC(60.0, 60.1, false, false, 0, 4));
+        assertEIC(new double[]{20, 7, 4, 6},
+                index.getEIC(60.0, 60.2, false, true, 0, 4));
+        assertEIC(new double[]{12.5, 7, 4, 6},
+                index.getEIC(60.0, 60.2, true, false, 0, 4));
+        assertEIC(new double[]{7, 4},
+                index.getEIC(60.0, 60.2, false, false, 1, 2));
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testIndexIsNotPersistedByDefault() throws IOException {
+        Assert.assertNotNull(MzIndex.getInstance(createFragment()));
+        Assert.assertFalse(new File(tf.getRoot(), "testFragment.cdf.mzidx").exists());
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testPersistence() throws IOException {
+        final String key = MzIndex.class.getName() + ".persist";
+        MzIndex index;
+        Factory.getInstance().getConfiguration().setProperty(key, true);
+        try {
+            index = MzIndex.getInstance(createFragment());
+        } finally {
+            Factory.getInstance().getConfiguration().clearProperty(key);
+        }
+        final File indexFile = new File(tf.getRoot(), "testFragment.cdf.mzidx");
+        Assert.assertTrue(indexFile.isFile());
+        Assert.assertEquals(indexFile, MzIndex.getIndexFile(new File(
+                tf.getRoot(), "testFragment.cdf")));
+        Assert.assertFalse(indexFile.equals(MzIndex.getIndexFile(new File(
+                tf.getRoot(), "testFragment.mzXML"))));
+        // an existing file is replaced, not overwritten in place
+        Files.write(indexFile.toPath(), new byte[1 << 21]);
+        index.save(indexFile);
+        Assert.assertTrue(indexFile.length() < (1 << 21));
+        Assert.assertEquals(1, tf.getRoot().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(indexFile.getName());
+            }
+        }).length);
+        MzIndex loaded = MzIndex.load(indexFile);
+        Assert.assertEquals(index.getNumberOfScans(), loaded.getNumberOfScans());
+        Assert.assertEquals(index.getMassRange().getFirst(),
+                loaded.getMassRange().getFirst());
+        assertEIC(new double[]{10, 0, 1, 0},
+                loaded.getEIC(50.0, 51.0, false, false, 0, 4));
+        assertEIC(new double[]{20, 7, 4, 6},
+                loaded.getEIC(60.0, 60.2, false, true, 0, 4));
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testModifiedSpectraAreNotIndexed() throws IOException {
+        FileFragment f = createFragment();
+        Assert.assertNotNull(MzIndex.getInstance(f));
+        f.getChild("intensity_values").setArray(Array.makeFromJavaArray(
+                new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}));
+        Assert.assertNull(MzIndex.getInstance(f));
+    }
+
+    /**
+     *
+     */
+    @Test
+    public void testConcurrentRequestsShareIndex() throws Exception {
+        final File file = new File(createFragment().getUri());
+        final int threads = 8;
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<MzIndex>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(es.submit(new Callable<MzIndex>() {
+                    @Override
+                    public MzIndex call() throws Exception {
+                        FileFragment f = new FileFragment(file);
+                        startSignal.await();
+                        return MzIndex.getInstance(f);
+                    }
+                }));
+            }
+            startSignal.countDown();
+            MzIndex first = futures.get(0).get();
+            Assert.assertNotNull(first);
+            for (Future<MzIndex> future : futures) {
+                Assert.assertSame(first, future.get());
+            }
+        } finally {
+            es.shutdownNow();
+        }
+    }
+}
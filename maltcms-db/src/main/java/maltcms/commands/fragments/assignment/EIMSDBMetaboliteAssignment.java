@@ -30,7 +30,6 @@ package maltcms.commands.fragments.assignment;
 /**
  *
  */
-import com.db4o.ObjectSet;
 import cross.annotations.RequiresOptionalVariables;
 import cross.annotations.RequiresVariables;
 import cross.commands.fragments.AFragmentCommand;
@@ -38,11 +37,14 @@ import cross.datastructures.fragments.IFileFragment;
 import cross.datastructures.tuple.Tuple2D;
 import cross.datastructures.tuple.TupleND;
 import cross.datastructures.workflow.WorkflowSlot;
+import cross.exception.ResourceNotAvailableException;
 import cross.tools.StringTools;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -50,12 +52,11 @@ import maltcms.datastructures.ms.ChromatogramFactory;
 import maltcms.datastructures.ms.IChromatogram1D;
 import maltcms.datastructures.ms.IMetabolite;
 import maltcms.datastructures.ms.IScan1D;
-import maltcms.db.MetaboliteQueryDB;
-import maltcms.db.QueryCallable;
-import maltcms.db.predicates.metabolite.MetaboliteSimilarity;
+import maltcms.db.MetaboliteLibraryIndex;
 import maltcms.io.csv.CSVWriter;
 import maltcms.math.functions.IArraySimilarity;
 import maltcms.math.functions.similarities.ArrayCos;
+import net.sf.maltcms.db.search.api.filters.IMetaboliteFilter;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.Array;
@@ -81,6 +82,12 @@ public class EIMSDBMetaboliteAssignment extends AFragmentCommand {
     private IArraySimilarity similarityFunction = new ArrayCos();
     private double massResolution = 1.0d;
     private String peakIndexVariable = "var.tic_peaks";
+    private int topIons = 0;
+    private int maxThreads = -1;
+    //evaluated in order of increasing cost before a spectrum is scored
+    private List<IMetaboliteFilter> metaboliteFilters = new ArrayList<>();
+    //optional per scan retention index, used by retention index filters
+    private String retentionIndexVariable = "";
 
     /*
      * (non-Javadoc)
@@ -103,6 +110,7 @@ public class EIMSDBMetaboliteAssignment extends AFragmentCommand {
     @Override
     public TupleND<IFileFragment> apply(TupleND<IFileFragment> t) {
         ChromatogramFactory cf = new ChromatogramFactory();
+        Map<String, MetaboliteLibraryIndex> indices = new HashMap<>();
         for (IFileFragment iff : t) {
             IChromatogram1D chrom = cf.createChromatogram1D(iff);
             List<String> header = Arrays.asList(new String[]{"ScanNumber",
@@ -116,32 +124,29 @@ public class EIMSDBMetaboliteAssignment extends AFragmentCommand {
                     + "_peak_assignment.csv", header,
                     WorkflowSlot.IDENTIFICATION)) {
                 Array peaks = iff.getChild(resolve(peakIndexVariable)).getArray();
+                List<IScan1D> scans = new ArrayList<>(peaks.getShape()[0]);
+                for (int i = 0; i < peaks.getShape()[0]; i++) {
+                    scans.add(chrom.getScan(peaks.getInt(i)));
+                }
+                double[] retentionIndices = getRetentionIndices(iff, peaks);
                 for (String dbloc : this.dblocation) {
-                    for (int i = 0; i < peaks.getShape()[0]; i++) {
-                        int scan = (int) peaks.getInt(i);
-                        this.log.info("Scan {}", scan);
-                        IScan1D scan1D = chrom.getScan(scan);
-                        MetaboliteSimilarity ms = new MetaboliteSimilarity(scan1D,
-                                threshold, maxk, false);
-                        ms.setSimilarityFunction(similarityFunction.copy());
-                        ms.setResolution(massResolution);
-                        MetaboliteQueryDB mqdb = new MetaboliteQueryDB(dbloc, ms);
-                        QueryCallable<IMetabolite> qc = mqdb.getCallable();
-                        ObjectSet<IMetabolite> osRes = null;
-                        try {
-                            osRes = qc.call();
-                            log.info("Received {} hits from ObjectSet!",
-                                    osRes.size());
-                            qc.terminate();
-                        } catch (InterruptedException e) {
-                            log.warn(e.getLocalizedMessage());
-                        } catch (ExecutionException e) {
-                            log.warn(e.getLocalizedMessage());
-                        } catch (Exception e) {
-                            log.warn(e.getLocalizedMessage());
-                        }
-                        List<Tuple2D<Double, IMetabolite>> l = ms.getMatches();
-                        log.info("Adding top {} hits!", l.size());
+                    MetaboliteLibraryIndex index = indices.get(dbloc);
+                    if (index == null) {
+                        index = MetaboliteLibraryIndex.load(dbloc,
+                                massResolution, topIons);
+                        indices.put(dbloc, index);
+                    }
+                    log.info("Searching {} peaks against {} metabolites", scans.
+                            size(), index.size());
+                    List<List<Tuple2D<Double, IMetabolite>>> hits = index.
+                            search(scans, retentionIndices, similarityFunction,
+                                    threshold, maxk, false, metaboliteFilters,
+                                    maxThreads);
+                    for (int i = 0; i < scans.size(); i++) {
+                        IScan1D scan1D = scans.get(i);
+                        int scan = peaks.getInt(i);
+                        List<Tuple2D<Double, IMetabolite>> l = hits.get(i);
+                        log.debug("Adding top {} hits for scan {}!", l.size(), scan);
                         for (Tuple2D<Double, IMetabolite> tuple2D : l) {
                             IMetabolite im = tuple2D.getSecond();
                             List<String> row = Arrays.asList(
@@ -166,6 +171,28 @@ public class EIMSDBMetaboliteAssignment extends AFragmentCommand {
         return t;
     }
 
+    /**
+     * Returns the retention indices of the given peak scans, or null if no
+     * retention index variable is configured or available.
+     */
+    private double[] getRetentionIndices(IFileFragment iff, Array peaks) {
+        if (retentionIndexVariable == null || retentionIndexVariable.isEmpty()) {
+            return null;
+        }
+        try {
+            Array ri = iff.getChild(resolve(retentionIndexVariable)).getArray();
+            double[] retentionIndices = new double[peaks.getShape()[0]];
+            for (int i = 0; i < retentionIndices.length; i++) {
+                retentionIndices[i] = ri.getDouble(peaks.getInt(i));
+            }
+            return retentionIndices;
+        } catch (ResourceNotAvailableException rnae) {
+            log.warn("Retention index variable {} not available for {}, retention index filters will accept all metabolites!",
+                    retentionIndexVariable, iff.getName());
+            return null;
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void configure(Configuration cfg) {
@@ -0,0 +1,700 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.db;
+
+import com.db4o.ObjectSet;
+import cross.Factory;
+import cross.datastructures.tuple.Tuple2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.commands.distances.SharedExecutor;
+import maltcms.datastructures.ms.IScan;
+import maltcms.db.predicates.metabolite.MetaboliteSimilarity;
+import maltcms.math.functions.IArraySimilarity;
+import maltcms.math.functions.similarities.ArrayCos;
+import maltcms.tools.MaltcmsTools;
+import net.sf.maltcms.db.search.api.filters.IMetaboliteFilter;
+import net.sf.maltcms.db.search.api.filters.IMetabolitePropertyFilter;
+import net.sf.maltcms.db.search.spi.parser.BinaryMetaboliteLibrary;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.IndexIterator;
+
+/**
+ * In-memory index of a metabolite library for mass spectral searches.
+ *
+ * All library spectra are binned once at the given mass resolution and
+ * packed into a sparse row matrix of absolute mass bins and intensities,
+ * together with their maxima and euclidean norms. Cosine searches with
+ * {@link ArrayCos} are answered directly from the packed rows and return the
+ * same scores as {@link MetaboliteSimilarity}, which bins each pair of
+ * spectra over their common mass range. Other similarity functions evaluate
+ * a {@link MetaboliteSimilarity} against the in-memory library.
+ *
+ * If <code>topIons</code> is positive, only library spectra that share at
+ * least one of their <code>topIons</code> most intense mass bins with the
+ * query are scored. Additional {@link IMetaboliteFilter}s, like retention
+ * index or molecular weight windows, can be passed to each search. They are
+ * evaluated in order of increasing cost before a library spectrum is scored.
+ * {@link IMetabolitePropertyFilter}s are evaluated on the retention indices and
+ * molecular weights kept by the index. Cosine searches only access the
+ * library for the returned hits and for rows that other filters need to see,
+ * so libraries that create their metabolites on access, like
+ * {@link BinaryMetaboliteLibrary#asList()}, are not materialized per query.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class MetaboliteLibraryIndex {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(MetaboliteLibraryIndex.class);
+    //decreasing similarity, as in MetaboliteSimilarity
+    private static final Comparator<Tuple2D<Double, Integer>> HIT_ORDER = new Comparator<Tuple2D<Double, Integer>>() {
+        @Override
+        public int compare(Tuple2D<Double, Integer> t, Tuple2D<Double, Integer> t1) {
+            if (t.getFirst() > t1.getFirst()) {
+                return -1;
+            } else if (t.getFirst() < t1.getFirst()) {
+                return 1;
+            }
+            return 0;
+        }
+    };
+
+    private final double resolution;
+    private final boolean averageBins;
+    private final int topIons;
+    private final List<IMetabolite> metabolites;
+    //packed rows, row i spans offsets[i] to offsets[i + 1]
+    private final int[] offsets;
+    private final int[] bins;
+    private final double[] values;
+    private final double[] maxima;
+    private final double[] norms;
+    private final double[] normalizedNorms;
+    private final double[] retentionIndices;
+    private final double[] molecularWeights;
+    //inverted index of top ion bins to rows
+    private final int minTopIonBin;
+    private final int[] topIonOffsets;
+    private final int[] topIonRows;
+
+    /**
+     * Creates a new index over the given metabolites. Random access lists are
+     * referenced and must not be modified while the index is in use, other
+     * libraries are copied.
+     *
+     * @param library the metabolites
+     * @param resolution the mass resolution used for binning
+     * @param topIons the number of most intense bins used for prefiltering,
+     * or 0 to score every library spectrum
+     */
+    @SuppressWarnings("unchecked")
+    public MetaboliteLibraryIndex(Iterable<? extends IMetabolite> library,
+            double resolution, int topIons) {
+        this.resolution = resolution;
+        this.topIons = Math.max(0, topIons);
+        MaltcmsTools.setBinMZbyConfig();
+        this.averageBins = Factory.getInstance().getConfiguration().
+                getBoolean("ArrayTools.createDenseArray.average_bins", true);
+        final boolean randomAccess = library instanceof List && library instanceof RandomAccess;
+        this.metabolites = randomAccess ? (List<IMetabolite>) library : new ArrayList<IMetabolite>();
+        final List<BinnedSpectrum> spectra = new ArrayList<>();
+        final List<double[]> properties = new ArrayList<>();
+        int nnz = 0;
+        for (IMetabolite m : library) {
+            final BinnedSpectrum bs = bin(m.getMassSpectrum().getFirst(), m.
+                    getMassSpectrum().getSecond());
+            if (!randomAccess) {
+                metabolites.add(m);
+            }
+            spectra.add(bs);
+            properties.add(new double[]{m.getRetentionIndex(), m.getMW()});
+            nnz += bs.bins.length;
+        }
+        final int n = spectra.size();
+        this.retentionIndices = new double[n];
+        this.molecularWeights = new double[n];
+        for (int i = 0; i < n; i++) {
+            retentionIndices[i] = properties.get(i)[0];
+            molecularWeights[i] = properties.get(i)[1];
+        }
+        this.offsets = new int[n + 1];
+        this.bins = new int[nnz];
+        this.values = new double[nnz];
+        this.maxima = new double[n];
+        this.norms = new double[n];
+        this.normalizedNorms = new double[n];
+        int minBin = Integer.MAX_VALUE;
+        int maxBin = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            final BinnedSpectrum bs = spectra.get(i);
+            final int off = offsets[i];
+            System.arraycopy(bs.bins, 0, bins, off, bs.bins.length);
+            System.arraycopy(bs.values, 0, values, off, bs.values.length);
+            offsets[i + 1] = off + bs.bins.length;
+            maxima[i] = bs.max;
+            norms[i] = bs.norm(1.0d);
+            normalizedNorms[i] = bs.norm(1.0d / bs.max);
+            if (bs.bins.length > 0) {
+                minBin = Math.min(minBin, bs.bins[0]);
+                maxBin = Math.max(maxBin, bs.bins[bs.bins.length - 1]);
+            }
+        }
+        if (this.topIons > 0 && minBin <= maxBin) {
+            this.minTopIonBin = minBin;
+            this.topIonOffsets = new int[maxBin - minBin + 2];
+            final int[][] top = new int[n][];
+            for (int i = 0; i < n; i++) {
+                top[i] = spectra.get(i).topBins(this.topIons);
+                for (int b : top[i]) {
+                    topIonOffsets[b - minBin + 1]++;
+                }
+            }
+            for (int b = 1; b < topIonOffsets.length; b++) {
+                topIonOffsets[b] += topIonOffsets[b - 1];
+            }
+            this.topIonRows = new int[topIonOffsets[topIonOffsets.length - 1]];
+            final int[] fill = Arrays.copyOf(topIonOffsets, topIonOffsets.length - 1);
+            for (int i = 0; i < n; i++) {
+                for (int b : top[i]) {
+                    topIonRows[fill[b - minBin]++] = i;
+                }
+            }
+        } else {
+            this.minTopIonBin = 0;
+            this.topIonOffsets = null;
+            this.topIonRows = null;
+        }
+        log.info("Indexed {} spectra with {} peaks", n, nnz);
+    }
+
+    /**
+     * Loads all metabolites stored in a db4o database or an MSP file and
+     * indexes them. MSP files, recognized by their <code>.msp</code>
+     * extension, are read through a {@link BinaryMetaboliteLibrary}.
+     *
+     * @param dblocation the database file, server url or MSP file
+     * @param resolution the mass resolution used for binning
+     * @param topIons the number of most intense bins used for prefiltering,
+     * or 0 to score every library spectrum
+     * @return the index
+     */
+    public static MetaboliteLibraryIndex load(String dblocation,
+            double resolution, int topIons) {
+        log.info("Loading metabolites from {}", dblocation);
+        if (dblocation.toLowerCase(Locale.US).endsWith(".msp")) {
+            try {
+                return new MetaboliteLibraryIndex(BinaryMetaboliteLibrary.open(
+                        new File(dblocation)).asList(), resolution, topIons);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        final QueryCallable<IMetabolite> qc = new MetaboliteQueryDB(dblocation).
+                getCallable();
+        try {
+            final ObjectSet<IMetabolite> os = qc.call();
+            return new MetaboliteLibraryIndex(new ArrayList<>(os), resolution,
+                    topIons);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            qc.terminate();
+        }
+    }
+
+    /**
+     * Returns the number of indexed metabolites.
+     *
+     * @return the number of metabolites
+     */
+    public int size() {
+        return metabolites.size();
+    }
+
+    /**
+     * Returns the metabolite at the given index.
+     *
+     * @param i the index
+     * @return the metabolite
+     */
+    public IMetabolite getMetabolite(int i) {
+        return metabolites.get(i);
+    }
+
+    /**
+     * Returns the best matching metabolites for the given scan in order of
+     * decreasing similarity.
+     *
+     * @param scan the query scan
+     * @param similarityFunction the similarity function, will not be modified
+     * @param threshold the minimum similarity of a hit
+     * @param maxHits the maximum number of hits
+     * @param normalize whether spectra are scaled to a maximum of 1
+     * @return the hits
+     */
+    public List<Tuple2D<Double, IMetabolite>> search(IScan scan,
+            IArraySimilarity similarityFunction, double threshold, int maxHits,
+            boolean normalize) {
+        return search(scan, Double.NaN, similarityFunction, threshold, maxHits,
+                normalize, Collections.<IMetaboliteFilter>emptyList());
+    }
+
+    /**
+     * Returns the best matching metabolites for the given scan in order of
+     * decreasing similarity. Library metabolites are only scored if all
+     * filters accept them. The filters are copied and evaluated in order of
+     * increasing cost.
+     *
+     * @param scan the query scan
+     * @param retentionIndex the retention index of the query, or NaN if it
+     * is unknown
+     * @param similarityFunction the similarity function, will not be modified
+     * @param threshold the minimum similarity of a hit
+     * @param maxHits the maximum number of hits
+     * @param normalize whether spectra are scaled to a maximum of 1
+     * @param filters the filters, will not be modified
+     * @return the hits
+     */
+    public List<Tuple2D<Double, IMetabolite>> search(IScan scan,
+            double retentionIndex, IArraySimilarity similarityFunction,
+            double threshold, int maxHits, boolean normalize,
+            List<? extends IMetaboliteFilter> filters) {
+        final IMetaboliteFilter[] gates = filters(filters, scan, retentionIndex);
+        final IMetabolitePropertyFilter[] propertyGates = propertyFilters(gates);
+        final IMetaboliteFilter[] metaboliteGates = metaboliteFilters(gates);
+        final BinnedSpectrum query = bin(scan.getMasses(), scan.getIntensities());
+        final int[] rows = candidates(query);
+        final int n = rows == null ? metabolites.size() : rows.length;
+        if (similarityFunction.getClass() == ArrayCos.class) {
+            final double minimumSimilarity = ((ArrayCos) similarityFunction).
+                    getMinimumSimilarity();
+            final double qscale = normalize ? 1.0d / query.max : 1.0d;
+            final double qnorm = query.norm(qscale);
+            final int minQueryBin = query.bins.length == 0 ? 0 : query.bins[0];
+            final double[] dense = query.toDense(qscale);
+            //hits as (similarity, row), metabolites are only created for the
+            //final hits, unless other filters need to see them
+            final List<Tuple2D<Double, Integer>> hits = new ArrayList<>();
+            final List<IMetabolite> gated = metaboliteGates.length == 0 ? null
+                    : new ArrayList<IMetabolite>();
+            for (int k = 0; k < n; k++) {
+                final int row = rows == null ? k : rows[k];
+                if (!accept(propertyGates, row)) {
+                    continue;
+                }
+                IMetabolite m = null;
+                if (metaboliteGates.length > 0) {
+                    m = metabolites.get(row);
+                    if (!accept(metaboliteGates, m)) {
+                        continue;
+                    }
+                }
+                final double lscale = normalize ? 1.0d / maxima[row] : 1.0d;
+                double dot = 0.0d;
+                for (int j = offsets[row]; j < offsets[row + 1]; j++) {
+                    final int b = bins[j] - minQueryBin;
+                    if (b >= 0 && b < dense.length) {
+                        final double lv = normalize ? values[j] * lscale : values[j];
+                        dot += (dense[b] * lv);
+                    }
+                }
+                final double lnorm = normalize ? normalizedNorms[row] : norms[row];
+                final double val = dot / (qnorm * lnorm);
+                final double sim = val > minimumSimilarity ? val : Double.NEGATIVE_INFINITY;
+                if (sim >= threshold) {
+                    if (gated != null) {
+                        addHit(hits, sim, gated.size(), maxHits);
+                        gated.add(m);
+                    } else {
+                        addHit(hits, sim, row, maxHits);
+                    }
+                }
+            }
+            final List<Tuple2D<Double, IMetabolite>> matches = new ArrayList<>(hits.size());
+            for (Tuple2D<Double, Integer> hit : hits) {
+                matches.add(new Tuple2D<>(hit.getFirst(), gated != null
+                        ? gated.get(hit.getSecond())
+                        : metabolites.get(hit.getSecond())));
+            }
+            return matches;
+        }
+        final MetaboliteSimilarity ms = new MetaboliteSimilarity(scan,
+                threshold, maxHits, normalize);
+        ms.setSimilarityFunction(similarityFunction.copy());
+        ms.setResolution(resolution);
+        for (int k = 0; k < n; k++) {
+            final int row = rows == null ? k : rows[k];
+            if (accept(propertyGates, row)) {
+                final IMetabolite m = metabolites.get(row);
+                if (accept(metaboliteGates, m)) {
+                    ms.match(m);
+                }
+            }
+        }
+        return ms.getMatches();
+    }
+
+    /**
+     * Searches all scans in parallel and returns the hits of each scan in
+     * order of the scans.
+     *
+     * @param scans the query scans
+     * @param similarityFunction the similarity function, copied for each
+     * search
+     * @param threshold the minimum similarity of a hit
+     * @param maxHits the maximum number of hits per scan
+     * @param normalize whether spectra are scaled to a maximum of 1
+     * @param maxThreads the maximum number of threads, or a value smaller
+     * than 1 to use all available processors
+     * @return the hits per scan
+     */
+    public List<List<Tuple2D<Double, IMetabolite>>> search(
+            List<? extends IScan> scans,
+            final IArraySimilarity similarityFunction, final double threshold,
+            final int maxHits, final boolean normalize, int maxThreads) {
+        return search(scans, null, similarityFunction, threshold, maxHits,
+                normalize, Collections.<IMetaboliteFilter>emptyList(),
+                maxThreads);
+    }
+
+    /**
+     * Searches all scans in parallel and returns the hits of each scan in
+     * order of the scans. Library metabolites are only scored if all filters
+     * accept them.
+     *
+     * @param scans the query scans
+     * @param retentionIndices the retention indices of the scans, or null if
+     * they are unknown
+     * @param similarityFunction the similarity function, copied for each
+     * search
+     * @param threshold the minimum similarity of a hit
+     * @param maxHits the maximum number of hits per scan
+     * @param normalize whether spectra are scaled to a maximum of 1
+     * @param filters the filters, copied for each search
+     * @param maxThreads the maximum number of threads, or a value smaller
+     * than 1 to use all available processors. The searches run on the
+     * {@link SharedExecutor} of that parallelism.
+     * @return the hits per scan
+     */
+    public List<List<Tuple2D<Double, IMetabolite>>> search(
+            List<? extends IScan> scans, final double[] retentionIndices,
+            final IArraySimilarity similarityFunction, final double threshold,
+            final int maxHits, final boolean normalize,
+            final List<? extends IMetaboliteFilter> filters, int maxThreads) {
+        if (retentionIndices != null && retentionIndices.length != scans.size()) {
+            throw new IllegalArgumentException("Number of retention indices does not match number of scans!");
+        }
+        final int threads = maxThreads < 1 ? Runtime.getRuntime().
+                availableProcessors() : maxThreads;
+        final ExecutorService es = SharedExecutor.get(threads);
+        final List<Future<List<Tuple2D<Double, IMetabolite>>>> futures = new ArrayList<>(scans.size());
+        try {
+            for (int i = 0; i < scans.size(); i++) {
+                final IScan scan = scans.get(i);
+                final double ri = retentionIndices == null ? Double.NaN
+                        : retentionIndices[i];
+                futures.add(es.submit(new Callable<List<Tuple2D<Double, IMetabolite>>>() {
+                    @Override
+                    public List<Tuple2D<Double, IMetabolite>> call() {
+                        return search(scan, ri, similarityFunction, threshold,
+                                maxHits, normalize, filters);
+                    }
+                }));
+            }
+            final List<List<Tuple2D<Double, IMetabolite>>> results = new ArrayList<>(scans.size());
+            for (Future<List<Tuple2D<Double, IMetabolite>>> f : futures) {
+                results.add(f.get());
+            }
+            return results;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            //no-op for completed searches, stops the remaining ones on failure
+            for (Future<List<Tuple2D<Double, IMetabolite>>> f : futures) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Returns copies of the filters for the given query, sorted by increasing
+     * cost.
+     */
+    private static IMetaboliteFilter[] filters(
+            List<? extends IMetaboliteFilter> filters, IScan scan,
+            double retentionIndex) {
+        final IMetaboliteFilter[] gates = new IMetaboliteFilter[filters.size()];
+        for (int i = 0; i < gates.length; i++) {
+            gates[i] = filters.get(i).copy();
+            gates[i].setQuery(scan, retentionIndex);
+        }
+        //stable, keeps the given order of filters with equal cost
+        Arrays.sort(gates, new Comparator<IMetaboliteFilter>() {
+            @Override
+            public int compare(IMetaboliteFilter o1, IMetaboliteFilter o2) {
+                return Integer.compare(o1.getCost(), o2.getCost());
+            }
+        });
+        return gates;
+    }
+
+    private static IMetabolitePropertyFilter[] propertyFilters(
+            IMetaboliteFilter[] gates) {
+        final List<IMetabolitePropertyFilter> l = new ArrayList<>();
+        for (IMetaboliteFilter gate : gates) {
+            if (gate instanceof IMetabolitePropertyFilter) {
+                l.add((IMetabolitePropertyFilter) gate);
+            }
+        }
+        return l.toArray(new IMetabolitePropertyFilter[l.size()]);
+    }
+
+    private static IMetaboliteFilter[] metaboliteFilters(
+            IMetaboliteFilter[] gates) {
+        final List<IMetaboliteFilter> l = new ArrayList<>();
+        for (IMetaboliteFilter gate : gates) {
+            if (!(gate instanceof IMetabolitePropertyFilter)) {
+                l.add(gate);
+            }
+        }
+        return l.toArray(new IMetaboliteFilter[l.size()]);
+    }
+
+    private boolean accept(IMetabolitePropertyFilter[] gates, int row) {
+        for (IMetabolitePropertyFilter gate : gates) {
+            if (!gate.match(retentionIndices[row], molecularWeights[row])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts a hit into the bounded hit list in the same way as
+     * {@link MetaboliteSimilarity#addMatch(double, IMetabolite)}, so that
+     * hits with equal similarities end up in the same order.
+     */
+    private static void addHit(List<Tuple2D<Double, Integer>> hits, double sim,
+            int row, int maxHits) {
+        final Tuple2D<Double, Integer> tple = new Tuple2D<>(sim, row);
+        if (hits.size() == maxHits) {
+            Collections.sort(hits, HIT_ORDER);
+            final int idx = Collections.binarySearch(hits, tple, HIT_ORDER);
+            final int insertionPoint = idx >= 0 ? idx : -idx - 1;
+            if (insertionPoint < hits.size()) {
+                hits.add(insertionPoint, tple);
+                hits.remove(hits.size() - 1);
+            }
+        } else {
+            hits.add(tple);
+            Collections.sort(hits, HIT_ORDER);
+        }
+    }
+
+    private static boolean accept(IMetaboliteFilter[] gates, IMetabolite m) {
+        for (IMetaboliteFilter gate : gates) {
+            if (!gate.match(m)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the rows sharing a top ion with the query in ascending order,
+     * or null if all rows need to be scored.
+     */
+    private int[] candidates(BinnedSpectrum query) {
+        if (topIonOffsets == null) {
+            return null;
+        }
+        final boolean[] selected = new boolean[metabolites.size()];
+        int count = 0;
+        for (int b : query.topBins(topIons)) {
+            final int ib = b - minTopIonBin;
+            if (ib < 0 || ib >= topIonOffsets.length - 1) {
+                continue;
+            }
+            for (int j = topIonOffsets[ib]; j < topIonOffsets[ib + 1]; j++) {
+                if (!selected[topIonRows[j]]) {
+                    selected[topIonRows[j]] = true;
+                    count++;
+                }
+            }
+        }
+        final int[] rows = new int[count];
+        for (int i = 0, k = 0; k < count; i++) {
+            if (selected[i]) {
+                rows[k++] = i;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Bins a spectrum to absolute mass bins the same way as
+     * {@link maltcms.tools.ArrayTools#createDenseArray}, keeping only the
+     * occupied bins.
+     */
+    private BinnedSpectrum bin(Array masses, Array intensities) {
+        final int n = masses.getShape()[0];
+        final int[] keys = new int[n];
+        final double[] vals = new double[n];
+        final IndexIterator mi = masses.getIndexIterator();
+        final IndexIterator ii = intensities.getIndexIterator();
+        boolean sorted = true;
+        for (int i = 0; i < n; i++) {
+            keys[i] = MaltcmsTools.binMZ(mi.getDoubleNext(), 0.0d, 1.0d,
+                    resolution);
+            vals[i] = ii.getDoubleNext();
+            if (i > 0 && keys[i] < keys[i - 1]) {
+                sorted = false;
+            }
+        }
+        final int[] order = new int[n];
+        if (sorted) {
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+        } else {
+            final Integer[] boxed = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                boxed[i] = i;
+            }
+            //stable, keeps the order of masses within a bin
+            Arrays.sort(boxed, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Integer.compare(keys[o1], keys[o2]);
+                }
+            });
+            for (int i = 0; i < n; i++) {
+                order[i] = boxed[i];
+            }
+        }
+        final int[] b = new int[n];
+        final double[] v = new double[n];
+        final int[] overlaps = new int[n];
+        int m = -1;
+        for (int i = 0; i < n; i++) {
+            final int idx = order[i];
+            if (m < 0 || b[m] != keys[idx]) {
+                m++;
+                b[m] = keys[idx];
+                v[m] = 0.0d;
+            }
+            final double last = v[m];
+            if (last != 0) {
+                overlaps[m]++;
+            }
+            v[m] = (vals[idx] + last);
+        }
+        m++;
+        double max = 0.0d;
+        for (int i = 0; i < m; i++) {
+            if (averageBins) {
+                v[i] /= (overlaps[i] + 1);
+            }
+            max = Math.max(max, v[i]);
+        }
+        return new BinnedSpectrum(Arrays.copyOf(b, m), Arrays.copyOf(v, m), max);
+    }
+
+    private static final class BinnedSpectrum {
+
+        private final int[] bins;
+        private final double[] values;
+        private final double max;
+
+        BinnedSpectrum(int[] bins, double[] values, double max) {
+            this.bins = bins;
+            this.values = values;
+            this.max = max;
+        }
+
+        double norm(double scale) {
+            double sum = 0.0d;
+            for (double v : values) {
+                final double sv = scale == 1.0d ? v : v * scale;
+                sum += sv * sv;
+            }
+            return Math.sqrt(sum);
+        }
+
+        double[] toDense(double scale) {
+            if (bins.length == 0) {
+                return new double[0];
+            }
+            final double[] dense = new double[bins[bins.length - 1] - bins[0] + 1];
+            for (int i = 0; i < bins.length; i++) {
+                dense[bins[i] - bins[0]] = scale == 1.0d ? values[i] : values[i] * scale;
+            }
+            return dense;
+        }
+
+        int[] topBins(int k) {
+            final Integer[] idx = new Integer[values.length];
+            for (int i = 0; i < idx.length; i++) {
+                idx[i] = i;
+            }
+            Arrays.sort(idx, Collections.reverseOrder(new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Double.compare(values[o1], values[o2]);
+                }
+            }));
+            final int[] top = new int[Math.min(k, idx.length)];
+            for (int i = 0; i < top.length; i++) {
+                top[i] = bins[idx[i]];
+            }
+            return top;
+        }
+    }
+}
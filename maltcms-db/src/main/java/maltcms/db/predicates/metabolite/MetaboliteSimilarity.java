@@ -206,6 +206,30 @@ public class MetaboliteSimilarity extends Predicate<IMetabolite> {
         return d;
     }
 
+    /**
+     * Adds a scored metabolite to the matches, keeping at most
+     * <code>numberOfHitsToReturn</code> hits with the highest similarity.
+     *
+     * @param sim the similarity of <code>et</code> to the scan
+     * @param et the metabolite
+     * @since 2.0.1
+     */
+    public void addMatch(double sim, IMetabolite et) {
+        Tuple2D<Double, IMetabolite> tple = new Tuple2D<>(sim, et);
+        if (matches.size() == numberOfHitsToReturn) {
+            Collections.sort(matches, comparator);
+            int idx = Collections.binarySearch(matches, tple, comparator);
+            int insertionPoint = idx >= 0 ? idx : -idx - 1;
+            if (insertionPoint < matches.size()) {
+                matches.add(insertionPoint, tple);
+                matches.remove(matches.size() - 1);
+            }
+        } else {
+            matches.add(tple);
+            Collections.sort(matches, comparator);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean match(IMetabolite et) {
@@ -213,26 +237,7 @@ public class MetaboliteSimilarity extends Predicate<IMetabolite> {
         double sim = similarity(scan.getMasses(), scan.getIntensities(), etMs.
                 getFirst(), etMs.getSecond());
         if (sim >= scoreThreshold) {
-            if (matches.size() == numberOfHitsToReturn) {
-                Collections.sort(matches, comparator);
-                Tuple2D<Double, IMetabolite> tple = new Tuple2D<>(
-                        sim, et);
-                int idx = Collections.binarySearch(matches, tple, comparator);
-                if (idx >= 0) {
-                    matches.add(idx, tple);
-                    matches.remove(matches.size() - 1);
-                } else {
-                    int insertionPoint = ((-1) * idx) + 1;
-                    if (insertionPoint != matches.size()) {
-                        matches.add(insertionPoint, tple);
-                        matches.remove(matches.size() - 1);
-                    }
-                }
-            } else {
-                matches.add(new Tuple2D<>(sim, et));
-                Collections.sort(matches, comparator);
-            }
-
+            addMatch(sim, et);
             return true;
         }
         return false;
@@ -0,0 +1,68 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.api.filters;
+
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.IScan;
+import net.sf.maltcms.db.search.api.IMatchPredicate;
+
+/**
+ * A cheap test that rejects library metabolites before their mass spectral
+ * similarity to a query is computed. Filters are run in order of increasing
+ * {@link #getCost()}.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public interface IMetaboliteFilter extends IMatchPredicate<IMetabolite> {
+
+    /**
+     * Returns the relative cost of a call to {@link #match(Object)}. Filters
+     * with a lower cost are evaluated first.
+     *
+     * @return the relative cost
+     */
+    public int getCost();
+
+    /**
+     * Sets the query that metabolites are tested against.
+     *
+     * @param scan the query scan
+     * @param retentionIndex the retention index of the query, or NaN if it
+     * is unknown
+     */
+    public void setQuery(IScan scan, double retentionIndex);
+
+    /**
+     * Returns a copy of this filter with the same configuration and without
+     * a query.
+     *
+     * @return the copy
+     */
+    public IMetaboliteFilter copy();
+}
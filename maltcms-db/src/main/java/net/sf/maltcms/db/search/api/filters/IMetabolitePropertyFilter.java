@@ -0,0 +1,51 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.api.filters;
+
+/**
+ * A metabolite filter that only depends on the retention index and the
+ * molecular weight of a metabolite. Libraries that keep these properties in
+ * primitive columns can evaluate such filters without materializing the
+ * metabolite.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public interface IMetabolitePropertyFilter extends IMetaboliteFilter {
+
+    /**
+     * Tests a metabolite by its properties. Must return the same result as
+     * {@link #match(Object)} for a metabolite with these properties.
+     *
+     * @param retentionIndex the retention index of the metabolite, 0 if it
+     * is unknown
+     * @param molecularWeight the molecular weight of the metabolite
+     * @return true, if the metabolite is accepted
+     */
+    public boolean match(double retentionIndex, double molecularWeight);
+}
@@ -104,6 +104,34 @@ public abstract class AMetabolitePredicate extends Predicate<IMetabolite> implem
         return results.subList(0, Math.min(maxHits, results.size()));
     }
 
+    /**
+     * Adds a hit to the score map. At most <code>maxHits</code> hits with the
+     * highest scores are retained, so that the score map never grows beyond
+     * the number of hits that {@link #getMetabolites()} returns. A hit that
+     * does not rank before the currently worst retained hit is discarded
+     * without modifying the score map.
+     *
+     * @param score the score of the metabolite
+     * @param metabolite the metabolite
+     * @return true if the hit was retained
+     * @since 2.0.1
+     */
+    protected boolean addHit(double score, IMetabolite metabolite) {
+        TreeSet<Tuple2D<Double, IMetabolite>> sm = getScoreMap();
+        Tuple2D<Double, IMetabolite> tple = new Tuple2D<>(score, metabolite);
+        if (maxHits > 0 && sm.size() >= maxHits) {
+            if (sm.comparator().compare(tple, sm.last()) >= 0) {
+                return false;
+            }
+            boolean added = sm.add(tple);
+            while (sm.size() > maxHits) {
+                sm.pollLast();
+            }
+            return added;
+        }
+        return sm.add(tple);
+    }
+
     /**
      * <p>filterMaskedMasses.</p>
      *
@@ -0,0 +1,133 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.spi.filters;
+
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.IScan;
+import net.sf.maltcms.db.search.api.filters.IMetaboliteFilter;
+import net.sf.maltcms.db.search.api.filters.IMetabolitePropertyFilter;
+
+/**
+ * Accepts metabolites whose molecular weight lies within a fixed range.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class MolecularWeightFilter implements IMetabolitePropertyFilter {
+
+    private double minMW = 0.0d;
+    private double maxMW = Double.POSITIVE_INFINITY;
+
+    /**
+     * <p>Constructor for MolecularWeightFilter.</p>
+     */
+    public MolecularWeightFilter() {
+    }
+
+    /**
+     * <p>Constructor for MolecularWeightFilter.</p>
+     *
+     * @param minMW the minimum molecular weight, inclusive
+     * @param maxMW the maximum molecular weight, inclusive
+     */
+    public MolecularWeightFilter(double minMW, double maxMW) {
+        this.minMW = minMW;
+        this.maxMW = maxMW;
+    }
+
+    /**
+     * <p>Getter for the field <code>minMW</code>.</p>
+     *
+     * @return a double.
+     */
+    public double getMinMW() {
+        return minMW;
+    }
+
+    /**
+     * <p>Setter for the field <code>minMW</code>.</p>
+     *
+     * @param minMW a double.
+     */
+    public void setMinMW(double minMW) {
+        this.minMW = minMW;
+    }
+
+    /**
+     * <p>Getter for the field <code>maxMW</code>.</p>
+     *
+     * @return a double.
+     */
+    public double getMaxMW() {
+        return maxMW;
+    }
+
+    /**
+     * <p>Setter for the field <code>maxMW</code>.</p>
+     *
+     * @param maxMW a double.
+     */
+    public void setMaxMW(double maxMW) {
+        this.maxMW = maxMW;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCost() {
+        return 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setQuery(IScan scan, double retentionIndex) {
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean match(IMetabolite t) {
+        return match(t.getRetentionIndex(), t.getMW());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean match(double retentionIndex, double molecularWeight) {
+        return molecularWeight >= minMW && molecularWeight <= maxMW;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IMetaboliteFilter copy() {
+        return new MolecularWeightFilter(minMW, maxMW);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{minMW=" + minMW + ", maxMW=" + maxMW + "}";
+    }
+}
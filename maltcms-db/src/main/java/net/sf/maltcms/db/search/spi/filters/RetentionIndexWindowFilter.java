@@ -0,0 +1,124 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.spi.filters;
+
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.IScan;
+import net.sf.maltcms.db.search.api.filters.IMetaboliteFilter;
+import net.sf.maltcms.db.search.api.filters.IMetabolitePropertyFilter;
+
+/**
+ * Accepts metabolites whose retention index lies within a window around the
+ * retention index of the query. If the query has no retention index, all
+ * metabolites are accepted. Metabolites without a retention index are
+ * rejected, as in
+ * {@link net.sf.maltcms.db.search.spi.similarities.RetentionIndexMatcher}.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class RetentionIndexWindowFilter implements IMetabolitePropertyFilter {
+
+    private double window = 10.0;
+    private double retentionIndex = Double.NaN;
+
+    /**
+     * <p>Constructor for RetentionIndexWindowFilter.</p>
+     */
+    public RetentionIndexWindowFilter() {
+    }
+
+    /**
+     * <p>Constructor for RetentionIndexWindowFilter.</p>
+     *
+     * @param window the maximum absolute retention index difference
+     */
+    public RetentionIndexWindowFilter(double window) {
+        this.window = window;
+    }
+
+    /**
+     * <p>Getter for the field <code>window</code>.</p>
+     *
+     * @return a double.
+     */
+    public double getWindow() {
+        return window;
+    }
+
+    /**
+     * <p>Setter for the field <code>window</code>.</p>
+     *
+     * @param window a double.
+     */
+    public void setWindow(double window) {
+        this.window = window;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCost() {
+        return 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setQuery(IScan scan, double retentionIndex) {
+        this.retentionIndex = retentionIndex;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean match(IMetabolite t) {
+        return match(t.getRetentionIndex(), t.getMW());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean match(double retentionIndex, double molecularWeight) {
+        if (Double.isNaN(this.retentionIndex)) {
+            return true;
+        }
+        if (retentionIndex == 0.0) {
+            return false;
+        }
+        return Math.abs(this.retentionIndex - retentionIndex) <= window;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IMetaboliteFilter copy() {
+        return new RetentionIndexWindowFilter(window);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{window=" + window + "}";
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.spi.filters;
+
+import java.util.Arrays;
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.IScan;
+import maltcms.tools.MaltcmsTools;
+import net.sf.maltcms.db.search.api.filters.IMetaboliteFilter;
+import ucar.ma2.Array;
+import ucar.ma2.IndexIterator;
+
+/**
+ * Accepts metabolites that share at least <code>minimumOverlap</code> of
+ * their <code>topIons</code> most intense nominal mass bins with the query.
+ * With <code>topIons = 1</code>, this is a base peak filter.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class TopIonOverlapFilter implements IMetaboliteFilter {
+
+    private int topIons = 5;
+    private int minimumOverlap = 1;
+    private double resolution = 1.0d;
+    private int[] queryBins = new int[0];
+
+    /**
+     * <p>Constructor for TopIonOverlapFilter.</p>
+     */
+    public TopIonOverlapFilter() {
+    }
+
+    /**
+     * <p>Constructor for TopIonOverlapFilter.</p>
+     *
+     * @param topIons the number of most intense ions to compare
+     * @param minimumOverlap the minimum number of shared ions
+     */
+    public TopIonOverlapFilter(int topIons, int minimumOverlap) {
+        this.topIons = topIons;
+        this.minimumOverlap = minimumOverlap;
+    }
+
+    /**
+     * <p>Getter for the field <code>topIons</code>.</p>
+     *
+     * @return a int.
+     */
+    public int getTopIons() {
+        return topIons;
+    }
+
+    /**
+     * <p>Setter for the field <code>topIons</code>.</p>
+     *
+     * @param topIons a int.
+     */
+    public void setTopIons(int topIons) {
+        this.topIons = topIons;
+    }
+
+    /**
+     * <p>Getter for the field <code>minimumOverlap</code>.</p>
+     *
+     * @return a int.
+     */
+    public int getMinimumOverlap() {
+        return minimumOverlap;
+    }
+
+    /**
+     * <p>Setter for the field <code>minimumOverlap</code>.</p>
+     *
+     * @param minimumOverlap a int.
+     */
+    public void setMinimumOverlap(int minimumOverlap) {
+        this.minimumOverlap = minimumOverlap;
+    }
+
+    /**
+     * <p>Getter for the field <code>resolution</code>.</p>
+     *
+     * @return a double.
+     */
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * <p>Setter for the field <code>resolution</code>.</p>
+     *
+     * @param resolution a double.
+     */
+    public void setResolution(double resolution) {
+        this.resolution = resolution;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCost() {
+        return 2;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setQuery(IScan scan, double retentionIndex) {
+        MaltcmsTools.setBinMZbyConfig();
+        this.queryBins = topBins(scan.getMasses(), scan.getIntensities());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean match(IMetabolite t) {
+        final int[] bins = topBins(t.getMassSpectrum().getFirst(), t.
+                getMassSpectrum().getSecond());
+        int overlap = 0;
+        for (int i = 0, j = 0; i < queryBins.length && j < bins.length;) {
+            if (queryBins[i] < bins[j]) {
+                i++;
+            } else if (queryBins[i] > bins[j]) {
+                j++;
+            } else {
+                if (++overlap >= minimumOverlap) {
+                    return true;
+                }
+                i++;
+                j++;
+            }
+        }
+        return overlap >= minimumOverlap;
+    }
+
+    /**
+     * Returns the distinct mass bins of the <code>topIons</code> most intense
+     * ions in ascending order.
+     */
+    private int[] topBins(Array masses, Array intensities) {
+        final int k = Math.max(0, topIons);
+        final double[] topIntensities = new double[k];
+        final int[] top = new int[k];
+        int n = 0;
+        final IndexIterator mi = masses.getIndexIterator();
+        final IndexIterator ii = intensities.getIndexIterator();
+        while (mi.hasNext() && ii.hasNext()) {
+            final double mass = mi.getDoubleNext();
+            final double intensity = ii.getDoubleNext();
+            if (k == 0 || (n == k && intensity <= topIntensities[n - 1])) {
+                continue;
+            }
+            //insertion into the intensity ordered top list
+            int pos = n < k ? n++ : k - 1;
+            while (pos > 0 && topIntensities[pos - 1] < intensity) {
+                topIntensities[pos] = topIntensities[pos - 1];
+                top[pos] = top[pos - 1];
+                pos--;
+            }
+            topIntensities[pos] = intensity;
+            top[pos] = MaltcmsTools.binMZ(mass, 0.0d, 1.0d, resolution);
+        }
+        final int[] bins = Arrays.copyOf(top, n);
+        Arrays.sort(bins);
+        int m = 0;
+        for (int i = 0; i < bins.length; i++) {
+            if (m == 0 || bins[m - 1] != bins[i]) {
+                bins[m++] = bins[i];
+            }
+        }
+        return Arrays.copyOf(bins, m);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IMetaboliteFilter copy() {
+        TopIonOverlapFilter f = new TopIonOverlapFilter(topIons, minimumOverlap);
+        f.setResolution(resolution);
+        return f;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{topIons=" + topIons + ", minimumOverlap=" + minimumOverlap + "}";
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.spi.parser;
+
+import cross.Factory;
+import cross.tools.StringTools;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.Metabolite;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayInt;
+
+/**
+ * Read-only, memory-mapped metabolite library compiled from an MSP file.
+ *
+ * The library file stores a fixed size record per metabolite with its
+ * retention index, retention time, molecular weight, database number and the
+ * offsets of its peaks and strings, followed by the packed m/z and intensity
+ * pairs of all spectra and the string fields (name, id, id type, comments,
+ * formula, date, retention time unit, SP, short name and link). Numeric
+ * columns are read without creating any objects, metabolites are only
+ * materialized on access.
+ *
+ * A library for <code>lib.msp</code> is stored as <code>lib.mlib</code> next to
+ * it and is recompiled if the MSP file changes. Persisting can be disabled by
+ * setting
+ * <code>net.sf.maltcms.db.search.spi.parser.BinaryMetaboliteLibrary.persist</code>
+ * to false, in which case the library is compiled to a temporary file.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class BinaryMetaboliteLibrary {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(BinaryMetaboliteLibrary.class);
+
+    private static final int MAGIC = 0x4D4C4942;
+    private static final int VERSION = 1;
+    private static final String FILE_SUFFIX = ".mlib";
+    private static final int HEADER_BYTES = 44;
+    private static final int ENTRY_BYTES = 44;
+    private static final int PEAK_BYTES = 12;
+    private static final int STRING_FIELDS = 10;
+
+    private final long sourceLength;
+    private final long sourceLastModified;
+    private final int size;
+    private final ByteBuffer entries;
+    private final ByteBuffer peaks;
+    private final ByteBuffer strings;
+
+    private BinaryMetaboliteLibrary(long sourceLength, long sourceLastModified,
+            int size, ByteBuffer entries, ByteBuffer peaks, ByteBuffer strings) {
+        this.sourceLength = sourceLength;
+        this.sourceLastModified = sourceLastModified;
+        this.size = size;
+        this.entries = entries;
+        this.peaks = peaks;
+        this.strings = strings;
+    }
+
+    /**
+     * Returns the library for the given MSP file. The compiled library is
+     * mapped if it is up to date, otherwise the MSP file is parsed once and
+     * compiled.
+     *
+     * @param msp the MSP file
+     * @return the library
+     * @throws IOException if the library can not be read or compiled
+     */
+    public static BinaryMetaboliteLibrary open(File msp) throws IOException {
+        final boolean persist = Factory.getInstance().getConfiguration().
+                getBoolean(BinaryMetaboliteLibrary.class.getName() + ".persist", true);
+        File libraryFile = new File(msp.getParentFile(), StringTools.
+                removeFileExt(msp.getName()) + FILE_SUFFIX);
+        if (persist && libraryFile.isFile()) {
+            try {
+                BinaryMetaboliteLibrary library = map(libraryFile);
+                if (library.isValidFor(msp)) {
+                    return library;
+                }
+            } catch (IOException ex) {
+                log.warn("Could not read metabolite library from " + libraryFile, ex);
+            }
+        }
+        if (!persist) {
+            libraryFile = File.createTempFile(StringTools.removeFileExt(msp.
+                    getName()), FILE_SUFFIX);
+            libraryFile.deleteOnExit();
+        }
+        log.info("Compiling metabolite library {} to {}", msp, libraryFile);
+        try (MSPFormatMetaboliteParser2.MetaboliteIterator iter = new MSPFormatMetaboliteParser2().
+                iterator(msp)) {
+            compile(iter, libraryFile, msp.length(), msp.lastModified());
+        }
+        return map(libraryFile);
+    }
+
+    /**
+     * Writes the given metabolites to a library file. Metabolites are
+     * consumed one at a time. The library is built in a temporary file in the
+     * same directory, which then replaces <code>file</code>, so that readers
+     * never map a partially written library.
+     *
+     * @param metabolites the metabolites
+     * @param file the library file
+     * @param sourceLength the length of the source the metabolites were read
+     * from
+     * @param sourceLastModified the modification time of the source
+     * @throws IOException if the file can not be written
+     */
+    public static void compile(Iterator<? extends IMetabolite> metabolites,
+            File file, long sourceLength, long sourceLastModified) throws IOException {
+        final File libraryFile = File.createTempFile(file.getName(), ".tmp", file.
+                getAbsoluteFile().getParentFile());
+        final File entryFile = File.createTempFile("entries", FILE_SUFFIX, file.
+                getAbsoluteFile().getParentFile());
+        final File stringFile = File.createTempFile("strings", FILE_SUFFIX, file.
+                getAbsoluteFile().getParentFile());
+        int count = 0;
+        long peakCount = 0;
+        long stringBytes = 0;
+        try {
+            try (DataOutputStream out = createOutputStream(libraryFile);
+                    DataOutputStream entryOut = createOutputStream(entryFile);
+                    DataOutputStream stringOut = createOutputStream(stringFile)) {
+                //placeholder, rewritten below
+                out.write(new byte[HEADER_BYTES]);
+                while (metabolites.hasNext()) {
+                    final IMetabolite m = metabolites.next();
+                    final ArrayDouble.D1 masses = m.getMassSpectrum().getFirst();
+                    final ArrayInt.D1 intensities = m.getMassSpectrum().getSecond();
+                    final int n = masses == null ? 0 : masses.getShape()[0];
+                    for (int i = 0; i < n; i++) {
+                        out.writeDouble(masses.get(i));
+                        out.writeInt(intensities.get(i));
+                    }
+                    entryOut.writeDouble(m.getRetentionIndex());
+                    entryOut.writeDouble(m.getRetentionTime());
+                    entryOut.writeInt(m.getMW());
+                    entryOut.writeInt(m instanceof Metabolite ? ((Metabolite) m).getDBNO() : -1);
+                    entryOut.writeLong(peakCount);
+                    entryOut.writeInt(n);
+                    entryOut.writeLong(stringBytes);
+                    final String idType = m instanceof Metabolite ? ((Metabolite) m).getIDType() : null;
+                    final String link = m.getLink() == null ? null : m.getLink().toString();
+                    for (String s : new String[]{m.getName(), m.getID(), idType,
+                        m.getComments(), m.getFormula(), m.getDate(),
+                        m.getRetentionTimeUnit(), m.getSP(), m.getShortName(),
+                        link}) {
+                        stringBytes += writeString(stringOut, s);
+                    }
+                    peakCount += n;
+                    count++;
+                }
+            }
+            try (FileOutputStream fos = new FileOutputStream(libraryFile, true)) {
+                Files.copy(entryFile.toPath(), fos);
+                Files.copy(stringFile.toPath(), fos);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(libraryFile, "rw")) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeLong(sourceLength);
+                raf.writeLong(sourceLastModified);
+                raf.writeInt(count);
+                raf.writeLong(peakCount);
+                raf.writeLong(stringBytes);
+            }
+            try {
+                Files.move(libraryFile.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(libraryFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(entryFile.toPath());
+            Files.deleteIfExists(stringFile.toPath());
+            Files.deleteIfExists(libraryFile.toPath());
+        }
+        log.info("Compiled {} metabolites with {} peaks", count, peakCount);
+    }
+
+    /**
+     * Maps a library file into memory.
+     *
+     * @param file the library file
+     * @return the library
+     * @throws IOException if the file can not be read or is not a valid
+     * library
+     */
+    public static BinaryMetaboliteLibrary map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            if (raf.length() < HEADER_BYTES || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                throw new IOException("Not a metabolite library: " + file);
+            }
+            final long sourceLength = raf.readLong();
+            final long sourceLastModified = raf.readLong();
+            final int count = raf.readInt();
+            final long peakCount = raf.readLong();
+            final long stringBytes = raf.readLong();
+            final long peakBytes = peakCount * PEAK_BYTES;
+            final long entryBytes = (long) count * ENTRY_BYTES;
+            if (HEADER_BYTES + peakBytes + entryBytes + stringBytes != raf.length()) {
+                throw new IOException("Truncated metabolite library: " + file);
+            }
+            if (peakBytes > Integer.MAX_VALUE || entryBytes > Integer.MAX_VALUE
+                    || stringBytes > Integer.MAX_VALUE) {
+                throw new IOException("Metabolite library too large to map: " + file);
+            }
+            final ByteBuffer peaks = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES, peakBytes);
+            final ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + peakBytes, entryBytes);
+            final ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + peakBytes + entryBytes, stringBytes);
+            return new BinaryMetaboliteLibrary(sourceLength, sourceLastModified,
+                    count, entries, peaks, strings);
+        }
+    }
+
+    /**
+     * Returns the number of metabolites.
+     *
+     * @return the number of metabolites
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the retention index of metabolite <code>i</code>.
+     *
+     * @param i the metabolite index
+     * @return the retention index
+     */
+    public double getRetentionIndex(int i) {
+        return entries.getDouble(entry(i));
+    }
+
+    /**
+     * Returns the molecular weight of metabolite <code>i</code>.
+     *
+     * @param i the metabolite index
+     * @return the molecular weight
+     */
+    public int getMW(int i) {
+        return entries.getInt(entry(i) + 16);
+    }
+
+    /**
+     * Returns the name of metabolite <code>i</code>.
+     *
+     * @param i the metabolite index
+     * @return the name
+     */
+    public String getName(int i) {
+        final ByteBuffer b = strings.duplicate();
+        b.position((int) entries.getLong(entry(i) + 36));
+        return readString(b);
+    }
+
+    /**
+     * Returns the number of peaks of metabolite <code>i</code>.
+     *
+     * @param i the metabolite index
+     * @return the number of peaks
+     */
+    public int getPeakCount(int i) {
+        return entries.getInt(entry(i) + 32);
+    }
+
+    /**
+     * Copies the masses and intensities of metabolite <code>i</code> into the
+     * given arrays, which must hold at least {@link #getPeakCount(int)}
+     * elements.
+     *
+     * @param i the metabolite index
+     * @param masses the target array for the masses
+     * @param intensities the target array for the intensities
+     */
+    public void getPeaks(int i, double[] masses, int[] intensities) {
+        final int e = entry(i);
+        final int start = (int) (entries.getLong(e + 24) * PEAK_BYTES);
+        final int n = entries.getInt(e + 32);
+        for (int j = 0; j < n; j++) {
+            final int p = start + j * PEAK_BYTES;
+            masses[j] = peaks.getDouble(p);
+            intensities[j] = peaks.getInt(p + 8);
+        }
+    }
+
+    /**
+     * Materializes metabolite <code>i</code>.
+     *
+     * @param i the metabolite index
+     * @return a new metabolite
+     */
+    public IMetabolite getMetabolite(int i) {
+        final int e = entry(i);
+        final int n = entries.getInt(e + 32);
+        final double[] m = new double[n];
+        final int[] in = new int[n];
+        getPeaks(i, m, in);
+        final ArrayDouble.D1 masses = new ArrayDouble.D1(n);
+        final ArrayInt.D1 intensities = new ArrayInt.D1(n, false);
+        for (int j = 0; j < n; j++) {
+            masses.set(j, m[j]);
+            intensities.set(j, in[j]);
+        }
+        final ByteBuffer b = strings.duplicate();
+        b.position((int) entries.getLong(e + 36));
+        final String[] s = new String[STRING_FIELDS];
+        for (int j = 0; j < STRING_FIELDS; j++) {
+            s[j] = readString(b);
+        }
+        final Metabolite metabolite = new Metabolite(s[0], s[1], s[2],
+                entries.getInt(e + 20), s[3], s[4], s[5], entries.getDouble(e),
+                entries.getDouble(e + 8), s[6], entries.getInt(e + 16), s[7],
+                s[8], masses, intensities);
+        if (s[9] != null) {
+            metabolite.setLink(URI.create(s[9]));
+        }
+        return metabolite;
+    }
+
+    /**
+     * Returns a read-only list view of this library. Metabolites are
+     * materialized on each access.
+     *
+     * @return the list view
+     */
+    public List<IMetabolite> asList() {
+        return new MetaboliteList();
+    }
+
+    private boolean isValidFor(File source) {
+        return source.length() == sourceLength
+                && source.lastModified() == sourceLastModified;
+    }
+
+    private int entry(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+        }
+        return i * ENTRY_BYTES;
+    }
+
+    private static DataOutputStream createOutputStream(File f) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(f), 1 << 16));
+    }
+
+    private static int writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return 4;
+        }
+        final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+        return 4 + b.length;
+    }
+
+    private static String readString(ByteBuffer b) {
+        final int length = b.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class MetaboliteList extends AbstractList<IMetabolite> implements RandomAccess {
+
+        @Override
+        public IMetabolite get(int index) {
+            return getMetabolite(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -35,18 +35,25 @@ import com.db4o.query.Predicate;
 import cross.datastructures.collections.CachedLazyList;
 import cross.datastructures.collections.IElementProvider;
 import cross.exception.ConstraintViolationException;
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 
 import maltcms.datastructures.ms.IMetabolite;
 import maltcms.datastructures.ms.Metabolite;
@@ -416,7 +423,7 @@ public class MSPFormatMetaboliteParser2 {
      */
     protected double parseDoubleString(String number) {
         double num = Double.NaN;
-        NumberFormat nf = NumberFormat.getInstance(locale);
+        NumberFormat nf = getNumberFormat();
         Number parsedNumber;
         try {
             parsedNumber = nf.parse(number);
@@ -436,7 +443,7 @@ public class MSPFormatMetaboliteParser2 {
      */
     protected int parseIntString(String number) {
         int num = -1;
-        NumberFormat nf = NumberFormat.getInstance(locale);
+        NumberFormat nf = getNumberFormat();
         Number parsedNumber;
         try {
             parsedNumber = nf.parse(number);
@@ -507,7 +514,9 @@ public class MSPFormatMetaboliteParser2 {
         // log.info("Parsing mzI data: "+data);
         String filteredData = data.replaceAll("\\s+", " ");
         String[] pairs = filteredData.split(recordsep);
-        log.info("Point pairs: " + Arrays.deepToString(pairs));
+        if (log.isDebugEnabled()) {
+            log.debug("Point pairs: {}", Arrays.deepToString(pairs));
+        }
         for (String p : pairs) {
             p = p.trim();
             if (!p.isEmpty()) {
@@ -526,8 +535,84 @@ public class MSPFormatMetaboliteParser2 {
                 }
             }
         }
-        log.info("Masses: " + masses);
-        log.info("Intensities: " + intensities);
+        if (log.isDebugEnabled()) {
+            log.debug("Masses: {}", masses);
+            log.debug("Intensities: {}", intensities);
+        }
+    }
+
+    /**
+     * Sequentially reads the metabolites of an MSP file. Entries are parsed
+     * on demand, so that only the current entry is held in memory. The
+     * iterator uses the state of the parser that created it, so a parser
+     * should only be used by one iterator at a time.
+     *
+     * @since 2.0.1
+     */
+    public class MetaboliteIterator implements Iterator<IMetabolite>, Closeable {
+
+        private final BufferedReader reader;
+        private IMetabolite next = null;
+        private boolean eof = false;
+
+        MetaboliteIterator(File f) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(f), StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !eof) {
+                try {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        eof = true;
+                        close();
+                        //flush the last entry, if the file does not end with an empty line
+                        next = handleLine("");
+                    } else {
+                        next = handleLine(line);
+                    }
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public IMetabolite next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            IMetabolite m = next;
+            next = null;
+            return m;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns an iterator over the metabolites of the given MSP file in file
+     * order. The iterator closes the file when it is exhausted; callers that
+     * stop early should close it themselves.
+     *
+     * @param f the MSP file
+     * @return the iterator
+     * @throws IOException if the file can not be opened
+     * @since 2.0.1
+     */
+    public MetaboliteIterator iterator(File f) throws IOException {
+        return new MetaboliteIterator(f);
     }
 
     private class MetaboliteProvider implements IElementProvider<IMetabolite> {
@@ -253,11 +253,8 @@ public class Cosine extends AMetabolitePredicate {
         //log.info("Similarity score: "+sim);
 
         if (sim >= getScoreThreshold()) {
-            log.info("Similarity score " + sim + " is larger than threshold: " + getScoreThreshold());
-            Tuple2D<Double, IMetabolite> tple = new Tuple2D<>(
-                    sim, et);
-            getScoreMap().add(tple);
-
+            log.debug("Similarity score {} is larger than threshold: {}", sim, getScoreThreshold());
+            addHit(sim, et);
             return true;
         }
         return false;
@@ -209,12 +209,9 @@ public class CosineWithMassBonus extends AMetabolitePredicate {
         double sim = similarity(getScan().getMasses(),
                 getScan().getIntensities(), etMs.getFirst(), etMs.getSecond(),
                 et.getMW());
-        log.info("Similarity score: " + sim);
+        log.debug("Similarity score: {}", sim);
         if (sim >= getScoreThreshold()) {
-            Tuple2D<Double, IMetabolite> tple = new Tuple2D<>(
-                    sim, et);
-            getScoreMap().add(tple);
-
+            addHit(sim, et);
             return true;
         }
         return false;
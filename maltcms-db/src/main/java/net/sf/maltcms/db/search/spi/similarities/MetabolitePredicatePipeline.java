@@ -0,0 +1,268 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.spi.similarities;
+
+import cross.datastructures.tuple.Tuple2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.IScan;
+import net.sf.maltcms.db.search.api.filters.IMetaboliteFilter;
+import net.sf.maltcms.db.search.api.similarities.AMetabolitePredicate;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Runs a list of cheap {@link IMetaboliteFilter}s in order of increasing cost
+ * in front of a mass spectral similarity predicate. A metabolite is only
+ * scored by the delegate if every filter accepts it.
+ *
+ * Without filters, the pipeline behaves like its delegate, which defaults to
+ * {@link Cosine}. {@link maltcms.db.MetaboliteLibraryIndex} applies the same
+ * filters to its in-memory searches.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@ServiceProvider(service = AMetabolitePredicate.class)
+public class MetabolitePredicatePipeline extends AMetabolitePredicate {
+
+    private static final Comparator<IMetaboliteFilter> COST_ORDER = new Comparator<IMetaboliteFilter>() {
+        @Override
+        public int compare(IMetaboliteFilter o1, IMetaboliteFilter o2) {
+            return Integer.compare(o1.getCost(), o2.getCost());
+        }
+    };
+
+    private AMetabolitePredicate delegate = new Cosine();
+    private final List<IMetaboliteFilter> filters = new ArrayList<>();
+    private double retentionIndex = Double.NaN;
+    private long rejected = 0;
+    private long scored = 0;
+
+    /**
+     * <p>Constructor for MetabolitePredicatePipeline.</p>
+     */
+    public MetabolitePredicatePipeline() {
+    }
+
+    /**
+     * <p>Constructor for MetabolitePredicatePipeline.</p>
+     *
+     * @param delegate the similarity predicate scoring accepted metabolites
+     * @param filters the filters to apply before scoring
+     */
+    public MetabolitePredicatePipeline(AMetabolitePredicate delegate,
+            List<? extends IMetaboliteFilter> filters) {
+        setDelegate(delegate);
+        setFilters(filters);
+    }
+
+    /**
+     * <p>Getter for the field <code>delegate</code>.</p>
+     *
+     * @return a {@link net.sf.maltcms.db.search.api.similarities.AMetabolitePredicate} object.
+     */
+    public AMetabolitePredicate getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * <p>Setter for the field <code>delegate</code>.</p>
+     *
+     * @param delegate a {@link net.sf.maltcms.db.search.api.similarities.AMetabolitePredicate} object.
+     */
+    public void setDelegate(AMetabolitePredicate delegate) {
+        this.delegate = delegate;
+        this.delegate.setMaxHits(getMaxHits());
+        if (getScan() != null) {
+            this.delegate.setScan(getScan());
+        }
+    }
+
+    /**
+     * Returns the filters in the order in which they are evaluated.
+     *
+     * @return an unmodifiable view of the filters
+     */
+    public List<IMetaboliteFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    /**
+     * Replaces the filters. They are evaluated in order of increasing cost,
+     * filters with equal cost in the given order.
+     *
+     * @param filters the filters
+     */
+    public void setFilters(List<? extends IMetaboliteFilter> filters) {
+        this.filters.clear();
+        for (IMetaboliteFilter filter : filters) {
+            addFilter(filter);
+        }
+    }
+
+    /**
+     * Adds a filter according to its cost.
+     *
+     * @param filter the filter
+     */
+    public void addFilter(IMetaboliteFilter filter) {
+        if (getScan() != null) {
+            filter.setQuery(getScan(), retentionIndex);
+        }
+        filters.add(filter);
+        Collections.sort(filters, COST_ORDER);
+    }
+
+    /**
+     * <p>Getter for the field <code>retentionIndex</code>.</p>
+     *
+     * @return a double.
+     */
+    public double getRetentionIndex() {
+        return retentionIndex;
+    }
+
+    /**
+     * Sets the retention index of the query, or NaN if it is unknown.
+     *
+     * @param retentionIndex a double.
+     */
+    public void setRetentionIndex(double retentionIndex) {
+        this.retentionIndex = retentionIndex;
+        if (getScan() != null) {
+            for (IMetaboliteFilter filter : filters) {
+                filter.setQuery(getScan(), retentionIndex);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of metabolites rejected by a filter.
+     *
+     * @return the number of rejected metabolites
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of metabolites scored by the delegate.
+     *
+     * @return the number of scored metabolites
+     */
+    public long getScored() {
+        return scored;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setScan(IScan scan) {
+        super.setScan(scan);
+        delegate.setScan(scan);
+        for (IMetaboliteFilter filter : filters) {
+            filter.setQuery(scan, retentionIndex);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setMaxHits(int maxHits) {
+        super.setMaxHits(maxHits);
+        delegate.setMaxHits(maxHits);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getScoreThreshold() {
+        return delegate.getScoreThreshold();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setScoreThreshold(double scoreThreshold) {
+        delegate.setScoreThreshold(scoreThreshold);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setMaskedMasses(List<Double> masses) {
+        super.setMaskedMasses(masses);
+        delegate.setMaskedMasses(masses);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TreeSet<Tuple2D<Double, IMetabolite>> getScoreMap() {
+        return delegate.getScoreMap();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Comparator<Tuple2D<Double, IMetabolite>> getComparator() {
+        return delegate.getComparator();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean match(IMetabolite et) {
+        for (IMetaboliteFilter filter : filters) {
+            if (!filter.match(et)) {
+                rejected++;
+                return false;
+            }
+        }
+        scored++;
+        return delegate.match(et);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AMetabolitePredicate copy() {
+        MetabolitePredicatePipeline mpp = new MetabolitePredicatePipeline();
+        mpp.setDelegate(delegate.copy());
+        mpp.setMaxHits(getMaxHits());
+        mpp.setScoreThreshold(getScoreThreshold());
+        mpp.setMaskedMasses(getMaskedMasses());
+        mpp.setRetentionIndex(getRetentionIndex());
+        for (IMetaboliteFilter filter : filters) {
+            mpp.addFilter(filter.copy());
+        }
+        return mpp;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{delegate=" + delegate + ", filters=" + filters + "}";
+    }
+}
@@ -70,6 +70,7 @@ public class RetentionIndexMatcher extends AMetabolitePredicate {
     public void setDelegate(AMetabolitePredicate delegate) {
         this.delegate = delegate;
         this.delegate.setScoreThreshold(0.0);
+        this.delegate.setMaxHits(getMaxHits());
     }
 
     /**
@@ -102,6 +103,13 @@ public class RetentionIndexMatcher extends AMetabolitePredicate {
         delegate.setScoreThreshold(scoreThreshold);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void setMaxHits(int maxHits) {
+        super.setMaxHits(maxHits);
+        delegate.setMaxHits(maxHits);
+    }
+
     /** {@inheritDoc} */
     @Override
     public TreeSet<Tuple2D<Double, IMetabolite>> getScoreMap() {
@@ -179,7 +187,7 @@ public class RetentionIndexMatcher extends AMetabolitePredicate {
 //                metabolites.add(new Tuple2D<Double, IMetabolite>(delta, et));
                 //FIXME this is a quickfix
                 if (delegate.match(et)) {
-                    log.info("Candidate above threshold and within window: " + delta);
+                    log.debug("Candidate above threshold and within window: {}", delta);
                     return true;
                 }
 //                //log.info("Delegate score "+delegate.getClass().getName()+" match: "+match);
@@ -154,11 +154,9 @@ public class SteinAndScott extends AMetabolitePredicate {
         s2 = filterMaskedMasses(m2, s2);
         double sim = similarity(m1, s1, m2, s2,
                 et.getMW());
-        log.info("Similarity score: " + sim);
+        log.debug("Similarity score: {}", sim);
         if (sim >= getScoreThreshold()) {
-            Tuple2D<Double, IMetabolite> tple = new Tuple2D<>(
-                    sim, et);
-            getScoreMap().add(tple);
+            addHit(sim, et);
             return true;
         }
         return false;
@@ -0,0 +1,242 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.db;
+
+import cross.datastructures.tuple.Tuple2D;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.IScan;
+import maltcms.datastructures.ms.Metabolite;
+import maltcms.datastructures.ms.Scan1D;
+import maltcms.db.predicates.metabolite.MetaboliteSimilarity;
+import maltcms.math.functions.similarities.ArrayCos;
+import net.sf.maltcms.db.search.api.filters.IMetaboliteFilter;
+import net.sf.maltcms.db.search.spi.filters.MolecularWeightFilter;
+import net.sf.maltcms.db.search.spi.filters.RetentionIndexWindowFilter;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayInt;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class MetaboliteLibraryIndexTest {
+
+    private ArrayDouble.D1 masses(Random r, int n) {
+        ArrayDouble.D1 masses = new ArrayDouble.D1(n);
+        double mass = 40.0d + r.nextInt(20);
+        for (int i = 0; i < n; i++) {
+            // occasionally place two masses into the same bin
+            mass += r.nextInt(4) == 0 ? 0.2d : 1.0d + r.nextInt(5);
+            masses.set(i, mass);
+        }
+        return masses;
+    }
+
+    private ArrayInt.D1 intensities(Random r, int n) {
+        ArrayInt.D1 intensities = new ArrayInt.D1(n);
+        for (int i = 0; i < n; i++) {
+            intensities.set(i, 1 + r.nextInt(999));
+        }
+        return intensities;
+    }
+
+    private List<IMetabolite> library(Random r, int n) {
+        List<IMetabolite> library = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int peaks = 5 + r.nextInt(30);
+            library.add(new Metabolite("M" + i, "ID" + i, "TEST", i, "", "",
+                    "", 1000.0d + i, Double.NaN, "sec", 100 + i, "", "M" + i,
+                    masses(r, peaks), intensities(r, peaks)));
+        }
+        return library;
+    }
+
+    private List<Tuple2D<Double, IMetabolite>> scan(IScan scan,
+            List<IMetabolite> library, boolean normalize) {
+        MetaboliteSimilarity ms = new MetaboliteSimilarity(scan, 0.1d, 5,
+                normalize);
+        ms.setSimilarityFunction(new ArrayCos());
+        for (IMetabolite m : library) {
+            ms.match(m);
+        }
+        return ms.getMatches();
+    }
+
+    private void assertHits(List<Tuple2D<Double, IMetabolite>> expected,
+            List<Tuple2D<Double, IMetabolite>> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getFirst(), actual.get(i).getFirst(), 0.0d);
+            Assert.assertSame(expected.get(i).getSecond(), actual.get(i).getSecond());
+        }
+    }
+
+    /**
+     * Test of search method, of class MetaboliteLibraryIndex.
+     */
+    @Test
+    public void testSearchMatchesMetaboliteSimilarity() {
+        Random r = new Random(42L);
+        List<IMetabolite> library = library(r, 200);
+        MetaboliteLibraryIndex index = new MetaboliteLibraryIndex(library, 1.0d, 0);
+        Assert.assertEquals(library.size(), index.size());
+        List<IScan> scans = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int peaks = 10 + r.nextInt(40);
+            scans.add(new Scan1D(masses(r, peaks), intensities(r, peaks), i, i));
+        }
+        for (boolean normalize : new boolean[]{false, true}) {
+            List<List<Tuple2D<Double, IMetabolite>>> hits = index.search(scans,
+                    new ArrayCos(), 0.1d, 5, normalize, 2);
+            for (int i = 0; i < scans.size(); i++) {
+                List<Tuple2D<Double, IMetabolite>> expected = scan(scans.get(i), library, normalize);
+                assertHits(expected, hits.get(i));
+            }
+        }
+    }
+
+    /**
+     * Test of search method with a top ion prefilter, of class
+     * MetaboliteLibraryIndex.
+     */
+    @Test
+    public void testTopIonPrefilter() {
+        Random r = new Random(4711L);
+        List<IMetabolite> library = library(r, 100);
+        MetaboliteLibraryIndex index = new MetaboliteLibraryIndex(library, 1.0d, 3);
+        for (int i = 0; i < library.size(); i += 10) {
+            IMetabolite m = library.get(i);
+            IScan scan = new Scan1D(m.getMassSpectrum().getFirst(), m.getMassSpectrum().getSecond(), i, i);
+            List<Tuple2D<Double, IMetabolite>> hits = index.search(scan, new ArrayCos(), 0.5d, 5, false);
+            Assert.assertFalse(hits.isEmpty());
+            Assert.assertSame(m, hits.get(0).getSecond());
+            Assert.assertEquals(1.0d, hits.get(0).getFirst(), 1.0e-12);
+        }
+    }
+
+    /**
+     * Test of search method with metabolite filters, of class
+     * MetaboliteLibraryIndex.
+     */
+    @Test
+    public void testSearchWithFilters() {
+        Random r = new Random(1234L);
+        List<IMetabolite> library = library(r, 200);
+        MetaboliteLibraryIndex index = new MetaboliteLibraryIndex(library, 1.0d, 0);
+        List<IMetaboliteFilter> filters = Arrays.<IMetaboliteFilter>asList(
+                new RetentionIndexWindowFilter(40.0d),
+                new MolecularWeightFilter(120.0d, 250.0d));
+        List<IScan> scans = new ArrayList<>();
+        double[] retentionIndices = new double[10];
+        for (int i = 0; i < retentionIndices.length; i++) {
+            int peaks = 10 + r.nextInt(40);
+            scans.add(new Scan1D(masses(r, peaks), intensities(r, peaks), i, i));
+            retentionIndices[i] = 1000.0d + 20.0d * i;
+        }
+        for (boolean normalize : new boolean[]{false, true}) {
+            List<List<Tuple2D<Double, IMetabolite>>> hits = index.search(scans,
+                    retentionIndices, new ArrayCos(), 0.1d, 5, normalize,
+                    filters, 2);
+            for (int i = 0; i < scans.size(); i++) {
+                List<IMetabolite> accepted = new ArrayList<>();
+                for (IMetabolite m : library) {
+                    if (Math.abs(m.getRetentionIndex() - retentionIndices[i]) <= 40.0d
+                            && m.getMW() >= 120.0d && m.getMW() <= 250.0d) {
+                        accepted.add(m);
+                    }
+                }
+                assertHits(scan(scans.get(i), accepted, normalize), hits.get(i));
+            }
+        }
+    }
+
+    /**
+     * Test that cosine searches only access the library for hits, of class
+     * MetaboliteLibraryIndex.
+     */
+    @Test
+    public void testSearchOnlyMaterializesHits() {
+        Random r = new Random(815L);
+        List<IMetabolite> library = library(r, 200);
+        CountingList counting = new CountingList(library);
+        MetaboliteLibraryIndex index = new MetaboliteLibraryIndex(counting, 1.0d, 0);
+        List<IMetaboliteFilter> filters = Arrays.<IMetaboliteFilter>asList(
+                new RetentionIndexWindowFilter(40.0d),
+                new MolecularWeightFilter(120.0d, 250.0d));
+        for (int i = 0; i < 10; i++) {
+            int peaks = 10 + r.nextInt(40);
+            IScan scan = new Scan1D(masses(r, peaks), intensities(r, peaks), i, i);
+            counting.gets = 0;
+            List<Tuple2D<Double, IMetabolite>> hits = index.search(scan,
+                    new ArrayCos(), 0.1d, 5, false);
+            Assert.assertEquals(hits.size(), counting.gets);
+            assertHits(scan(scan, library, false), hits);
+            counting.gets = 0;
+            hits = index.search(scan, 1000.0d + 20.0d * i, new ArrayCos(),
+                    0.1d, 5, false, filters);
+            Assert.assertEquals(hits.size(), counting.gets);
+            List<IMetabolite> accepted = new ArrayList<>();
+            for (IMetabolite m : library) {
+                if (Math.abs(m.getRetentionIndex() - (1000.0d + 20.0d * i)) <= 40.0d
+                        && m.getMW() >= 120.0d && m.getMW() <= 250.0d) {
+                    accepted.add(m);
+                }
+            }
+            assertHits(scan(scan, accepted, false), hits);
+        }
+    }
+
+    private static class CountingList extends AbstractList<IMetabolite> implements RandomAccess {
+
+        private final List<IMetabolite> delegate;
+        private int gets = 0;
+
+        CountingList(List<IMetabolite> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public IMetabolite get(int index) {
+            gets++;
+            return delegate.get(index);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.spi.filters;
+
+import maltcms.datastructures.ms.IMetabolite;
+import maltcms.datastructures.ms.Metabolite;
+import maltcms.datastructures.ms.Scan1D;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayInt;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class MetaboliteFilterTest {
+
+    private IMetabolite metabolite(double ri, int mw, double[] masses, int[] intensities) {
+        return new Metabolite("M", "ID", "TEST", 0, "", "", "", ri, Double.NaN,
+                "sec", mw, "", "M",
+                (ArrayDouble.D1) Array.makeFromJavaArray(masses),
+                (ArrayInt.D1) Array.makeFromJavaArray(intensities));
+    }
+
+    /**
+     * Test of match method, of class RetentionIndexWindowFilter.
+     */
+    @Test
+    public void testRetentionIndexWindow() {
+        RetentionIndexWindowFilter f = new RetentionIndexWindowFilter(5.0d);
+        IMetabolite m = metabolite(1000.0d, 100, new double[]{50.0d}, new int[]{1});
+        f.setQuery(null, Double.NaN);
+        Assert.assertTrue(f.match(m));
+        f.setQuery(null, 1004.0d);
+        Assert.assertTrue(f.match(m));
+        f.setQuery(null, 1006.0d);
+        Assert.assertFalse(f.match(m));
+        Assert.assertFalse(f.match(metabolite(0.0d, 100, new double[]{50.0d}, new int[]{1})));
+    }
+
+    /**
+     * Test of match method, of class MolecularWeightFilter.
+     */
+    @Test
+    public void testMolecularWeight() {
+        MolecularWeightFilter f = new MolecularWeightFilter(100.0d, 200.0d);
+        Assert.assertTrue(f.match(metabolite(0.0d, 100, new double[]{50.0d}, new int[]{1})));
+        Assert.assertFalse(f.match(metabolite(0.0d, 201, new double[]{50.0d}, new int[]{1})));
+    }
+
+    /**
+     * Test of match method, of class TopIonOverlapFilter.
+     */
+    @Test
+    public void testTopIonOverlap() {
+        TopIonOverlapFilter f = new TopIonOverlapFilter(2, 1);
+        f.setQuery(new Scan1D(Array.makeFromJavaArray(new double[]{41.0d, 57.0d, 73.0d, 147.0d}),
+                Array.makeFromJavaArray(new int[]{10, 100, 5, 80}), 0, 0.0d), Double.NaN);
+        // top ions 57 and 147
+        Assert.assertTrue(f.match(metabolite(0.0d, 0, new double[]{41.0d, 147.0d, 200.0d}, new int[]{90, 100, 10})));
+        // top ions 41 and 73
+        Assert.assertFalse(f.match(metabolite(0.0d, 0, new double[]{41.0d, 57.0d, 73.0d}, new int[]{90, 1, 100})));
+        f.setMinimumOverlap(2);
+        Assert.assertFalse(f.match(metabolite(0.0d, 0, new double[]{41.0d, 147.0d, 200.0d}, new int[]{90, 100, 10})));
+        Assert.assertTrue(f.match(metabolite(0.0d, 0, new double[]{57.0d, 147.0d}, new int[]{50, 100})));
+    }
+}
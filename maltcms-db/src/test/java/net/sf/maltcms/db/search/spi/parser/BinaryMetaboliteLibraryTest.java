@@ -0,0 +1,144 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package net.sf.maltcms.db.search.spi.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import maltcms.datastructures.ms.IMetabolite;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class BinaryMetaboliteLibraryTest {
+
+    @Rule
+    public TemporaryFolder tf = new TemporaryFolder();
+
+    private File createMsp() throws IOException {
+        File f = tf.newFile("test.msp");
+        try (PrintWriter pw = new PrintWriter(f, "ISO-8859-1")) {
+            pw.println("Name: Alanine");
+            pw.println("Synon: RI: 1100.5");
+            pw.println("Formula: C3H7NO2");
+            pw.println("MW: 89");
+            pw.println("Num Peaks: 3");
+            pw.println("70 100; 116 50; 73 20;");
+            pw.println("");
+            pw.println("Name: Glycine");
+            pw.println("Synon: RI: 1300");
+            pw.println("MW: 75");
+            pw.println("Num Peaks: 2");
+            //last entry without a trailing empty line
+            pw.print("102:999 147:500");
+        }
+        return f;
+    }
+
+    /**
+     * Test of iterator method, of class MSPFormatMetaboliteParser2.
+     */
+    @Test
+    public void testStreamingParser() throws IOException {
+        List<IMetabolite> l = new ArrayList<>();
+        try (MSPFormatMetaboliteParser2.MetaboliteIterator iter = new MSPFormatMetaboliteParser2().iterator(createMsp())) {
+            while (iter.hasNext()) {
+                l.add(iter.next());
+            }
+        }
+        Assert.assertEquals(2, l.size());
+        Assert.assertEquals("Alanine", l.get(0).getName());
+        Assert.assertEquals(3, l.get(0).getMassSpectrum().getFirst().getShape()[0]);
+        Assert.assertEquals("Glycine", l.get(1).getName());
+        Assert.assertEquals(147.0d, l.get(1).getMassSpectrum().getFirst().get(1), 0.0d);
+        Assert.assertEquals(500, l.get(1).getMassSpectrum().getSecond().get(1));
+    }
+
+    /**
+     * Test of open method, of class BinaryMetaboliteLibrary.
+     */
+    @Test
+    public void testCompileAndMap() throws IOException {
+        File msp = createMsp();
+        BinaryMetaboliteLibrary library = BinaryMetaboliteLibrary.open(msp);
+        File compiled = new File(msp.getParentFile(), "test.mlib");
+        Assert.assertTrue(compiled.isFile());
+        long lastModified = compiled.lastModified();
+        Assert.assertEquals(2, library.size());
+        Assert.assertEquals("Alanine", library.getName(0));
+        Assert.assertEquals(1100.5d, library.getRetentionIndex(0), 0.0d);
+        Assert.assertEquals(89, library.getMW(0));
+        Assert.assertEquals(3, library.getPeakCount(0));
+        double[] masses = new double[3];
+        int[] intensities = new int[3];
+        library.getPeaks(0, masses, intensities);
+        Assert.assertArrayEquals(new double[]{70.0d, 116.0d, 73.0d}, masses, 0.0d);
+        Assert.assertArrayEquals(new int[]{100, 50, 20}, intensities);
+        IMetabolite glycine = library.asList().get(1);
+        Assert.assertEquals("Glycine", glycine.getName());
+        Assert.assertEquals("Glycine", glycine.getID());
+        Assert.assertEquals(1300.0d, glycine.getRetentionIndex(), 0.0d);
+        Assert.assertEquals(102.0d, glycine.getMassSpectrum().getFirst().get(0), 0.0d);
+        Assert.assertEquals(999, glycine.getMassSpectrum().getSecond().get(0));
+        //reopening maps the existing file
+        BinaryMetaboliteLibrary reopened = BinaryMetaboliteLibrary.open(msp);
+        Assert.assertEquals(2, reopened.size());
+        Assert.assertEquals(lastModified, compiled.lastModified());
+    }
+
+    /**
+     * Test of compile method over an existing library, of class
+     * BinaryMetaboliteLibrary.
+     */
+    @Test
+    public void testRecompileReplacesLibrary() throws IOException {
+        File msp = createMsp();
+        BinaryMetaboliteLibrary library = BinaryMetaboliteLibrary.open(msp);
+        File compiled = new File(msp.getParentFile(), "test.mlib");
+        List<IMetabolite> l = new ArrayList<>(library.asList());
+        BinaryMetaboliteLibrary.compile(l.subList(1, 2).iterator(), compiled,
+                msp.length(), msp.lastModified());
+        //the existing mapping still sees the complete old library
+        Assert.assertEquals(2, library.size());
+        Assert.assertEquals("Glycine", library.getName(1));
+        BinaryMetaboliteLibrary recompiled = BinaryMetaboliteLibrary.map(compiled);
+        Assert.assertEquals(1, recompiled.size());
+        Assert.assertEquals("Glycine", recompiled.getName(0));
+        String[] files = msp.getParentFile().list();
+        Arrays.sort(files);
+        Assert.assertArrayEquals(new String[]{"test.mlib", "test.msp"}, files);
+    }
+}
@@ -28,8 +28,8 @@
 package maltcms.commands.filters.array;
 
 import cross.annotations.Configurable;
-import cross.tools.MathTools;
 import lombok.Data;
+import maltcms.math.window.SlidingWindow;
 import org.apache.commons.configuration.Configuration;
 import org.openide.util.lookup.ServiceProvider;
 import ucar.ma2.Array;
@@ -60,7 +60,7 @@ public class BottomHatFilter extends AArrayFilter {
         Array arr = super.apply(a);
         if (arr.getRank() == 1) {
             final double[] d = (double[]) arr.get1DJavaArray(double.class);
-            final double[] th = MathTools.bottomHat(this.window, d);
+            final double[] th = SlidingWindow.bottomHat(this.window, d);
             arr = Array.makeFromJavaArray(th);
         } else {
             throw new IllegalArgumentException(
@@ -27,16 +27,15 @@
  */
 package maltcms.commands.filters.array;
 
-import cross.tools.MathTools;
 import java.util.Arrays;
 import lombok.Data;
+import maltcms.math.window.SlidingWindow;
 
 import org.apache.commons.configuration.Configuration;
 import org.openide.util.lookup.ServiceProvider;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayDouble;
-import ucar.ma2.Index;
 import ucar.ma2.InvalidRangeException;
 
 /**
@@ -123,88 +122,15 @@ public class MedianBaselineFilter extends AArrayFilter {
     protected ArrayDouble.D2 filterChromatogram(final int scans1,
             final int channels1, final ArrayDouble.D2 a,
             final ArrayDouble.D2 c, final int median_window1) {
-        double lmedian = 0.0d;
-        double lstddev = 0.0d;
         // mz channels
         for (int j = 0; j < channels1; j++) {
-            Array slice;
             try {
                 // Extract EIC (all scans, one mass channel)
-                slice = a.section(new int[]{0, j}, new int[]{scans1, 1});
-                // Array corrected =
-                // Array.factory(slice.getElementType(),slice.getShape());
+                final Array slice = a.section(new int[]{0, j}, new int[]{scans1, 1});
                 log.debug("Shape of slice: {} = {}", j, Arrays.toString(slice.
                         getShape()));
-                final Index ind = slice.getIndex();
-                final Index cind = c.getIndex();
-                double current;
-                // scans
-                for (int i = 0; i < slice.getShape()[0]; i++) {
-                    log.debug("i=" + i);
-                    // prev = slice.getDouble(ind.set(i - 1));
-                    current = slice.getDouble(ind.set(i));
-                    // next = slice.getDouble(ind.set(i + 1));
-                    // a-1 < a < a+1 -> median = a
-                    log.debug("Checking for extremum!");
-                    // EvalTools.notNull(current,prev,next);
-                    // medianWindow+= (0.5-medianWindow/lstddev);
-                    // log.info("Median window size: {}",medianWindow);
-                    final int lmedian_low = Math.max(0, i - median_window1);
-                    final int lmedian_high = Math.min(slice.getShape()[0] - 1,
-                            i + median_window1);
-                    log.debug("Median low: " + lmedian_low + " high: "
-                            + lmedian_high);
-                    double[] vals;// = new int[lmedian_high-lmedian_low];
-                    try {
-                        vals = (double[]) slice.section(new int[]{lmedian_low},
-                                new int[]{lmedian_high - lmedian_low},
-                                new int[]{1}).get1DJavaArray(double.class);// ,
-                        // 0,
-                        // vals,
-                        // 0,
-                        // vals.length);
-                        double mean = MathTools.average(vals, 0, vals.length - 1);
-                        lmedian = MathTools.median(vals);
-                        lstddev = Math.abs(vals[vals.length - 1] - vals[0]);
-                        log.debug("local rel dev={}", lstddev);
-                        cind.set(i, j);
-                        final double corrected_value = Math.max(current
-                                - lmedian, 0);// Math
-                        // .
-                        // max
-                        // (
-                        // current
-                        // -
-                        // lmedian
-                        // ,
-                        // 0
-                        // )
-                        // ;
-                        final double lvar = vals[vals.length - 1] - lmedian;
-                        final double snr = (mean / lstddev);
-                        //log.info(snr);
-                        final double snrdb = 10.0d * Math.log10(snr);// lmedian_high
-                        //log.info(snrdb);
-                        // -
-                        // lmedian;
-                        if (snrdb > 0.0d) {
-                            log.debug(
-                                    "Signal : {}, noise: {}, ratio: {}, log(ratio): {}",
-                                    new Object[]{current, lmedian,
-                                        snr, snrdb});
-                            log.debug("{}\t{}\t{}\t{}\t{}\t{} ",
-                                    new Object[]{current, vals[0], lmedian,
-                                        vals[vals.length - 1], lstddev,
-                                        lvar, snr});
-                        }
-                        c.setDouble(cind,
-                                snrdb > this.snrMinimum ? corrected_value
-                                : 0.0d);// corrected_value);//snrdb>3.0d?
-                        // corrected_value:0.0d);
-                    } catch (final InvalidRangeException e) {
-                        log.error(e.getLocalizedMessage());
-                    }
-                }
+                final double[] eic = (double[]) slice.get1DJavaArray(double.class);
+                filterChannel(eic, j, c, median_window1);
             } catch (final InvalidRangeException e1) {
                 log.error(e1.getLocalizedMessage());
             }
@@ -212,6 +138,57 @@ public class MedianBaselineFilter extends AArrayFilter {
         return c;
     }
 
+    /**
+     * Baseline corrects a single mass channel. The local window of scan
+     * <code>i</code> spans <code>[max(0, i - w), min(n - 1, i + w))</code>.
+     * Its median and mean are maintained incrementally while the window
+     * slides over the channel.
+     *
+     * @param eic the intensities of the mass channel
+     * @param channel the mass channel index
+     * @param c the target array
+     * @param median_window1 the half window size
+     */
+    private void filterChannel(final double[] eic, final int channel,
+            final ArrayDouble.D2 c, final int median_window1) {
+        final SlidingWindow.Median median = new SlidingWindow.Median(eic);
+        double sum = 0.0d;
+        int lo = 0;
+        int hi = 0;
+        // scans
+        for (int i = 0; i < eic.length; i++) {
+            final int lmedian_low = Math.max(0, i - median_window1);
+            final int lmedian_high = Math.min(eic.length - 1,
+                    i + median_window1);
+            while (hi < lmedian_high) {
+                median.add(hi);
+                sum += eic[hi++];
+            }
+            while (lo < lmedian_low) {
+                median.remove(lo);
+                sum -= eic[lo++];
+            }
+            if (median.size() == 0) {
+                c.set(i, channel, 0.0d);
+                continue;
+            }
+            final double current = eic[i];
+            final double mean = sum / median.size();
+            final double lmedian = median.get();
+            final double lstddev = Math.abs(eic[lmedian_high - 1]
+                    - eic[lmedian_low]);
+            final double corrected_value = Math.max(current - lmedian, 0);
+            final double snr = (mean / lstddev);
+            final double snrdb = 10.0d * Math.log10(snr);
+            if (snrdb > 0.0d && log.isDebugEnabled()) {
+                log.debug("Signal : {}, noise: {}, ratio: {}, log(ratio): {}",
+                        new Object[]{current, lmedian, snr, snrdb});
+            }
+            c.set(i, channel, snrdb > this.snrMinimum ? corrected_value
+                    : 0.0d);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public MedianBaselineFilter copy() {
@@ -28,12 +28,11 @@
 package maltcms.commands.filters.array;
 
 import cross.annotations.Configurable;
-import cross.tools.MathTools;
 import lombok.Data;
+import maltcms.math.window.SlidingWindow;
 import org.apache.commons.configuration.Configuration;
 import org.openide.util.lookup.ServiceProvider;
 import ucar.ma2.Array;
-import ucar.ma2.ArrayDouble;
 
 /**
  * <p>MovingMedianFilter class.</p>
@@ -72,12 +71,8 @@ public class MovingMedianFilter extends AArrayFilter {
         Array arr = super.apply(a);
         if (arr.getRank() == 1) {
             final double[] d = (double[]) arr.get1DJavaArray(double.class);
-            final ArrayDouble.D1 ret = new ArrayDouble.D1(d.length);
-            for (int i = 0; i < arr.getShape()[0]; i++) {
-                ret.set(i, MathTools.median(d, i - (this.window), i
-                        + (this.window)));
-            }
-            arr = ret;
+            final double[] median = SlidingWindow.median(d, this.window);
+            arr = Array.makeFromJavaArray(median);
         } else {
             throw new IllegalArgumentException(
                     "Can only work on arrays of dimension 1");
@@ -95,6 +90,6 @@ public class MovingMedianFilter extends AArrayFilter {
     /** {@inheritDoc} */
     @Override
     public MovingMedianFilter copy() {
-        return new MovingMedianFilter();
+        return new MovingMedianFilter(window);
     }
 }
@@ -28,8 +28,8 @@
 package maltcms.commands.filters.array;
 
 import cross.annotations.Configurable;
-import cross.tools.MathTools;
 import lombok.Data;
+import maltcms.math.window.SlidingWindow;
 import org.apache.commons.configuration.Configuration;
 import org.openide.util.lookup.ServiceProvider;
 import ucar.ma2.Array;
@@ -72,7 +72,7 @@ public class TopHatFilter extends AArrayFilter {
         Array arr = super.apply(a);
         if (arr.getRank() == 1) {
             final double[] d = (double[]) arr.get1DJavaArray(double.class);
-            final double[] th = MathTools.topHat(this.window, d);
+            final double[] th = SlidingWindow.topHat(this.window, d);
             arr = Array.makeFromJavaArray(th);
         } else {
             throw new IllegalArgumentException(
@@ -29,7 +29,16 @@ package maltcms.commands.filters.array.wavelet;
 
 import cross.datastructures.tools.EvalTools;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import maltcms.math.fft.Fft;
 
 /**
  * Implementation of ContinuousWaveletTransform. Allows to calculate
@@ -79,6 +88,113 @@ public final class ContinuousWaveletTransform implements Serializable {
         return arr;
     }
 
+    /**
+     * Calculates the same transform as
+     * {@link #apply(double[], double, double...)}, but as a correlation in the
+     * frequency domain.
+     *
+     * @param x an array of double.
+     * @param scale a double.
+     * @param params a double.
+     * @return an array of double.
+     * @since 2.0.1
+     */
+    public final double[] applyFft(final double[] x, final double scale,
+            final double... params) {
+        return applyFft(x, new double[]{scale}, params);
+    }
+
+    /**
+     * Calculates the transform of <code>x</code> for all given scales. The
+     * signal is transformed once, each scale then only requires the transform
+     * of its wavelet kernel, a complex multiplication and one inverse
+     * transform. The scales are processed by the calling thread.
+     *
+     * The returned scaleogram is stored in row-major order with one row per
+     * element of <code>x</code>, the value for position <code>tau</code> and
+     * scale <code>scales[si]</code> is at <code>tau * scales.length + si</code>.
+     * This is the storage layout of an <code>ArrayDouble.D2(x.length,
+     * scales.length)</code>.
+     *
+     * @param x an array of double.
+     * @param scales an array of double.
+     * @param params a double.
+     * @return the scaleogram in row-major order.
+     * @since 2.0.1
+     */
+    public final double[] applyFft(final double[] x, final double[] scales,
+            final double... params) {
+        return applyFft(x, scales, null, params);
+    }
+
+    /**
+     * Calculates the transform of <code>x</code> for all given scales, see
+     * {@link #applyFft(double[], double[], double...)}. The scales are
+     * distributed over the threads of <code>executor</code>. If
+     * <code>executor</code> is null, the scales are processed by the calling
+     * thread.
+     *
+     * @param x an array of double.
+     * @param scales an array of double.
+     * @param executor the executor to use, may be null.
+     * @param params a double.
+     * @return the scaleogram in row-major order.
+     * @since 2.0.1
+     */
+    public final double[] applyFft(final double[] x, final double[] scales,
+            final ExecutorService executor, final double... params) {
+        final int n = x.length;
+        final int nscales = scales.length;
+        final double[] scaleogram = new double[n * nscales];
+        if (n == 0 || nscales == 0) {
+            return scaleogram;
+        }
+        final int m = getTransformLength(n, scales);
+        final double[] xre = new double[m];
+        final double[] xim = new double[m];
+        System.arraycopy(x, 0, xre, 0, n);
+        Fft.transform(xre, xim, false);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        final int chunks = getNumberOfChunks(nscales, executor);
+        for (int c = 0; c < chunks; c++) {
+            final int first = c;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final double[] re = new double[m];
+                    final double[] im = new double[m];
+                    for (int si = first; si < nscales; si += chunks) {
+                        final double scale = scales[si];
+                        if (scale < 1.0d) {
+                            //the direct sum is O(n) for scales below one
+                            final double[] arr = apply(x, scale, params);
+                            for (int tau = 0; tau < n; tau++) {
+                                scaleogram[tau * nscales + si] = arr[tau];
+                            }
+                            continue;
+                        }
+                        fillKernelSpectrum(re, im, scale,
+                                1.0d / Math.sqrt(scale), params);
+                        for (int k = 0; k < m; k++) {
+                            //X * conj(K)
+                            final double kr = re[k];
+                            final double ki = im[k];
+                            re[k] = xre[k] * kr + xim[k] * ki;
+                            im[k] = xim[k] * kr - xre[k] * ki;
+                        }
+                        Fft.transform(re, im, true);
+                        for (int tau = 0; tau < n; tau++) {
+                            scaleogram[tau * nscales + si] = re[tau];
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks, executor);
+        return scaleogram;
+    }
+
     /**
      * <p>getBoundsForWavelet.</p>
      *
@@ -115,34 +231,190 @@ public final class ContinuousWaveletTransform implements Serializable {
      */
     public final double[] applyInverse(final List<double[]> scaleImages,
             final List<Double> scales, final double... params) {
-        final double[] arr = new double[scaleImages.get(0).length];
-
-        for (int si = 0; si < scaleImages.size(); si++) {
-            final double s = scales.get(si);
-            final double[] lut = new double[2 * ((int) s) + 1];
-            final int minIdx = -((int) s);
-            fillLut(lut, s, minIdx, params);
-            final double[] d = scaleImages.get(si);
-            //can we optimize this loop?
-            //can we decompose the sum below into
-            //so that we simply remove the oldest element
-            //and add the newest one?
-            for (int tau = 0; tau < arr.length; tau++) {
-                final int mint = Math.max(0, (int) (tau - s + 1));
-                final int maxt = Math.min(arr.length - 1, (int) (tau + s - 1));
-                for (int t = mint; t <= maxt; t++) {
-                    arr[tau] += (d[t] * lut[map(t - tau, minIdx)] / (s * s));
+        return applyInverse(scaleImages, scales, null, params);
+    }
+
+    /**
+     * Reconstructs the signal from its scale images, see
+     * {@link #applyInverse(java.util.List, java.util.List, double...)}. The
+     * scales are distributed over the threads of <code>executor</code>. If
+     * <code>executor</code> is null, the scales are processed by the calling
+     * thread.
+     *
+     * @param scaleImages a {@link java.util.List} object.
+     * @param scales a {@link java.util.List} object.
+     * @param executor the executor to use, may be null.
+     * @param params a double.
+     * @return an array of double.
+     * @since 2.0.1
+     */
+    public final double[] applyInverse(final List<double[]> scaleImages,
+            final List<Double> scales, final ExecutorService executor,
+            final double... params) {
+        final int n = scaleImages.get(0).length;
+        final int nscales = scaleImages.size();
+        final double[] scaleArray = new double[nscales];
+        for (int si = 0; si < nscales; si++) {
+            scaleArray[si] = scales.get(si);
+        }
+        final int m = getTransformLength(n, scaleArray);
+        //every chunk accumulates sum(D_s * conj(K_s) / s^2) over its scales,
+        //so that a single inverse transform suffices
+        final List<Callable<double[][]>> tasks = new ArrayList<>();
+        final int chunks = getNumberOfChunks(nscales, executor);
+        for (int c = 0; c < chunks; c++) {
+            final int first = c;
+            tasks.add(new Callable<double[][]>() {
+                @Override
+                public double[][] call() throws Exception {
+                    final double[] accRe = new double[m];
+                    final double[] accIm = new double[m];
+                    final double[] direct = new double[n];
+                    final double[] re = new double[m];
+                    final double[] im = new double[m];
+                    final double[] dre = new double[m];
+                    final double[] dim = new double[m];
+                    for (int si = first; si < nscales; si += chunks) {
+                        final double s = scaleArray[si];
+                        final double[] d = scaleImages.get(si);
+                        if (s < 1.0d) {
+                            //the direct sum is O(n) for scales below one
+                            accumulateInverse(direct, d, s, params);
+                            continue;
+                        }
+                        fillKernelSpectrum(re, im, s, 1.0d / (s * s), params);
+                        Arrays.fill(dre, 0.0d);
+                        Arrays.fill(dim, 0.0d);
+                        System.arraycopy(d, 0, dre, 0, n);
+                        Fft.transform(dre, dim, false);
+                        for (int k = 0; k < m; k++) {
+                            accRe[k] += dre[k] * re[k] + dim[k] * im[k];
+                            accIm[k] += dim[k] * re[k] - dre[k] * im[k];
+                        }
+                    }
+                    return new double[][]{accRe, accIm, direct};
                 }
+            });
+        }
+        final double[] accRe = new double[m];
+        final double[] accIm = new double[m];
+        final double[] direct = new double[n];
+        for (double[][] partial : invokeAll(tasks, executor)) {
+            for (int k = 0; k < m; k++) {
+                accRe[k] += partial[0][k];
+                accIm[k] += partial[1][k];
+            }
+            for (int tau = 0; tau < n; tau++) {
+                direct[tau] += partial[2][tau];
             }
         }
+        Fft.transform(accRe, accIm, true);
         final double admConstSq = w.getAdmissabilityConstant()
                 * w.getAdmissabilityConstant();
-        for (int i = 0; i < arr.length; i++) {
-            arr[i] /= (admConstSq);
+        final double[] arr = new double[n];
+        for (int i = 0; i < n; i++) {
+            arr[i] = (accRe[i] + direct[i]) / (admConstSq);
         }
         return arr;
     }
 
+    final void accumulateInverse(final double[] arr, final double[] d,
+            final double s, final double... params) {
+        final double[] lut = new double[2 * ((int) s) + 1];
+        final int minIdx = -((int) s);
+        fillLut(lut, s, minIdx, params);
+        for (int tau = 0; tau < arr.length; tau++) {
+            final int mint = Math.max(0, (int) (tau - s + 1));
+            final int maxt = Math.min(arr.length - 1, (int) (tau + s - 1));
+            for (int t = mint; t <= maxt; t++) {
+                arr[tau] += (d[t] * lut[map(t - tau, minIdx)] / (s * s));
+            }
+        }
+    }
+
+    /**
+     * Returns the support of the wavelet kernel at the given scale as offsets
+     * <code>t - tau</code>, matching the bounds of the direct sums.
+     */
+    final int[] getKernelOffsets(final double scale) {
+        return new int[]{(int) Math.floor(1.0d - scale),
+            (int) Math.floor(scale - 1.0d)};
+    }
+
+    /**
+     * Returns a power of two transform length large enough to avoid
+     * wrap-around of the circular correlation for all scales.
+     */
+    final int getTransformLength(final int n, final double[] scales) {
+        int maxOffset = 0;
+        for (double scale : scales) {
+            if (scale >= 1.0d) {
+                final int[] offsets = getKernelOffsets(scale);
+                maxOffset = Math.max(maxOffset, Math.max(-offsets[0],
+                        offsets[1]));
+            }
+        }
+        return Fft.nextPowerOfTwo(n + maxOffset + 1);
+    }
+
+    /**
+     * Places the scaled wavelet kernel in wrap-around order into
+     * <code>re</code>, clears <code>im</code> and transforms both in place.
+     */
+    final void fillKernelSpectrum(final double[] re, final double[] im,
+            final double scale, final double norm, final double... params) {
+        final int m = re.length;
+        Arrays.fill(re, 0.0d);
+        Arrays.fill(im, 0.0d);
+        final int[] offsets = getKernelOffsets(scale);
+        for (int delta = offsets[0]; delta <= offsets[1]; delta++) {
+            re[delta < 0 ? delta + m : delta] = w.applyMotherWavelet(
+                    (double) delta / scale, params) * norm;
+        }
+        Fft.transform(re, im, false);
+    }
+
+    final int getNumberOfChunks(final int nscales,
+            final ExecutorService executor) {
+        if (executor == null) {
+            return 1;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (executor instanceof ForkJoinPool) {
+            threads = ((ForkJoinPool) executor).getParallelism();
+        } else if (executor instanceof ThreadPoolExecutor) {
+            threads = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+        }
+        return Math.max(1, Math.min(nscales, threads));
+    }
+
+    final <T> List<T> invokeAll(final List<Callable<T>> tasks,
+            final ExecutorService executor) {
+        final List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+            } else {
+                for (Future<T> f : executor.invokeAll(tasks)) {
+                    results.add(f.get());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        return results;
+    }
+
     final int map(final int delta, final int min) {
         return delta + ((-1) * min);
     }
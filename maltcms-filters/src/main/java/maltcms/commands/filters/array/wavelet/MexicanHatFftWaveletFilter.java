@@ -28,10 +28,12 @@
 package maltcms.commands.filters.array.wavelet;
 
 import cross.annotations.Configurable;
+import java.util.concurrent.ExecutorService;
 
 import maltcms.commands.filters.array.AArrayFilter;
 import org.apache.commons.configuration.Configuration;
 import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
 import ucar.ma2.DataType;
 
 /**
@@ -106,7 +108,7 @@ public class MexicanHatFftWaveletFilter extends AArrayFilter {
         Array arr = super.apply(a);
 
         if (arr.getRank() == 1) {
-            return Array.makeFromJavaArray(cwt.apply((double[]) arr
+            return Array.makeFromJavaArray(cwt.applyFft((double[]) arr
                     .get1DJavaArray(double.class), this.scale, this.variance));
         } else {
             throw new IllegalArgumentException(getClass().getSimpleName()
@@ -114,6 +116,46 @@ public class MexicanHatFftWaveletFilter extends AArrayFilter {
         }
     }
 
+    /**
+     * Calculates the scaleogram of the one dimensional array <code>a</code>
+     * for all given scales. The array is transformed only once, see
+     * {@link ContinuousWaveletTransform#applyFft(double[], double[], double...)}.
+     *
+     * @param a an array of {@link ucar.ma2.Array} objects.
+     * @param scales an array of double.
+     * @return the scaleogram with one row per element of <code>a</code> and
+     * one column per scale.
+     * @since 2.0.1
+     */
+    public ArrayDouble.D2 applyScales(final Array a, final double[] scales) {
+        return applyScales(a, scales, null);
+    }
+
+    /**
+     * Calculates the scaleogram of the one dimensional array <code>a</code>
+     * for all given scales, distributing the scales over the threads of
+     * <code>executor</code>, see
+     * {@link ContinuousWaveletTransform#applyFft(double[], double[], java.util.concurrent.ExecutorService, double...)}.
+     *
+     * @param a an array of {@link ucar.ma2.Array} objects.
+     * @param scales an array of double.
+     * @param executor the executor to use, may be null.
+     * @return the scaleogram with one row per element of <code>a</code> and
+     * one column per scale.
+     * @since 2.0.1
+     */
+    public ArrayDouble.D2 applyScales(final Array a, final double[] scales,
+            final ExecutorService executor) {
+        if (a.getRank() != 1) {
+            throw new IllegalArgumentException(getClass().getSimpleName()
+                    + " can only be applied to one dimensional arrays!");
+        }
+        final double[] values = (double[]) a.get1DJavaArray(double.class);
+        return (ArrayDouble.D2) Array.factory(DataType.DOUBLE,
+                new int[]{values.length, scales.length},
+                cwt.applyFft(values, scales, executor, this.variance));
+    }
+
     /** {@inheritDoc} */
     @Override
     public void configure(final Configuration cfg) {
@@ -0,0 +1,124 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.fft;
+
+/**
+ * In-place iterative radix-2 fast Fourier transform on separate arrays of
+ * real and imaginary parts.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class Fft {
+
+    private Fft() {
+    }
+
+    /**
+     * Returns the smallest power of two that is greater than or equal to
+     * <code>n</code>.
+     *
+     * @param n a positive int
+     * @return the next power of two
+     */
+    public static int nextPowerOfTwo(int n) {
+        if (n <= 1) {
+            return 1;
+        }
+        final int p = Integer.highestOneBit(n - 1) << 1;
+        if (p <= 0) {
+            throw new IllegalArgumentException("Length " + n + " exceeds the maximum FFT length!");
+        }
+        return p;
+    }
+
+    /**
+     * Transforms the given complex sequence in place. The inverse transform
+     * is scaled by <code>1/n</code>, so that a forward transform followed by
+     * an inverse transform reproduces the input.
+     *
+     * @param re the real parts, length must be a power of two
+     * @param im the imaginary parts, same length as <code>re</code>
+     * @param inverse if true, computes the inverse transform
+     */
+    public static void transform(final double[] re, final double[] im, final boolean inverse) {
+        final int n = re.length;
+        if (im.length != n) {
+            throw new IllegalArgumentException("Real and imaginary parts must have the same length!");
+        }
+        if (Integer.bitCount(n) > 1) {
+            throw new IllegalArgumentException("Length " + n + " is not a power of two!");
+        }
+        if (n < 2) {
+            return;
+        }
+        // bit reversal permutation
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        final double sign = inverse ? 1.0d : -1.0d;
+        for (int len = 2; len <= n; len <<= 1) {
+            final int half = len >> 1;
+            final double theta = sign * 2.0d * Math.PI / len;
+            // twiddle factors are computed directly instead of by
+            // recurrence, to keep the rounding error independent of n
+            for (int k = 0; k < half; k++) {
+                final double wr = Math.cos(theta * k);
+                final double wi = Math.sin(theta * k);
+                for (int i = k; i < n; i += len) {
+                    final int j = i + half;
+                    final double xr = re[j] * wr - im[j] * wi;
+                    final double xi = re[j] * wi + im[j] * wr;
+                    re[j] = re[i] - xr;
+                    im[j] = im[i] - xi;
+                    re[i] += xr;
+                    im[i] += xi;
+                }
+            }
+        }
+        if (inverse) {
+            final double scale = 1.0d / n;
+            for (int i = 0; i < n; i++) {
+                re[i] *= scale;
+                im[i] *= scale;
+            }
+        }
+    }
+}
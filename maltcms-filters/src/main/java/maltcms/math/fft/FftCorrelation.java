@@ -0,0 +1,157 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.fft;
+
+/**
+ * Auto- and cross-correlation of real sequences via the Wiener-Khinchin
+ * theorem. The sequences are zero padded, so that the circular correlation
+ * computed in the frequency domain equals the linear correlation for all
+ * requested lags. This takes O(n log n) operations instead of the O(n*lags)
+ * of the direct estimator. For small inputs, the direct estimator is used.
+ *
+ * All estimators are normalized like the direct estimator
+ * <pre>
+ * r(lag) = sum_{i=0}^{n-lag-1} (a[i]-mean)*(b[i+lag]-mean) / ((n-lag)*variance)
+ * </pre>
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class FftCorrelation {
+
+    /**
+     * Below this number of multiply-add operations of the direct estimator,
+     * the direct estimator is used.
+     */
+    private static final long DIRECT_THRESHOLD = 1L << 16;
+
+    private FftCorrelation() {
+    }
+
+    /**
+     * Estimates the autocorrelation of <code>a</code> for lags
+     * <code>0</code> to <code>maxLag</code>.
+     *
+     * @param a the sequence
+     * @param mean the mean to subtract
+     * @param variance the variance to normalize with
+     * @param maxLag the maximum lag, less than the length of <code>a</code>
+     * @return the autocorrelation, indexed by lag
+     */
+    public static double[] autoCorrelation(final double[] a, final double mean,
+            final double variance, final int maxLag) {
+        return crossCorrelation(a, a, mean, variance, maxLag);
+    }
+
+    /**
+     * Estimates the cross-correlation of <code>a</code> and <code>b</code>
+     * for lags <code>0</code> to <code>maxLag</code>, where <code>b</code>
+     * is shifted by lag against <code>a</code>. Missing elements of
+     * <code>b</code> are treated as equal to the mean.
+     *
+     * @param a the first sequence
+     * @param b the second sequence
+     * @param mean the mean to subtract from both sequences
+     * @param variance the variance to normalize with
+     * @param maxLag the maximum lag, less than the length of <code>a</code>
+     * @return the cross-correlation, indexed by lag
+     */
+    public static double[] crossCorrelation(final double[] a, final double[] b,
+            final double mean, final double variance, final int maxLag) {
+        final int n = a.length;
+        if (maxLag < 0 || maxLag >= Math.max(1, n)) {
+            throw new IllegalArgumentException("Maximum lag must be between 0 and " + (n - 1) + "!");
+        }
+        final double[] r = ((long) n * (maxLag + 1) <= DIRECT_THRESHOLD)
+                ? directSums(a, b, mean, maxLag)
+                : fftSums(a, b, mean, maxLag);
+        for (int lag = 0; lag <= maxLag; lag++) {
+            r[lag] /= ((n - lag) * variance);
+        }
+        return r;
+    }
+
+    /**
+     * Computes the unnormalized lagged products directly.
+     */
+    private static double[] directSums(final double[] a, final double[] b,
+            final double mean, final int maxLag) {
+        final int n = a.length;
+        final int nb = Math.min(n, b.length);
+        final double[] r = new double[maxLag + 1];
+        for (int lag = 0; lag <= maxLag; lag++) {
+            double res = 0.0d;
+            for (int i = 0; i + lag < nb; i++) {
+                res += (a[i] - mean) * (b[i + lag] - mean);
+            }
+            r[lag] = res;
+        }
+        return r;
+    }
+
+    /**
+     * Computes the unnormalized lagged products as the inverse transform of
+     * conj(FFT(a))*FFT(b).
+     */
+    private static double[] fftSums(final double[] a, final double[] b,
+            final double mean, final int maxLag) {
+        final int n = a.length;
+        final int nb = Math.min(n, b.length);
+        final int m = Fft.nextPowerOfTwo(n + maxLag + 1);
+        final double[] are = new double[m];
+        final double[] aim = new double[m];
+        for (int i = 0; i < n; i++) {
+            are[i] = a[i] - mean;
+        }
+        Fft.transform(are, aim, false);
+        if (a == b) {
+            for (int k = 0; k < m; k++) {
+                are[k] = are[k] * are[k] + aim[k] * aim[k];
+                aim[k] = 0.0d;
+            }
+        } else {
+            final double[] bre = new double[m];
+            final double[] bim = new double[m];
+            for (int i = 0; i < nb; i++) {
+                bre[i] = b[i] - mean;
+            }
+            Fft.transform(bre, bim, false);
+            for (int k = 0; k < m; k++) {
+                // conj(A)*B
+                final double re = are[k] * bre[k] + aim[k] * bim[k];
+                final double im = are[k] * bim[k] - aim[k] * bre[k];
+                are[k] = re;
+                aim[k] = im;
+            }
+        }
+        Fft.transform(are, aim, true);
+        final double[] r = new double[maxLag + 1];
+        System.arraycopy(are, 0, r, 0, maxLag + 1);
+        return r;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.window;
+
+import java.util.Arrays;
+
+/**
+ * Streaming sliding-window median, minimum and maximum over primitive
+ * <code>double[]</code> arrays.
+ *
+ * Windows are centered on each index and clamped at the array bounds, i.e.
+ * index <code>i</code> covers <code>[max(0, i - window), min(n - 1, i +
+ * window)]</code>. Minimum and maximum use monotonic deques and run in linear
+ * time. Medians are answered from a rank-indexed Fenwick tree in
+ * <code>O(n log n)</code>, returning the same values as sorting each window.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class SlidingWindow {
+
+    private SlidingWindow() {
+    }
+
+    /**
+     * Returns the median of each clamped window. For windows with an even
+     * number of elements, the mean of the two central values is returned.
+     *
+     * @param values the values
+     * @param window the number of elements on either side of the center
+     * @return the sliding median
+     */
+    public static double[] median(final double[] values, final int window) {
+        checkWindow(window);
+        final int n = values.length;
+        final double[] ret = new double[n];
+        final Median median = new Median(values);
+        int lo = 0;
+        int hi = -1;
+        for (int i = 0; i < n; i++) {
+            final int nlo = Math.max(0, i - window);
+            final int nhi = (int) Math.min(n - 1L, (long) i + window);
+            while (hi < nhi) {
+                median.add(++hi);
+            }
+            while (lo < nlo) {
+                median.remove(lo++);
+            }
+            ret[i] = median.get();
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the minimum of each clamped window (morphological erosion).
+     *
+     * @param values the values
+     * @param window the number of elements on either side of the center
+     * @return the sliding minimum
+     */
+    public static double[] min(final double[] values, final int window) {
+        return extremum(values, window, false);
+    }
+
+    /**
+     * Returns the maximum of each clamped window (morphological dilation).
+     *
+     * @param values the values
+     * @param window the number of elements on either side of the center
+     * @return the sliding maximum
+     */
+    public static double[] max(final double[] values, final int window) {
+        return extremum(values, window, true);
+    }
+
+    /**
+     * Returns the white top-hat transform, the difference between the values
+     * and their morphological opening.
+     *
+     * @param window the number of elements on either side of the center
+     * @param values the values
+     * @return the top-hat transform
+     */
+    public static double[] topHat(final int window, final double[] values) {
+        final double[] opening = max(min(values, window), window);
+        for (int i = 0; i < values.length; i++) {
+            opening[i] = values[i] - opening[i];
+        }
+        return opening;
+    }
+
+    /**
+     * Returns the black top-hat transform, the difference between the
+     * morphological closing of the values and the values.
+     *
+     * @param window the number of elements on either side of the center
+     * @param values the values
+     * @return the bottom-hat transform
+     */
+    public static double[] bottomHat(final int window, final double[] values) {
+        final double[] closing = min(max(values, window), window);
+        for (int i = 0; i < values.length; i++) {
+            closing[i] = closing[i] - values[i];
+        }
+        return closing;
+    }
+
+    private static double[] extremum(final double[] values, final int window,
+            final boolean maximum) {
+        checkWindow(window);
+        final int n = values.length;
+        final double[] ret = new double[n];
+        // indices of candidate extrema, values monotone from head to tail
+        final int[] deque = new int[n];
+        int head = 0;
+        int tail = 0;
+        int hi = -1;
+        for (int i = 0; i < n; i++) {
+            final int lo = Math.max(0, i - window);
+            final int nhi = (int) Math.min(n - 1L, (long) i + window);
+            while (hi < nhi) {
+                hi++;
+                final double v = values[hi];
+                while (tail > head && dominated(values[deque[tail - 1]], v,
+                        maximum)) {
+                    tail--;
+                }
+                deque[tail++] = hi;
+            }
+            while (deque[head] < lo) {
+                head++;
+            }
+            ret[i] = values[deque[head]];
+        }
+        return ret;
+    }
+
+    private static boolean dominated(final double candidate,
+            final double value, final boolean maximum) {
+        return maximum ? candidate <= value : candidate >= value;
+    }
+
+    private static void checkWindow(final int window) {
+        if (window < 0) {
+            throw new IllegalArgumentException(
+                    "Window must be non-negative, was " + window);
+        }
+    }
+
+    /**
+     * Running median over a multiset of indices into a fixed value array.
+     * Values are mapped to their rank among the distinct values once, after
+     * which insertion, removal and the median query each take
+     * <code>O(log n)</code>.
+     */
+    public static final class Median {
+
+        private final double[] sorted;
+        private final int[] rank;
+        private final int[] tree;
+        private final int highestBit;
+        private int size = 0;
+
+        /**
+         * Creates a new running median for the given values. The array is
+         * not modified.
+         *
+         * @param values the values, addressed by index in {@link #add(int)}
+         * and {@link #remove(int)}
+         */
+        public Median(final double[] values) {
+            final double[] s = Arrays.copyOf(values, values.length);
+            Arrays.sort(s);
+            int m = 0;
+            for (int i = 0; i < s.length; i++) {
+                if (m == 0 || Double.compare(s[m - 1], s[i]) != 0) {
+                    s[m++] = s[i];
+                }
+            }
+            this.sorted = Arrays.copyOf(s, m);
+            this.rank = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                this.rank[i] = Arrays.binarySearch(this.sorted, values[i]);
+            }
+            this.tree = new int[m + 1];
+            this.highestBit = m == 0 ? 0 : Integer.highestOneBit(m);
+        }
+
+        /**
+         * Adds the value at <code>index</code> to the window.
+         *
+         * @param index the index into the value array
+         */
+        public void add(final int index) {
+            update(rank[index] + 1, 1);
+            size++;
+        }
+
+        /**
+         * Removes the value at <code>index</code> from the window. The value
+         * must have been added before.
+         *
+         * @param index the index into the value array
+         */
+        public void remove(final int index) {
+            update(rank[index] + 1, -1);
+            size--;
+        }
+
+        /**
+         * Returns the number of values in the window.
+         *
+         * @return the window size
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the median of the values in the window.
+         *
+         * @return the median
+         * @throws IllegalStateException if the window is empty
+         */
+        public double get() {
+            if (size == 0) {
+                throw new IllegalStateException("Window is empty!");
+            }
+            final int mid = size / 2;
+            if (size % 2 == 0) {
+                return (select(mid - 1) + select(mid)) / 2.0d;
+            }
+            return select(mid);
+        }
+
+        /**
+         * Returns the <code>k</code>-th smallest value in the window,
+         * starting at zero.
+         *
+         * @param k the zero-based order statistic
+         * @return the value
+         */
+        public double select(final int k) {
+            if (k < 0 || k >= size) {
+                throw new IndexOutOfBoundsException("k=" + k + ", size=" + size);
+            }
+            int pos = 0;
+            int remaining = k + 1;
+            for (int step = highestBit; step > 0; step >>= 1) {
+                final int next = pos + step;
+                if (next < tree.length && tree[next] < remaining) {
+                    pos = next;
+                    remaining -= tree[next];
+                }
+            }
+            return sorted[pos];
+        }
+
+        private void update(int i, final int delta) {
+            for (; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+    }
+}
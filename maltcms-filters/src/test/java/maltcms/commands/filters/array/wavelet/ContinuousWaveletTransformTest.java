@@ -0,0 +1,137 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.filters.array.wavelet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class ContinuousWaveletTransformTest {
+
+    private static final double VARIANCE = 0.63628;
+
+    private double[] createSignal(Random r, int n) {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = 100.0d * r.nextDouble() + 50.0d * Math.sin(i / 7.0d);
+        }
+        return x;
+    }
+
+    /**
+     * Scales below one, fractional scales and scales wider than the signal.
+     */
+    private double[] createScales(int n) {
+        return new double[]{0.5d, 1.0d, 1.5d, 2.0d, 3.7d, 8.0d, 16.2d,
+            n + 5.5d, 2 * n + 3};
+    }
+
+    private double maxAbs(double[] a) {
+        double max = 0.0d;
+        for (double d : a) {
+            max = Math.max(max, Math.abs(d));
+        }
+        return max;
+    }
+
+    /**
+     * Test of applyFft method, of class ContinuousWaveletTransform.
+     */
+    @Test
+    public void testApplyFftMatchesApply() {
+        ContinuousWaveletTransform cwt = new ContinuousWaveletTransform(new MexicanHatWavelet());
+        Random r = new Random(1);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int n : new int[]{1, 2, 7, 64, 101, 257}) {
+                double[] x = createSignal(r, n);
+                double[] scales = createScales(n);
+                double[] sequential = cwt.applyFft(x, scales, VARIANCE);
+                double[] parallel = cwt.applyFft(x, scales, pool, VARIANCE);
+                Assert.assertArrayEquals(sequential, parallel, 0.0d);
+                for (int si = 0; si < scales.length; si++) {
+                    double[] expected = cwt.apply(x, scales[si], VARIANCE);
+                    double delta = 1.0e-9 * (1.0d + maxAbs(expected));
+                    for (int tau = 0; tau < n; tau++) {
+                        Assert.assertEquals(expected[tau],
+                                sequential[tau * scales.length + si], delta);
+                    }
+                    Assert.assertArrayEquals(expected,
+                            cwt.applyFft(x, scales[si], VARIANCE), delta);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test of applyInverse method, of class ContinuousWaveletTransform.
+     */
+    @Test
+    public void testApplyInverseMatchesDirectSum() {
+        MexicanHatWavelet w = new MexicanHatWavelet();
+        ContinuousWaveletTransform cwt = new ContinuousWaveletTransform(w);
+        Random r = new Random(2);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int n : new int[]{1, 7, 64, 101, 257}) {
+                double[] x = createSignal(r, n);
+                double[] scaleArray = createScales(n);
+                List<double[]> scaleImages = new ArrayList<>();
+                List<Double> scales = new ArrayList<>();
+                double[] expected = new double[n];
+                for (double s : scaleArray) {
+                    double[] d = cwt.apply(x, s, VARIANCE);
+                    scaleImages.add(d);
+                    scales.add(s);
+                    cwt.accumulateInverse(expected, d, s, VARIANCE);
+                }
+                double admConstSq = w.getAdmissabilityConstant()
+                        * w.getAdmissabilityConstant();
+                for (int i = 0; i < n; i++) {
+                    expected[i] /= admConstSq;
+                }
+                double delta = 1.0e-9 * (1.0d + maxAbs(expected));
+                double[] sequential = cwt.applyInverse(scaleImages, scales, VARIANCE);
+                Assert.assertArrayEquals(expected, sequential, delta);
+                double[] parallel = cwt.applyInverse(scaleImages, scales, pool, VARIANCE);
+                Assert.assertArrayEquals(expected, parallel, delta);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.fft;
+
+import java.util.Random;
+import maltcms.commands.filters.array.TestArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class FftCorrelationTest {
+
+    private double[] direct(double[] a, double[] b, double mean, double variance, int maxLag) {
+        final int n = a.length;
+        double[] r = new double[maxLag + 1];
+        for (int lag = 0; lag <= maxLag; lag++) {
+            double res = 0.0d;
+            for (int i = 0; i < n - lag; i++) {
+                res += (a[i] - mean) * (b[i + lag] - mean);
+            }
+            r[lag] = res / ((n - lag) * variance);
+        }
+        return r;
+    }
+
+    /**
+     * Test of autoCorrelation method, of class FftCorrelation.
+     */
+    @Test
+    public void testAutoCorrelation() {
+        double[] tic = TestArray.TIC;
+        double mean = 0.0d;
+        for (double d : tic) {
+            mean += d;
+        }
+        mean /= tic.length;
+        double variance = 0.0d;
+        for (double d : tic) {
+            variance += (d - mean) * (d - mean);
+        }
+        variance /= tic.length;
+        int maxLag = tic.length - 1;
+        double[] expected = direct(tic, tic, mean, variance, maxLag);
+        double[] actual = FftCorrelation.autoCorrelation(tic, mean, variance, maxLag);
+        Assert.assertEquals(expected.length, actual.length);
+        for (int lag = 0; lag <= maxLag; lag++) {
+            Assert.assertEquals(expected[lag], actual[lag], 1.0e-9);
+        }
+        Assert.assertEquals(1.0d, actual[0], 1.0e-9);
+    }
+
+    /**
+     * Test of crossCorrelation method, of class FftCorrelation.
+     */
+    @Test
+    public void testCrossCorrelation() {
+        Random r = new Random(1);
+        for (int n : new int[]{1, 7, 300, 5000}) {
+            double[] a = new double[n];
+            double[] b = new double[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = 100.0d * r.nextDouble() + 10.0d * Math.sin(i / 5.0d);
+                b[i] = 100.0d * r.nextDouble();
+            }
+            int maxLag = n / 2;
+            double[] expected = direct(a, b, 0.0d, 1.0d, maxLag);
+            double[] actual = FftCorrelation.crossCorrelation(a, b, 0.0d, 1.0d, maxLag);
+            for (int lag = 0; lag <= maxLag; lag++) {
+                Assert.assertEquals(expected[lag], actual[lag], 1.0e-9 * Math.abs(expected[lag]));
+            }
+        }
+    }
+
+    /**
+     * Test of transform method, of class Fft.
+     */
+    @Test
+    public void testTransformRoundTrip() {
+        Random r = new Random(2);
+        double[] re = new double[1024];
+        double[] im = new double[1024];
+        for (int i = 0; i < re.length; i++) {
+            re[i] = r.nextGaussian();
+        }
+        double[] orig = re.clone();
+        Fft.transform(re, im, false);
+        Fft.transform(re, im, true);
+        for (int i = 0; i < re.length; i++) {
+            Assert.assertEquals(orig[i], re[i], 1.0e-12);
+            Assert.assertEquals(0.0d, im[i], 1.0e-12);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.window;
+
+import java.util.Arrays;
+import java.util.Random;
+import maltcms.commands.filters.array.TestArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class SlidingWindowTest {
+
+    private double[] window(double[] d, int i, int w) {
+        return Arrays.copyOfRange(d, Math.max(0, i - w), Math.min(d.length - 1, i + w) + 1);
+    }
+
+    private double median(double[] d) {
+        Arrays.sort(d);
+        int mid = d.length / 2;
+        return d.length % 2 == 0 ? (d[mid - 1] + d[mid]) / 2.0d : d[mid];
+    }
+
+    /**
+     * Test of median, min and max methods, of class SlidingWindow.
+     */
+    @Test
+    public void testAgainstSortedWindows() {
+        Random r = new Random(1234L);
+        for (int t = 0; t < 200; t++) {
+            int n = 1 + r.nextInt(80);
+            int w = r.nextInt(20);
+            double[] d = new double[n];
+            for (int i = 0; i < n; i++) {
+                // few distinct values to exercise ties
+                d[i] = r.nextInt(10) - 5;
+            }
+            double[] median = SlidingWindow.median(d, w);
+            double[] min = SlidingWindow.min(d, w);
+            double[] max = SlidingWindow.max(d, w);
+            for (int i = 0; i < n; i++) {
+                double[] win = window(d, i, w);
+                Assert.assertEquals(median(win), median[i], 0.0d);
+                Assert.assertEquals(win[0], min[i], 0.0d);
+                Assert.assertEquals(win[win.length - 1], max[i], 0.0d);
+            }
+        }
+    }
+
+    /**
+     * Test of topHat and bottomHat methods, of class SlidingWindow.
+     */
+    @Test
+    public void testTopHatAndBottomHat() {
+        double[] tic = TestArray.TIC;
+        int w = 50;
+        double[] opening = SlidingWindow.max(SlidingWindow.min(tic, w), w);
+        double[] closing = SlidingWindow.min(SlidingWindow.max(tic, w), w);
+        double[] topHat = SlidingWindow.topHat(w, tic);
+        double[] bottomHat = SlidingWindow.bottomHat(w, tic);
+        for (int i = 0; i < tic.length; i++) {
+            Assert.assertTrue(opening[i] <= tic[i]);
+            Assert.assertTrue(closing[i] >= tic[i]);
+            Assert.assertEquals(tic[i] - opening[i], topHat[i], 0.0d);
+            Assert.assertEquals(closing[i] - tic[i], bottomHat[i], 0.0d);
+        }
+    }
+
+    /**
+     * Test of the running median, of class SlidingWindow.Median.
+     */
+    @Test
+    public void testRunningMedian() {
+        double[] d = {3, 1, 4, 1, 5, 9, 2, 6};
+        SlidingWindow.Median median = new SlidingWindow.Median(d);
+        for (int i = 0; i < d.length; i++) {
+            median.add(i);
+        }
+        Assert.assertEquals(3.5d, median.get(), 0.0d);
+        Assert.assertEquals(1.0d, median.select(0), 0.0d);
+        Assert.assertEquals(9.0d, median.select(7), 0.0d);
+        median.remove(5);
+        median.remove(7);
+        Assert.assertEquals(6, median.size());
+        Assert.assertEquals(2.5d, median.get(), 0.0d);
+    }
+}
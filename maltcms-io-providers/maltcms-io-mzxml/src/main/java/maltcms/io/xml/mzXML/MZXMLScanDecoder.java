@@ -0,0 +1,365 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.io.xml.mzXML;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.LoggerFactory;
+import org.systemsbiology.jrap.staxnxt.MSXMLParser;
+import org.systemsbiology.jrap.staxnxt.Scan;
+import org.systemsbiology.jrap.staxnxt.ScanHeader;
+
+/**
+ * Decodes a range of scans of an mzXML file in a single pass over the scan
+ * offset index.
+ *
+ * Each scan is read exactly once, its base64 (and possibly zlib compressed)
+ * peak block yields both the mass and the intensity values, which are packed
+ * into contiguous primitive buffers together with the offset of each scan.
+ * Independent scans are decoded in parallel, since every call to
+ * {@link MSXMLParser#rap(int)} uses its own input stream and parser. Header
+ * only information is read via {@link MSXMLParser#rapHeader(int)}, which
+ * stops before the peak block.
+ *
+ * All decoders share one pool of daemon threads, which are created on demand
+ * and terminate after being idle for a minute. Each call uses at most the
+ * configured number of threads of that pool.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public class MZXMLScanDecoder {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(MZXMLScanDecoder.class);
+    private static final int SCANS_PER_TASK = 32;
+    private static final double[][] NO_PEAKS = new double[][]{new double[0], new double[0]};
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "mzxml-decoder-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private final MSXMLParser parser;
+    private final int mslevel;
+    private final int maxThreads;
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param parser the random access parser of the mzXML file
+     * @param mslevel the ms level of scans to decode, 0 for all scans
+     * @param maxThreads the maximum number of threads, values smaller than one
+     * select the number of available processors
+     */
+    public MZXMLScanDecoder(final MSXMLParser parser, final int mslevel,
+            final int maxThreads) {
+        this.parser = parser;
+        this.mslevel = mslevel;
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Reads the headers of the scans with zero-based indices in
+     * <code>[start,end)</code>, regardless of their ms level. Scans that can
+     * not be read have a null header. The returned array is shorter than
+     * <code>end-start</code>, if the range extends beyond the last scan.
+     *
+     * @param start the first scan index
+     * @param end the scan index after the last scan
+     * @return the scan headers
+     */
+    public ScanHeader[] readHeaders(final int start, final int end) {
+        final int n = Math.max(0, limit(end) - start);
+        final ScanHeader[] headers = new ScanHeader[n];
+        run(n, new Block() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    headers[i] = parser.rapHeader(start + i + 1);
+                }
+            }
+        });
+        return headers;
+    }
+
+    /**
+     * Returns true, if a scan with the given header is selected by the ms
+     * level of this decoder.
+     *
+     * @param header the scan header, may be null
+     * @return true, if the scan is selected
+     */
+    public boolean isSelected(final ScanHeader header) {
+        return header != null && (mslevel == 0 || header.getMsLevel() == mslevel);
+    }
+
+    /**
+     * Decodes the peaks of all selected scans with zero-based indices in
+     * <code>[start,end)</code>.
+     *
+     * @param start the first scan index
+     * @param end the scan index after the last scan
+     * @return the decoded scans
+     */
+    public DecodedScans decode(final int start, final int end) {
+        final long t0 = System.currentTimeMillis();
+        final int n = Math.max(0, limit(end) - start);
+        final ScanHeader[] headers = new ScanHeader[n];
+        final double[][][] peaks = new double[n][][];
+        read(start, headers, peaks);
+        int scans = 0;
+        int points = 0;
+        for (int i = 0; i < n; i++) {
+            if (headers[i] != null) {
+                scans++;
+                points += length(peaks[i]);
+            }
+        }
+        final ScanHeader[] selected = new ScanHeader[scans];
+        final int[] scanIndex = new int[scans];
+        final double[] masses = new double[points];
+        final double[] intensities = new double[points];
+        int scan = 0;
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            if (headers[i] != null) {
+                final int len = length(peaks[i]);
+                selected[scan] = headers[i];
+                scanIndex[scan] = offset;
+                if (len > 0) {
+                    System.arraycopy(peaks[i][0], 0, masses, offset, len);
+                    System.arraycopy(peaks[i][1], 0, intensities, offset, len);
+                }
+                // release the decoded scan as early as possible
+                peaks[i] = null;
+                offset += len;
+                scan++;
+            }
+        }
+        log.debug("Decoded {} scans with {} peaks in {} ms", new Object[]{
+            scans, points, System.currentTimeMillis() - t0});
+        return new DecodedScans(selected, scanIndex, masses, intensities);
+    }
+
+    /**
+     * Decodes the peaks of all selected scans with zero-based indices in
+     * <code>[start,end)</code>. Unlike {@link #decode(int, int)}, the peaks
+     * of each scan are returned in the arrays created by the parser, without
+     * packing them into contiguous buffers.
+     *
+     * @param start the first scan index
+     * @param end the scan index after the last scan
+     * @return the mass values at index 0 and the intensity values at index 1
+     * for each selected scan
+     */
+    public List<double[][]> decodeScans(final int start, final int end) {
+        final long t0 = System.currentTimeMillis();
+        final int n = Math.max(0, limit(end) - start);
+        final ScanHeader[] headers = new ScanHeader[n];
+        final double[][][] peaks = new double[n][][];
+        read(start, headers, peaks);
+        final List<double[][]> scans = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (headers[i] != null) {
+                scans.add(length(peaks[i]) > 0 ? peaks[i] : NO_PEAKS);
+            }
+        }
+        log.debug("Decoded {} scans in {} ms", scans.size(),
+                System.currentTimeMillis() - t0);
+        return scans;
+    }
+
+    /**
+     * Reads the header and peaks of each selected scan starting at scan index
+     * <code>start</code> into the given arrays. Entries of scans that are not
+     * selected remain null.
+     */
+    private void read(final int start, final ScanHeader[] headers,
+            final double[][][] peaks) {
+        run(headers.length, new Block() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    final Scan s = parser.rap(start + i + 1);
+                    if (s != null && isSelected(s.getHeader())) {
+                        headers[i] = s.getHeader();
+                        peaks[i] = s.getMassIntensityList();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Scans beyond the largest scan number do not exist, so ranges are
+     * clipped there instead of opening the file for each missing scan.
+     */
+    private int limit(final int end) {
+        return Math.min(end, Math.max(parser.getScanCount(),
+                parser.getMaxScanNumber()));
+    }
+
+    private static int length(final double[][] peaks) {
+        return peaks == null ? 0 : peaks[0].length;
+    }
+
+    private void run(final int n, final Block block) {
+        final int tasks = (n + SCANS_PER_TASK - 1) / SCANS_PER_TASK;
+        final int threads = Math.min(tasks, this.maxThreads < 1 ? Runtime.
+                getRuntime().availableProcessors() : this.maxThreads);
+        if (threads <= 1) {
+            block.apply(0, n);
+            return;
+        }
+        // one callable per thread, each claims the next chunk of scans until
+        // all are done, so that a call never occupies more than threads
+        // threads of the shared pool
+        final AtomicInteger next = new AtomicInteger();
+        final List<Callable<Void>> callables = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            callables.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        int from;
+                        while ((from = next.getAndAdd(SCANS_PER_TASK)) < n) {
+                            block.apply(from, Math.min(n, from + SCANS_PER_TASK));
+                        }
+                    } catch (RuntimeException e) {
+                        // the other callables stop after their current chunk
+                        next.set(n);
+                        throw e;
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : EXECUTOR.invokeAll(callables)) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private interface Block {
+
+        void apply(int from, int to);
+    }
+
+    /**
+     * Peaks of the selected scans of a decoded scan range, packed into
+     * contiguous buffers. The peaks of scan <code>i</code> occupy the range
+     * <code>[getScanIndex()[i], getScanIndex()[i+1])</code> of the mass and
+     * intensity buffers.
+     */
+    public static final class DecodedScans {
+
+        private final ScanHeader[] headers;
+        private final int[] scanIndex;
+        private final double[] masses;
+        private final double[] intensities;
+
+        DecodedScans(ScanHeader[] headers, int[] scanIndex, double[] masses,
+                double[] intensities) {
+            this.headers = headers;
+            this.scanIndex = scanIndex;
+            this.masses = masses;
+            this.intensities = intensities;
+        }
+
+        /**
+         * @return the number of decoded scans
+         */
+        public int getScanCount() {
+            return headers.length;
+        }
+
+        /**
+         * @return the headers of the decoded scans
+         */
+        public ScanHeader[] getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return the offset of each scan into the peak buffers
+         */
+        public int[] getScanIndex() {
+            return scanIndex;
+        }
+
+        /**
+         * @return the mass values of all scans
+         */
+        public double[] getMasses() {
+            return masses;
+        }
+
+        /**
+         * @return the intensity values of all scans
+         */
+        public double[] getIntensities() {
+            return intensities;
+        }
+
+        /**
+         * @param i the scan
+         * @return the offset of the first peak of scan i
+         */
+        public int getStart(int i) {
+            return scanIndex[i];
+        }
+
+        /**
+         * @param i the scan
+         * @return the offset after the last peak of scan i
+         */
+        public int getEnd(int i) {
+            return i + 1 < scanIndex.length ? scanIndex[i + 1] : masses.length;
+        }
+    }
+}
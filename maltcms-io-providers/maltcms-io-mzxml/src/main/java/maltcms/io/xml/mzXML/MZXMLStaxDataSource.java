@@ -85,9 +85,12 @@ public class MZXMLStaxDataSource implements IDataSource {
     private String source_files = "source_files";
     @Configurable(description = "The mslevel for mass spectra to extract. Set to 0 to extract all mass spectra.")
     private int mslevel = 1;
+    @Configurable(description = "The maximum number of threads used to decode scans. Values smaller than one select the number of available processors.")
+    private int maxThreads = -1;
     private static final ICacheDelegate<URI, MSXMLParser> fileToIndex = CacheFactory.createVolatileCache(MZXMLStaxDataSource.class.getName() + "-unmarshaller", 3600, 7200, 100);
 //    private MSXMLParser parser = null;
     private static final ICacheDelegate<IVariableFragment, Array> variableToArrayCache = CacheFactory.createVolatileCache("maltcms.io.readcache");
+    private static final ICacheDelegate<IVariableFragment, ArrayList<Array>> variableToIndexedArrayCache = CacheFactory.createVolatileCache(MZXMLStaxDataSource.class.getName() + "-indexed", 60, 120, 10);
 
     /**
      * {@inheritDoc}
@@ -153,6 +156,8 @@ public class MZXMLStaxDataSource implements IDataSource {
                 "source_files");
         this.mslevel = configuration.getInt(this.getClass().getName()
                 + ".mslevel", 1);
+        this.maxThreads = configuration.getInt(this.getClass().getName()
+                + ".maxThreads", -1);
         this.ndf = new NetcdfDataSource();
         this.ndf.configure(configuration);
     }
@@ -281,13 +286,18 @@ public class MZXMLStaxDataSource implements IDataSource {
         return this.scan_index;
     }
 
+    private MZXMLScanDecoder createDecoder(final MSXMLParser mp,
+            final int mslevel) {
+        return new MZXMLScanDecoder(mp, mslevel, this.maxThreads);
+    }
+
     private int getScans(final MSXMLParser mp, final int mslevel) {
         int scans = 0;
         int skippedScans = 0;
         log.info("Checking scans at mslevel: {}", mslevel);
-        for (int i = 0; i < mp.getScanCount(); i++) {
-            final ScanHeader h = mp.rapHeader(i + 1);
-            if (mslevel == 0 || h.getMsLevel() == mslevel) {
+        final MZXMLScanDecoder decoder = createDecoder(mp, mslevel);
+        for (final ScanHeader h : decoder.readHeaders(0, mp.getScanCount())) {
+            if (decoder.isSelected(h)) {
                 scans++;
             } else {
                 skippedScans++;
@@ -348,11 +358,11 @@ public class MZXMLStaxDataSource implements IDataSource {
         final ArrayDouble.D1 mass_range_max1 = new ArrayDouble.D1(scans);
         double min_mass = Double.MAX_VALUE;
         double max_mass = Double.MIN_VALUE;
-        for (int i = start; i < scans; i++) {
-            final Scan s = mp.rap((i + 1));
-            if (mslevel == 0 || s.getHeader().getMsLevel() == this.mslevel) {
-                min_mass = Math.min(min_mass, s.header.getLowMz());
-                max_mass = Math.max(max_mass, s.header.getHighMz());
+        final MZXMLScanDecoder decoder = createDecoder(mp, this.mslevel);
+        for (final ScanHeader h : decoder.readHeaders(start, scans)) {
+            if (decoder.isSelected(h)) {
+                min_mass = Math.min(min_mass, h.getLowMz());
+                max_mass = Math.max(max_mass, h.getHighMz());
             }
         }
         for (int i = 0; i < scans; i++) {
@@ -443,6 +453,11 @@ public class MZXMLStaxDataSource implements IDataSource {
             // } else {
             // return t.getSecond();
             // }
+            final ArrayList<Array> cached = variableToIndexedArrayCache.get(f);
+            if (cached != null) {
+                log.debug("Retrieved indexed data arrays from cache for {}", f);
+                return cached;
+            }
             final MSXMLParser mp = getParser(f.getParent());
             final ArrayList<Array> al = readMZIScans(f, mp, this.mslevel);
             // f.setIndexedArray(al);
@@ -478,7 +493,6 @@ public class MZXMLStaxDataSource implements IDataSource {
             }
             var.setIndex(scanIndex);
         }
-        int npeaks = 0;
         int start = 0;
         int scans = mp.getScanCount();
         if (var.getIndex() != null) {
@@ -488,50 +502,42 @@ public class MZXMLStaxDataSource implements IDataSource {
                 scans = r[0].length();
             }
         }
-        for (int i = start; i < scans; i++) {
-            final Scan s = mp.rap((i + 1));
-            if (s.getHeader().getMsLevel() == mslevel) {
-                npeaks += s.header.getPeaksCount();
-            }
+        // mass and intensity values are decoded from the same peak block,
+        // the variable that was not requested is published to the cache
+        final MZXMLScanDecoder.DecodedScans ds = createDecoder(mp, mslevel).
+                decode(start, scans);
+        final Array masses = Array.makeFromJavaArray(ds.getMasses());
+        final Array intensities = Array.makeFromJavaArray(ds.getIntensities());
+        if (var.getName().equals(this.mass_values)) {
+            publishSibling(var, this.intensity_values, intensities);
+            return masses;
+        } else if (var.getName().equals(this.intensity_values)) {
+            publishSibling(var, this.mass_values, masses);
+            return intensities;
         }
-        final ArrayDouble.D1 a = new ArrayDouble.D1(npeaks);
+        return new ArrayDouble.D1(0);
+    }
 
-        if (var.getName().equals(this.mass_values)) {
-            npeaks = 0;
-            for (int i = start; i < scans; i++) {
-                log.debug("Reading scan {} of {}", (i + 1), scans);
-                final Scan s = mp.rap((i + 1));
-                if (mslevel == 0 || s.getHeader().getMsLevel() == mslevel) {
-                    log.debug("Converting scan {} of {} with {} peaks",
-                            new Object[]{(i + 1), scans,
-                                s.header.getPeaksCount()});
-                    convertScanMZ(npeaks, s, a);
-                    log.debug("npeaks before: {}", npeaks);
-                    npeaks += s.header.getPeaksCount();
-                    log.debug("npeaks after: {}", npeaks);
-                }
+    private void publishSibling(final IVariableFragment var,
+            final String siblingName, final Array a) {
+        final IFileFragment parent = var.getParent();
+        if (parent.hasChild(siblingName)) {
+            final IVariableFragment sibling = parent.getChild(siblingName, true);
+            if (sibling.getIndex() == null || sibling.getIndex() == var.getIndex()) {
+                variableToArrayCache.put(sibling, a);
             }
-            // f.setArray(a);
-        } else if (var.getName().equals(this.intensity_values)) {
-            npeaks = 0;
-            for (int i = start; i < scans; i++) {
-                log.debug("Reading scan {} of {}", (i + 1), scans);
-                final Scan s = mp.rap((i + 1));
-                if (mslevel == 0 || s.getHeader().getMsLevel() == mslevel) {
-                    log.debug("Converting scan {} of {} with {} peaks",
-                            new Object[]{(i + 1), scans,
-                                s.header.getPeaksCount()});
-                    convertScanIntensity(npeaks, s, a);
-                    log.debug("npeaks before: {}", npeaks);
-                    npeaks += s.header.getPeaksCount();
-                    log.debug("npeaks after: {}", npeaks);
-                }
+        }
+    }
+
+    private void publishIndexedSibling(final IVariableFragment var,
+            final String siblingName, final ArrayList<Array> al) {
+        final IFileFragment parent = var.getParent();
+        if (parent.hasChild(siblingName)) {
+            final IVariableFragment sibling = parent.getChild(siblingName, true);
+            if (Arrays.equals(sibling.getRange(), var.getRange())) {
+                variableToIndexedArrayCache.put(sibling, al);
             }
-            // f.setArray(a);
         }
-        return a;
-        // }
-        // return f.getArray();
     }
 
     private ArrayList<Array> readMZIScans(final IVariableFragment var,
@@ -543,43 +549,23 @@ public class MZXMLStaxDataSource implements IDataSource {
             start = r[0].first();
             scans = r[0].length();
         }
-        final ArrayList<Array> al = new ArrayList<>();
+        // the arrays decoded for each scan are wrapped without copying
+        final List<double[][]> peaks = createDecoder(mp, mslevel).
+                decodeScans(start, scans);
+        final ArrayList<Array> masses = new ArrayList<>(peaks.size());
+        final ArrayList<Array> intensities = new ArrayList<>(peaks.size());
+        for (final double[][] p : peaks) {
+            masses.add(Array.makeFromJavaArray(p[0]));
+            intensities.add(Array.makeFromJavaArray(p[1]));
+        }
         if (var.getName().equals(this.mass_values)) {
-            int npeaks = 0;
-            for (int i = start; i < scans; i++) {
-                log.debug("Reading scan {} of {}", (i + 1), scans);
-                final Scan s = mp.rap((i + 1));
-                if (mslevel == 0 || ((s != null) && (s.getHeader().getMsLevel() == mslevel))) {
-                    final ArrayDouble.D1 a = new ArrayDouble.D1(s.header.getPeaksCount());
-                    log.debug("Converting scan {} of {} with {} peaks",
-                            new Object[]{(i + 1), scans,
-                                s.header.getPeaksCount()});
-                    convertScanMZ(0, s, a);
-                    log.debug("npeaks before: {}", npeaks);
-                    npeaks += s.header.getPeaksCount();
-                    log.debug("npeaks after: {}", npeaks);
-                    al.add(a);
-                }
-            }
+            publishIndexedSibling(var, this.intensity_values, intensities);
+            return masses;
         } else if (var.getName().equals(this.intensity_values)) {
-            int npeaks = 0;
-            for (int i = start; i < scans; i++) {
-                log.debug("Reading scan {} of {}", (i + 1), scans);
-                final Scan s = mp.rap((i + 1));
-                if (mslevel == 0 || ((s != null) && (s.getHeader().getMsLevel() == mslevel))) {
-                    final ArrayDouble.D1 a = new ArrayDouble.D1(s.header.getPeaksCount());
-                    log.debug("Converting scan {} of {} with {} peaks",
-                            new Object[]{(i + 1), scans,
-                                s.header.getPeaksCount()});
-                    convertScanIntensity(0, s, a);
-                    log.debug("npeaks before: {}", npeaks);
-                    npeaks += s.header.getPeaksCount();
-                    log.debug("npeaks after: {}", npeaks);
-                    al.add(a);
-                }
-            }
+            publishIndexedSibling(var, this.mass_values, masses);
+            return intensities;
         }
-        return al;
+        return new ArrayList<>();
     }
 
     private Array readScanAcquisitionTimeArray(final IVariableFragment var,
@@ -595,10 +581,10 @@ public class MZXMLStaxDataSource implements IDataSource {
         }
         final ArrayDouble.D1 sat = new ArrayDouble.D1(levelnscans);
         int cnt = 0;
-        for (int i = start; i < scans; i++) {
-            final Scan s = mp.rap((i + 1));
-            if (mslevel == 0 || s.getHeader().getMsLevel() == this.mslevel) {
-                sat.set(cnt++, s.header.getDoubleRetentionTime());
+        final MZXMLScanDecoder decoder = createDecoder(mp, this.mslevel);
+        for (final ScanHeader h : decoder.readHeaders(start, scans)) {
+            if (decoder.isSelected(h)) {
+                sat.set(cnt++, h.getDoubleRetentionTime());
             }
         }
         // f.setArray(sat);
@@ -619,14 +605,16 @@ public class MZXMLStaxDataSource implements IDataSource {
         log.debug("Creating index array with {} elements", levelnscans);
         final ArrayInt.D1 scan_index = new ArrayInt.D1(levelnscans, false);
         int cnt = 0;
-        for (int i = start; i < scans; i++) {
-            final Scan s = mp.rap((i + 1));
-            if (mslevel == 0 || s.getHeader().getMsLevel() == this.mslevel) {
+        final MZXMLScanDecoder decoder = createDecoder(mp, this.mslevel);
+        final ScanHeader[] headers = decoder.readHeaders(start, scans);
+        for (int i = 0; i < headers.length; i++) {
+            final ScanHeader h = headers[i];
+            if (decoder.isSelected(h)) {
                 // current npeaks is index into larger arrays for current scan
-                log.debug("Scan {} from {} to {}", new Object[]{i,
-                    npeaks, (npeaks + s.header.getPeaksCount() - 1)});
+                log.debug("Scan {} from {} to {}", new Object[]{start + i,
+                    npeaks, (npeaks + h.getPeaksCount() - 1)});
                 scan_index.set(cnt++, npeaks);
-                npeaks += s.header.getPeaksCount();
+                npeaks += h.getPeaksCount();
             }
         }
         EvalTools.notNull(scan_index, this);
@@ -0,0 +1,121 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.io.xml.mzXML;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import maltcms.test.ExtractClassPathFiles;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.systemsbiology.jrap.staxnxt.MSXMLParser;
+import org.systemsbiology.jrap.staxnxt.Scan;
+import org.systemsbiology.jrap.staxnxt.ScanHeader;
+
+/**
+ *
+ * @author Nils Hoffmann
+ */
+public class MZXMLScanDecoderTest {
+
+    @Rule
+    public TemporaryFolder tf = new TemporaryFolder();
+    @Rule
+    public ExtractClassPathFiles ecpf = new ExtractClassPathFiles(tf, "/mzXML/R1_RG59_B4_1.mzXML.gz");
+
+    /**
+     * Compares the parallel single pass decoder with reading each scan
+     * separately.
+     */
+    @Test
+    public void testDecode() throws IOException {
+        for (File f : ecpf.getFiles()) {
+            MSXMLParser mp = new MSXMLParser(f.getAbsolutePath(), false);
+            int scans = mp.getScanCount();
+            MZXMLScanDecoder decoder = new MZXMLScanDecoder(mp, 1, 4);
+            MZXMLScanDecoder.DecodedScans ds = decoder.decode(0, scans);
+            int scan = 0;
+            int offset = 0;
+            for (int i = 0; i < scans; i++) {
+                Scan s = mp.rap(i + 1);
+                if (s != null && s.getHeader().getMsLevel() == 1) {
+                    Assert.assertEquals(offset, ds.getScanIndex()[scan]);
+                    Assert.assertEquals(s.getHeader().getDoubleRetentionTime(),
+                            ds.getHeaders()[scan].getDoubleRetentionTime(), 0.0d);
+                    double[][] mzi = s.getMassIntensityList();
+                    int len = s.getHeader().getPeaksCount();
+                    Assert.assertEquals(offset + len, ds.getEnd(scan));
+                    for (int k = 0; k < len; k++) {
+                        Assert.assertEquals(mzi[0][k], ds.getMasses()[offset + k], 0.0d);
+                        Assert.assertEquals(mzi[1][k], ds.getIntensities()[offset + k], 0.0d);
+                    }
+                    offset += len;
+                    scan++;
+                }
+            }
+            Assert.assertEquals(scan, ds.getScanCount());
+            Assert.assertEquals(offset, ds.getMasses().length);
+            int selected = 0;
+            for (ScanHeader h : decoder.readHeaders(0, scans)) {
+                if (decoder.isSelected(h)) {
+                    selected++;
+                }
+            }
+            Assert.assertEquals(scan, selected);
+        }
+    }
+
+    /**
+     * Compares the per scan arrays with the packed buffers of the decoder,
+     * for all scans and for a range of scans.
+     */
+    @Test
+    public void testDecodeScans() throws IOException {
+        for (File f : ecpf.getFiles()) {
+            MSXMLParser mp = new MSXMLParser(f.getAbsolutePath(), false);
+            MZXMLScanDecoder decoder = new MZXMLScanDecoder(mp, 1, 4);
+            for (int[] range : new int[][]{{0, mp.getScanCount()}, {10, 40}}) {
+                MZXMLScanDecoder.DecodedScans ds = decoder.decode(range[0], range[1]);
+                List<double[][]> scans = decoder.decodeScans(range[0], range[1]);
+                Assert.assertEquals(ds.getScanCount(), scans.size());
+                for (int i = 0; i < scans.size(); i++) {
+                    double[][] mzi = scans.get(i);
+                    int len = ds.getEnd(i) - ds.getStart(i);
+                    Assert.assertEquals(len, mzi[0].length);
+                    Assert.assertEquals(len, mzi[1].length);
+                    for (int k = 0; k < len; k++) {
+                        Assert.assertEquals(ds.getMasses()[ds.getStart(i) + k], mzi[0][k], 0.0d);
+                        Assert.assertEquals(ds.getIntensities()[ds.getStart(i) + k], mzi[1][k], 0.0d);
+                    }
+                }
+            }
+        }
+    }
+}
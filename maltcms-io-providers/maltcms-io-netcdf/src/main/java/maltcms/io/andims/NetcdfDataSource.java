@@ -63,7 +63,6 @@ import ucar.nc2.Group;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.NetcdfFileWriter;
 import ucar.nc2.Variable;
-import ucar.nc2.dataset.DatasetUrl;
 import ucar.nc2.dataset.NetcdfDataset;
 
 /**
@@ -85,6 +84,8 @@ public class NetcdfDataSource implements IDataSource {
     private final String[] fileEnding = new String[]{"nc", "nc.gz", "nc.z", "nc.zip", "nc.gzip", "nc.bz2", "cdf", "cdf.gz", "cdf.z", "cdf.zip", "cdf.gzip", "cdf.bz2"};
     private boolean updateAttributes = false;
     private boolean useNetcdfFileCache = false;
+    private boolean useHandlePool = true;
+    private int maxIdleHandles = 8;
     private boolean saveNCML;
     private List<String> scanDimensionVars = Collections.emptyList();
     private String scanDimensionName = "scan_number";
@@ -221,6 +222,11 @@ public class NetcdfDataSource implements IDataSource {
                 + ".pointDimensionName", "point_number");
         this.saveNCML = configuration.getBoolean(
                 "ucar.nc2.NetcdfFile.saveNCML", false);
+        this.useHandlePool = configuration.getBoolean(this.getClass().getName()
+                + ".useHandlePool", true);
+        this.maxIdleHandles = configuration.getInt(this.getClass().getName()
+                + ".maxIdleHandles", 8);
+        NetcdfFileHandlePool.getInstance().setMaxIdleHandles(maxIdleHandles);
         if (useNetcdfFileCache) {
             NetcdfDataset.initNetcdfFileCache(minCachedFiles, maxCachedFiles, secondsUntilCleanup);
             Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHook()));
@@ -333,12 +339,30 @@ public class NetcdfDataSource implements IDataSource {
      * @return a {@link ucar.nc2.NetcdfFile} object.
      * @throws java.io.IOException if any.
      */
-    protected synchronized NetcdfFile locateFile(final IFileFragment ff) throws IOException {
+    protected NetcdfFile locateFile(final IFileFragment ff) throws IOException {
         URI u = ff.getUri();
-        String filepath = u.toString();
-        log.info("Opening netcdf file {}", filepath);
-        return NetcdfDataset.acquireFile(DatasetUrl.findDatasetUrl(filepath), null);
-//		return NetcdfFile.open(filepath);
+        if (useHandlePool) {
+            return NetcdfFileHandlePool.getInstance().acquire(u);
+        }
+        return NetcdfFileHandlePool.open(u);
+    }
+
+    /**
+     * Returns a file obtained from {@link #locateFile(IFileFragment)}. Pooled
+     * files are kept open for reuse, all others are closed.
+     *
+     * @param nf a {@link ucar.nc2.NetcdfFile} object, may be null.
+     * @throws java.io.IOException if any.
+     */
+    protected void release(final NetcdfFile nf) throws IOException {
+        if (nf == null) {
+            return;
+        }
+        if (useHandlePool) {
+            NetcdfFileHandlePool.getInstance().release(nf);
+        } else {
+            nf.close();
+        }
     }
 
     /**
@@ -361,12 +385,12 @@ public class NetcdfDataSource implements IDataSource {
                 log.debug("Found IVariableFragment {} in parent {}", f, f.getParent().getUri());
                 return nf;
             } else {
-                nf.close();
+                release(nf);
             }
         } catch (final IOException ioex) {
             if (nf != null) {
                 try {
-                    nf.close();
+                    release(nf);
                 } catch (final IOException ioex2) {
                     throw ioex2;
                 }
@@ -386,12 +410,12 @@ public class NetcdfDataSource implements IDataSource {
                             ff);
                     return nf;
                 } else {
-                    nf.close();
+                    release(nf);
                 }
             } catch (final IOException ioex2) {
                 if (nf != null) {
                     try {
-                        nf.close();
+                        release(nf);
                     } catch (final IOException ioex3) {
                         throw ioex3;
                     }
@@ -464,6 +488,15 @@ public class NetcdfDataSource implements IDataSource {
                     + f.getParent().getUri()
                     + " appears not to be a valid cdf file!");
         }
+        try {
+            return readIndexed(f, nd);
+        } finally {
+            release(nd);
+        }
+    }
+
+    private ArrayList<Array> readIndexed(final IVariableFragment f, final NetcdfFile nd)
+            throws IOException, ResourceNotAvailableException {
         // Ensure there is an index
         EvalTools.notNull(f.getIndex(), this);// ,f.getIndex().getRange());
         final IVariableFragment index = f.getIndex();
@@ -543,8 +576,6 @@ public class NetcdfDataSource implements IDataSource {
             }
         }
 
-        int index_offset = 0;
-
         // create the ArrayList, which will hold the individual arrays
         final ArrayList<Array> al = new ArrayList<>(num_arrays);
 
@@ -552,35 +583,49 @@ public class NetcdfDataSource implements IDataSource {
         // this can be translated to absolute in index_array via
         // index_start+i, where index_start is the positive offset into
         // index_array
-        for (int i = 0; i < index_range[0].length(); i += index_stride) {
+        final int n = (index_range[0].length() + index_stride - 1) / index_stride;
+        final int[] starts = new int[n];
+        final int[] ends = new int[n];
+        int bulk_start = Integer.MAX_VALUE;
+        int bulk_end = -1;
+        for (int i = 0, k = 0; i < index_range[0].length(); i += index_stride, k++) {
             // first element of array index_start+i
-            data_start = index_array.getInt((index_start + i));
+            starts[k] = index_array.getInt((index_start + i));
             // if we have reached the last scan start contained in index_array
             // use the length of the data array -1 as absolute end of last array
             if ((i + index_start + 1) == num_arrays) {
-                data_end = data_dim.getLength() - 1;
+                ends[k] = data_dim.getLength() - 1;
             } else {
-                data_end = index_array.getInt((index_start + i + 1)) - 1;
+                ends[k] = index_array.getInt((index_start + i + 1)) - 1;
             }
             //safety net
-            data_end = Math.min(data_dim.getLength() - 1, data_end);
-            if (data_start > data_end) {
+            ends[k] = Math.min(data_dim.getLength() - 1, ends[k]);
+            if (starts[k] <= ends[k]) {
+                bulk_start = Math.min(bulk_start, starts[k]);
+                bulk_end = Math.max(bulk_end, ends[k]);
+            }
+        }
+        // read all arrays with one contiguous read and copy the individual
+        // arrays from it, instead of reading each array separately
+        Array bulk = null;
+        if (bulk_end >= bulk_start) {
+            log.debug("Reading {} arrays from {} to {}", new Object[]{n, bulk_start, bulk_end});
+            try {
+                bulk = data_var.read(new int[]{bulk_start}, new int[]{bulk_end - bulk_start + 1});
+            } catch (final InvalidRangeException e) {
+                throw new ResourceNotAvailableException(e);
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            if (starts[k] > ends[k]) {
                 log.warn("scan_index contains an invalid last scan offset. Inserting terminating array with length 0!");
                 al.add(Array.factory(data_var.getDataType(), new int[0]));
             } else {
                 try {
-                    log.debug("Reading array {}, from {} to {}", new Object[]{
-                        i, data_start, data_end});
-                    // Read from data_start to data_end incl. with data_stride
-                    final Array ai = data_var.read(data_start + ":" + data_end
-                            + ":" + data_stride);
-                    // Update new index to the changed value
-                    // new_index.set(i, index_offset);
-                    // Increase the next start offset by the length of array ai
-                    // log.debug("new_index[i] = {}, Index offset =
-                    // {}",i,index_offset);
-                    index_offset += (data_end - data_start);
-                    al.add(ai);
+                    // Copy from data_start to data_end incl. with data_stride,
+                    // a section view would keep the whole bulk array alive
+                    final int length = ((ends[k] - starts[k]) / data_stride) + 1;
+                    al.add(bulk.section(new int[]{starts[k] - bulk_start}, new int[]{length}, new int[]{data_stride}).copy());
                 } catch (final InvalidRangeException e) {
                     log.error(e.getLocalizedMessage());
                 }
@@ -588,7 +633,6 @@ public class NetcdfDataSource implements IDataSource {
         }
         EvalTools.notNull(al, this);
         index.setRange(index_range);
-        nd.close();
         return al;
     }
 
@@ -657,18 +701,15 @@ public class NetcdfDataSource implements IDataSource {
                     // update ranges to those from file
                     f.setRange(ranges.toArray(new Range[ranges.size()]));
                 }
-                nd.close();
                 if (a == null) {
                     log.debug("a is null", a);
                 }
                 return a;
             } catch (final IOException e) {
                 throw e;
-            } finally {
-                nd.close();
             }
         } finally {
-            nd.close();
+            release(nd);
         }
     }
 
@@ -697,7 +738,7 @@ public class NetcdfDataSource implements IDataSource {
             }
             log.debug(f.toString());
         } finally {
-            nd.close();
+            release(nd);
             return al;
         }
     }
@@ -728,7 +769,7 @@ public class NetcdfDataSource implements IDataSource {
             loadAttributes(f.getParent(), nd);
             log.debug(f.toString());
         } finally {
-            nd.close();
+            release(nd);
             return f;
         }
     }
@@ -960,6 +1001,8 @@ public class NetcdfDataSource implements IDataSource {
         log.debug("{}", f.toString());
         log.debug("Saving {} with NetcdfDataSource", f.getUri());
         EvalTools.notNull(f, this);
+        // pooled handles of a previous version of this file are stale
+        NetcdfFileHandlePool.getInstance().invalidate(f.getUri());
         final NetcdfFileWriter nfw = structureWrite(f);
         EvalTools.notNull(nfw, this);
         try {
@@ -1016,6 +1059,7 @@ public class NetcdfDataSource implements IDataSource {
             }
             nfw.flush();
             nfw.close();
+            NetcdfFileHandlePool.getInstance().invalidate(f.getUri());
             return true;
         } catch (final IOException e) {
             log.error(e.getLocalizedMessage());
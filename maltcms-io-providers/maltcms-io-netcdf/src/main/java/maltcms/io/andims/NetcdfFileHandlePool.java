@@ -0,0 +1,330 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.io.andims;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.dataset.NetcdfDataset;
+
+/**
+ * Pool of open {@link NetcdfFile} handles, keyed by file URI.
+ *
+ * A handle is lent to exactly one caller at a time, since {@link NetcdfFile}
+ * does not support concurrent reads. Released handles are kept open for
+ * later acquisitions of the same URI, up to a maximum number of idle handles,
+ * evicting the least recently released handle first. The pool counts the
+ * handles lent per URI, so that {@link #invalidate(URI)} can close all idle
+ * handles immediately and all lent handles as soon as they are released.
+ * Idle handles of local files are also discarded if the file was modified
+ * after the handle was opened.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class NetcdfFileHandlePool {
+
+    private static final Logger log = LoggerFactory.getLogger(NetcdfFileHandlePool.class);
+    private static final NetcdfFileHandlePool INSTANCE = new NetcdfFileHandlePool();
+
+    private static final class Handle {
+
+        private final String key;
+        private final NetcdfFile file;
+        private final long lastModified;
+        private final long generation;
+
+        Handle(String key, NetcdfFile file, long lastModified, long generation) {
+            this.key = key;
+            this.file = file;
+            this.lastModified = lastModified;
+            this.generation = generation;
+        }
+    }
+
+    private final Map<String, ArrayDeque<Handle>> idle = new HashMap<>();
+    private final LinkedHashSet<Handle> idleOrder = new LinkedHashSet<>();
+    private final IdentityHashMap<NetcdfFile, Handle> lent = new IdentityHashMap<>();
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    private final Map<String, Long> generations = new HashMap<>();
+    private int maxIdleHandles = 8;
+
+    private NetcdfFileHandlePool() {
+
+    }
+
+    /**
+     * Returns the shared pool instance.
+     *
+     * @return the pool
+     */
+    public static NetcdfFileHandlePool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the maximum number of idle handles kept open over all URIs.
+     *
+     * @param maxIdleHandles the maximum number of idle handles, values smaller
+     * than 0 are treated as 0
+     */
+    public void setMaxIdleHandles(int maxIdleHandles) {
+        synchronized (this) {
+            this.maxIdleHandles = Math.max(0, maxIdleHandles);
+        }
+        closeAll(evictIdle());
+    }
+
+    /**
+     * Acquires an open handle for the given URI. The handle must be returned
+     * by calling {@link #release(NetcdfFile)} exactly once and must not be
+     * closed by the caller.
+     *
+     * @param uri the file URI
+     * @return an open handle
+     * @throws IOException if the file can not be opened
+     */
+    public NetcdfFile acquire(URI uri) throws IOException {
+        final String key = uri.toString();
+        final long lastModified = lastModified(uri);
+        Handle handle = null;
+        Handle stale = null;
+        long generation;
+        synchronized (this) {
+            generation = generation(key);
+            ArrayDeque<Handle> handles = idle.get(key);
+            if (handles != null) {
+                handle = handles.pollLast();
+                if (handles.isEmpty()) {
+                    idle.remove(key);
+                }
+                if (handle != null) {
+                    idleOrder.remove(handle);
+                    if (handle.lastModified != lastModified) {
+                        stale = handle;
+                        handle = null;
+                    }
+                }
+            }
+            if (handle != null) {
+                lent.put(handle.file, handle);
+                incrementRefCount(key);
+            }
+        }
+        if (stale != null) {
+            log.debug("Discarding stale handle for {}", key);
+            close(stale);
+        }
+        if (handle != null) {
+            return handle.file;
+        }
+        NetcdfFile nf = open(uri);
+        synchronized (this) {
+            handle = new Handle(key, nf, lastModified, generation);
+            lent.put(nf, handle);
+            incrementRefCount(key);
+        }
+        return nf;
+    }
+
+    /**
+     * Returns a handle, which was acquired from this pool. Handles of
+     * invalidated URIs are closed, all other handles are kept open for reuse.
+     * Handles which were not acquired from this pool are closed.
+     *
+     * @param nf the handle
+     */
+    public void release(NetcdfFile nf) {
+        if (nf == null) {
+            return;
+        }
+        Handle closeable = null;
+        Iterable<Handle> evicted;
+        synchronized (this) {
+            Handle handle = lent.remove(nf);
+            if (handle == null) {
+                closeable = new Handle(nf.getLocation(), nf, 0L, 0L);
+                evicted = null;
+            } else {
+                decrementRefCount(handle.key);
+                if (handle.generation != generation(handle.key) || maxIdleHandles == 0) {
+                    closeable = handle;
+                } else {
+                    ArrayDeque<Handle> handles = idle.get(handle.key);
+                    if (handles == null) {
+                        handles = new ArrayDeque<>();
+                        idle.put(handle.key, handles);
+                    }
+                    handles.addLast(handle);
+                    idleOrder.add(handle);
+                }
+                evicted = evictIdle();
+            }
+        }
+        if (closeable != null) {
+            close(closeable);
+        }
+        closeAll(evicted);
+    }
+
+    /**
+     * Closes all idle handles for the given URI. Handles for the URI which are
+     * currently lent are closed when they are released. Must be called before
+     * a file is (re-)written.
+     *
+     * @param uri the file URI
+     */
+    public void invalidate(URI uri) {
+        final String key = uri.toString();
+        ArrayDeque<Handle> handles;
+        synchronized (this) {
+            generations.put(key, generation(key) + 1);
+            handles = idle.remove(key);
+            if (handles != null) {
+                for (Handle h : handles) {
+                    idleOrder.remove(h);
+                }
+            }
+        }
+        closeAll(handles);
+    }
+
+    /**
+     * Closes all idle handles.
+     */
+    public void clear() {
+        Iterable<Handle> handles;
+        synchronized (this) {
+            handles = new ArrayDeque<>(idleOrder);
+            idleOrder.clear();
+            idle.clear();
+        }
+        closeAll(handles);
+    }
+
+    /**
+     * Returns the number of handles currently lent for the given URI.
+     *
+     * @param uri the file URI
+     * @return the number of lent handles
+     */
+    public synchronized int getReferenceCount(URI uri) {
+        Integer count = refCounts.get(uri.toString());
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Opens a new handle for the given URI, which is not managed by the pool.
+     * The caller is responsible for closing the handle.
+     *
+     * @param uri the file URI
+     * @return an open handle
+     * @throws IOException if the file can not be opened
+     */
+    static NetcdfFile open(URI uri) throws IOException {
+        final String location = uri.toString();
+        log.info("Opening netcdf file {}", location);
+        return NetcdfDataset.acquireFile(DatasetUrl.findDatasetUrl(location), null);
+    }
+
+    private ArrayDeque<Handle> evictIdle() {
+        ArrayDeque<Handle> evicted = new ArrayDeque<>();
+        synchronized (this) {
+            Iterator<Handle> iter = idleOrder.iterator();
+            while (idleOrder.size() > maxIdleHandles && iter.hasNext()) {
+                Handle h = iter.next();
+                iter.remove();
+                ArrayDeque<Handle> handles = idle.get(h.key);
+                if (handles != null) {
+                    handles.remove(h);
+                    if (handles.isEmpty()) {
+                        idle.remove(h.key);
+                    }
+                }
+                evicted.add(h);
+            }
+        }
+        return evicted;
+    }
+
+    private long generation(String key) {
+        Long generation = generations.get(key);
+        return generation == null ? 0L : generation;
+    }
+
+    private void incrementRefCount(String key) {
+        Integer count = refCounts.get(key);
+        refCounts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private void decrementRefCount(String key) {
+        Integer count = refCounts.get(key);
+        if (count == null || count <= 1) {
+            refCounts.remove(key);
+        } else {
+            refCounts.put(key, count - 1);
+        }
+    }
+
+    private static long lastModified(URI uri) {
+        if ("file".equals(uri.getScheme())) {
+            try {
+                return new File(uri).lastModified();
+            } catch (IllegalArgumentException ex) {
+                log.debug("Can not check modification time of {}", uri);
+            }
+        }
+        return 0L;
+    }
+
+    private static void closeAll(Iterable<Handle> handles) {
+        if (handles != null) {
+            for (Handle h : handles) {
+                close(h);
+            }
+        }
+    }
+
+    private static void close(Handle h) {
+        try {
+            h.file.close();
+        } catch (IOException ex) {
+            log.warn("Failed to close netcdf file " + h.key, ex);
+        }
+    }
+}
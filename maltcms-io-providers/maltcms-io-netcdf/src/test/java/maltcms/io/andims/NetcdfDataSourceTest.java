@@ -62,8 +62,11 @@ import ucar.ma2.Array;
 import ucar.ma2.ArrayDouble;
 import ucar.ma2.ArrayInt;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.Range;
 import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
 
 /**
  *
@@ -613,6 +616,105 @@ public class NetcdfDataSourceTest {
         sl.setLogLevel("maltcms.io.andims", "INFO");
     }
 
+    /**
+     * Test that the bulk read of readIndexed returns the same arrays as
+     * reading each scan separately, for all scans and for a range of scans.
+     */
+    @Test
+    public void testReadIndexedEqualsPerScanReads() throws Exception {
+        for (File f : ecpf.getFiles()) {
+            List<Array> expected = new ArrayList<>();
+            NetcdfFile nf = NetcdfFile.open(f.getAbsolutePath());
+            try {
+                Array scanIndex = nf.findVariable("scan_index").read();
+                Variable intensities = nf.findVariable("intensity_values");
+                int total = intensities.getDimension(0).getLength();
+                int scans = scanIndex.getShape()[0];
+                for (int i = 0; i < scans; i++) {
+                    int start = scanIndex.getInt(i);
+                    int end = i + 1 < scans ? scanIndex.getInt(i + 1) : total;
+                    expected.add(intensities.read(new int[]{start}, new int[]{end - start}));
+                }
+            } finally {
+                nf.close();
+            }
+
+            IFileFragment ff = new FileFragment(f);
+            IVariableFragment iv = ff.getChild("intensity_values");
+            iv.setIndex(ff.getChild("scan_index"));
+            assertArraysEqual(expected, getDataSource().readIndexed(iv));
+
+            ff = new FileFragment(f);
+            IVariableFragment si = ff.getChild("scan_index");
+            si.setRange(new Range[]{new Range(10, 40)});
+            iv = ff.getChild("intensity_values");
+            iv.setIndex(si);
+            List<Array> l = getDataSource().readIndexed(iv);
+            assertArraysEqual(expected.subList(10, 41), l);
+        }
+    }
+
+    private void assertArraysEqual(List<Array> expected, List<Array> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Array e = expected.get(i);
+            Array a = actual.get(i);
+            Assert.assertEquals(e.getSize(), a.getSize());
+            //each array must own its storage instead of viewing the bulk read
+            Assert.assertEquals(a.getSize(), java.lang.reflect.Array.getLength(a.getStorage()));
+            for (int j = 0; j < e.getSize(); j++) {
+                Assert.assertEquals(e.getDouble(j), a.getDouble(j), 0.0d);
+            }
+        }
+    }
+
+    /**
+     * Test of acquire, release and invalidate, of class NetcdfFileHandlePool.
+     */
+    @Test
+    public void testHandlePool() throws Exception {
+        NetcdfFileHandlePool pool = NetcdfFileHandlePool.getInstance();
+        pool.clear();
+        try {
+            for (File f : ecpf.getFiles()) {
+                URI u = f.toURI();
+                NetcdfFile first = pool.acquire(u);
+                Assert.assertEquals(1, pool.getReferenceCount(u));
+                //a lent handle is never shared
+                NetcdfFile second = pool.acquire(u);
+                Assert.assertNotSame(first, second);
+                Assert.assertEquals(2, pool.getReferenceCount(u));
+                pool.release(second);
+                pool.release(first);
+                Assert.assertEquals(0, pool.getReferenceCount(u));
+                //released handles are reused
+                NetcdfFile reused = pool.acquire(u);
+                Assert.assertTrue(reused == first || reused == second);
+                Assert.assertNotNull(reused.findVariable("scan_index"));
+                //handles lent before invalidation are not reused
+                pool.invalidate(u);
+                pool.release(reused);
+                NetcdfFile fresh = pool.acquire(u);
+                Assert.assertNotSame(first, fresh);
+                Assert.assertNotSame(second, fresh);
+                Assert.assertNotNull(fresh.findVariable("scan_index"));
+                pool.release(fresh);
+                //no idle handles are kept if the maximum is 0
+                pool.setMaxIdleHandles(0);
+                NetcdfFile unpooled = pool.acquire(u);
+                pool.release(unpooled);
+                NetcdfFile other = pool.acquire(u);
+                Assert.assertNotSame(unpooled, other);
+                pool.release(other);
+                Assert.assertEquals(0, pool.getReferenceCount(u));
+                pool.setMaxIdleHandles(8);
+            }
+        } finally {
+            pool.setMaxIdleHandles(8);
+            pool.clear();
+        }
+    }
+
     @Test
     public void testVariableFragmentEquality() {
         IFileFragment f = createTestFragment();
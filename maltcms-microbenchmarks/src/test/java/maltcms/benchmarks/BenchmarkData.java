@@ -0,0 +1,192 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.benchmarks;
+
+import cross.datastructures.fragments.FileFragment;
+import cross.datastructures.fragments.IVariableFragment;
+import cross.datastructures.tuple.Tuple2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import maltcms.test.ZipResourceExtractor;
+import maltcms.tools.ArrayTools;
+import maltcms.tools.MaltcmsTools;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+
+/**
+ * Synthetic and bundled input data for the JMH benchmarks.
+ *
+ * Synthetic spectra are generated from a fixed seed, so that repeated runs
+ * operate on identical input. Bundled spectra are read from the raw
+ * chromatograms of the maltcms-test-data module.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+public final class BenchmarkData {
+
+    /**
+     * Resource path of the default bundled chromatogram.
+     */
+    public static final String GLUCOSE_A = "/cdf/1D/glucoseA.cdf.gz";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates <code>n</code> dense synthetic spectra with <code>size</code>
+     * bins each. Each bin is zero with probability <code>sparsity</code>,
+     * otherwise it holds a positive, exponentially distributed intensity.
+     *
+     * @param n the number of spectra
+     * @param size the number of bins per spectrum
+     * @param sparsity the fraction of zero bins, between 0 and 1
+     * @param seed the random seed
+     * @return the spectra
+     */
+    public static List<Array> denseSpectra(int n, int size, double sparsity, long seed) {
+        Random r = new Random(seed);
+        List<Array> spectra = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ArrayDouble.D1 a = new ArrayDouble.D1(size);
+            for (int j = 0; j < size; j++) {
+                if (r.nextDouble() >= sparsity) {
+                    a.set(j, 1.0d - 1000.0d * Math.log(1.0d - r.nextDouble()));
+                }
+            }
+            spectra.add(a);
+        }
+        return spectra;
+    }
+
+    /**
+     * Creates <code>n</code> sparse synthetic spectra with masses between
+     * <code>minMass</code> and <code>maxMass</code>. Each nominal mass is
+     * present with probability <code>1-sparsity</code> and is jittered by
+     * less than half a mass unit.
+     *
+     * @param n the number of spectra
+     * @param minMass the minimum mass
+     * @param maxMass the maximum mass
+     * @param sparsity the fraction of missing masses, between 0 and 1
+     * @param seed the random seed
+     * @return the spectra as tuples of mass and intensity arrays
+     */
+    public static List<Tuple2D<Array, Array>> sparseSpectra(int n, double minMass, double maxMass, double sparsity, long seed) {
+        Random r = new Random(seed);
+        List<Tuple2D<Array, Array>> spectra = new ArrayList<>(n);
+        int masses = (int) (maxMass - minMass) + 1;
+        double[] mz = new double[masses];
+        double[] intens = new double[masses];
+        for (int i = 0; i < n; i++) {
+            int k = 0;
+            for (int j = 0; j < masses; j++) {
+                if (r.nextDouble() >= sparsity) {
+                    mz[k] = Math.min(maxMass, minMass + j + 0.49d * (r.nextDouble() - 0.5d));
+                    intens[k] = 1.0d - 1000.0d * Math.log(1.0d - r.nextDouble());
+                    k++;
+                }
+            }
+            double[] mzk = new double[k];
+            double[] intensk = new double[k];
+            System.arraycopy(mz, 0, mzk, 0, k);
+            System.arraycopy(intens, 0, intensk, 0, k);
+            spectra.add(new Tuple2D<>(Array.factory(mzk), Array.factory(intensk)));
+        }
+        return spectra;
+    }
+
+    /**
+     * Reads the first <code>n</code> mass spectra of a bundled chromatogram.
+     *
+     * @param resourcePath the class path resource of the chromatogram
+     * @param n the maximum number of spectra to read
+     * @return the spectra as tuples of mass and intensity arrays
+     */
+    public static List<Tuple2D<Array, Array>> bundledSpectra(String resourcePath, int n) {
+        File dir = null;
+        try {
+            dir = Files.createTempDirectory("maltcms-benchmark").toFile();
+            File file = ZipResourceExtractor.extract(resourcePath, dir);
+            FileFragment f = new FileFragment(file);
+            IVariableFragment scanIndex = f.getChild("scan_index");
+            int scans = Math.min(n, scanIndex.getDimensions()[0].getLength());
+            scanIndex.setRange(new Range[]{new Range(0, scans - 1)});
+            IVariableFragment masses = f.getChild("mass_values");
+            IVariableFragment intensities = f.getChild("intensity_values");
+            masses.setIndex(scanIndex);
+            intensities.setIndex(scanIndex);
+            List<Array> mza = masses.getIndexedArray();
+            List<Array> ia = intensities.getIndexedArray();
+            List<Tuple2D<Array, Array>> spectra = new ArrayList<>(mza.size());
+            for (int i = 0; i < mza.size(); i++) {
+                spectra.add(new Tuple2D<>(mza.get(i), ia.get(i)));
+            }
+            f.clearArrays();
+            return spectra;
+        } catch (IOException | InvalidRangeException ex) {
+            throw new IllegalStateException("Could not read bundled chromatogram " + resourcePath, ex);
+        } finally {
+            if (dir != null) {
+                File[] files = dir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    /**
+     * Bins the given sparse spectra to nominal masses between
+     * <code>minMass</code> and <code>maxMass</code>.
+     *
+     * @param spectra the sparse spectra
+     * @param minMass the minimum mass
+     * @param maxMass the maximum mass
+     * @return the dense spectra
+     */
+    public static List<Array> densify(List<Tuple2D<Array, Array>> spectra, double minMass, double maxMass) {
+        int bins = MaltcmsTools.getNumberOfIntegerMassBins(minMass, maxMass, 1.0d);
+        List<Array> dense = new ArrayList<>(spectra.size());
+        for (Tuple2D<Array, Array> t : spectra) {
+            Tuple2D<Array, Array> target = new Tuple2D<Array, Array>(new ArrayDouble.D1(bins), new ArrayDouble.D1(bins));
+            ArrayTools.createDenseArray(t.getFirst(), t.getSecond(), target, Math.floor(minMass), Math.ceil(maxMass), bins, 1.0d, 0.0d);
+            dense.add(target.getSecond());
+        }
+        return dense;
+    }
+}
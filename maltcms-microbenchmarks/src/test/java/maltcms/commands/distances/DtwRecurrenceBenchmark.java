@@ -0,0 +1,118 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.distances;
+
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import maltcms.datastructures.array.PartitionedArray;
+import maltcms.datastructures.constraint.ConstraintFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.ArrayByte;
+
+/**
+ * JMH benchmark of a complete cumulative distance fill with
+ * {@link DtwRecurrence} over precomputed random pairwise distances, with and
+ * without a band constraint.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtwRecurrenceBenchmark {
+
+    @Param({"100", "1000", "2000"})
+    public int size;
+    @Param({"1.0", "0.1"})
+    public double band;
+
+    private DtwRecurrence recurrence;
+    private PartitionedArray distances;
+    private PartitionedArray cumulative;
+    private ArrayByte.D2 predecessors;
+
+    /**
+     * Creates the recurrence, the distance and the cumulative distance
+     * arrays.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Area shape;
+        if (band > 0.0d && band < 1.0d) {
+            shape = ConstraintFactory.getInstance().createBandConstraint(0, 0, size, size, band);
+        } else {
+            shape = new Area(new Rectangle(0, 0, size, size));
+        }
+        recurrence = new DtwRecurrence();
+        recurrence.set(1.0d, 1.0d, 1.0d);
+        recurrence.setMinimizing(true);
+        distances = PartitionedArray.create(size, size, Double.POSITIVE_INFINITY, shape);
+        cumulative = PartitionedArray.create(size, size, Double.POSITIVE_INFINITY, shape);
+        predecessors = new ArrayByte.D2(size, size);
+        Random r = new Random(42L);
+        for (int i = 0; i < size; i++) {
+            final int[] bounds = distances.getColumnBounds(i);
+            for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                distances.set(i, j, r.nextDouble());
+            }
+        }
+    }
+
+    /**
+     * Fills the cumulative distance array in row-major order.
+     *
+     * @return the cumulative distance of the last cell
+     */
+    @Benchmark
+    public double fill() {
+        for (int i = 0; i < size; i++) {
+            final int[] bounds = cumulative.getColumnBounds(i);
+            for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                recurrence.eval(i, j, cumulative, distances.get(i, j), predecessors);
+            }
+        }
+        return cumulative.get(size - 1, size - 1);
+    }
+}
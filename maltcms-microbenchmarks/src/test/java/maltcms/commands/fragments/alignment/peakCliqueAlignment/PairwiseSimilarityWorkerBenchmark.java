@@ -0,0 +1,119 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.commands.fragments.alignment.peakCliqueAlignment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import maltcms.benchmarks.BenchmarkData;
+import maltcms.math.functions.IArraySimilarity;
+import maltcms.math.functions.IScalarSimilarity;
+import maltcms.math.functions.ProductSimilarity;
+import maltcms.math.functions.similarities.ArrayCos;
+import maltcms.math.functions.similarities.GaussianDifferenceSimilarity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+
+/**
+ * JMH benchmark of a complete {@link PairwiseSimilarityWorker} run between
+ * two synthetic peak lists, including the bidirectional best hit search. The
+ * retention times of the second peak list are jittered against those of the
+ * first one.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PairwiseSimilarityWorkerBenchmark {
+
+    @Param({"200", "1000", "4000"})
+    public int peaks;
+    @Param({"0.0", "0.9"})
+    public double sparsity;
+    @Param({"60.0", "Infinity"})
+    public double maxRTDifference;
+
+    private PairwiseSimilarityWorker worker;
+
+    /**
+     * Creates the peak lists and the worker.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        List<IBipacePeak> lhs = createPeaks("lhs", 0, 1L);
+        List<IBipacePeak> rhs = createPeaks("rhs", 1, 2L);
+        GaussianDifferenceSimilarity gds = new GaussianDifferenceSimilarity();
+        gds.setTolerance(10.0d);
+        gds.setThreshold(0.0d);
+        ProductSimilarity ps = new ProductSimilarity();
+        ps.setScalarSimilarities(new IScalarSimilarity[]{gds});
+        ps.setArraySimilarities(new IArraySimilarity[]{new ArrayCos()});
+        worker = new PairwiseSimilarityWorker("lhs-rhs", "lhs", "rhs", lhs,
+                rhs, ps, false, null, maxRTDifference,
+                new PeakSpectrumStore(lhs), new PeakSpectrumStore(rhs), null,
+                null, null);
+    }
+
+    private List<IBipacePeak> createPeaks(String name, int associationId, long seed) {
+        Random r = new Random(seed);
+        List<Array> spectra = BenchmarkData.denseSpectra(peaks, 500, sparsity, 42L);
+        List<IBipacePeak> l = new ArrayList<>(peaks);
+        for (int i = 0; i < peaks; i++) {
+            double rt = 60.0d + i * 3600.0d / peaks + 5.0d * r.nextGaussian();
+            l.add(new PeakNG(i, spectra.get(i), rt, name, associationId));
+        }
+        return l;
+    }
+
+    /**
+     * Calculates all pairwise peak similarities and best hits.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public PairwiseSimilarityResult call() {
+        return worker.call();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.datastructures.array;
+
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import maltcms.datastructures.constraint.ConstraintFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of {@link PartitionedArray#get(int, int)} and
+ * {@link PartitionedArray#set(int, int, double)} for row-wise and random
+ * access on square arrays with and without a band constraint.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartitionedArrayBenchmark {
+
+    private static final int RANDOM_ACCESSES = 4096;
+
+    @Param({"100", "1000", "4000"})
+    public int size;
+    @Param({"1.0", "0.1"})
+    public double band;
+
+    private PartitionedArray array;
+    private int[] rows;
+    private int[] cols;
+
+    /**
+     * Creates the array and the random access pattern.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Area shape;
+        if (band > 0.0d && band < 1.0d) {
+            shape = ConstraintFactory.getInstance().createBandConstraint(0, 0, size, size, band);
+        } else {
+            shape = new Area(new Rectangle(0, 0, size, size));
+        }
+        array = PartitionedArray.create(size, size, 0.0d, shape);
+        Random r = new Random(42L);
+        rows = new int[RANDOM_ACCESSES];
+        cols = new int[RANDOM_ACCESSES];
+        for (int i = 0; i < RANDOM_ACCESSES; i++) {
+            rows[i] = r.nextInt(size);
+            int[] bounds = array.getColumnBounds(rows[i]);
+            cols[i] = bounds[0] + (bounds[1] > 0 ? r.nextInt(bounds[1]) : 0);
+        }
+        setRowWise();
+    }
+
+    /**
+     * Writes all stored elements in row-major order.
+     */
+    @Benchmark
+    public void setRowWise() {
+        for (int i = 0; i < size; i++) {
+            final int[] bounds = array.getColumnBounds(i);
+            for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                array.set(i, j, i + j);
+            }
+        }
+    }
+
+    /**
+     * Reads all stored elements in row-major order.
+     *
+     * @return the sum of all stored elements
+     */
+    @Benchmark
+    public double getRowWise() {
+        double sum = 0.0d;
+        for (int i = 0; i < size; i++) {
+            final int[] bounds = array.getColumnBounds(i);
+            for (int j = bounds[0]; j < bounds[0] + bounds[1]; j++) {
+                sum += array.get(i, j);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Reads stored elements at random positions.
+     *
+     * @return the sum of the elements read
+     */
+    @Benchmark
+    public double getRandom() {
+        double sum = 0.0d;
+        for (int i = 0; i < RANDOM_ACCESSES; i++) {
+            sum += array.get(rows[i], cols[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.math.functions.similarities;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import maltcms.benchmarks.BenchmarkData;
+import maltcms.math.functions.IArraySimilarity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+
+/**
+ * JMH benchmark of all {@link maltcms.math.functions.IArraySimilarity}
+ * implementations on pairs of dense spectra. Synthetic spectra are
+ * parameterized by size and sparsity, bundled spectra are the first scans of
+ * the glucoseA chromatogram, binned to nominal masses.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArraySimilarityBenchmark {
+
+    private static final int SPECTRA = 64;
+
+    @Param({"ArrayBhattacharryya", "ArrayCorr", "ArrayCos", "ArrayCov",
+        "ArrayDot", "ArrayHamming", "ArrayLp", "ArrayRankCorr",
+        "ArrayTanimoto", "ArrayWeightedCosine", "ArrayWeightedCosine2"})
+    public String similarity;
+
+    private IArraySimilarity sim;
+    private int next = 0;
+
+    /**
+     * Synthetic spectra of configurable size and sparsity.
+     */
+    @State(Scope.Thread)
+    public static class SyntheticSpectra {
+
+        @Param({"100", "1000", "10000"})
+        public int size;
+        @Param({"0.0", "0.5", "0.95"})
+        public double sparsity;
+        private List<Array> spectra;
+
+        /**
+         * Creates the spectra.
+         */
+        @Setup(Level.Trial)
+        public void setup() {
+            spectra = BenchmarkData.denseSpectra(SPECTRA, size, sparsity, 42L);
+        }
+    }
+
+    /**
+     * Spectra of the bundled glucoseA chromatogram.
+     */
+    @State(Scope.Thread)
+    public static class BundledSpectra {
+
+        private List<Array> spectra;
+
+        /**
+         * Reads and bins the spectra.
+         */
+        @Setup(Level.Trial)
+        public void setup() {
+            spectra = BenchmarkData.densify(BenchmarkData.bundledSpectra(BenchmarkData.GLUCOSE_A, SPECTRA), 50, 550);
+        }
+    }
+
+    /**
+     * Creates the similarity instance.
+     *
+     * @throws ReflectiveOperationException if the similarity can not be
+     * instantiated
+     */
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        sim = (IArraySimilarity) Class.forName(getClass().getPackage().getName() + "." + similarity).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Evaluates the similarity of the next pair of synthetic spectra.
+     *
+     * @param s the spectra
+     * @return the similarity
+     */
+    @Benchmark
+    public double synthetic(SyntheticSpectra s) {
+        return apply(s.spectra);
+    }
+
+    /**
+     * Evaluates the similarity of the next pair of bundled spectra.
+     *
+     * @param s the spectra
+     * @return the similarity
+     */
+    @Benchmark
+    public double bundled(BundledSpectra s) {
+        return apply(s.spectra);
+    }
+
+    private double apply(List<Array> spectra) {
+        final int n = spectra.size();
+        final int i = next;
+        next = (next + 1) % n;
+        return sim.apply(spectra.get(i), spectra.get((i + n / 2) % n));
+    }
+}
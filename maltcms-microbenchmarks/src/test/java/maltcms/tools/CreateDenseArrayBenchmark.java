@@ -0,0 +1,142 @@
+/*
+ * Maltcms, modular application toolkit for chromatography-mass spectrometry.
+ * Copyright (C) 2008-2014, The authors of Maltcms. All rights reserved.
+ *
+ * Project website: http://maltcms.sf.net
+ *
+ * Maltcms may be used under the terms of either the
+ *
+ * GNU Lesser General Public License (LGPL)
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * or the
+ *
+ * Eclipse Public License (EPL)
+ * http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * As a user/recipient of Maltcms, you may choose which license to receive the code
+ * under. Certain files or entire directories may not be covered by this
+ * dual license, but are subject to licenses compatible to both LGPL and EPL.
+ * License exceptions are explicitly declared in all relevant files or in a
+ * LICENSE file in the relevant directories.
+ *
+ * Maltcms is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. Please consult the relevant license documentation
+ * for details.
+ */
+package maltcms.tools;
+
+import cross.datastructures.tuple.Tuple2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import maltcms.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayDouble;
+
+/**
+ * JMH benchmark of binning sparse mass spectra with
+ * {@link ArrayTools#createDenseArray(ucar.ma2.Array, ucar.ma2.Array, cross.datastructures.tuple.Tuple2D, double, double, int, double, double)}
+ * for synthetic spectra of configurable mass range, sparsity and resolution
+ * and for the spectra of the bundled glucoseA chromatogram.
+ *
+ * @author Nils Hoffmann
+ * @since 2.0.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateDenseArrayBenchmark {
+
+    private static final int SPECTRA = 64;
+    private static final double MIN_MASS = 50.0d;
+
+    @Param({"1.0", "10.0"})
+    public double resolution;
+
+    private int next = 0;
+
+    /**
+     * Synthetic spectra of configurable mass range and sparsity.
+     */
+    @State(Scope.Thread)
+    public static class SyntheticSpectra {
+
+        @Param({"500", "1500"})
+        public int massRange;
+        @Param({"0.0", "0.5", "0.95"})
+        public double sparsity;
+        private List<Tuple2D<Array, Array>> spectra;
+
+        /**
+         * Creates the spectra.
+         */
+        @Setup(Level.Trial)
+        public void setup() {
+            spectra = BenchmarkData.sparseSpectra(SPECTRA, MIN_MASS, MIN_MASS + massRange, sparsity, 42L);
+        }
+    }
+
+    /**
+     * Spectra of the bundled glucoseA chromatogram.
+     */
+    @State(Scope.Thread)
+    public static class BundledSpectra {
+
+        private List<Tuple2D<Array, Array>> spectra;
+
+        /**
+         * Reads the spectra.
+         */
+        @Setup(Level.Trial)
+        public void setup() {
+            spectra = BenchmarkData.bundledSpectra(BenchmarkData.GLUCOSE_A, SPECTRA);
+        }
+    }
+
+    /**
+     * Bins the next synthetic spectrum.
+     *
+     * @param s the spectra
+     * @return the binned intensities
+     */
+    @Benchmark
+    public Array synthetic(SyntheticSpectra s) {
+        return densify(s.spectra, MIN_MASS, MIN_MASS + s.massRange);
+    }
+
+    /**
+     * Bins the next bundled spectrum.
+     *
+     * @param s the spectra
+     * @return the binned intensities
+     */
+    @Benchmark
+    public Array bundled(BundledSpectra s) {
+        return densify(s.spectra, MIN_MASS, 550.0d);
+    }
+
+    private Array densify(List<Tuple2D<Array, Array>> spectra, double minMass, double maxMass) {
+        final Tuple2D<Array, Array> ms = spectra.get(next);
+        next = (next + 1) % spectra.size();
+        final int bins = MaltcmsTools.getNumberOfIntegerMassBins(minMass, maxMass, resolution);
+        final Tuple2D<Array, Array> target = new Tuple2D<Array, Array>(new ArrayDouble.D1(bins), new ArrayDouble.D1(bins));
+        ArrayTools.createDenseArray(ms.getFirst(), ms.getSecond(), target, Math.floor(minMass), Math.ceil(maxMass), bins, resolution, 0.0d);
+        return target.getSecond();
+    }
+}